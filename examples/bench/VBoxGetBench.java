@@ -0,0 +1,72 @@
+import jvstm.Transaction;
+import jvstm.VBox;
+import jvstm.VBoxInt;
+
+/**
+ * Measures the cost of reading boxes through the VBox.get fast path
+ * (no active transaction) and inside read-only transactions.  Both
+ * paths compare the 64-bit version of each body against the number of
+ * the latest committed record.
+ *
+ * Usage: java VBoxGetBench <numBoxes> <numReads> <numRuns>
+ */
+public class VBoxGetBench {
+
+    public static void main(String[] args) {
+        final int numBoxes = (args.length > 0) ? Integer.parseInt(args[0]) : 1024;
+        final int numReads = (args.length > 1) ? Integer.parseInt(args[1]) : 50000000;
+        final int numRuns = (args.length > 2) ? Integer.parseInt(args[2]) : 5;
+
+        VBox<Integer>[] boxes = new VBox[numBoxes];
+        VBoxInt[] intBoxes = new VBoxInt[numBoxes];
+        for (int i = 0; i < numBoxes; i++) {
+            boxes[i] = new VBox<Integer>(i);
+            intBoxes[i] = new VBoxInt(i);
+        }
+
+        // create a few versions so that the fast path has a history to skip
+        for (int v = 0; v < 4; v++) {
+            Transaction.begin();
+            for (int i = 0; i < numBoxes; i++) {
+                boxes[i].put(i + v);
+                intBoxes[i].putInt(i + v);
+            }
+            Transaction.commit();
+        }
+
+        for (int run = 0; run < numRuns; run++) {
+            long sum = 0;
+
+            long start = System.nanoTime();
+            for (int r = 0; r < numReads; r++) {
+                sum += boxes[r % numBoxes].get();
+            }
+            long boxed = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int r = 0; r < numReads; r++) {
+                sum += intBoxes[r % numBoxes].getInt();
+            }
+            long unboxed = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            Transaction.begin(true);
+            for (int r = 0; r < numReads; r++) {
+                sum += intBoxes[r % numBoxes].getInt();
+            }
+            Transaction.commit();
+            long inTx = System.nanoTime() - start;
+
+            System.out.println("run " + run
+                               + ": VBox.get " + nsPerRead(boxed, numReads)
+                               + " ns, VBoxInt.getInt " + nsPerRead(unboxed, numReads)
+                               + " ns, VBoxInt.getInt in read-only tx " + nsPerRead(inTx, numReads)
+                               + " ns (checksum " + sum + ")");
+        }
+        System.exit(0);
+    }
+
+    private static String nsPerRead(long nanos, int numReads) {
+        return String.format("%.2f", (double)nanos / numReads);
+    }
+}
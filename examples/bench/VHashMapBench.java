@@ -0,0 +1,135 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+
+import jvstm.Transaction;
+import jvstm.VBox;
+import jvstm.util.VHashMap;
+
+/**
+ * Compares the throughput of a VHashMap with a VBox<HashMap> (copied on each
+ * update) and with a ConcurrentHashMap (not transactional), under a mix of
+ * lookups and updates of random keys.
+ *
+ * Usage: java VHashMapBench <numThreads> <numKeys> <updatePercent> <millis>
+ */
+public class VHashMapBench {
+
+    interface Op {
+        void run(Random random) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        final int numThreads = (args.length > 0) ? Integer.parseInt(args[0]) : 4;
+        final int numKeys = (args.length > 1) ? Integer.parseInt(args[1]) : 4096;
+        final int updatePercent = (args.length > 2) ? Integer.parseInt(args[2]) : 20;
+        final long millis = (args.length > 3) ? Long.parseLong(args[3]) : 3000;
+
+        final VHashMap<Integer, Integer> vmap = new VHashMap<Integer, Integer>();
+        final VBox<HashMap<Integer, Integer>> boxedMap = new VBox<HashMap<Integer, Integer>>(new HashMap<Integer, Integer>());
+        final ConcurrentHashMap<Integer, Integer> chm = new ConcurrentHashMap<Integer, Integer>();
+
+        run("VHashMap", numThreads, millis, new Op() {
+            public void run(Random random) throws Exception {
+                final Integer key = random.nextInt(numKeys);
+                if (random.nextInt(100) < updatePercent) {
+                    Transaction.doIt(new Callable<Object>() {
+                        public Object call() {
+                            Integer old = vmap.get(key);
+                            return vmap.put(key, (old == null) ? 1 : old + 1);
+                        }
+                    });
+                } else {
+                    Transaction.doIt(new Callable<Object>() {
+                        public Object call() {
+                            return vmap.get(key);
+                        }
+                    }, true);
+                }
+            }
+        });
+
+        run("VBox<HashMap>", numThreads, millis, new Op() {
+            public void run(Random random) throws Exception {
+                final Integer key = random.nextInt(numKeys);
+                if (random.nextInt(100) < updatePercent) {
+                    Transaction.doIt(new Callable<Object>() {
+                        public Object call() {
+                            HashMap<Integer, Integer> map = new HashMap<Integer, Integer>(boxedMap.get());
+                            Integer old = map.get(key);
+                            map.put(key, (old == null) ? 1 : old + 1);
+                            boxedMap.put(map);
+                            return old;
+                        }
+                    });
+                } else {
+                    Transaction.doIt(new Callable<Object>() {
+                        public Object call() {
+                            return boxedMap.get().get(key);
+                        }
+                    }, true);
+                }
+            }
+        });
+
+        run("ConcurrentHashMap", numThreads, millis, new Op() {
+            public void run(Random random) {
+                Integer key = random.nextInt(numKeys);
+                if (random.nextInt(100) < updatePercent) {
+                    Integer old;
+                    do {
+                        old = chm.get(key);
+                    } while (old == null ? chm.putIfAbsent(key, 1) != null : !chm.replace(key, old, old + 1));
+                } else {
+                    chm.get(key);
+                }
+            }
+        });
+
+        System.out.println("updates: VHashMap " + sum(vmap) + ", VBox<HashMap> " + sum(boxedMap.get()) + ", ConcurrentHashMap " + sum(chm));
+        System.exit(0);
+    }
+
+    static void run(String name, int numThreads, final long millis, final Op op) throws InterruptedException {
+        final long[] counts = new long[numThreads];
+        final long deadline = System.currentTimeMillis() + millis;
+        Thread[] threads = new Thread[numThreads];
+        for (int t = 0; t < numThreads; t++) {
+            final int id = t;
+            threads[t] = new Thread() {
+                public void run() {
+                    Random random = new Random(id);
+                    long count = 0;
+                    try {
+                        while (System.currentTimeMillis() < deadline) {
+                            for (int i = 0; i < 100; i++) {
+                                op.run(random);
+                            }
+                            count += 100;
+                        }
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                    counts[id] = count;
+                }
+            };
+            threads[t].start();
+        }
+        long total = 0;
+        for (int t = 0; t < numThreads; t++) {
+            threads[t].join();
+            total += counts[t];
+        }
+        System.out.println(name + ": " + (total * 1000 / millis) + " ops/s");
+    }
+
+    static long sum(Map<Integer, Integer> map) {
+        long sum = 0;
+        for (Integer value : map.values()) {
+            sum += value;
+        }
+        return sum;
+    }
+}
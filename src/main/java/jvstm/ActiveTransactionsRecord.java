@@ -25,6 +25,8 @@
  */
 package jvstm;
 
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Formatter;
 import java.util.logging.Handler;
@@ -70,7 +72,7 @@ public class ActiveTransactionsRecord {
         }
     }
 
-    protected static void notifyListeners(int newOldest) {
+    protected static void notifyListeners(long newOldest) {
         for (TxQueueListener l : listeners.get()) {
             try {
                 l.noteOldestTransaction(newOldest);
@@ -100,7 +102,7 @@ public class ActiveTransactionsRecord {
     // of this class) is used to record all the running transactions that have this transaction
     // number, and that, thus, may need to access the values committed by the transaction that
     // created this record
-    public final int transactionNumber;
+    public final long transactionNumber;
 
     /* This is the write-set of the transaction that created this record.
      *
@@ -205,7 +207,7 @@ public class ActiveTransactionsRecord {
         return new ActiveTransactionsRecord();
     }
 
-    public ActiveTransactionsRecord(int txNumber, WriteSet writeSet) {
+    public ActiveTransactionsRecord(long txNumber, WriteSet writeSet) {
         this.transactionNumber = txNumber;
         this.writeSet = writeSet;
         this.tx = new TopLevelReadTransaction(this);
@@ -238,12 +240,21 @@ public class ActiveTransactionsRecord {
     }
 
     public void clean() {
+        clean(true);
+    }
+
+    /**
+     * Cleans this record.  If mayRevert is false, the boxes written by it are not
+     * reverted to the compact layout, as some running transaction may still need
+     * one of their previous versions, which it would not find in the compact layout.
+     */
+    public void clean(boolean mayRevert) {
         int nBlocks = this.writeSet.normalWriteSet.nBlocks;
         int blockIdx = 0, idx = 0;
         for (Cons<GarbageCollectable> bodiesPerBlock : this.writeSet.normalWriteSet.bodiesPerBlock) {
             for (GarbageCollectable body : bodiesPerBlock) {
                 body.clearPrevious();
-                if(REVERSION && blockIdx < nBlocks){
+                if(REVERSION && mayRevert && blockIdx < nBlocks){
                     VBox vbox = this.writeSet.normalWriteSet.allWrittenVBoxes[idx];
                     tryRevert(vbox, body);
                     idx++;
@@ -258,7 +269,7 @@ public class ActiveTransactionsRecord {
         for (Cons<GarbageCollectable> bodiesPerBlock : this.writeSet.perTxBoxesWriteSet.bodiesPerBlock) {
             for (GarbageCollectable body : bodiesPerBlock) {
                 body.clearPrevious();
-                if(REVERSION && blockIdx < nBlocks){
+                if(REVERSION && mayRevert && blockIdx < nBlocks){
                     VBox vbox = this.writeSet.perTxBoxesWriteSet.allWrittenVBoxes[idx];
                     tryRevert(vbox, body);
                     idx++;
@@ -271,15 +282,104 @@ public class ActiveTransactionsRecord {
         notifyListeners(transactionNumber);
     }
 
+    /**
+     * Drops the versions of the boxes written by this record that are older than the
+     * maxVersions most recent ones, counting from the version written by this record,
+     * even if some running transaction still needs them (see GCTask).
+     *
+     * @return the number of versions dropped
+     */
+    public int trimHistory(int maxVersions) {
+        WriteSet writeSet = this.writeSet;
+        if (writeSet == null) {
+            return 0; // already cleaned
+        }
+        return trimHistory(writeSet.normalWriteSet, maxVersions) + trimHistory(writeSet.perTxBoxesWriteSet, maxVersions);
+    }
+
+    private static int trimHistory(BoxesToCommit boxes, int maxVersions) {
+        int dropped = 0;
+        // the blocks after nBlocks hold the log nodes of the arrays, whose log is not trimmed
+        for (int blockIdx = 0; blockIdx < boxes.nBlocks; blockIdx++) {
+            for (GarbageCollectable gc : boxes.bodiesPerBlock[blockIdx]) {
+                VBoxBody<?> last = (VBoxBody<?>) gc;
+                for (int i = 1; (i < maxVersions) && (last != null); i++) {
+                    last = last.next;
+                }
+                if ((last != null) && (last.next != null)) {
+                    for (VBoxBody<?> body = last.next; body != null; body = body.next) {
+                        dropped++;
+                    }
+                    last.clearPrevious();
+                }
+            }
+        }
+        return dropped;
+    }
+
     /*===========================================================================*
      *~~~~~~~~~~~~~     REVERSION part of the AOM approach  ~~~~~~~~~~~~~~~~~~~~~*
      *===========================================================================*/
 
     static final String REVERSION_PROP = "jvstm.aom.reversion";
     static final boolean REVERSION;
+
+    /*
+     * Reverting an object that is written again shortly after costs a new
+     * extension (see VBoxAom.commit), so hot objects are kept extended.  Each
+     * VBoxAom keeps a heat that goes up whenever one of its versions is
+     * cleaned after being superseded by a newer one, that is, whenever the
+     * object was written more than once between two cleanings.  When the
+     * version at the head of a hot object is cleaned, the object is not
+     * reverted: its heat is halved and the reversion is reconsidered on the
+     * next pass of the GCTask, until the object cools down below the
+     * threshold or is written again.  A threshold of 0 reverts every object.
+     *
+     * An object written only once between two cleanings never has a superseded
+     * version cleaned.  Its heat would stay low, and it would be reverted on
+     * each pass and extended again by the next write.  So an object whose
+     * version is cleaned within REVERSION_REEXTENSION_PASSES passes of the
+     * pass that reverted it, which means it was extended again right away,
+     * gets the maximum heat.
+     */
+    static final String REVERSION_HOT_THRESHOLD_PROP = "jvstm.aom.reversion.hotThreshold";
+    static final int REVERSION_HOT_THRESHOLD = Integer.getInteger(REVERSION_HOT_THRESHOLD_PROP, 4);
+    // the heat never goes above this, so that a hot object cools down in a few passes
+    static final int REVERSION_MAX_HEAT = 64;
+    static final int REVERSION_REEXTENSION_PASSES = 2;
+
+    // the number of passes of the GCTask, counted by retryPostponedReversions
+    private static volatile int gcPasses = 1;
+
     // public static int nrOfCleans = 0;
-    public static int nrOfReversions = 0;
-    public static int nrOfTries = 0;
+    // number of objects reverted to the compact layout
+    public static final AtomicLong nrOfReversions = new AtomicLong();
+    // number of reversions attempted (they fail if the object is written concurrently)
+    public static final AtomicLong nrOfTries = new AtomicLong();
+    // number of times that a hot object was kept in the extended layout
+    public static final AtomicLong nrOfPostponedReversions = new AtomicLong();
+
+    // the hot objects kept extended, whose reversion is reconsidered on each pass
+    private static final ConcurrentLinkedQueue<PostponedReversion<?>> postponedReversions =
+        new ConcurrentLinkedQueue<PostponedReversion<?>>();
+
+    private static final class PostponedReversion<T extends VBox<T>> {
+        final VBoxAom<T> vbox;
+        // the head of the history when the reversion was postponed, whose record is already
+        // cleaned, so it may still be reverted while it is at the head
+        final VBoxBody<T> body;
+
+        PostponedReversion(VBoxAom<T> vbox, VBoxBody<T> body) {
+            this.vbox = vbox;
+            this.body = body;
+        }
+
+        void retry() {
+            if (this.vbox.body == this.body) {
+                tryRevertUnlessHot(this.vbox, this.body);
+            } // else it was written again, and it will be reconsidered when that version is cleaned
+        }
+    }
 
     static{
         Logger logger = Logger.getLogger("jvstm");
@@ -290,6 +390,60 @@ public class ActiveTransactionsRecord {
                 REVERSION_PROP));*/
     }
 
+    private static <T extends VBox<T>> boolean tryRevert(VBox<T> vbox, GarbageCollectable body){
+        if (!(vbox instanceof VBoxAom) || !vbox.getClass().isInstance(((VBoxBody<?>) body).value)) {
+            // only the boxes of the AOM keep replicas of themselves in their bodies
+            return false;
+        }
+        VBoxAom<T> aom = (VBoxAom<T>) vbox;
+        int revertedInPass = aom.revertedInPass;
+        if (revertedInPass != 0) {
+            // this version was written after the object was reverted
+            aom.revertedInPass = 0;
+            if (gcPasses - revertedInPass <= REVERSION_REEXTENSION_PASSES) {
+                aom.heat = REVERSION_MAX_HEAT;
+            }
+        }
+        if (aom.body != body) {
+            // this version was already superseded
+            if (aom.heat < REVERSION_MAX_HEAT) {
+                aom.heat++;
+            }
+            return false;
+        }
+        return tryRevertUnlessHot(aom, (VBoxBody<T>) body);
+    }
+
+    private static <T extends VBox<T>> boolean tryRevertUnlessHot(VBoxAom<T> vbox, VBoxBody<T> body) {
+        if ((REVERSION_HOT_THRESHOLD > 0) && (vbox.heat >= REVERSION_HOT_THRESHOLD)) {
+            vbox.heat >>= 1;
+            nrOfPostponedReversions.incrementAndGet();
+            postponedReversions.offer(new PostponedReversion<T>(vbox, body));
+            return false;
+        }
+        if (revert(vbox, body)) {
+            vbox.revertedInPass = gcPasses;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reconsiders the reversion of the hot objects that were kept extended
+     * until now.  Invoked by the GCTask on each pass, which also counts the passes.
+     */
+    public static void retryPostponedReversions() {
+        gcPasses++;
+        // only the ones postponed before this pass, as the retries may postpone them again
+        for (int n = postponedReversions.size(); n > 0; n--) {
+            PostponedReversion<?> postponed = postponedReversions.poll();
+            if (postponed == null) {
+                return;
+            }
+            postponed.retry();
+        }
+    }
+
     /**
      *  If vbodies' history only have one VBoxBody then we will try to revert it.
      *
@@ -346,16 +500,16 @@ public class ActiveTransactionsRecord {
      *  into the extended layout again.
      *
      */
-    private <T extends VBox<T>> boolean tryRevert(VBox<T> vbox, GarbageCollectable body){
+    private static <T extends VBox<T>> boolean revert(VBox<T> vbox, VBoxBody<T> body){
         synchronized (vbox){
             if(vbox.body == body /* (1) step one of the reversion */
                     // && (Transaction.mostRecentRecord.transactionNumber - body.version) >= 8
                     // && (currentOwner.version != 0 && currentOwner.version <= this.transactionNumber)
             ){
-                nrOfTries++;
-                vbox.toCompactLayout(((VBoxBody<T>)body).value); /* (2) step two of the reversion */
-                boolean res = UtilUnsafe.UNSAFE.compareAndSwapObject(vbox, VBox.Offsets.bodyOffset, body, null); /* (3) step three of the reversion */
-                if(res) nrOfReversions++;
+                nrOfTries.incrementAndGet();
+                vbox.toCompactLayout(body.value); /* (2) step two of the reversion */
+                boolean res = VBox.Offsets.bodyUpdater.compareAndSet(vbox, body, null); /* (3) step three of the reversion */
+                if(res) nrOfReversions.incrementAndGet();
                 return res;
             }
         }
@@ -62,7 +62,7 @@ public class AomBarriers {
             // If the box body is GC'd before we can reach it, the process
             // re-starts with a newer transaction.
             while (true) {
-                int transactionNumber = Transaction.mostRecentCommittedRecord.transactionNumber;
+                long transactionNumber = Transaction.mostRecentCommittedRecord.transactionNumber;
                 do {
                     if (vbody.version <= transactionNumber) {
                         return vbody.value;
@@ -183,7 +183,7 @@ public class AomBarriers {
      * Yet, this is the most simple way of preserving the original InevitableTransaction and
      * without requiring any subclass specialization.
      */
-    private static <T extends VBoxAom<T>> T getTargetForInnevitable(T ref, int txNumber){
+    private static <T extends VBoxAom<T>> T getTargetForInnevitable(T ref, long txNumber){
         VBoxBody<T> vbody = ref.body;
         if ((vbody != null) && (vbody.version == txNumber)) {
             // In this case we already have written to this VBox during
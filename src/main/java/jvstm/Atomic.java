@@ -3,6 +3,7 @@ package jvstm;
 import java.lang.annotation.ElementType;
 import java.lang.annotation.Target;
 
+import jvstm.atomic.ContentionManager;
 import pt.ist.esw.advice.AdviceFactory;
 
 @Target(ElementType.METHOD)
@@ -13,5 +14,8 @@ public @interface Atomic {
 
     boolean speculativeReadOnly() default true;
 
+    // ContentionManager.class means that failed transactions are retried right away
+    Class<? extends ContentionManager> contentionManager() default ContentionManager.class;
+
     Class<? extends AdviceFactory> adviceFactory() default jvstm.atomic.AtomicAdviceFactory.class;
 }
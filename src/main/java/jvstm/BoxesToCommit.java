@@ -45,6 +45,8 @@ public class BoxesToCommit {
     /* All the VBoxes lined-up in a fixed array for direct access */
     protected final VBox[] allWrittenVBoxes;
     protected final Object[] allWrittenValues;
+    /* The unboxed values written to VBoxPrimitives (null if there are none) */
+    protected final long[] allWrittenBits;
     // the previous arrays may be allocated in a larger size than required.
     // This happens when the same box is first written to the standard
     // write-set and later re-written in-place. For this reason we should
@@ -60,6 +62,7 @@ public class BoxesToCommit {
         this.blockSize = 0;
         this.allWrittenVBoxes = new VBox[0];
         this.allWrittenValues = new Object[0];
+        this.allWrittenBits = null;
         this.writeSetLength = 0;
         this.bodiesPerBlock = new Cons[0];
         this.blocksDone = new AtomicBoolean[0];
@@ -67,10 +70,16 @@ public class BoxesToCommit {
 
     public BoxesToCommit(int nBlocks, int blockSize, VBox[] allWrittenVBoxes, Object[] allWrittenValues, int writeSetLength,
             Cons<GarbageCollectable>[] bodiesPerBlock, AtomicBoolean[] blocksDone) {
+        this(nBlocks, blockSize, allWrittenVBoxes, allWrittenValues, null, writeSetLength, bodiesPerBlock, blocksDone);
+    }
+
+    public BoxesToCommit(int nBlocks, int blockSize, VBox[] allWrittenVBoxes, Object[] allWrittenValues, long[] allWrittenBits,
+            int writeSetLength, Cons<GarbageCollectable>[] bodiesPerBlock, AtomicBoolean[] blocksDone) {
         this.nBlocks = nBlocks;
         this.blockSize = blockSize;
         this.allWrittenVBoxes = allWrittenVBoxes;
         this.allWrittenValues = allWrittenValues;
+        this.allWrittenBits = allWrittenBits;
         this.writeSetLength = writeSetLength;
         this.bodiesPerBlock = bodiesPerBlock;
         this.blocksDone = blocksDone;
@@ -0,0 +1,154 @@
+/*
+ * JVSTM: a Java library for Software Transactional Memory
+ * Copyright (C) 2005 INESC-ID Software Engineering Group
+ * http://www.esw.inesc-id.pt
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ * Author's contact:
+ * INESC-ID Software Engineering Group
+ * Rua Alves Redol 9
+ * 1000 - 029 Lisboa
+ * Portugal
+ */
+package jvstm;
+
+import static jvstm.UtilUnsafe.UNSAFE;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * Creates the field updaters used by the JVSTM for all CAS operations on
+ * its own fields (the body and inplace of a VBox, the owner of an
+ * InplaceWrite or OwnershipRecord, etc).
+ *
+ * Two implementations are available, selected at startup through the
+ * <code>jvstm.fieldUpdaters</code> property:
+ * <ul>
+ * <li><code>unsafe</code> (default) - updaters that go directly through
+ * <code>sun.misc.Unsafe</code>, with the field offsets computed once;</li>
+ * <li><code>jdk</code> - the standard <code>Atomic*FieldUpdater</code>s,
+ * which do not go through <code>sun.misc.Unsafe</code>.</li>
+ * </ul>
+ *
+ * Either way the call sites see a single implementation class, so the
+ * choice costs nothing after the JIT inlines them.
+ *
+ * The updated fields must be volatile, as required by the JDK updaters,
+ * in both modes.  Their frequent plain writes (when a VBox or an
+ * InplaceWrite is made, or a nested transaction writes in place) go
+ * through <code>lazySet</code>, which only orders the write after the
+ * previous ones, so they cost what they did while the fields were not
+ * volatile.  Their reads are volatile reads, which on x86 compile to the
+ * same loads as plain reads.
+ *
+ * The <code>jdk</code> mode does not remove the dependency on
+ * <code>sun.misc.Unsafe</code>: UtilUnsafe is still used by the
+ * AomBarriers, which receive the offset of the field to write from the
+ * instrumented code, and by the element accesses of VIntArray,
+ * VLongArray and VDoubleArray.
+ */
+public final class FieldUpdaters {
+
+    public static final String FIELD_UPDATERS_PROP = "jvstm.fieldUpdaters";
+
+    public static final boolean USE_UNSAFE = !"jdk".equals(System.getProperty(FIELD_UPDATERS_PROP, "unsafe"));
+
+    public static <T, V> AtomicReferenceFieldUpdater<T, V> newReferenceUpdater(Class<T> tclass, Class<V> vclass, String fieldName) {
+        if (USE_UNSAFE) {
+            return new UnsafeReferenceUpdater<T, V>(tclass, fieldName);
+        } else {
+            return AtomicReferenceFieldUpdater.newUpdater(tclass, vclass, fieldName);
+        }
+    }
+
+    public static <T> AtomicIntegerFieldUpdater<T> newIntegerUpdater(Class<T> tclass, String fieldName) {
+        if (USE_UNSAFE) {
+            return new UnsafeIntegerUpdater<T>(tclass, fieldName);
+        } else {
+            return AtomicIntegerFieldUpdater.newUpdater(tclass, fieldName);
+        }
+    }
+
+    private static final class UnsafeReferenceUpdater<T, V> extends AtomicReferenceFieldUpdater<T, V> {
+        private final long offset;
+
+        UnsafeReferenceUpdater(Class<T> tclass, String fieldName) {
+            this.offset = UtilUnsafe.objectFieldOffset(tclass, fieldName);
+        }
+
+        @Override
+        public boolean compareAndSet(T obj, V expect, V update) {
+            return UNSAFE.compareAndSwapObject(obj, offset, expect, update);
+        }
+
+        @Override
+        public boolean weakCompareAndSet(T obj, V expect, V update) {
+            return UNSAFE.compareAndSwapObject(obj, offset, expect, update);
+        }
+
+        @Override
+        public void set(T obj, V newValue) {
+            UNSAFE.putObjectVolatile(obj, offset, newValue);
+        }
+
+        @Override
+        public void lazySet(T obj, V newValue) {
+            UNSAFE.putOrderedObject(obj, offset, newValue);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public V get(T obj) {
+            return (V) UNSAFE.getObjectVolatile(obj, offset);
+        }
+    }
+
+    private static final class UnsafeIntegerUpdater<T> extends AtomicIntegerFieldUpdater<T> {
+        private final long offset;
+
+        UnsafeIntegerUpdater(Class<T> tclass, String fieldName) {
+            this.offset = UtilUnsafe.objectFieldOffset(tclass, fieldName);
+        }
+
+        @Override
+        public boolean compareAndSet(T obj, int expect, int update) {
+            return UNSAFE.compareAndSwapInt(obj, offset, expect, update);
+        }
+
+        @Override
+        public boolean weakCompareAndSet(T obj, int expect, int update) {
+            return UNSAFE.compareAndSwapInt(obj, offset, expect, update);
+        }
+
+        @Override
+        public void set(T obj, int newValue) {
+            UNSAFE.putIntVolatile(obj, offset, newValue);
+        }
+
+        @Override
+        public void lazySet(T obj, int newValue) {
+            UNSAFE.putOrderedInt(obj, offset, newValue);
+        }
+
+        @Override
+        public int get(T obj) {
+            return UNSAFE.getIntVolatile(obj, offset);
+        }
+    }
+
+    private FieldUpdaters() { }
+}
@@ -31,7 +31,7 @@ package jvstm;
 public class InevitableActiveTransactionsRecord extends ActiveTransactionsRecord {
     private final Object WRITE_SET_MONITOR = new Object();
 
-    public InevitableActiveTransactionsRecord(int txNumber) {
+    public InevitableActiveTransactionsRecord(long txNumber) {
         super(txNumber, null);
     }
 
@@ -41,6 +41,8 @@ import jvstm.util.Cons;
 public class InevitableTransaction extends TopLevelTransaction {
 
     private Cons<VBox> vboxesWrittenBack = Cons.empty();
+    // set by abortTx, which commits after undoing the writes
+    private boolean undone = false;
 
     public InevitableTransaction(ActiveTransactionsRecord activeRecord) {
         super(activeRecord);
@@ -87,23 +89,70 @@ public class InevitableTransaction extends TopLevelTransaction {
         return latest;
     }
 
-    // Also, InevitableTransactions cannot abort because their commit record as already been created
+    // Also, InevitableTransactions cannot abort because their commit record as already been created.
+    // Instead, they undo their writes and commit, so that the values written are never seen.
     @Override
     public void abortTx() {
+        undoWrites();
+        undone = true;
         commitTx(true);
         //tuning: super.commitTx() deals with statistics
-        //throw new Error("An Inevitable transaction cannot abort.  I've committed it instead.");
+    }
+
+    @Override
+    protected void countFinished(boolean committed) {
+        super.countFinished(committed && !undone);
+    }
+
+    /* Drops the bodies written by this transaction, so that the previous ones become the most recent
+     * again.  No other transaction may read them before we commit, as their version is newer than the
+     * last committed one.  The boxes whose body was dropped are left out of the write-set, so the
+     * transactions that read them do not fail their validation against this commit.  If the head of
+     * a box changed meanwhile (e.g., because of an AOM reversion), the previous value is restored in
+     * our body instead, and the box remains in the write-set. */
+    private void undoWrites() {
+        Cons<VBox> stillWritten = Cons.empty();
+        for (VBox vbox : this.vboxesWrittenBack) {
+            VBoxBody body = vbox.body;
+            VBoxBody previous = (body == null || body.version != this.number) ? null : body.next;
+            if (previous == null) {
+                // the box was created by this transaction
+                stillWritten = stillWritten.cons(vbox);
+                continue;
+            }
+            if (VBox.Offsets.bodyUpdater.compareAndSet(vbox, body, previous)) {
+                continue;
+            }
+            VBoxBody head = vbox.body;
+            body = (head == null) ? null : head.getBody(this.number);
+            if (body == null || body.version != this.number) {
+                // our body is no longer in the history
+                continue;
+            }
+            if (body instanceof VBoxBodyPrimitive) {
+                ((VBoxBodyPrimitive) body).bits = ((VBoxBodyPrimitive) previous).bits;
+            } else {
+                body.value = previous.value;
+            }
+            stillWritten = stillWritten.cons(vbox);
+        }
+        this.vboxesWrittenBack = stillWritten;
     }
 
     @Override
     public Transaction makeNestedTransaction(boolean readOnly) {
-        throw new Error(getClass().getSimpleName() + " doesn't support nesting yet");
+        throw new InevitableUnsupportedException(getClass().getSimpleName() + " doesn't support nesting yet");
     }
 
     @Override
     public <T> T getBoxValue(VBox<T> vbox) {
         // we don't keep a read-set because this transaction will be valid for sure
-        return vbox.body.value;
+        return vbox.bodyValue(vbox.body);
+    }
+
+    @Override
+    public <T> long getPrimitiveBoxValue(VBoxPrimitive<T> vbox) {
+        return ((VBoxBodyPrimitive<T>) vbox.body).bits;
     }
 
     // Always store in place, given that commits are not ocurring
@@ -118,13 +167,13 @@ public class InevitableTransaction extends TopLevelTransaction {
              * created by this transaction then there is no chance of this
              * object being reverted.
              */
-            body.value = value;
+            vbox.setBodyValue(body, value);
         } else {
             VBoxBody<T> newBody;
             if(body == null){
-                newBody = VBox.makeNewBody(value, number, vbox instanceof VBoxAom? new VBoxBody<T>(vbox.replicate(), 0, null) : null);
+                newBody = vbox.newBody(value, number, vbox instanceof VBoxAom? new VBoxBody<T>(vbox.replicate(), 0, null) : null);
             }else{
-                newBody = VBox.makeNewBody(value, number, body);
+                newBody = vbox.newBody(value, number, body);
             }
             this.vboxesWrittenBack = this.vboxesWrittenBack.cons(vbox);
             /*
@@ -135,14 +184,25 @@ public class InevitableTransaction extends TopLevelTransaction {
         }
     }
 
+    @Override
+    public <T> void setPrimitiveBoxValue(VBoxPrimitive<T> vbox, long bits) {
+        VBoxBody<T> body = vbox.body;
+        if ((body != null) && (body.version == this.number)) {
+            ((VBoxBodyPrimitive<T>) body).bits = bits;
+        } else {
+            this.vboxesWrittenBack = this.vboxesWrittenBack.cons(vbox);
+            vbox.CASbody(body, new VBoxBodyPrimitive<T>(bits, number, body));
+        }
+    }
+
     @Override
     public <T> T getPerTxValue(PerTxBox<T> box, T initial) {
-        throw new Error(getClass().getSimpleName() + " doesn't support PerTxBoxes yet");
+        throw new InevitableUnsupportedException(getClass().getSimpleName() + " doesn't support PerTxBoxes yet");
     }
 
     @Override
     public <T> void setPerTxValue(PerTxBox<T> box, T value) {
-        throw new Error(getClass().getSimpleName() + " doesn't support PerTxBoxes yet");
+        throw new InevitableUnsupportedException(getClass().getSimpleName() + " doesn't support PerTxBoxes yet");
     }
 
     @Override
@@ -164,12 +224,24 @@ public class InevitableTransaction extends TopLevelTransaction {
     @Override
     public <T> T getArrayValue(VArrayEntry<T> entry) {
         // Read directly from array
-        return entry.array.values.get(entry.index);
+        return entry.array.latestValue(entry.index);
     }
 
     @Override
     public <T> void setArrayValue(VArrayEntry<T> entry, T value) {
-        throw new Error(getClass().getSimpleName() + " doesn't support writing to VArrays yet");
+        throw new InevitableUnsupportedException(getClass().getSimpleName() + " doesn't support writing to VArrays yet");
+    }
+
+    @Override
+    public <T> void getArrayRange(VArrayRange<T> range) {
+        for (int i = 0; i < range.length; i++) {
+            range.set(i, range.array.latestValue(range.from + i));
+        }
+    }
+
+    @Override
+    public <T> void setArrayRange(VArrayRange<T> range) {
+        throw new InevitableUnsupportedException(getClass().getSimpleName() + " doesn't support writing to VArrays yet");
     }
 
 }
@@ -0,0 +1,46 @@
+/*
+ * JVSTM: a Java library for Software Transactional Memory
+ * Copyright (C) 2005 INESC-ID Software Engineering Group
+ * http://www.esw.inesc-id.pt
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ * Author's contact:
+ * INESC-ID Software Engineering Group
+ * Rua Alves Redol 9
+ * 1000 - 029 Lisboa
+ * Portugal
+ */
+package jvstm;
+
+/**
+ * An instance of <code>InevitableUnsupportedException</code> is thrown
+ * whenever an InevitableTransaction is asked to do something it cannot
+ * do: writing to a VArray, using a PerTxBox, or starting a nested
+ * transaction.
+ *
+ * The ManagedAtomicContext catches it when it has escalated a method to
+ * an inevitable transaction, aborts that attempt, and retries the
+ * method as a regular transaction.  Like <code>WriteOnReadException</code>
+ * it is a subclass of <code>Error</code>, so that application code that
+ * catches every <code>Exception</code> does not swallow it.
+ */
+public class InevitableUnsupportedException extends Error {
+    private static final long serialVersionUID = 1L;
+
+    public InevitableUnsupportedException(String message) {
+        super(message);
+    }
+}
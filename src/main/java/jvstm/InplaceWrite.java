@@ -25,46 +25,58 @@
  */
 package jvstm;
 
-import static jvstm.UtilUnsafe.UNSAFE;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 public class InplaceWrite<T> {
     /**
      * Due to the JVSTM integration in Deuce, we must keep in a separate
-     * class all constants initialized with Unasfe operations, otherwise
+     * class all constants that may be initialized with Unsafe operations, otherwise
      * the JVM may crash on the bootstrap when it loads a transactional
      * class.
      */
     private static class Offsets {
 
-        // --- Setup to use Unsafe
-        private static final long ownerOffset = UtilUnsafe.objectFieldOffset(InplaceWrite.class, "orec");
+        private static final AtomicReferenceFieldUpdater<InplaceWrite, OwnershipRecord> orecUpdater =
+            FieldUpdaters.newReferenceUpdater(InplaceWrite.class, OwnershipRecord.class, "orec");
 
     }
 
-    public OwnershipRecord orec;
+    /**
+     * Marker stored in tempValue when the tentative value of a
+     * VBoxPrimitive is kept unboxed in tempBits.
+     */
+    public static final Object UNBOXED_VALUE = new Object();
+
+    public volatile OwnershipRecord orec;
     public T tempValue;
+    public long tempBits;
     public InplaceWrite<T> next;
 
     public InplaceWrite() {
-        this.orec = OwnershipRecord.DEFAULT_COMMITTED_OWNER;
+        Offsets.orecUpdater.lazySet(this, OwnershipRecord.DEFAULT_COMMITTED_OWNER);
         this.tempValue = null;
         this.next = null;
     }
 
     public InplaceWrite(Transaction trx) {
-        this.orec = trx.orecForNewObjects;
+        Offsets.orecUpdater.lazySet(this, trx.orecForNewObjects);
         this.tempValue = null;
         this.next = null;
     }
 
     public InplaceWrite(OwnershipRecord owner, T tempValue, InplaceWrite<T> next) {
-        this.orec = owner;
+        Offsets.orecUpdater.lazySet(this, owner);
         this.tempValue = tempValue;
         this.next = next;
     }
 
+    // an ordered write of orec, see FieldUpdaters
+    void lazySetOwner(OwnershipRecord newOrec) {
+        Offsets.orecUpdater.lazySet(this, newOrec);
+    }
+
     protected boolean CASowner(OwnershipRecord prevOrec, OwnershipRecord newOrec) {
-        return UNSAFE.compareAndSwapObject(this, Offsets.ownerOffset, prevOrec, newOrec);
+        return Offsets.orecUpdater.compareAndSet(this, prevOrec, newOrec);
     }
 
 }
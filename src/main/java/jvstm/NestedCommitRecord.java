@@ -70,11 +70,11 @@ public class NestedCommitRecord {
 
         Cons<ParallelNestedTransaction> currentParentOrecs = parent.mergedTxs;
         if (currentParentOrecs == expectedParentOrecs) {
-            committer.orec.nestedVersion = commitNumber;
+            committer.orec.lazySetNestedVersion(commitNumber);
             committer.orec.owner = parent;
             currentParentOrecs = currentParentOrecs.cons(committer);
             for (ParallelNestedTransaction childrenCommit : childrenToPropagate) {
-                childrenCommit.orec.nestedVersion = commitNumber;
+                childrenCommit.orec.lazySetNestedVersion(commitNumber);
                 childrenCommit.orec.owner = parent;
                 currentParentOrecs = currentParentOrecs.cons(childrenCommit);
             }
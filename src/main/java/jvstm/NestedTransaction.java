@@ -25,7 +25,6 @@
  */
 package jvstm;
 
-import java.util.IdentityHashMap;
 import java.util.Map;
 
 import jvstm.tuning.ThreadStatistics;
@@ -43,13 +42,15 @@ import jvstm.util.Cons;
 public class NestedTransaction extends ReadWriteTransaction {
 
     protected Cons<VBox> overwrittenAncestorWriteSet = Cons.<VBox>empty();
+    // the size of the (shared) read-set when this transaction started
+    protected final int readSetStart;
 
     public NestedTransaction(ReadWriteTransaction parent) {
         super(parent);
         // start with parent's read-set
-        this.bodiesRead = parent.bodiesRead;
+        this.readSet = parent.readSet;
+        this.readSetStart = (parent.readSet == null) ? 0 : parent.readSet.size();
         this.arraysRead = parent.arraysRead;
-        this.next = parent.next;
         // start with parent write-set of boxes written in place (useful to commit to parent a little faster)
         this.boxesWrittenInPlace = parent.boxesWrittenInPlace;
         // use the parent Orec, which will be necessarily the root top-level tx's orec
@@ -65,14 +66,16 @@ public class NestedTransaction extends ReadWriteTransaction {
     public void abortTx() {
     	
     	//tuning: statistics
-    	tuningContext.get().getStatistics().incAbortCount();
+    	if (TUNING) {
+    	    tuningContext.get().getStatistics().incAbortCount();
+    	}
     	
         // do not call super, we do not want to make the Orec of the ancestor
         // aborted (at least not yet, it might happen depending on the nature
         // of the abort)
         for (VBox vbox : overwrittenAncestorWriteSet) {
             // revert the in-place entry that had overwritten
-            vbox.inplace = vbox.inplace.next;
+            VBox.Offsets.inplaceUpdater.lazySet(vbox, vbox.inplace.next);
         }
 
         this.orec.version = OwnershipRecord.ABORTED;
@@ -83,15 +86,18 @@ public class NestedTransaction extends ReadWriteTransaction {
             mergedTx.orec.version = OwnershipRecord.ABORTED;
         }
 
-        // give the read set arrays, which were used exclusively by this nested or its children, back to the thread pool
-        Cons<VBox[]> parentArrays = this.getRWParent().bodiesRead;
-        Cons<VBox[]> myArrays = this.bodiesRead;
-        while (myArrays != parentArrays) {
-            returnToPool(myArrays.first());
-            myArrays = myArrays.rest();
+        // discard the reads made by this nested or its children, giving the
+        // read-set back to the thread if it was used exclusively by them
+        if (readSet != null) {
+            if (this.getRWParent().readSet == null) {
+                ReadSet.giveBack(readSet);
+            } else {
+                readSet.truncate(readSetStart);
+            }
         }
+        releaseBoxesWritten(boxesWritten);
 
-        bodiesRead = null;
+        readSet = null;
         boxesWritten = null;
         boxesWrittenInPlace = null;
         perTxValues = null;
@@ -100,7 +106,9 @@ public class NestedTransaction extends ReadWriteTransaction {
         linearNestedOrecs = null;
         current.set(this.getParent());
         
-        controller.finishTransaction(this, isNested());
+        if (TUNING) {
+            controller.finishTransaction(this, isNested());
+        }
     }
 
     protected boolean isAncestor(Transaction tx) {
@@ -126,7 +134,7 @@ public class NestedTransaction extends ReadWriteTransaction {
 
         // differs here
         if (isAncestor(currentOwner.owner)) {
-            vbox.inplace = new InplaceWrite<T>(this.orec, (value == null ? (T) NULL_VALUE : value), inplaceWrite);
+            VBox.Offsets.inplaceUpdater.lazySet(vbox, new InplaceWrite<T>(this.orec, (value == null ? (T) NULL_VALUE : value), inplaceWrite));
             overwrittenAncestorWriteSet = overwrittenAncestorWriteSet.cons(vbox);
             return;
         }
@@ -143,7 +151,7 @@ public class NestedTransaction extends ReadWriteTransaction {
                 }
             } else {
                 if (boxesWritten == EMPTY_MAP) {
-                    boxesWritten = new IdentityHashMap<VBox, Object>();
+                    boxesWritten = makeBoxesWritten();
                 }
                 boxesWritten.put(vbox, value == null ? NULL_VALUE : value);
                 return;
@@ -161,7 +169,7 @@ public class NestedTransaction extends ReadWriteTransaction {
 
     @Override
     protected void finish() {
-        bodiesRead = null;
+        readSet = null;
         boxesWritten = null;
         perTxValues = null;
         overwrittenAncestorWriteSet = null;
@@ -173,8 +181,10 @@ public class NestedTransaction extends ReadWriteTransaction {
     @Override
     protected void doCommit() {
         tryCommit();
+        // the entries of boxesWritten were copied to the parent
+        releaseBoxesWritten(boxesWritten);
 
-        bodiesRead = Cons.empty();
+        readSet = null;
         boxesWritten = EMPTY_MAP;
         perTxValues = EMPTY_MAP;
         overwrittenAncestorWriteSet = Cons.empty();
@@ -187,8 +197,7 @@ public class NestedTransaction extends ReadWriteTransaction {
     protected void tryCommit() {
         ReadWriteTransaction parent = getRWParent();
         // update parent's read-set
-        parent.bodiesRead = this.bodiesRead;
-        parent.next = this.next;
+        parent.readSet = this.readSet;
 
         // update parent's write-set
 
@@ -206,7 +215,7 @@ public class NestedTransaction extends ReadWriteTransaction {
                 continue;
             } else {
                 if (parent.boxesWritten == EMPTY_MAP) {
-                    parent.boxesWritten = new IdentityHashMap<VBox, Object>();
+                    parent.boxesWritten = makeBoxesWritten();
                 }
                 parent.boxesWritten.put(vbox, value);
             }
@@ -25,7 +25,8 @@
  */
 package jvstm;
 
-import static jvstm.UtilUnsafe.UNSAFE;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /*
  * Each ReadWriteTransaction uses an instance of this class to represent that
@@ -55,39 +56,46 @@ public class OwnershipRecord {
     // version = 0 is reserved for the state RUNNING
     // version = -1 is reserved for the state ABORTED
     // version > 0 is the version in which the owning transaction committed
-    public int version = RUNNING;
-    public int nestedVersion;
+    // (volatile, as a plain long may be read half-written, see JLS 17.7)
+    public volatile long version = RUNNING;
+    public volatile int nestedVersion;
     public volatile ReadWriteTransaction owner;
 
     public OwnershipRecord() {
         this.owner = null;
-        this.nestedVersion = 0;
+        lazySetNestedVersion(0);
     }
 
     public OwnershipRecord(ReadWriteTransaction owner) {
         this.owner = owner;
-        this.nestedVersion = 0;
+        lazySetNestedVersion(0);
+    }
+
+    // an ordered write of nestedVersion, see FieldUpdaters
+    void lazySetNestedVersion(int newNestedVersion) {
+        Offsets.nestedVersionUpdater.lazySet(this, newNestedVersion);
     }
 
     protected boolean CASnestedVersion(int expectedNestedVersion, int newNestedVersion) {
-        return UNSAFE.compareAndSwapObject(this, Offsets.nestedVersionOffset, expectedNestedVersion, newNestedVersion);
+        return Offsets.nestedVersionUpdater.compareAndSet(this, expectedNestedVersion, newNestedVersion);
     }
 
     protected boolean CASowner(ReadWriteTransaction expectedOwner, ReadWriteTransaction newOwner) {
-        return UNSAFE.compareAndSwapObject(this, Offsets.ownerOffset, expectedOwner, newOwner);
+        return Offsets.ownerUpdater.compareAndSet(this, expectedOwner, newOwner);
     }
 
     /**
      * Due to the JVSTM integration in Deuce, we must keep in a separate
-     * class all constants initialized with Unasfe operations, otherwise
+     * class all constants that may be initialized with Unsafe operations, otherwise
      * the JVM may crash on the bootstrap when it loads a transactional
      * class.
      */
     private static class Offsets {
 
-        // --- Setup to use Unsafe
-        private static final long nestedVersionOffset = UtilUnsafe.objectFieldOffset(OwnershipRecord.class, "nestedVersion");;
-        private static final long ownerOffset = UtilUnsafe.objectFieldOffset(OwnershipRecord.class, "owner");;
+        private static final AtomicIntegerFieldUpdater<OwnershipRecord> nestedVersionUpdater =
+            FieldUpdaters.newIntegerUpdater(OwnershipRecord.class, "nestedVersion");
+        private static final AtomicReferenceFieldUpdater<OwnershipRecord, ReadWriteTransaction> ownerUpdater =
+            FieldUpdaters.newReferenceUpdater(OwnershipRecord.class, ReadWriteTransaction.class, "owner");
 
     }
 
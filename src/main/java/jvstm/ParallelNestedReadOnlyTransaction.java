@@ -25,6 +25,7 @@
  */
 package jvstm;
 
+import jvstm.tuning.AbortCause;
 import jvstm.util.Cons;
 
 /**
@@ -45,10 +46,15 @@ public class ParallelNestedReadOnlyTransaction extends ParallelNestedTransaction
         super(parent);
     }
 
+    private static WriteOnReadException writeOnRead() {
+        recordAbortCause(AbortCause.WRITE_ON_READ);
+        return new WriteOnReadException();
+    }
+
     @Override
     public Transaction makeParallelNestedTransaction(boolean readOnly) {
         if (!readOnly) {
-            throw new WriteOnReadException();
+            throw writeOnRead();
         }
         return new ParallelNestedReadOnlyTransaction(this);
     }
@@ -77,7 +83,7 @@ public class ParallelNestedReadOnlyTransaction extends ParallelNestedTransaction
     @Override
     public <T> T getBoxValue(VBox<T> vbox) {
         InplaceWrite<T> inplaceWrite = vbox.inplace;
-        T value = inplaceWrite.tempValue;
+        T value = vbox.tempValue(inplaceWrite);
         OwnershipRecord inplaceOrec = inplaceWrite.orec;
 
         if (inplaceOrec.version > 0 && inplaceOrec.version <= number) {
@@ -95,7 +101,7 @@ public class ParallelNestedReadOnlyTransaction extends ParallelNestedTransaction
             if (inplaceWrite == null) {
                 break;
             }
-            value = inplaceWrite.tempValue;
+            value = vbox.tempValue(inplaceWrite);
             inplaceOrec = inplaceWrite.orec;
         } while (true);
 
@@ -134,12 +140,12 @@ public class ParallelNestedReadOnlyTransaction extends ParallelNestedTransaction
 
     @Override
     public <T> void setArrayValue(jvstm.VArrayEntry<T> entry, T value) {
-        throw new WriteOnReadException();
+        throw writeOnRead();
     }
 
     @Override
     public <T> void setBoxValue(jvstm.VBox<T> vbox, T value) {
-        throw new WriteOnReadException();
+        throw writeOnRead();
     }
 
     @Override
@@ -149,7 +155,7 @@ public class ParallelNestedReadOnlyTransaction extends ParallelNestedTransaction
 
     @Override
     public <T> void setPerTxValue(jvstm.PerTxBox<T> box, T value) {
-        throw new WriteOnReadException();
+        throw writeOnRead();
     }
 
     @Override
@@ -29,6 +29,7 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import jvstm.tuning.AbortCause;
 import jvstm.util.Cons;
 
 /**
@@ -63,6 +64,8 @@ public class ParallelNestedTransaction extends ReadWriteTransaction {
     };
 
     protected Cons<ReadBlock> globalReads;
+    // the next free position in the first of the globalReads blocks
+    protected int next = -1;
     protected Map<VBox, InplaceWrite> nestedReads;
 
     public ParallelNestedTransaction(ReadWriteTransaction parent) {
@@ -139,10 +142,12 @@ public class ParallelNestedTransaction extends ReadWriteTransaction {
             manualAbort();
         }
 
-        //tuning: statistics
-        tuningContext.get().getStatistics().incAbortCount();
         Transaction.current.set(parent);
-        controller.finishTransaction(this, isNested());
+        //tuning: statistics
+        if (TUNING) {
+            tuningContext.get().getStatistics().incAbortCount();
+            controller.finishTransaction(this, isNested());
+        }
     }
 
     /* Removes the inplace writes of the transaction aborting if they 
@@ -189,10 +194,11 @@ public class ParallelNestedTransaction extends ReadWriteTransaction {
             overwritten = overwritten.next;
             if (overwritten.orec.owner != this && overwritten.orec.version == OwnershipRecord.RUNNING) {
                 write.tempValue = overwritten.tempValue;
+                write.tempBits = overwritten.tempBits;
                 write.next = overwritten.next;
                 overwritten.orec.owner = overwritten.orec.owner; // enforce
                                                                  // visibility
-                write.orec = overwritten.orec;
+                write.lazySetOwner(overwritten.orec);
                 return;
             }
         }
@@ -201,6 +207,7 @@ public class ParallelNestedTransaction extends ReadWriteTransaction {
     protected <T> T readGlobal(VBox<T> vbox) {
         VBoxBody<T> body = vbox.body;
         if (body.version > number) {
+            recordAbortCause(AbortCause.EARLY_ABORT);
             TransactionSignaller.SIGNALLER.signalEarlyAbort();
         }
 
@@ -224,16 +231,18 @@ public class ParallelNestedTransaction extends ReadWriteTransaction {
             readBlock = globalReads.first();
         }
         readBlock.entries[next--] = vbox;
-        return body.value;
+        return vbox.bodyValue(body);
     }
 
     @Override
     public <T> T getBoxValue(VBox<T> vbox) {
         InplaceWrite<T> inplaceWrite = vbox.inplace;
-        T value = inplaceWrite.tempValue;
+        T value = vbox.tempValue(inplaceWrite);
         OwnershipRecord inplaceOrec = inplaceWrite.orec;
 
-        if (inplaceOrec.version > 0 && inplaceOrec.version <= number) {
+        // the fallback write-set is shared with the parent, whose snapshot
+        // may have been extended past the owner of a box written there
+        if (inplaceOrec.version > 0 && inplaceOrec.version <= number && boxesWritten == EMPTY_MAP) {
             value = readGlobal(vbox);
             return value;
         }
@@ -257,7 +266,7 @@ public class ParallelNestedTransaction extends ReadWriteTransaction {
             if (inplaceWrite == null) {
                 break;
             }
-            value = inplaceWrite.tempValue;
+            value = vbox.tempValue(inplaceWrite);
             inplaceOrec = inplaceWrite.orec;
         } while (true);
 
@@ -310,6 +319,7 @@ public class ParallelNestedTransaction extends ReadWriteTransaction {
         }
 
         manualAbort();
+        recordAbortCause(AbortCause.NESTED_FALLBACK);
         throw EXECUTE_SEQUENTIALLY_EXCEPTION;
     }
 
@@ -435,7 +445,7 @@ public class ParallelNestedTransaction extends ReadWriteTransaction {
     }
 
     @Override
-    protected void snapshotValidation(int lastSeenNumber) {
+    protected void snapshotValidation(long lastSeenNumber) {
         if (retrieveAncestorVersion(parent) == lastSeenNumber) {
             return;
         }
@@ -477,6 +487,7 @@ public class ParallelNestedTransaction extends ReadWriteTransaction {
             }
             int maxVersion = retrieveAncestorVersion(iter.orec.owner);
             if (maxVersion >= 0) {
+                recordAbortCause(AbortCause.VALIDATION);
                 manualAbort();
                 TransactionSignaller.SIGNALLER.signalCommitFail(iter.orec.owner);
             }
@@ -496,6 +507,7 @@ public class ParallelNestedTransaction extends ReadWriteTransaction {
             do {
                 int maxVersion = retrieveAncestorVersion(iter.orec.owner);
                 if (maxVersion >= 0) {
+                    recordAbortCause(AbortCause.VALIDATION);
                     manualAbort();
                     TransactionSignaller.SIGNALLER.signalCommitFail(iter.orec.owner);
                 }
@@ -511,6 +523,7 @@ public class ParallelNestedTransaction extends ReadWriteTransaction {
                 do {
                     int maxVersion = retrieveAncestorVersion(iter.orec.owner);
                     if (maxVersion >= 0) {
+                        recordAbortCause(AbortCause.VALIDATION);
                         manualAbort();
                         TransactionSignaller.SIGNALLER.signalCommitFail(iter.orec.owner);
                     }
@@ -541,6 +554,7 @@ public class ParallelNestedTransaction extends ReadWriteTransaction {
                         continue;
                     }
                     if (parentWrite.nestedVersion > maxVersionOnParent) {
+                        recordAbortCause(AbortCause.VALIDATION);
                         TransactionSignaller.SIGNALLER.signalCommitFail(parent);
                     }
                 }
@@ -52,7 +52,7 @@ public class ProcessPerTxBoxesTransaction extends Transaction {
         super(0);
     }
 
-    public ProcessPerTxBoxesTransaction(int maxVersion, TopLevelTransaction committer) {
+    public ProcessPerTxBoxesTransaction(long maxVersion, TopLevelTransaction committer) {
         super(maxVersion);
         this.committer = committer;
         Transaction.current.set(this);
@@ -66,7 +66,7 @@ public class ProcessPerTxBoxesTransaction extends Transaction {
     protected <T> T getLocalValue(VBox<T> vbox) {
         InplaceWrite<T> inplace = vbox.inplace;
         if (inplace.orec.owner == this.committer) {
-            return inplace.tempValue;
+            return vbox.tempValue(inplace);
         }
         if (committer.boxesWritten != ReadWriteTransaction.EMPTY_MAP) {
             return (T) committer.boxesWritten.get(vbox);
@@ -86,12 +86,12 @@ public class ProcessPerTxBoxesTransaction extends Transaction {
 
         OwnershipRecord currentOwner = vbox.inplace.orec;
         if (currentOwner.version > 0 && currentOwner.version <= this.number) {
-            return vbox.body.getBody(this.number).value;
+            return vbox.bodyValue(vbox.body.getBody(this.number));
         }
 
         value = getLocalValue(vbox);
         if (value == null) {
-            return vbox.body.getBody(this.number).value;
+            return vbox.bodyValue(vbox.body.getBody(this.number));
         }
 
         return (value == ReadWriteTransaction.NULL_VALUE) ? null : value;
@@ -0,0 +1,146 @@
+/*
+ * JVSTM: a Java library for Software Transactional Memory
+ * Copyright (C) 2005 INESC-ID Software Engineering Group
+ * http://www.esw.inesc-id.pt
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ * Author's contact:
+ * INESC-ID Software Engineering Group
+ * Rua Alves Redol 9
+ * 1000 - 029 Lisboa
+ * Portugal
+ */
+package jvstm;
+
+/**
+ * The read-set of a ReadWriteTransaction and of its linear nested
+ * transactions: a contiguous log of the boxes read, in reading order.
+ *
+ * Each thread keeps one of these logs cached and reuses it from one
+ * transaction to the next.  The log is cleared simply by resetting its size,
+ * and its array only grows (by doubling), so in the steady-state a
+ * transaction does not allocate anything to keep its read-set.
+ *
+ * A read-set may also summarize the boxes read in a Signature, so that it
+ * may be validated against the signatures of the write-sets committed
+ * meanwhile (see TopLevelTransaction.isReadSetValid).  The signature is
+ * only built when a validation asks for it, and then only from the entries
+ * logged since the previous time, so reads never pay for it.
+ *
+ * A log is borrowed by a transaction for its whole lifetime (which may span
+ * several threads, if the transaction is suspended and resumed elsewhere),
+ * and is given back to the cache of the thread that finishes it.
+ */
+public final class ReadSet {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private static final ThreadLocal<ReadSet> cache = new ThreadLocal<ReadSet>();
+
+    static ReadSet borrow() {
+        ReadSet readSet = cache.get();
+        if (readSet == null) {
+            return new ReadSet();
+        }
+        cache.set(null);
+        return readSet;
+    }
+
+    static void giveBack(ReadSet readSet) {
+        readSet.size = 0;
+        if (readSet.signed > 0) {
+            readSet.signature.clear();
+            readSet.signed = 0;
+        }
+        if (cache.get() == null) {
+            cache.set(readSet);
+        }
+    }
+
+    protected VBox[] entries = new VBox[INITIAL_CAPACITY];
+    protected int size = 0;
+    protected final Signature signature = new Signature();
+    // the number of entries already added to the signature
+    protected int signed = 0;
+
+    private ReadSet() { }
+
+    public final int size() {
+        return this.size;
+    }
+
+    public final boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    final void add(VBox vbox) {
+        VBox[] entries = this.entries;
+        int size = this.size;
+        if (size == entries.length) {
+            entries = grow();
+        }
+        entries[size] = vbox;
+        this.size = size + 1;
+    }
+
+    /* Discards every entry logged after the first newSize ones.  The
+     * signature keeps them, which may only cause false conflicts. */
+    final void truncate(int newSize) {
+        this.size = newSize;
+        if (this.signed > newSize) {
+            this.signed = newSize;
+        }
+    }
+
+    /* Returns the signature of the boxes read, after adding those logged
+     * since it was last asked for, or null if there are too many of them for
+     * a signature to be useful. */
+    final Signature signature() {
+        int size = this.size;
+        if (size > Signature.MAX_ENTRIES) {
+            return null;
+        }
+        Signature signature = this.signature;
+        if (signature.ensureCapacity(size)) {
+            this.signed = 0;
+        }
+        VBox[] entries = this.entries;
+        for (int i = this.signed; i < size; i++) {
+            signature.add(entries[i]);
+        }
+        this.signed = size;
+        return signature;
+    }
+
+    /* Returns true iff any of the boxes read has a version newer than maxVersion */
+    final boolean hasNewerVersion(long maxVersion) {
+        VBox[] entries = this.entries;
+        for (int i = this.size - 1; i >= 0; i--) {
+            VBoxBody body = entries[i].body;
+            if (body != null && body.version > maxVersion) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private VBox[] grow() {
+        VBox[] newEntries = new VBox[this.entries.length << 1];
+        System.arraycopy(this.entries, 0, newEntries, 0, this.size);
+        this.entries = newEntries;
+        return newEntries;
+    }
+}
@@ -25,10 +25,18 @@
  */
 package jvstm;
 
+import jvstm.gc.GCTask;
+import jvstm.tuning.AbortCause;
+
 public class ReadTransaction extends Transaction {
     static final WriteOnReadException WRITE_ON_READ_EXCEPTION = new WriteOnReadException();
 
-    public ReadTransaction(int number) {
+    static WriteOnReadException writeOnRead() {
+        recordAbortCause(AbortCause.WRITE_ON_READ);
+        return WRITE_ON_READ_EXCEPTION;
+    }
+
+    public ReadTransaction(long number) {
         super(number);
     }
 
@@ -45,7 +53,7 @@ public class ReadTransaction extends Transaction {
 
     public Transaction makeNestedTransaction(boolean readOnly) {
         if (!readOnly) {
-            throw WRITE_ON_READ_EXCEPTION;
+            throw writeOnRead();
         }
         return new ReadTransaction(this);
     }
@@ -60,11 +68,26 @@ public class ReadTransaction extends Transaction {
         if(vbody == null)
             return (T) vbox; // object in compact layout.
         else
-            return vbody.getBody(number).value;
+            return vbox.bodyValue(getBody(vbody));
+    }
+
+    /* Same as vbody.getBody(number), except that the version needed may have been
+     * dropped if the history is bounded (see GCTask), in which case this aborts.
+     */
+    protected <T> VBoxBody<T> getBody(VBoxBody<T> vbody) {
+        VBoxBody<T> body = vbody;
+        while (body.version > number) {
+            body = body.next;
+            if (body == null) {
+                GCTask.signalVersionTrimmed();
+                throw new AssertionError("Impossible condition - Early abort signalled!");
+            }
+        }
+        return body;
     }
 
     public <T> void setBoxValue(VBox<T> vbox, T value) {
-        throw WRITE_ON_READ_EXCEPTION;
+        throw writeOnRead();
     }
 
     public <T> T getPerTxValue(PerTxBox<T> box, T initial) {
@@ -72,7 +95,7 @@ public class ReadTransaction extends Transaction {
     }
 
     public <T> void setPerTxValue(PerTxBox<T> box, T value) {
-        throw WRITE_ON_READ_EXCEPTION;
+        throw writeOnRead();
     }
 
     public <T> T getArrayValue(VArrayEntry<T> entry) {
@@ -80,7 +103,15 @@ public class ReadTransaction extends Transaction {
     }
 
     public <T> void setArrayValue(VArrayEntry<T> entry, T value) {
-        throw WRITE_ON_READ_EXCEPTION;
+        throw writeOnRead();
+    }
+
+    public <T> void getArrayRange(VArrayRange<T> range) {
+        range.read(number);
+    }
+
+    public <T> void setArrayRange(VArrayRange<T> range) {
+        throw writeOnRead();
     }
 
     protected void doCommit() {
@@ -25,13 +25,14 @@
  */
 package jvstm;
 
-import static jvstm.UtilUnsafe.UNSAFE;
-
 import java.util.Collections;
-import java.util.IdentityHashMap;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
+import jvstm.tuning.AbortCause;
 import jvstm.util.Cons;
+import jvstm.util.IdentityArrayMap;
 
 public abstract class ReadWriteTransaction extends Transaction {
 
@@ -40,45 +41,55 @@ public abstract class ReadWriteTransaction extends Transaction {
     protected static final int[] EMPTY_VERSIONS = new int[0];
     protected static final VBox[] EMPTY_WRITE_SET = new VBox[0];
     protected static final Map EMPTY_MAP = Collections.emptyMap();
+    protected static final PerTxBox[] EMPTY_PER_TX_BOXES = new PerTxBox[0];
+    protected static final VArray[] EMPTY_ARRAYS = new VArray[0];
+
+    /*
+     * Each thread keeps one fallback write-set (boxesWritten) around, so
+     * that it can be reused by its next transactions.  A write-set that is
+     * adopted by the WriteSet of a commit is frozen and, thus, not reused
+     * (see IdentityArrayMap.clear()).
+     */
+    protected static final ThreadLocal<IdentityArrayMap<VBox, Object>> boxesWrittenCache = new ThreadLocal<IdentityArrayMap<VBox, Object>>();
 
-    protected static final ThreadLocal<Cons<VBox[]>> pool = new ThreadLocal<Cons<VBox[]>>() {
-        @Override
-        public Cons<VBox[]> initialValue() {
-            return Cons.empty();
+    protected static IdentityArrayMap<VBox, Object> makeBoxesWritten() {
+        IdentityArrayMap<VBox, Object> boxesWritten = boxesWrittenCache.get();
+        if (boxesWritten == null) {
+            return new IdentityArrayMap<VBox, Object>(EMPTY_WRITE_SET);
         }
-    };
-
-    protected static void returnToPool(VBox[] array) {
-        pool.set(pool.get().cons(array));
+        boxesWrittenCache.set(null);
+        return boxesWritten;
     }
 
-    private static VBox[] borrowFromPool() {
-        Cons<VBox[]> available = pool.get();
-        if (available.isEmpty()) {
-            VBox[] newArray = new VBox[1000];
-            return newArray;
-        } else {
-            pool.set(available.rest());
-            return available.first();
+    protected static void releaseBoxesWritten(Map<VBox, Object> boxesWritten) {
+        if ((boxesWritten instanceof IdentityArrayMap) && (boxesWrittenCache.get() == null)) {
+            boxesWritten.clear();
+            boxesWrittenCache.set((IdentityArrayMap<VBox, Object>) boxesWritten);
         }
     }
 
-    protected Cons<VBox[]> bodiesRead = Cons.empty();
+    // borrowed lazily, on the first read
+    protected ReadSet readSet = null;
     protected Cons<VArrayEntry<?>> arraysRead = Cons.empty();
-    protected int next = -1;
     protected Map<VBox, Object> boxesWritten = EMPTY_MAP;
     protected Cons<VBox> boxesWrittenInPlace = Cons.empty();
     protected Map<PerTxBox, Object> perTxValues = EMPTY_MAP;
+    // unlike the maps above, this one compares its keys by equality: a new VArrayEntry
+    // is made on every access, and two entries are equal when they name the same
+    // index of the same VArray (the array itself is compared by identity)
     protected Map<VArrayEntry<?>, VArrayEntry<?>> arrayWrites = EMPTY_MAP;
     protected Map<VArray<?>, Integer> arrayWritesCount = EMPTY_MAP;
+    // ranges of VArrays read and written as a whole (only by top-level transactions)
+    protected Cons<VArrayRange<?>> arrayRangesRead = Cons.empty();
+    protected Cons<VArrayRange<?>> arrayRangeWrites = Cons.empty();
     protected OwnershipRecord orec = new OwnershipRecord(this);
-    public Cons<ParallelNestedTransaction> mergedTxs = Cons.empty();
+    public volatile Cons<ParallelNestedTransaction> mergedTxs = Cons.empty();
     protected Cons<OwnershipRecord> linearNestedOrecs = Cons.empty();
     protected int[] ancVersions;
 
     protected volatile NestedCommitRecord nestedCommitQueue = new NestedCommitRecord();
 
-    public ReadWriteTransaction(int number) {
+    public ReadWriteTransaction(long number) {
         super(number);
         this.ancVersions = EMPTY_VERSIONS;
     }
@@ -87,8 +98,21 @@ public abstract class ReadWriteTransaction extends Transaction {
         super(parent);
     }
 
+    @Override
+    protected void flattenArrayRangeWrites() {
+        if (arrayRangeWrites.isEmpty()) {
+            return;
+        }
+        Cons<VArrayRange<?>> ranges = arrayRangeWrites.reverse();
+        arrayRangeWrites = Cons.empty();
+        for (VArrayRange<?> range : ranges) {
+            super.setArrayRange(range);
+        }
+    }
+
     @Override
     public Transaction makeNestedTransaction(boolean readOnly) {
+        flattenArrayRangeWrites();
         // always create a RW nested transaction, because we need its read-set
         return new NestedTransaction(this);
     }
@@ -121,18 +145,22 @@ public abstract class ReadWriteTransaction extends Transaction {
     @Override
     protected void finish() {
         super.finish();
-        for (VBox[] array : bodiesRead) {
-            returnToPool(array);
+        if (readSet != null) {
+            ReadSet.giveBack(readSet);
         }
 
+        releaseBoxesWritten(boxesWritten);
+
         // to allow garbage collecting the collections
-        bodiesRead = null;
+        readSet = null;
         arraysRead = null;
         boxesWritten = null;
         boxesWrittenInPlace = null;
         perTxValues = null;
         arrayWrites = null;
         arrayWritesCount = null;
+        arrayRangesRead = null;
+        arrayRangeWrites = null;
         cleanUp();
     }
 
@@ -149,17 +177,21 @@ public abstract class ReadWriteTransaction extends Transaction {
     protected void doCommit() {
         tryCommit();
         // if commit is successful, then reset transaction to a clean state
-        for (VBox[] array : bodiesRead) {
-            returnToPool(array);
+        if (readSet != null) {
+            ReadSet.giveBack(readSet);
         }
 
-        bodiesRead = Cons.empty();
+        releaseBoxesWritten(boxesWritten);
+
+        readSet = null;
         arraysRead = Cons.empty();
         boxesWritten = EMPTY_MAP;
         boxesWrittenInPlace = Cons.empty();
         perTxValues = EMPTY_MAP;
         arrayWrites = EMPTY_MAP;
         arrayWritesCount = EMPTY_MAP;
+        arrayRangesRead = Cons.empty();
+        arrayRangeWrites = Cons.empty();
     }
 
     protected abstract void tryCommit();
@@ -167,7 +199,7 @@ public abstract class ReadWriteTransaction extends Transaction {
     protected <T> T getLocalValue(VBox<T> vbox) {
         InplaceWrite<T> inplace = vbox.inplace;
         if (inplace.orec.owner == this) {
-            return inplace.tempValue;
+            return vbox.tempValue(inplace);
         }
 
         T value = null;
@@ -181,11 +213,26 @@ public abstract class ReadWriteTransaction extends Transaction {
         return value;
     }
 
+    /*
+     * Whether this transaction or any of its parents keeps writes in the
+     * fallback write-set.  After a snapshot extension a box written there may
+     * have a committed owner not newer than our number, so the shortcut in
+     * getBoxValue would skip our own write.
+     */
+    protected boolean hasFallbackWrites() {
+        for (ReadWriteTransaction tx = this; tx != null; tx = tx.getRWParent()) {
+            if (tx.boxesWritten != EMPTY_MAP) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     protected <T> T readFromBody(VBox<T> vbox) {
         VBoxBody<T> body = vbox.body;
 
         if (body!= null && body.version > number) {
-            body = newerVersionDetected(body);
+            body = newerVersionDetected(vbox, body);
         }
 
         addToReadSet(vbox);
@@ -201,27 +248,29 @@ public abstract class ReadWriteTransaction extends Transaction {
         }
     }
 
-    protected <T> VBoxBody<T> newerVersionDetected(VBoxBody<T> body) {
+    /*
+     * Called when the most recent version of vbox, body, is newer than this
+     * transaction.  Returns the version to read instead, if any.
+     */
+    protected <T> VBoxBody<T> newerVersionDetected(VBox<T> vbox, VBoxBody<T> body) {
+        recordAbortCause(AbortCause.EARLY_ABORT);
         // signal early transaction abort
         TransactionSignaller.SIGNALLER.signalEarlyAbort();
         throw new AssertionError("Impossible condition - Commit fail signalled!");
     }
 
     protected <T> void addToReadSet(VBox<T> vbox) {
-        VBox[] readset = null;
-        if (next < 0) {
-            readset = borrowFromPool();
-            next = readset.length - 1;
-            bodiesRead = bodiesRead.cons(readset);
-        } else {
-            readset = bodiesRead.first();
+        ReadSet readSet = this.readSet;
+        if (readSet == null) {
+            readSet = ReadSet.borrow();
+            this.readSet = readSet;
         }
-        readset[next--] = vbox;
+        readSet.add(vbox);
     }
 
     // The vbox argument is needed in subclasses
     protected <T> T getValueFromBody(VBox<T> vbox, VBoxBody<T> body) {
-        return body.value;
+        return vbox.bodyValue(body);
     }
 
     @Override
@@ -229,11 +278,12 @@ public abstract class ReadWriteTransaction extends Transaction {
         /*
          * When either no one has written to this vbox or any committed writer
          * is not older than my version we know that this transaction (as well
-         * as any parent) does not have a local value. In this case we read
-         * directly from the vbox's body.
+         * as any parent) does not have a local value, unless the snapshot was
+         * extended after a write to the fallback write-set. In this case we
+         * read directly from the vbox's body.
          */
         OwnershipRecord currentOwner = vbox.inplace.orec;
-        if (currentOwner.version > 0 && currentOwner.version <= this.number) {
+        if (currentOwner.version > 0 && currentOwner.version <= this.number && !hasFallbackWrites()) {
             return readFromBody(vbox);
         } else {
             T value = getLocalValue(vbox);
@@ -289,7 +339,7 @@ public abstract class ReadWriteTransaction extends Transaction {
                 // greater than ours and either abort or try to upgrade the
                 // transaction
                 if (boxesWritten == EMPTY_MAP) {
-                    boxesWritten = new IdentityHashMap<VBox, Object>();
+                    boxesWritten = makeBoxesWritten();
                 }
                 boxesWritten.put(vbox, value == null ? NULL_VALUE : value);
                 return; // break
@@ -321,7 +371,7 @@ public abstract class ReadWriteTransaction extends Transaction {
     @Override
     public <T> void setPerTxValue(PerTxBox<T> box, T value) {
         if (perTxValues == EMPTY_MAP) {
-            perTxValues = new IdentityHashMap<PerTxBox, Object>();
+            perTxValues = new IdentityArrayMap<PerTxBox, Object>(EMPTY_PER_TX_BOXES);
         }
         perTxValues.put(box, value);
     }
@@ -354,8 +404,9 @@ public abstract class ReadWriteTransaction extends Transaction {
     @Override
     public <T> void setArrayValue(VArrayEntry<T> entry, T value) {
         if (arrayWrites == EMPTY_MAP) {
-            arrayWrites = new IdentityHashMap<VArrayEntry<?>, VArrayEntry<?>>();
-            arrayWritesCount = new IdentityHashMap<VArray<?>, Integer>();
+            // not an IdentityArrayMap, see the comment on arrayWrites
+            arrayWrites = new HashMap<VArrayEntry<?>, VArrayEntry<?>>();
+            arrayWritesCount = new IdentityArrayMap<VArray<?>, Integer>(EMPTY_ARRAYS);
         }
         entry.setWriteValue(value, this.nestedCommitQueue.commitNumber);
         if (arrayWrites.put(entry, entry) != null) {
@@ -370,32 +421,25 @@ public abstract class ReadWriteTransaction extends Transaction {
         arrayWritesCount.put(entry.array, writeCount + 1);
     }
 
-    protected void snapshotValidation(int lastSeenCommittedTxNumber) {
+    /*
+     * Checks that none of the boxes in the read-set was written by a
+     * transaction newer than this one.  Subclasses may avoid visiting every
+     * box read, provided that they check, at least, the transactions up to
+     * lastSeenCommittedTxNumber.
+     */
+    protected boolean isReadSetValid(long lastSeenCommittedTxNumber) {
+        return !this.readSet.hasNewerVersion(getNumber());
+    }
+
+    protected void snapshotValidation(long lastSeenCommittedTxNumber) {
         if (lastSeenCommittedTxNumber == getNumber()) {
             return;
         }
 
-        int myNumber = getNumber();
-
-        if (!this.bodiesRead.isEmpty()) {
-            // the first may not be full
-            VBox[] array = bodiesRead.first();
-            for (int i = next + 1; i < array.length; i++) {
-                VBoxBody body = array[i].body;
-                if (body != null && body.version > myNumber) {
-                    TransactionSignaller.SIGNALLER.signalCommitFail();
-                }
-            }
+        long myNumber = getNumber();
 
-            // the rest are full
-            for (VBox[] ar : bodiesRead.rest()) {
-                for (int i = 0; i < ar.length; i++) {
-                    VBoxBody body = ar[i].body;
-                    if (body != null && body.version > myNumber) {
-                        TransactionSignaller.SIGNALLER.signalCommitFail();
-                    }
-                }
-            }
+        if (this.readSet != null && !isReadSetValid(lastSeenCommittedTxNumber)) {
+            validationFailed();
         }
 
         for (ParallelNestedTransaction mergedTx : mergedTxs) {
@@ -405,7 +449,7 @@ public abstract class ReadWriteTransaction extends Transaction {
                 for (int i = mergedTx.next + 1; i < array.length; i++) {
                     VBoxBody body = array[i].body;
                     if (body != null && body.version > myNumber) {
-                        TransactionSignaller.SIGNALLER.signalCommitFail();
+                        validationFailed();
                     }
                 }
 
@@ -415,7 +459,7 @@ public abstract class ReadWriteTransaction extends Transaction {
                     for (int i = 0; i < array.length; i++) {
                         VBoxBody body = array[i].body;
                         if (body != null && body.version > myNumber) {
-                            TransactionSignaller.SIGNALLER.signalCommitFail();
+                            validationFailed();
                         }
                     }
                 }
@@ -425,32 +469,42 @@ public abstract class ReadWriteTransaction extends Transaction {
         // VArray
         for (VArrayEntry<?> entry : arraysRead) {
             if (!entry.validate()) {
-                TransactionSignaller.SIGNALLER.signalCommitFail();
+                validationFailed();
             }
         }
+        for (VArrayRange<?> range : arrayRangesRead) {
+            if (!range.validate()) {
+                validationFailed();
+            }
+        }
+    }
+
+    private static void validationFailed() {
+        recordAbortCause(AbortCause.VALIDATION);
+        TransactionSignaller.SIGNALLER.signalCommitFail();
     }
 
     @Override
     public boolean isWriteTransaction() {
         Cons<ParallelNestedTransaction> emptyCons = Cons.<ParallelNestedTransaction> empty();
         return (mergedTxs != emptyCons) || (!boxesWritten.isEmpty()) || (!boxesWrittenInPlace.isEmpty())
-                || (!arrayWrites.isEmpty()) || (perTxValues != null && !perTxValues.isEmpty());
+                || (!arrayWrites.isEmpty()) || (!arrayRangeWrites.isEmpty()) || (perTxValues != null && !perTxValues.isEmpty());
     }
 
     /**
      * Due to the JVSTM integration in Deuce, we must keep in a separate
-     * class all constants initialized with Unasfe operations, otherwise
+     * class all constants that may be initialized with Unsafe operations, otherwise
      * the JVM may crash on the bootstrap when it loads a transactional
      * class.
      */
     private static class Offsets {
 
-        // --- Setup to use Unsafe
-        private static final long mergedTxsOffset = UtilUnsafe.objectFieldOffset(ReadWriteTransaction.class, "mergedTxs");
+        private static final AtomicReferenceFieldUpdater<ReadWriteTransaction, Cons> mergedTxsUpdater =
+            FieldUpdaters.newReferenceUpdater(ReadWriteTransaction.class, Cons.class, "mergedTxs");
 
     }
 
     protected boolean CASmergedTxs(Cons<ParallelNestedTransaction> expectedMergedTxs, Cons<ParallelNestedTransaction> newMergedTxs) {
-        return UNSAFE.compareAndSwapObject(this, Offsets.mergedTxsOffset, expectedMergedTxs, newMergedTxs);
+        return Offsets.mergedTxsUpdater.compareAndSet(this, expectedMergedTxs, newMergedTxs);
     }
 }
@@ -0,0 +1,101 @@
+/*
+ * JVSTM: a Java library for Software Transactional Memory
+ * Copyright (C) 2005 INESC-ID Software Engineering Group
+ * http://www.esw.inesc-id.pt
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ * Author's contact:
+ * INESC-ID Software Engineering Group
+ * Rua Alves Redol 9
+ * 1000 - 029 Lisboa
+ * Portugal
+ */
+package jvstm;
+
+/**
+ * A compact Bloom-style summary of the boxes read by a transaction, used to
+ * validate its read-set against the write-sets of the transactions that
+ * committed meanwhile without visiting every box read.
+ *
+ * Each box sets two bits, both derived from its hash (see hash).  The
+ * signature grows with the number of boxes summarized, keeping at least
+ * BITS_PER_ENTRY bits per box, so that a box that was not read is found in
+ * it only about 0.4% of the times, whatever the size of the read-set.  A box
+ * that was read is always found.  Removing boxes is not supported, so a
+ * signature may only over-approximate its set.
+ */
+final class Signature {
+
+    static final int BITS_PER_ENTRY = 32;
+
+    private static final int MIN_WORDS = 16;
+    private static final int MAX_WORDS = 1 << 13;
+
+    /* Past this many boxes, even the largest signature would be too full to
+     * be worth checking */
+    static final int MAX_ENTRIES = (MAX_WORDS * 64) / (BITS_PER_ENTRY / 2);
+
+    private long[] words = new long[MIN_WORDS];
+    // 32 - log2(words.length * 64)
+    private int shift = 32 - 10;
+
+    /* The hash used for a box both when it is summarized and when it is
+     * looked up; a write-set keeps the hashes of the boxes it wrote */
+    static int hash(Object box) {
+        return System.identityHashCode(box) * 0x9E3779B9;
+    }
+
+    /* Makes room for the given number of boxes.  Returns true if the
+     * signature had to grow, in which case it was cleared and the boxes
+     * already summarized must be added again. */
+    final boolean ensureCapacity(int entries) {
+        int needed = this.words.length;
+        while (needed < MAX_WORDS && (long) needed * 64 < (long) entries * BITS_PER_ENTRY) {
+            needed <<= 1;
+        }
+        if (needed == this.words.length) {
+            return false;
+        }
+        this.words = new long[needed];
+        this.shift = 32 - Integer.numberOfTrailingZeros(needed * 64);
+        return true;
+    }
+
+    final void add(Object box) {
+        int h = hash(box);
+        // use the high bits, which are the best mixed by the multiplications
+        int bit1 = h >>> this.shift;
+        int bit2 = (h * 0x85EBCA6B) >>> this.shift;
+        long[] words = this.words;
+        words[bit1 >>> 6] |= 1L << bit1;
+        words[bit2 >>> 6] |= 1L << bit2;
+    }
+
+    /* Returns false only if the box with the given hash was not added */
+    final boolean mayContain(int h) {
+        int bit1 = h >>> this.shift;
+        int bit2 = (h * 0x85EBCA6B) >>> this.shift;
+        long[] words = this.words;
+        return (words[bit1 >>> 6] & (1L << bit1)) != 0 && (words[bit2 >>> 6] & (1L << bit2)) != 0;
+    }
+
+    final void clear() {
+        long[] words = this.words;
+        for (int i = 0; i < words.length; i++) {
+            words[i] = 0;
+        }
+    }
+}
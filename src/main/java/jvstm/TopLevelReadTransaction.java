@@ -47,11 +47,14 @@ public class TopLevelReadTransaction extends ReadTransaction {
     protected void finish() {
         super.finish();
 
-        if (! context().inCommitAndBegin) {
-            context().oldestRequiredVersion = null;
-        }
+        releaseContext();
     }
     
+    @Override
+    public <T> long getPrimitiveBoxValue(VBoxPrimitive<T> vbox) {
+        return ((VBoxBodyPrimitive<T>) getBody(vbox.body)).bits;
+    }
+
     @Override
     public boolean isNested() {
 		return false;
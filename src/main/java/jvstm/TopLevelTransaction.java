@@ -25,10 +25,28 @@
  */
 package jvstm;
 
+import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class TopLevelTransaction extends ReadWriteTransaction {
 
+    /*
+     * When the snapshot extension is enabled, a transaction that reads a box
+     * with a version newer than its own does not abort right away: it first
+     * revalidates its read-set against the most recent committed record and,
+     * if it is still valid, upgrades itself to that record and carries on.
+     */
+    static final String SNAPSHOT_EXTENSION_PROP = "jvstm.snapshot.extension";
+    static final boolean SNAPSHOT_EXTENSION = Boolean.getBoolean(SNAPSHOT_EXTENSION_PROP);
+
+    // number of reads of a newer version that ended in an early abort
+    public static final AtomicLong nrOfEarlyAborts = new AtomicLong();
+    // number of reads of a newer version that were solved by extending the snapshot
+    public static final AtomicLong nrOfSnapshotExtensions = new AtomicLong();
+    // number of snapshot extensions that failed the validation (and aborted)
+    public static final AtomicLong nrOfFailedSnapshotExtensions = new AtomicLong();
+
     protected ActiveTransactionsRecord activeTxRecord;
 
     // this record is created when the transaction starts to commit. It marks
@@ -60,6 +78,7 @@ public class TopLevelTransaction extends ReadWriteTransaction {
 
     @Override
     public Transaction makeUnsafeMultithreaded() {
+        flattenArrayRangeWrites();
         return new UnsafeParallelTransaction(this);
     }
 
@@ -80,9 +99,7 @@ public class TopLevelTransaction extends ReadWriteTransaction {
     @Override
     protected void finish() {
         super.finish();
-        if (!context().inCommitAndBegin) {
-            context().oldestRequiredVersion = null;
-        }
+        releaseContext();
     }
 
     /*
@@ -95,11 +112,203 @@ public class TopLevelTransaction extends ReadWriteTransaction {
         setNumber(newRecord.transactionNumber);
     }
 
+    /*
+     * Whether a read of a newer version extends the snapshot instead of
+     * aborting.  This is the jvstm.snapshot.extension property, unless a
+     * subclass decides otherwise.
+     */
+    protected boolean extendsSnapshot() {
+        return SNAPSHOT_EXTENSION;
+    }
+
+    @Override
+    protected <T> VBoxBody<T> newerVersionDetected(VBox<T> vbox, VBoxBody<T> body) {
+        if (!extendsSnapshot()) {
+            nrOfEarlyAborts.incrementAndGet();
+            return super.newerVersionDetected(vbox, body);
+        }
+
+        boolean extended = false;
+        try {
+            // Other commits may install newer versions of the box while we
+            // extend, so the version to read is looked up again afterwards.
+            // It may also belong to a record enqueued after the one we
+            // validated against, in which case we must extend again.
+            do {
+                extendSnapshot();
+                body = vbox.body;
+                if (body == null) {
+                    // the box was reverted to the compact layout, which holds
+                    // a version older than any running transaction
+                    break;
+                }
+                body = body.getBody(number);
+            } while (body.version > number);
+            extended = true;
+        } finally {
+            if (extended) {
+                nrOfSnapshotExtensions.incrementAndGet();
+            } else {
+                nrOfFailedSnapshotExtensions.incrementAndGet();
+            }
+        }
+        return body;
+    }
+
+    /*
+     * Validates the read-set against the most recent committed record and
+     * upgrades this transaction to that record.  Signals a commit failure if
+     * any of the boxes read was meanwhile written.
+     */
+    protected void extendSnapshot() {
+        ActiveTransactionsRecord lastSeenCommitted = helpCommitAll();
+        snapshotValidation(lastSeenCommitted.transactionNumber);
+        upgradeTx(lastSeenCommitted);
+    }
+
+    /*
+     * Specialized versions of getBoxValue and setBoxValue for the
+     * VBoxPrimitive subclasses.  They follow exactly the same algorithm, but
+     * keep the tentative value unboxed in the InplaceWrite.tempBits slot and
+     * read the committed value directly from the VBoxBodyPrimitive.
+     */
+    @Override
+    public <T> long getPrimitiveBoxValue(VBoxPrimitive<T> vbox) {
+        InplaceWrite<T> inplace = vbox.inplace;
+        OwnershipRecord currentOwner = inplace.orec;
+        // same test as in ReadWriteTransaction.getBoxValue: an aborted owner
+        // (version -1) does not exclude a value in our fallback write-set
+        if (!(currentOwner.version > 0 && currentOwner.version <= this.number)
+                && currentOwner.owner == this) {
+            T value = inplace.tempValue;
+            return (value == InplaceWrite.UNBOXED_VALUE) ? inplace.tempBits : vbox.toBits(value);
+        }
+        // a committed owner does not exclude it either once the snapshot was
+        // extended past that commit
+        if (boxesWritten != EMPTY_MAP) {
+            T value = (T) boxesWritten.get(vbox);
+            if (value != null) {
+                return vbox.toBits(value);
+            }
+        }
+
+        VBoxBody<T> body = vbox.body;
+        if (body.version > number) {
+            body = newerVersionDetected(vbox, body);
+        }
+        addToReadSet(vbox);
+        return ((VBoxBodyPrimitive<T>) body).bits;
+    }
+
+    @Override
+    public <T> void setPrimitiveBoxValue(VBoxPrimitive<T> vbox, long bits) {
+        InplaceWrite<T> inplaceWrite = vbox.inplace;
+        OwnershipRecord currentOwner = inplaceWrite.orec;
+        if (currentOwner.owner == this) { // we are already the current writer
+            inplaceWrite.tempBits = bits;
+            inplaceWrite.tempValue = (T) InplaceWrite.UNBOXED_VALUE;
+            return;
+        }
+
+        // same loop as in ReadWriteTransaction.setBoxValue
+        do {
+            if (currentOwner.version != 0 && currentOwner.version <= this.number) {
+                if (inplaceWrite.CASowner(currentOwner, this.orec)) {
+                    inplaceWrite.tempBits = bits;
+                    inplaceWrite.tempValue = (T) InplaceWrite.UNBOXED_VALUE;
+                    boxesWrittenInPlace = boxesWrittenInPlace.cons(vbox);
+                    return; // break
+                } else {
+                    // update the current owner and retry
+                    currentOwner = inplaceWrite.orec;
+                    continue;
+                }
+            } else { // fallback to the standard write-set
+                if (boxesWritten == EMPTY_MAP) {
+                    boxesWritten = makeBoxesWritten();
+                }
+                boxesWritten.put(vbox, vbox.fromBits(bits));
+                return; // break
+            }
+        } while (true);
+    }
+
+    /*
+     * Ranges of VArrays written by this transaction are kept as a single
+     * write-set entry each (in arrayRangeWrites, newest first).  A position
+     * is never both in arrayWrites and in a range: a range write drops the
+     * previous single-position writes that it covers, and a single-position
+     * write to a position covered by a range goes into that range.
+     */
+
+    @Override
+    public <T> void getArrayRange(VArrayRange<T> range) {
+        if (arrayWritesCount.containsKey(range.array) || findRangeWrite(range.array, range.from, range.length) != null) {
+            // some positions may have been written by this transaction
+            super.getArrayRange(range);
+            return;
+        }
+        range.read(number);
+        arrayRangesRead = arrayRangesRead.cons(range);
+    }
+
+    @Override
+    public <T> void setArrayRange(VArrayRange<T> range) {
+        Integer writeCount = arrayWritesCount.get(range.array);
+        if (writeCount != null && writeCount > 0) {
+            Iterator<VArrayEntry<?>> iter = arrayWrites.values().iterator();
+            while (iter.hasNext()) {
+                VArrayEntry<?> entry = iter.next();
+                if (entry.array == range.array && range.covers(entry.index)) {
+                    iter.remove();
+                    writeCount--;
+                }
+            }
+            arrayWritesCount.put(range.array, writeCount);
+        }
+        arrayRangeWrites = arrayRangeWrites.cons(range);
+    }
+
+    @Override
+    public <T> void setArrayValue(VArrayEntry<T> entry, T value) {
+        VArrayRange<T> range = findRangeWrite(entry.array, entry.index, 1);
+        if (range != null) {
+            range.set(entry.index - range.from, value);
+        } else {
+            super.setArrayValue(entry, value);
+        }
+    }
+
+    @Override
+    protected <T> T getLocalArrayValue(VArrayEntry<T> entry) {
+        T value = super.getLocalArrayValue(entry);
+        if (value == null) {
+            VArrayRange<T> range = findRangeWrite(entry.array, entry.index, 1);
+            if (range != null) {
+                value = range.get(entry.index - range.from);
+                if (value == null) {
+                    value = (T) NULL_VALUE;
+                }
+            }
+        }
+        return value;
+    }
+
+    /* Returns the newest range written to array that overlaps [from, from + length), if any. */
+    private <T> VArrayRange<T> findRangeWrite(VArray<T> array, int from, int length) {
+        for (VArrayRange<?> range : arrayRangeWrites) {
+            if (range.array == array && range.from < from + length && from < range.from + range.length) {
+                return (VArrayRange<T>) range;
+            }
+        }
+        return null;
+    }
+
     public WriteSet makeWriteSet() {
         return new WriteSet(this);
     }
 
-    private ProcessPerTxBoxesTransaction speculatePerTxBoxes(int maxVersion) {
+    private ProcessPerTxBoxesTransaction speculatePerTxBoxes(long maxVersion) {
         if (this.perTxValues == EMPTY_MAP) {
             return ProcessPerTxBoxesTransaction.EMPTY_COMMIT_TX;
         }
@@ -139,7 +348,7 @@ public class TopLevelTransaction extends ReadWriteTransaction {
         // upgradeTx(lastValid);
     }
 
-    protected void assignCommitRecord(int txNumber, WriteSet writeSet) {
+    protected void assignCommitRecord(long txNumber, WriteSet writeSet) {
         setCommitTxRecord(new ActiveTransactionsRecord(txNumber, writeSet));
     }
 
@@ -181,6 +390,38 @@ public class TopLevelTransaction extends ReadWriteTransaction {
         }
     }
 
+    /*
+     * Below this size, it is cheaper to check the bodies of the read-set than
+     * to look up the boxes written in a signature.
+     */
+    private static final int MIN_READS_FOR_SIGNATURES = 32;
+
+    /*
+     * Looks up the boxes of the write-sets committed after this transaction's
+     * record and up to lastSeenCommittedTxNumber in the signature of the
+     * read-set.  Only when any of them may have been read (or a write-set is
+     * no longer available, or the read-set is too large for a signature), do
+     * we fall back to checking every box read.
+     */
+    @Override
+    protected boolean isReadSetValid(long lastSeenCommittedTxNumber) {
+        if (this.readSet.size() >= MIN_READS_FOR_SIGNATURES) {
+            Signature readSignature = this.readSet.signature();
+            ActiveTransactionsRecord rec = (readSignature == null) ? null : this.activeTxRecord.getNext();
+            while (rec != null && rec.transactionNumber <= lastSeenCommittedTxNumber) {
+                WriteSet writeSet = rec.writeSet;
+                if (writeSet == null || writeSet.mayIntersect(readSignature)) {
+                    return super.isReadSetValid(lastSeenCommittedTxNumber);
+                }
+                if (rec.transactionNumber == lastSeenCommittedTxNumber) {
+                    return true;
+                }
+                rec = rec.getNext();
+            }
+        }
+        return super.isReadSetValid(lastSeenCommittedTxNumber);
+    }
+
     /**
      * Validates this read-set against all active transaction records more recent that the one
      * <code>lastChecked</code>.
@@ -238,15 +479,11 @@ public class TopLevelTransaction extends ReadWriteTransaction {
     private static float WR_THRESHOLD = 0.5f;
 
     protected boolean isSnapshotValidationWorthIt(ActiveTransactionsRecord lastRecord) {
-        if (this.bodiesRead.isEmpty()) {
+        if (this.readSet == null || this.readSet.isEmpty()) {
             return false;
         }
 
-        int numberOfReadsToCheck = this.bodiesRead.first().length - (next + 1);
-        // if there are more arrays the rest are full, for sure
-        for (VBox[] array : bodiesRead.rest()) {
-            numberOfReadsToCheck += array.length;
-        }
+        int numberOfReadsToCheck = this.readSet.size();
 
         int numberOfWritesToCheck = 0;
         for (ActiveTransactionsRecord rec = this.activeTxRecord.getNext(); rec != null; rec = rec.getNext()) {
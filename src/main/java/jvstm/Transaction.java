@@ -25,6 +25,7 @@
  */
 package jvstm;
 
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Callable;
@@ -39,11 +40,15 @@ import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 import jvstm.gc.GCTask;
+import jvstm.gc.ReaderRegistry;
 import jvstm.gc.TxContext;
+import jvstm.jmx.StmMetrics;
+import jvstm.tuning.AbortCause;
 import jvstm.tuning.Controller;
 import jvstm.tuning.ThreadState;
 import jvstm.tuning.ThreadStatistics;
 import jvstm.tuning.TuningContext;
+import jvstm.util.StripedCounter;
 
 public abstract class Transaction
 {
@@ -89,12 +94,50 @@ public abstract class Transaction
 		}
 	};
 
+	/* See Controller.TUNING_ENABLED.  All tuning calls are guarded by this
+	 * constant, so none of them costs anything when tuning is disabled. */
+	protected static final boolean TUNING = Controller.TUNING_ENABLED;
+
+	/** Returns null if tuning is disabled */
 	public static TuningContext getTuningContext()
 	{
-		return tuningContext.get();
+		return TUNING ? tuningContext.get() : null;
+	}
+
+	/* Cheap counters of top-level transactions and of abort causes, kept
+	 * whether tuning is enabled or not.  See StmMetrics. */
+	public static final StripedCounter nrOfCommits = new StripedCounter();
+	public static final StripedCounter nrOfAborts = new StripedCounter();
+	private static final StripedCounter[] nrOfAbortsByCause = new StripedCounter[AbortCause.values().length];
+
+	static
+	{
+		for (int i = 0; i < nrOfAbortsByCause.length; i++)
+		{
+			nrOfAbortsByCause[i] = new StripedCounter();
+		}
+	}
+
+	/* The aborts signalled with the given cause, by top-level and nested
+	 * transactions.  OTHER is never signalled, it is what the tuning
+	 * statistics count when no other cause was. */
+	public static long getAbortCount(AbortCause cause)
+	{
+		return nrOfAbortsByCause[cause.ordinal()].get();
+	}
+
+	/* Tells why the transaction of the current thread is about to abort, to
+	 * the cheap counters and, if tuning is enabled, to its statistics. */
+	protected static void recordAbortCause(AbortCause cause)
+	{
+		nrOfAbortsByCause[cause.ordinal()].increment();
+		if (TUNING)
+		{
+			tuningContext.get().getStatistics().setAbortCause(cause);
+		}
 	}
 
-	protected static Controller controller = Controller.instance();
+	protected static Controller controller = TUNING ? Controller.instance() : null;
 
 	static
 	{
@@ -113,7 +156,7 @@ public abstract class Transaction
 				});
 
 		// start the tuning controller thread
-		if (!Controller.isRunning())
+		if (TUNING && !Controller.isRunning())
 		{
 			Controller.startThread();
 		}
@@ -125,19 +168,12 @@ public abstract class Transaction
 
 	protected static final ThreadLocal<Transaction> current = new ThreadLocal<Transaction>();
 
-	// a per thread TxContext
-	private static final ThreadLocal<TxContext> threadTxContext = new ThreadLocal<TxContext>()
-	{
-		@Override
-		protected TxContext initialValue()
-		{
-			return Transaction.allTxContexts.enqueue(new TxContext(Thread.currentThread()));
-		}
-	};
+	// the TxContext last used by each thread, which it may no longer own
+	private static final ThreadLocal<TxContext> threadTxContext = new ThreadLocal<TxContext>();
 
-	// List of all tx contexts. The GC thread will iterate this list to GC any
+	// Registry of all tx contexts. The GC thread will scan it to GC any
 	// unused ActiveTxRecords.
-	public static TxContext allTxContexts = null;
+	public static final ReaderRegistry readers = new ReaderRegistry();
 	public static final GCTask gcTask; // added by FMC for unit test purpose
 	static final String GC_PROP = "jvstm.gc.disabled";
 
@@ -145,7 +181,14 @@ public abstract class Transaction
 
 	public static void setThreadPoolSize(int size)
 	{
-		((ThreadPoolExecutor) nestedParPool).setCorePoolSize(size);
+		ThreadPoolExecutor pool = (ThreadPoolExecutor) nestedParPool;
+		// the core size may never go above the maximum size; the maximum is
+		// left alone otherwise, as the cached pool relies on it
+		if (size > pool.getMaximumPoolSize())
+		{
+			pool.setMaximumPoolSize(size);
+		}
+		pool.setCorePoolSize(size);
 	}
 
 	public static int getThreadPoolSize()
@@ -155,9 +198,6 @@ public abstract class Transaction
 
 	static
 	{
-		// initialize the allTxContexts
-		Transaction.allTxContexts = new TxContext(null);
-
 		// start the GC thread.
 		boolean gcDisabled = Boolean.getBoolean(GC_PROP);
 		Logger logger = Logger.getLogger("jvstm");
@@ -173,6 +213,10 @@ public abstract class Transaction
 			gc.setDaemon(true);
 			gc.start();
 		}
+		if (Boolean.getBoolean(StmMetrics.JMX_PROP))
+		{
+			StmMetrics.register();
+		}
 	}
 
 	private static TransactionFactory TRANSACTION_FACTORY = new DefaultTransactionFactory();
@@ -187,9 +231,33 @@ public abstract class Transaction
 		return current.get();
 	}
 
+	/*
+	 * Returns the TxContext of the current thread, taking one from the
+	 * registry if the thread does not own one.
+	 */
 	public static TxContext context()
 	{
-		return Transaction.threadTxContext.get();
+		TxContext ctx = Transaction.threadTxContext.get();
+		Thread thread = Thread.currentThread();
+		if ((ctx == null) || (ctx.owner != thread))
+		{
+			ctx = readers.acquire(thread, ctx);
+			Transaction.threadTxContext.set(ctx);
+		}
+		return ctx;
+	}
+
+	/*
+	 * Gives the TxContext of the current thread back to the registry, unless
+	 * the thread is in the middle of a commitAndBegin.
+	 */
+	protected static void releaseContext()
+	{
+		TxContext ctx = Transaction.threadTxContext.get();
+		if ((ctx != null) && (ctx.owner == Thread.currentThread()) && !ctx.inCommitAndBegin)
+		{
+			ctx.release();
+		}
 	}
 
 	// This method is called during the commit of a write transaction. Even
@@ -203,6 +271,7 @@ public abstract class Transaction
 	public static void setMostRecentCommittedRecord(ActiveTransactionsRecord record)
 	{
 		mostRecentCommittedRecord = record;
+		gcTask.committed(record);
 	}
 
 	public static void addTxQueueListener(TxQueueListener listener)
@@ -219,7 +288,7 @@ public abstract class Transaction
 	{
 		ActiveTransactionsRecord rec = Transaction.mostRecentCommittedRecord;
 
-		TxContext ctx = threadTxContext.get();
+		TxContext ctx = context();
 		ctx.oldestRequiredVersion = rec; // volatile write
 
 		while (true)
@@ -408,6 +477,7 @@ public abstract class Transaction
 	public <E> List<E> manageNestedParallelTxs(List<? extends TransactionalTask<E>> callables,
 			ExecutorService threadPool)
 	{
+		flattenArrayRangeWrites();
 		List<E> results = new ArrayList<E>();
 		if (flattenNested)
 		{
@@ -554,17 +624,14 @@ public abstract class Transaction
 		// detect that the same transaction is being used in two
 		// different threads.
 
-		TxContext currentTxContext = context();
-		currentTxContext.oldestRequiredVersion = suspendedTx.txContext.oldestRequiredVersion;
 		/*
-		 * NOTE: we CANNOT set suspendedTx.txContext.oldestRequiredVersion =
-		 * null;
-		 * 
-		 * Doing so would allow the GCTask to miss out on this version, by
-		 * seeing null in the oldestRequiredVersion of both the currentTxContext
-		 * and the suspendedTx.txContext. The TxContext in suspendedTx will be
-		 * removed from the list when the now resumed transaction becomes GCed.
+		 * The TxContext of the suspended transaction becomes the TxContext of
+		 * this thread. Its oldestRequiredVersion does not change hands, so the
+		 * GCTask cannot miss out on it.
 		 */
+		releaseContext();
+		suspendedTx.txContext.transferTo(Thread.currentThread());
+		threadTxContext.set(suspendedTx.txContext);
 
 		// set the transaction in this thread
 		current.set(suspendedTx.theTx);
@@ -575,7 +642,7 @@ public abstract class Transaction
 	// the transaction version that is used to read boxes. Must always represent
 	// a consistent state
 	// of the world
-	protected int number;
+	protected long number;
 	protected final Transaction parent;
 	/*
 	 * This orec identifies newly created objects by this transaction. We say
@@ -587,19 +654,19 @@ public abstract class Transaction
 	 */
 	public final OwnershipRecord orecForNewObjects = new OwnershipRecord();
 
-	public Transaction(Transaction parent, int number)
+	public Transaction(Transaction parent, long number)
 	{
 		this.parent = parent;
 		this.number = number;
 		// register statistics (once per thread):
-		if (!tuningContext.get().isRegistered())
+		if (TUNING && !tuningContext.get().isRegistered())
 		{
 			Controller.instance().registerContext(tuningContext.get());
 			// TODO: deal with nested txs
 		}
 	}
 
-	public Transaction(int number)
+	public Transaction(long number)
 	{
 		this(null, number);
 	}
@@ -613,8 +680,11 @@ public abstract class Transaction
 	{
 		current.set(this);
 		// tuning: statistics
-		controller.tryRunTransaction(this, isNested());
-		tuningContext.get().getStatistics().incTransactionCount();
+		if (TUNING)
+		{
+			controller.tryRunTransaction(this, isNested());
+			tuningContext.get().getStatistics().incTransactionCount();
+		}
 	}
 
 	protected Transaction getParent()
@@ -622,12 +692,12 @@ public abstract class Transaction
 		return parent;
 	}
 
-	public int getNumber()
+	public long getNumber()
 	{
 		return number;
 	}
 
-	protected void setNumber(int number)
+	protected void setNumber(long number)
 	{
 		this.number = number;
 	}
@@ -635,8 +705,12 @@ public abstract class Transaction
 	public void abortTx()
 	{
 		// tuning impl: statistics
-		tuningContext.get().getStatistics().incAbortCount();
-		controller.finishTransaction(this, isNested());
+		if (TUNING)
+		{
+			tuningContext.get().getStatistics().incAbortCount();
+			controller.finishTransaction(this, isNested());
+		}
+		countFinished(false);
 		finishTx();
 	}
 
@@ -644,14 +718,34 @@ public abstract class Transaction
 	{
 		doCommit();
 		// tuning impl
-		controller.finishTransaction(this, isNested());
-		tuningContext.get().getStatistics().incCommitCount();
+		if (TUNING)
+		{
+			controller.finishTransaction(this, isNested());
+			tuningContext.get().getStatistics().incCommitCount();
+		}
+		countFinished(true);
 		if (finishAlso)
 		{
 			finishTx();
 		}
 	}
 
+	/* Counts a finished top-level transaction in nrOfCommits or nrOfAborts */
+	protected void countFinished(boolean committed)
+	{
+		if (parent == null)
+		{
+			if (committed)
+			{
+				nrOfCommits.increment();
+			}
+			else
+			{
+				nrOfAborts.increment();
+			}
+		}
+	}
+
 	private void finishTx()
 	{
 		finish();
@@ -669,21 +763,13 @@ public abstract class Transaction
 		// remove the transaction from the thread
 		current.set(null);
 
-		TxContext newTxContext = new TxContext(this);
+		// the current context passes on to the transaction, holding its
+		// required record, and the thread will take another one when it needs it
+		TxContext txContext = context();
+		txContext.transferTo(new WeakReference<Transaction>(this));
 		// create a new SuspendedTransaction holding the transaction and its
 		// context.
-		SuspendedTransaction suspendedTx = new SuspendedTransaction(this, newTxContext);
-		// enqueue the new TxContext to hold the transaction's required record
-		Transaction.allTxContexts.enqueue(newTxContext);
-		TxContext currentTxContext = context();
-		// the order is important! We must not let go of the required version,
-		// so we set it ahead before clearing it in
-		// the current context
-		newTxContext.oldestRequiredVersion = currentTxContext.oldestRequiredVersion;
-		currentTxContext.oldestRequiredVersion = null;
-
-		return suspendedTx;
-		// the currentTxContext is left to be reused by this thread
+		return new SuspendedTransaction(this, txContext);
 	}
 
 	protected abstract Transaction commitAndBeginTx(boolean readOnly);
@@ -694,6 +780,21 @@ public abstract class Transaction
 
 	public abstract <T> void setBoxValue(VBox<T> vbox, T value);
 
+	/*
+	 * Barriers used by the VBoxPrimitive subclasses.  By default they go
+	 * through the generic barriers and box the value; the transactions on the
+	 * common paths override them to avoid the allocation.
+	 */
+	public <T> long getPrimitiveBoxValue(VBoxPrimitive<T> vbox)
+	{
+		return vbox.toBits(getBoxValue(vbox));
+	}
+
+	public <T> void setPrimitiveBoxValue(VBoxPrimitive<T> vbox, long bits)
+	{
+		setBoxValue(vbox, vbox.fromBits(bits));
+	}
+
 	public abstract <T> T getPerTxValue(PerTxBox<T> box, T initial);
 
 	public abstract <T> void setPerTxValue(PerTxBox<T> box, T value);
@@ -702,6 +803,36 @@ public abstract class Transaction
 
 	public abstract <T> void setArrayValue(VArrayEntry<T> entry, T value);
 
+	/*
+	 * Reads (writes) a whole range of a VArray.  By default, each position is
+	 * read (written) on its own, but transactions may override them to keep a
+	 * single read-set (write-set) entry for the whole range.
+	 */
+	public <T> void getArrayRange(VArrayRange<T> range)
+	{
+		for (int i = 0; i < range.length; i++)
+		{
+			range.set(i, getArrayValue(new VArrayEntry<T>(range.array, range.from + i)));
+		}
+	}
+
+	public <T> void setArrayRange(VArrayRange<T> range)
+	{
+		for (int i = 0; i < range.length; i++)
+		{
+			setArrayValue(new VArrayEntry<T>(range.array, range.from + i), range.get(i));
+		}
+	}
+
+	/*
+	 * Nested transactions only look for single-position writes in the
+	 * write-sets of their ancestors, so the ranges written by a transaction
+	 * are split into those before any of its nested transactions start.
+	 */
+	protected void flattenArrayRangeWrites()
+	{
+	}
+
 	protected abstract void doCommit();
 
 	public abstract Transaction makeUnsafeMultithreaded();
@@ -26,5 +26,5 @@
 package jvstm;
 
 public interface TxQueueListener {
-    public void noteOldestTransaction(int newOldest);
+    public void noteOldestTransaction(long newOldest);
 }
@@ -62,7 +62,9 @@ public class UnsafeParallelTransaction extends ParallelNestedTransaction {
     public void abortTx() {
     	
     	//tuning: statistics
-    	tuningContext.get().getStatistics().incAbortCount();
+    	if (TUNING) {
+    	    tuningContext.get().getStatistics().incAbortCount();
+    	}
     	
         boxesWritten = null;
         perTxValues = null;
@@ -78,7 +80,9 @@ public class UnsafeParallelTransaction extends ParallelNestedTransaction {
         boxesWrittenInPlace = null;
         Transaction.current.set(null);
         
-        controller.finishTransaction(this, this.isNested());
+        if (TUNING) {
+            controller.finishTransaction(this, this.isNested());
+        }
     }
 
     @Override
@@ -107,7 +111,7 @@ public class UnsafeParallelTransaction extends ParallelNestedTransaction {
     protected <T> T getLocalValue(VBox<T> vbox) {
         InplaceWrite<T> inplace = vbox.inplace;
         if (inplace.orec.owner == parent) {
-            return inplace.tempValue;
+            return vbox.tempValue(inplace);
         } else {
             T value = null;
             synchronized (parent) {
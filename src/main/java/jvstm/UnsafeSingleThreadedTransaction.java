@@ -53,7 +53,7 @@ public class UnsafeSingleThreadedTransaction extends Transaction {
     public void start() {
         // once we get here, we may already increment the transaction
         // number
-        int newTxNumber = this.activeTxRecord.transactionNumber + 1;
+        long newTxNumber = this.activeTxRecord.transactionNumber + 1;
 
         // renumber the TX to the new number
         setNumber(newTxNumber);
@@ -80,9 +80,7 @@ public class UnsafeSingleThreadedTransaction extends Transaction {
     @Override
     protected void finish() {
         super.finish();
-        if (!context().inCommitAndBegin) {
-            context().oldestRequiredVersion = null;
-        }
+        releaseContext();
     }
 
     @Override
@@ -102,14 +100,13 @@ public class UnsafeSingleThreadedTransaction extends Transaction {
 
     @Override
     public <T> T getBoxValue(VBox<T> vbox) {
-        return vbox.body.value;
+        return vbox.bodyValue(vbox.body);
     }
 
     @Override
     public <T> void setBoxValue(VBox<T> vbox, T value) {
-        vbox.body = VBox.makeNewBody(value, number, null); // we immediately
-                                                           // clean old unused
-                                                           // values
+        // we immediately clean old unused values
+        VBox.Offsets.bodyUpdater.lazySet(vbox, vbox.newBody(value, number, null));
     }
 
     @Override
@@ -156,7 +153,7 @@ public class UnsafeSingleThreadedTransaction extends Transaction {
     @Override
     public <T> T getArrayValue(VArrayEntry<T> entry) {
         // Read directly from array
-        return entry.array.values.get(entry.index);
+        return entry.array.latestValue(entry.index);
     }
 
     @Override
@@ -170,7 +167,7 @@ public class UnsafeSingleThreadedTransaction extends Transaction {
         }
 
         // Write directly into array
-        array.values.lazySet(entry.index, value);
+        array.setLatestValue(entry.index, value);
     }
 
     @Override
@@ -25,12 +25,10 @@
  */
 package jvstm;
 
-import java.lang.reflect.Field;
-import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.concurrent.locks.ReentrantLock;
 
-import static jvstm.ReadWriteTransaction.NULL_VALUE;
+import jvstm.gc.GCTask;
 
 /** Transactional array implementation for the JVSTM optimized for read-heavy workloads
  *
@@ -59,265 +57,245 @@ import static jvstm.ReadWriteTransaction.NULL_VALUE;
  * the value from the latest version array is returned -- it just means that the value
  * was never changed, although other array positions were.
  *
+ * The log is walked iteratively, and readers that go deep into it fold runs of consecutive
+ * nodes into indexed summaries that later reads reuse (see VArrayLogNode.getLogValue).
+ *
  * To commit (see TopLevelTransaction), the writeset is iterated, and the entries are
  * distributed into an array of entries for each VArray that is going to be changed.
  * This array is then sorted, and used to generate the logEntryIndexes.
  * After this operation, commit is called on the array, resulting in the log node
  * being created, and the writeback done.
  */
-final class VArrayLogNode<E> implements GarbageCollectable {
-
-    /* These fields are kept outside the VArrayLogNode to allow the jvstm GC algorithm
-     * to unlink the body.
-     */
-    static final private class VArrayLogNodeBody<E> {
-        final VArrayLogNode<E> next;
-        final int[] logEntryIndexes;
-        final E[] logEntryValues;
-
-        VArrayLogNodeBody(VArrayLogNode<E> next, int[] logEntryIndexes, E[] logEntryValues) {
-            this.next = next;
-            this.logEntryIndexes = logEntryIndexes;
-            this.logEntryValues = logEntryValues;
-        }
-    }
+public class VArray<E> {
+    public final AtomicReferenceArray<E> values;
+    // volatile, as a plain long may be read half-written (JLS 17.7)
+    public volatile long version;
+    public final int length;
+    public VArrayLogNode<E> log;
 
-    final int version;
-    final VArrayLogNodeBody<E> body;
+    final ReentrantLock writebackLock = new ReentrantLock();
 
-    VArrayLogNode(int[] logEntryIndexes, E[] logEntryValues, int version, VArrayLogNode<E> next) {
-        this.version = version;
-        this.body = new VArrayLogNodeBody<E>(next, logEntryIndexes, logEntryValues);
+    public VArray(int size) {
+        this(size, new AtomicReferenceArray<E>(size));
     }
 
-    /* Algorithm:
-     * - Recurse until we find the VArrayLogNode with the SMALLEST version still >= minVersion
-     * - Look for the index we want from that version forward towards the beginning of the list
-     * - Return the first value found; otherwise return null
-     */
-    public E getLogValue(int index, int minVersion) {
-        if (version < minVersion) return null;
-
-        E value = null;
+    // Used by VArrayPrimitive, which keeps the values elsewhere and passes null
+    VArray(int size, AtomicReferenceArray<E> values) {
+        this.values = values;
+        this.length = size;
+    }
 
-        if (body.next != null) value = body.next.getLogValue(index, minVersion);
+    public E get(int index) {
+        rangeCheck(index);
 
-        if (value == null) {
-            // If no value was found in previous nodes, try to find it on the current node
-            int pos = Arrays.binarySearch(body.logEntryIndexes, index);
-            if (pos >= 0) {
-                // A special case may occur here: we might read NULL_VALUE, meaning that the value
-                // was truly a null, or we might read null, meaning that we are on a partially-initialized
-                // log, and we ignore what we found.
-                value = body.logEntryValues[pos];
+        Transaction tx = Transaction.current();
+        if (tx == null) {
+            // Same as in VBox.get(): read the value as seen by the latest committed
+            // transaction, without creating a transaction (nor a VArrayEntry).
+            // If the part of the log needed is GC'd before we can reach it, the
+            // process re-starts with a newer transaction.
+            while (true) {
+                long transactionNumber = Transaction.mostRecentCommittedRecord.transactionNumber;
+                Object value = readVersion(index, transactionNumber);
+                if (value != VArrayLogNode.COLLECTED) return (E) value;
             }
+        } else {
+            return tx.getArrayValue(new VArrayEntry<E>(this, index));
         }
-
-        return value;
     }
 
-    // this static field is used to change the non-static final field "body"
-    // see the comments on the clearPrevious method
-    private static final Field BODY_FIELD;
+    @SuppressWarnings("static-access")
+    public void put(int index, E newE) {
+        rangeCheck(index);
 
-    static {
-        try {
-            BODY_FIELD = VArrayLogNode.class.getDeclaredField("body");
-            BODY_FIELD.setAccessible(true);
-        } catch (NoSuchFieldException nsfe) {
-            throw new Error("JVSTM error: couldn't get access to the VArrayLogNode.body field");
+        Transaction tx = Transaction.current();
+        if (tx == null) {
+            tx = Transaction.begin();
+            tx.setArrayValue(new VArrayEntry<E>(this, index), newE);
+            tx.commit();
+        } else {
+            tx.setArrayValue(new VArrayEntry<E>(this, index), newE);
         }
     }
 
-    public void clearPrevious() {
-        // Copied from VBoxBody.clearPrevious()
-
-        // we set the body field to null via reflection because it is
-        // a final field
-
-        // making the field final is crucial to ensure that the field
-        // is properly initialized (and visible to other threads)
-        // after an instance of VArrayLogNode is constructed, as
-        // per the new Java Memory Model (JSR133)
-
-        // also, according to the Java specification, we may change a
-        // final field only via reflection and in some specific cases
-        // (such as object reconstruction after deserialization)
-
-        // even though this use is not the case, the potential
-        // problems that may occur do not affect the correcteness of
-        // the system: we just want to set the field to null to allow
-        // the garbage collector to do its thing...
-        try {
-            BODY_FIELD.set(this, null);
-        } catch (IllegalAccessException iae) {
-            throw new Error("JVSTM error: cannot set the VArrayLogNode.body field to null");
+    /* Copies the positions [srcPos, srcPos + length) of this array into dest. */
+    public void getRange(int srcPos, E[] dest, int destPos, int length) {
+        rangeCheck(srcPos, length);
+
+        VArrayRange<E> range = new VArrayRange<E>(this, srcPos, length);
+        Transaction tx = Transaction.current();
+        if (tx == null) {
+            // same as in get()
+            while (!range.readCommitted(Transaction.mostRecentCommittedRecord.transactionNumber)) {
+                // retry
+            }
+        } else {
+            tx.getArrayRange(range);
+        }
+
+        for (int i = 0; i < length; i++) {
+            dest[destPos + i] = range.get(i);
         }
     }
-}
 
-final class VArrayEntry<E> implements Comparable<VArrayEntry<E>> {
-    final VArray<E> array;
-    final int index;
+    /* Writes the positions [srcPos, srcPos + length) of src into this array, starting at destPos. */
+    public void putRange(int destPos, E[] src, int srcPos, int length) {
+        rangeCheck(destPos, length);
 
-    // This field is used for two purposes:
-    // 1) If this VArrayEntry is being used inside a read-set, it contains the read value
-    // 2) If this VarrayEntry is being used inside a write-set, it contains the value to be
-    //    written during the Tx commit operation
-    private E object;
+        VArrayRange<E> range = new VArrayRange<E>(this, destPos, length);
+        for (int i = 0; i < length; i++) {
+            range.set(i, src[srcPos + i]);
+        }
+        putRange(range);
+    }
 
-    // This field is used for parallel nested writes in the array so that
-    // a nested tx may safely read VArrayEntries that were written in the nesting tree
-    // -- Only used when VArrayEntry is in the read-set of a parallel nested transaction
-    volatile int nestedVersion;
+    /* Writes value into the positions [from, to) of this array. */
+    public void fill(int from, int to, E value) {
+        rangeCheck(from, to - from);
 
-    // Also used for nesting, represents the owner of the entry when it was read.
-    // -- Only used when VArrayEntry is in the read-set of a parallel nested transaction
-    ReadWriteTransaction owner;
+        VArrayRange<E> range = new VArrayRange<E>(this, from, to - from);
+        for (int i = 0; i < range.length; i++) {
+            range.set(i, value);
+        }
+        putRange(range);
+    }
 
-    VArrayEntry(VArray<E> array, int index) {
-        this.array = array;
-        this.index = index;
+    /* Writes all of the values of src into this array, starting at position 0. */
+    public void copyFrom(E[] src) {
+        putRange(0, src, 0, src.length);
     }
 
-    @Override
-    public int hashCode() {
-        return array.hashCode() + index;
+    /* Same as System.arraycopy, but between VArrays. */
+    @SuppressWarnings("unchecked")
+    @Atomic(canFail = false)
+    public static <T> void arraycopy(VArray<T> src, int srcPos, VArray<T> dest, int destPos, int length) {
+        T[] values = (T[]) new Object[length];
+        src.getRange(srcPos, values, 0, length);
+        dest.putRange(destPos, values, 0, length);
     }
 
-    @Override
-    public boolean equals(Object o) {
-        if (o instanceof VArrayEntry<?>) {
-            VArrayEntry<?> other = (VArrayEntry<?>) o;
-            return (array == other.array) && (index == other.index);
+    @SuppressWarnings("static-access")
+    private void putRange(VArrayRange<E> range) {
+        Transaction tx = Transaction.current();
+        if (tx == null) {
+            tx = Transaction.begin();
+            tx.setArrayRange(range);
+            tx.commit();
+        } else {
+            tx.setArrayRange(range);
         }
-        return false;
     }
 
-    @Override
-    public int compareTo(VArrayEntry<E> other) {
-        if (array != other.array) {
-            throw new AssertionError("Cannot compare with a VArrayEntry belonging to different VArray");
-        }
-        return index - other.index;
+    void rangeCheck(int index) {
+        if (index < 0 || index >= length) throw new IndexOutOfBoundsException();
+    }
+
+    private void rangeCheck(int from, int length) {
+        if (from < 0 || length < 0 || from > this.length - length) throw new IndexOutOfBoundsException();
     }
 
-    public E getValue(int maxVersion) {
-        // Keep read value for later validation
-        object = getInternalValue(maxVersion);
-        return object;
+    /*
+     * The following methods are the only places where the values and the log of the
+     * array are read or written by the transactions, so that subclasses may keep them
+     * in a different representation (see VArrayPrimitive).
+     */
+
+    @SuppressWarnings("unchecked")
+    E readValue(int index, long maxVersion) {
+        Object value = readVersion(index, maxVersion);
+        // The log needed by a transaction is only collected while it runs if the
+        // history is bounded (see GCTask)
+        if (value == VArrayLogNode.COLLECTED) {
+            GCTask.signalVersionTrimmed();
+            throw new AssertionError("Impossible condition - Early abort signalled!");
+        }
+        return (E) value;
     }
 
-    private E getInternalValue(int maxVersion) {
+    /* Returns the value of index for the transactions with number maxVersion, or
+     * VArrayLogNode.COLLECTED if the log needed was already collected.
+     */
+    Object readVersion(int index, long maxVersion) {
         // Read value from array (volatile read)
-        E value = array.values.get(index);
+        E value = latestValue(index);
         // Read array version
-        int version = array.version;
+        long version = this.version;
 
         // If version <= maxVersion, array hasn't changed since we started the current transaction
         if (version <= maxVersion) return value;
 
         // Otherwise, check the log for the value
-        E logValue = array.log.getLogValue(index, maxVersion);
+        VArrayLogNode<E> log = this.log;
+        if (log == null) return value;
+        E logValue = log.getLogValue(this, index, maxVersion);
 
-        return logValue != null ?
-                (logValue == NULL_VALUE ? null : logValue)
-                : value;
+        return logValue != VArrayLogNode.NOT_LOGGED ? logValue : value;
     }
 
-    // Only used when VArrayEntry is part of the read-set
-    public boolean validate() {
-        return object == array.values.get(index);
+    boolean isCurrent(int index, E value) {
+        return value == values.get(index);
     }
 
-    public void setReadOwner(ReadWriteTransaction owner) {
-        this.owner = owner;
+    E latestValue(int index) {
+        return values.get(index);
     }
 
-    // Only used when VArrayEntry is part of the write-set
-    public void setWriteValue(E value, int nestedVersion) {
-        object = value;
-        this.nestedVersion = nestedVersion;
+    void setLatestValue(int index, E value) {
+        values.lazySet(index, value);
     }
 
-    // Only used when VArrayEntry is part of the write-set
-    public E getWriteValue() {
-        return object;
+    /* Returns an array able to hold n values, used by VArrayRange and by commit. */
+    Object newValues(int n) {
+        return new Object[n];
     }
-}
-
-public class VArray<E> {
-    public final AtomicReferenceArray<E> values;
-    public int version;
-    public final int length;
-    public VArrayLogNode<E> log;
-
-    final ReentrantLock writebackLock = new ReentrantLock();
 
-    public VArray(int size) {
-        values = new AtomicReferenceArray<E>(size);
-        length = size;
+    @SuppressWarnings("unchecked")
+    E valueAt(Object values, int pos) {
+        return ((E[]) values)[pos];
     }
 
-    @SuppressWarnings("static-access")
-    public E get(int index) {
-        rangeCheck(index);
-
-        // TODO: Apply the same optimization as in VBox.get()
-        Transaction tx = Transaction.current();
-        if (tx == null) {
-            tx = Transaction.begin(true);
-            E value = tx.getArrayValue(new VArrayEntry<E>(this, index));
-            tx.commit();
-            return value;
-        } else {
-            return tx.getArrayValue(new VArrayEntry<E>(this, index));
-        }
+    @SuppressWarnings("unchecked")
+    void setValueAt(Object values, int pos, E value) {
+        ((E[]) values)[pos] = value;
     }
 
-    @SuppressWarnings("static-access")
-    public void put(int index, E newE) {
-        rangeCheck(index);
-
-        Transaction tx = Transaction.current();
-        if (tx == null) {
-            tx = Transaction.begin();
-            tx.setArrayValue(new VArrayEntry<E>(this, index), newE);
-            tx.commit();
-        } else {
-            tx.setArrayValue(new VArrayEntry<E>(this, index), newE);
+    /* Returns a new array (see newValues) with the current values of the given positions. */
+    Object copyValues(int[] indexes) {
+        Object[] copy = new Object[indexes.length];
+        for (int i = 0; i < indexes.length; i++) {
+            copy[i] = values.get(indexes[i]);
         }
+        return copy;
     }
 
-    private void rangeCheck(int index) {
-        if (index < 0 || index >= length) throw new IndexOutOfBoundsException();
+    /* Writes the values (created by newValues) to the given positions. */
+    @SuppressWarnings("unchecked")
+    void writeValues(int[] indexes, Object newValues) {
+        E[] writeValues = (E[]) newValues;
+        for (int i = 0; i < indexes.length; i++) {
+            // Using a lazySet because we don't need the new value to be seen by other threads
+            // as soon as possible. In fact, it would be nice if only threads with transactions
+            // created after we finish our commit see the new value.
+            // For more details see the java.util.concurrent.atomic package description javadoc.
+            values.lazySet(indexes[i], writeValues[i]);    // Volatile write!
+        }
     }
 
-    @SuppressWarnings("unchecked")
-    public GarbageCollectable commit(int txNumber, VArrayEntry[] writesToCommit, int[] logEntryIndexes) {
-        // Prepare arrays for log
-        E[] logEntryValues = (E[]) new Object[writesToCommit.length];
+    /* Writes back newValues (created by newValues) to the positions in logEntryIndexes,
+     * which must be sorted, logging the values that they replace in a single log node.
+     */
+    public GarbageCollectable commit(long txNumber, int[] logEntryIndexes, Object newValues) {
+        // The log node is fully populated before it is published, so the readers
+        // never see a partially-initialized log
+        Object logEntryValues = copyValues(logEntryIndexes);
 
         // Create and place log node
         log = new VArrayLogNode<E>(logEntryIndexes, logEntryValues, txNumber - 1, log);
         // Bump array version
         version = txNumber;
 
-        // Proceed with normal writeback and populating log values
-        int i = 0;
-        for (VArrayEntry<E> entry : writesToCommit) {
-            // Read old value from the array, and copy it to the log
-            E oldValue = values.get(entry.index);
-            if (oldValue == null) oldValue = (E) NULL_VALUE;
-            logEntryValues[i++] = oldValue;
-
-            // Write the new value
-            // Using a lazySet because we don't need the new value to be seen by other threads
-            // as soon as possible. In fact, it would be nice if only threads with transactions
-            // created after we finish our commit see the new value.
-            // For more details see the java.util.concurrent.atomic package description javadoc.
-            values.lazySet(entry.index, entry.getWriteValue());    // Volatile write!
-        }
+        // Proceed with normal writeback; these writes are ordered after the ones above
+        writeValues(logEntryIndexes, newValues);
 
         return log;
     }
@@ -0,0 +1,105 @@
+/*
+ * JVSTM: a Java library for Software Transactional Memory
+ * Copyright (C) 2005 INESC-ID Software Engineering Group
+ * http://www.esw.inesc-id.pt
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ * Author's contact:
+ * INESC-ID Software Engineering Group
+ * Rua Alves Redol 9
+ * 1000 - 029 Lisboa
+ * Portugal
+ */
+package jvstm;
+
+final class VArrayEntry<E> implements Comparable<VArrayEntry<E>> {
+    final VArray<E> array;
+    final int index;
+
+    // This field is used for two purposes:
+    // 1) If this VArrayEntry is being used inside a read-set, it contains the read value
+    // 2) If this VarrayEntry is being used inside a write-set, it contains the value to be
+    //    written during the Tx commit operation
+    private E object;
+
+    // This field is used for parallel nested writes in the array so that
+    // a nested tx may safely read VArrayEntries that were written in the nesting tree
+    // -- Only used when VArrayEntry is in the read-set of a parallel nested transaction
+    volatile int nestedVersion;
+
+    // Also used for nesting, represents the owner of the entry when it was read.
+    // -- Only used when VArrayEntry is in the read-set of a parallel nested transaction
+    ReadWriteTransaction owner;
+
+    VArrayEntry(VArray<E> array, int index) {
+        this.array = array;
+        this.index = index;
+    }
+
+    // entries are made on each access, so the write-sets find them by
+    // equality: same array (by identity) and same index
+    @Override
+    public int hashCode() {
+        return array.hashCode() + index;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof VArrayEntry<?>) {
+            VArrayEntry<?> other = (VArrayEntry<?>) o;
+            return (array == other.array) && (index == other.index);
+        }
+        return false;
+    }
+
+    @Override
+    public int compareTo(VArrayEntry<E> other) {
+        if (array != other.array) {
+            throw new AssertionError("Cannot compare with a VArrayEntry belonging to different VArray");
+        }
+        return index - other.index;
+    }
+
+    public E getValue(long maxVersion) {
+        // Keep read value for later validation
+        object = getInternalValue(maxVersion);
+        return object;
+    }
+
+    private E getInternalValue(long maxVersion) {
+        return array.readValue(index, maxVersion);
+    }
+
+    // Only used when VArrayEntry is part of the read-set
+    public boolean validate() {
+        return array.isCurrent(index, object);
+    }
+
+    public void setReadOwner(ReadWriteTransaction owner) {
+        this.owner = owner;
+    }
+
+    // Only used when VArrayEntry is part of the write-set
+    public void setWriteValue(E value, int nestedVersion) {
+        object = value;
+        this.nestedVersion = nestedVersion;
+    }
+
+    // Only used when VArrayEntry is part of the write-set
+    public E getWriteValue() {
+        return object;
+    }
+}
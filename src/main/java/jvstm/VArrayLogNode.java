@@ -0,0 +1,324 @@
+/*
+ * JVSTM: a Java library for Software Transactional Memory
+ * Copyright (C) 2005 INESC-ID Software Engineering Group
+ * http://www.esw.inesc-id.pt
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ * Author's contact:
+ * INESC-ID Software Engineering Group
+ * Rua Alves Redol 9
+ * 1000 - 029 Lisboa
+ * Portugal
+ */
+package jvstm;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+
+final class VArrayLogNode<E> implements GarbageCollectable {
+
+    // returned by getLogValue when the position was not logged for the version requested
+    static final Object NOT_LOGGED = new Object();
+    // returned by getLogValue when part of the log needed was already collected, which
+    // may only happen when reading outside a transaction or if the history is bounded
+    static final Object COLLECTED = new Object();
+
+    // number of nodes that a reader visits one by one before it starts folding the log
+    private static final int FOLD_AFTER = 8;
+    // maximum number of nodes folded together
+    private static final int MAX_FOLD_SPAN = 1024;
+
+    /* These fields are kept outside the VArrayLogNode to allow the jvstm GC algorithm
+     * to unlink the body.
+     */
+    static final private class VArrayLogNodeBody<E> {
+        final VArrayLogNode<E> next;
+        final int[] logEntryIndexes;
+        // An E[], or the primitive array used by a VArrayPrimitive (see VArray.newValues)
+        final Object logEntryValues;
+
+        VArrayLogNodeBody(VArrayLogNode<E> next, int[] logEntryIndexes, Object logEntryValues) {
+            this.next = next;
+            this.logEntryIndexes = logEntryIndexes;
+            this.logEntryValues = logEntryValues;
+        }
+    }
+
+    /* The entries of a sequence of consecutive log nodes, folded together and indexed by
+     * array position.  Each position has a run of entries, sorted from the oldest to the
+     * newest version.
+     */
+    static final private class Fold {
+        final int[] indexes;
+        // the entries of indexes[i] are those in [starts[i], starts[i + 1])
+        final int[] starts;
+        final long[] versions;
+        final Object values;
+        // the version of the oldest node folded
+        final long minVersion;
+        // the node right below the oldest node folded
+        final VArrayLogNode<?> next;
+        // the version of the node at which the fold stopped because it was already collected,
+        // or -1 if it did not (in which case next is null only at the end of the log)
+        final long truncatedAt;
+
+        Fold(int[] indexes, int[] starts, long[] versions, Object values, long minVersion, VArrayLogNode<?> next,
+                long truncatedAt) {
+            this.indexes = indexes;
+            this.starts = starts;
+            this.versions = versions;
+            this.values = values;
+            this.minVersion = minVersion;
+            this.next = next;
+            this.truncatedAt = truncatedAt;
+        }
+
+        // Returns the oldest entry of index with a version >= minVersion, or -1
+        int find(int index, long minVersion) {
+            int run = Arrays.binarySearch(indexes, index);
+            if (run < 0) return -1;
+
+            int low = starts[run];
+            int high = starts[run + 1] - 1;
+            if (versions[high] < minVersion) return -1;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (versions[mid] >= minVersion) {
+                    high = mid;
+                } else {
+                    low = mid + 1;
+                }
+            }
+            return low;
+        }
+    }
+
+    final long version;
+    // position of this node in the log of its array, starting at 1
+    final int seq;
+    final VArrayLogNodeBody<E> body;
+    // built lazily by the readers that go deep into the log (see getLogValue)
+    private volatile Fold fold;
+
+    VArrayLogNode(int[] logEntryIndexes, Object logEntryValues, long version, VArrayLogNode<E> next) {
+        this.version = version;
+        this.seq = (next == null) ? 1 : next.seq + 1;
+        this.body = new VArrayLogNodeBody<E>(next, logEntryIndexes, logEntryValues);
+    }
+
+    /* Returns the value that position index had for the transactions with number maxVersion,
+     * i.e., the value logged by the OLDEST node with version >= maxVersion that logged index,
+     * or NOT_LOGGED if there is no such node (or COLLECTED, see above).
+     *
+     * The log is walked from the newest node towards the oldest one.  The nodes are numbered
+     * (seq) and, as in a Fenwick tree, each node whose seq is a multiple of 2^k may hold a fold
+     * of itself and the 2^k - 1 nodes below it, so that a reader goes through at most
+     * O(log(depth)) folds, plus one for every MAX_FOLD_SPAN nodes.  The folds are built, and
+     * kept, by the readers that have visited more than FOLD_AFTER nodes, so writers never pay
+     * for them, and they are discarded together with their node by the GC.
+     */
+    @SuppressWarnings("unchecked")
+    E getLogValue(VArray<E> array, int index, long maxVersion) {
+        Object values = null;
+        int pos = -1;
+        int visited = 0;
+
+        VArrayLogNode<E> node = this;
+        while (node != null && node.version >= maxVersion) {
+            VArrayLogNodeBody<E> body = node.body;
+            if (body == null) return (E) COLLECTED;
+
+            Fold fold = node.fold;
+            if (fold == null && ++visited > FOLD_AFTER && foldSpan(node.seq) > 1) {
+                fold = node.buildFold(array);
+            }
+
+            if (fold != null) {
+                int p = fold.find(index, maxVersion);
+                if (p >= 0) {
+                    values = fold.values;
+                    pos = p;
+                }
+                // the fold already went past maxVersion, so every node below it is too old
+                if (fold.minVersion < maxVersion) break;
+                if (fold.truncatedAt >= maxVersion) return (E) COLLECTED;
+                node = (VArrayLogNode<E>) fold.next;
+            } else {
+                int p = Arrays.binarySearch(body.logEntryIndexes, index);
+                if (p >= 0) {
+                    values = body.logEntryValues;
+                    pos = p;
+                }
+                node = body.next;
+            }
+        }
+
+        return values == null ? (E) NOT_LOGGED : array.valueAt(values, pos);
+    }
+
+    private static int foldSpan(int seq) {
+        return Math.min(Integer.lowestOneBit(seq), MAX_FOLD_SPAN);
+    }
+
+    /* Folds this node and the foldSpan(seq) - 1 nodes below it, reusing their folds.  If
+     * some of those nodes were already collected (meaning that no transaction needs them),
+     * the fold stops there.
+     */
+    private Fold buildFold(VArray<E> array) {
+        // The parts to fold, from the newest to the oldest: each is either the body of a
+        // node (read only once, as the GC may collect it meanwhile) or a Fold
+        Object[] parts = new Object[32];
+        long[] partVersions = new long[32];
+        int nParts = 0;
+        int total = 0;
+        long minVersion = version;
+        VArrayLogNode<E> next = null;
+        long truncatedAt = -1;
+
+        VArrayLogNode<E> node = this;
+        int remaining = foldSpan(seq);
+        while (remaining > 0 && node != null) {
+            VArrayLogNodeBody<E> body = node.body;
+            if (body == null) {
+                next = null;
+                truncatedAt = node.version;
+                break;
+            }
+            minVersion = node.version;
+
+            int span = foldSpan(node.seq);
+            if (node != this && span > 1) {
+                Fold sub = node.fold;
+                if (sub == null) sub = node.buildFold(array);
+                parts[nParts++] = sub;
+                total += sub.versions.length;
+                remaining -= span;
+                minVersion = sub.minVersion;
+                next = (VArrayLogNode<E>) sub.next;
+                truncatedAt = sub.truncatedAt;
+                if (next == null) break;
+            } else {
+                partVersions[nParts] = node.version;
+                parts[nParts++] = body;
+                total += body.logEntryIndexes.length;
+                remaining--;
+                next = body.next;
+            }
+            node = next;
+        }
+
+        // Number the entries from the oldest part to the newest one and sort them by
+        // (position, number), which yields the runs of each position ordered by version
+        long[] keys = new long[total];
+        int[] partBase = new int[nParts + 1];
+        int k = 0;
+        for (int p = nParts - 1; p >= 0; p--) {
+            partBase[p] = k;
+            if (parts[p] instanceof Fold) {
+                Fold f = (Fold) parts[p];
+                for (int r = 0; r < f.indexes.length; r++) {
+                    for (int e = f.starts[r]; e < f.starts[r + 1]; e++) {
+                        keys[k] = ((long) f.indexes[r] << 32) | k;
+                        k++;
+                    }
+                }
+            } else {
+                for (int index : ((VArrayLogNodeBody<?>) parts[p]).logEntryIndexes) {
+                    keys[k] = ((long) index << 32) | k;
+                    k++;
+                }
+            }
+        }
+        Arrays.sort(keys);
+
+        int[] indexes = new int[total];
+        int[] starts = new int[total + 1];
+        long[] versions = new long[total];
+        Object values = array.newValues(total);
+        int nIndexes = 0;
+        for (int i = 0; i < total; i++) {
+            int index = (int) (keys[i] >>> 32);
+            int entry = (int) keys[i];
+            if (nIndexes == 0 || indexes[nIndexes - 1] != index) {
+                indexes[nIndexes] = index;
+                starts[nIndexes++] = i;
+            }
+
+            int p = nParts - 1;
+            while (partBase[p] + partSize(parts[p]) <= entry) p--;
+            int pos = entry - partBase[p];
+            if (parts[p] instanceof Fold) {
+                Fold f = (Fold) parts[p];
+                versions[i] = f.versions[pos];
+                System.arraycopy(f.values, pos, values, i, 1);
+            } else {
+                versions[i] = partVersions[p];
+                System.arraycopy(((VArrayLogNodeBody<?>) parts[p]).logEntryValues, pos, values, i, 1);
+            }
+        }
+        starts[nIndexes] = total;
+
+        Fold fold = new Fold(Arrays.copyOf(indexes, nIndexes), Arrays.copyOf(starts, nIndexes + 1),
+                versions, values, minVersion, next, truncatedAt);
+        this.fold = fold;
+        return fold;
+    }
+
+    private static int partSize(Object part) {
+        return (part instanceof Fold) ? ((Fold) part).versions.length
+                : ((VArrayLogNodeBody<?>) part).logEntryIndexes.length;
+    }
+
+    // this static field is used to change the non-static final field "body"
+    // see the comments on the clearPrevious method
+    private static final Field BODY_FIELD;
+
+    static {
+        try {
+            BODY_FIELD = VArrayLogNode.class.getDeclaredField("body");
+            BODY_FIELD.setAccessible(true);
+        } catch (NoSuchFieldException nsfe) {
+            throw new Error("JVSTM error: couldn't get access to the VArrayLogNode.body field");
+        }
+    }
+
+    public void clearPrevious() {
+        // Copied from VBoxBody.clearPrevious()
+
+        // we set the body field to null via reflection because it is
+        // a final field
+
+        // making the field final is crucial to ensure that the field
+        // is properly initialized (and visible to other threads)
+        // after an instance of VArrayLogNode is constructed, as
+        // per the new Java Memory Model (JSR133)
+
+        // also, according to the Java specification, we may change a
+        // final field only via reflection and in some specific cases
+        // (such as object reconstruction after deserialization)
+
+        // even though this use is not the case, the potential
+        // problems that may occur do not affect the correcteness of
+        // the system: we just want to set the field to null to allow
+        // the garbage collector to do its thing...
+        try {
+            BODY_FIELD.set(this, null);
+        } catch (IllegalAccessException iae) {
+            throw new Error("JVSTM error: cannot set the VArrayLogNode.body field to null");
+        }
+        fold = null;
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * JVSTM: a Java library for Software Transactional Memory
+ * Copyright (C) 2005 INESC-ID Software Engineering Group
+ * http://www.esw.inesc-id.pt
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ * Author's contact:
+ * INESC-ID Software Engineering Group
+ * Rua Alves Redol 9
+ * 1000 - 029 Lisboa
+ * Portugal
+ */
+package jvstm;
+
+/**
+ * Base class for the VArrays that hold values of a primitive type.
+ *
+ * The design is the same as the one of VArray (see the notes on VArray.java):
+ * the latest values are kept in a single array, older values are kept in an
+ * undo log of VArrayLogNodes, and the writeback is done under the array's
+ * writebackLock.  The difference is that both the latest values and the values
+ * kept in each log node are stored in primitive arrays, so neither the array
+ * nor its history hold boxed values.
+ *
+ * The values are still boxed at the transactional API boundary (get/put and
+ * the read and write-sets), but those objects are short-lived.  Range
+ * operations (getRange, putRange, fill, ...) keep them unboxed.
+ *
+ * Primitive arrays cannot hold null, so put(index, null) is rejected.
+ */
+public abstract class VArrayPrimitive<E> extends VArray<E> {
+
+    VArrayPrimitive(int size) {
+        super(size, null);
+    }
+
+    @Override
+    public void put(int index, E newE) {
+        if (newE == null) throw new NullPointerException("Primitive arrays cannot hold null values");
+        super.put(index, newE);
+    }
+
+    @Override
+    abstract Object copyValues(int[] indexes);
+
+    @Override
+    abstract void writeValues(int[] indexes, Object values);
+
+    @Override
+    boolean isCurrent(int index, E value) {
+        return value.equals(latestValue(index));
+    }
+}
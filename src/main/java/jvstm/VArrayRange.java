@@ -0,0 +1,97 @@
+/*
+ * JVSTM: a Java library for Software Transactional Memory
+ * Copyright (C) 2005 INESC-ID Software Engineering Group
+ * http://www.esw.inesc-id.pt
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ * Author's contact:
+ * INESC-ID Software Engineering Group
+ * Rua Alves Redol 9
+ * 1000 - 029 Lisboa
+ * Portugal
+ */
+package jvstm;
+
+/* Describes a contiguous interval [from, from + length) of a VArray, together with
+ * its values, kept in the representation of the array (see VArray.newValues).
+ * It is used both as a single write-set entry for all of the positions of the
+ * interval and as a single read-set entry for a range that was read.
+ */
+final class VArrayRange<E> {
+    final VArray<E> array;
+    final int from;
+    final int length;
+    final Object values;
+
+    VArrayRange(VArray<E> array, int from, int length) {
+        this(array, from, length, array.newValues(length));
+    }
+
+    VArrayRange(VArray<E> array, int from, int length, Object values) {
+        this.array = array;
+        this.from = from;
+        this.length = length;
+        this.values = values;
+    }
+
+    boolean covers(int index) {
+        return (index >= from) && (index < from + length);
+    }
+
+    // pos is relative to the start of the range
+    E get(int pos) {
+        return array.valueAt(values, pos);
+    }
+
+    void set(int pos, E value) {
+        array.setValueAt(values, pos, value);
+    }
+
+    // Reads the whole range as seen by a transaction with the given number
+    void read(long maxVersion) {
+        for (int i = 0; i < length; i++) {
+            set(i, array.readValue(from + i, maxVersion));
+        }
+    }
+
+    // Same as read, but outside a transaction: returns false if the log needed
+    // was already collected
+    @SuppressWarnings("unchecked")
+    boolean readCommitted(long maxVersion) {
+        for (int i = 0; i < length; i++) {
+            Object value = array.readVersion(from + i, maxVersion);
+            if (value == VArrayLogNode.COLLECTED) return false;
+            set(i, (E) value);
+        }
+        return true;
+    }
+
+    // Only used when VArrayRange is part of the read-set
+    boolean validate() {
+        for (int i = 0; i < length; i++) {
+            if (!array.isCurrent(from + i, get(i))) return false;
+        }
+        return true;
+    }
+
+    int[] indexes() {
+        int[] indexes = new int[length];
+        for (int i = 0; i < length; i++) {
+            indexes[i] = from + i;
+        }
+        return indexes;
+    }
+}
@@ -25,12 +25,13 @@
  */
 package jvstm;
 
-import static jvstm.UtilUnsafe.UNSAFE;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 public class VBox<E> {
 
     /**
-     * We moved here all VBox constants that are initialized with Unsafe operations,
+     * We moved here all VBox constants that may be initialized with Unsafe operations
+     * (see FieldUpdaters),
      * due to the JVSTM integration in Deuce.
      * To support the JVSTM all the transactional classes are instrumented by the Deuce
      * to inherit from the VBox class. Yet, if a transactional class is part of the JRE
@@ -43,9 +44,10 @@ public class VBox<E> {
      */
     public static class Offsets {
 
-        // --- Setup to use Unsafe
-        public static final long bodyOffset = UtilUnsafe.objectFieldOffset(VBox.class, "body");
-        public static final long inplaceOffset = UtilUnsafe.objectFieldOffset(VBox.class, "inplace");
+        public static final AtomicReferenceFieldUpdater<VBox, VBoxBody> bodyUpdater =
+            FieldUpdaters.newReferenceUpdater(VBox.class, VBoxBody.class, "body");
+        public static final AtomicReferenceFieldUpdater<VBox, InplaceWrite> inplaceUpdater =
+            FieldUpdaters.newReferenceUpdater(VBox.class, InplaceWrite.class, "inplace");
 
     }
 
@@ -55,15 +57,15 @@ public class VBox<E> {
      */
     protected static class AOMMarker {}
 
-    public VBoxBody<E> body;
-    protected InplaceWrite<E> inplace;
+    public volatile VBoxBody<E> body;
+    protected volatile InplaceWrite<E> inplace;
 
     public VBox() {
         this((E)null);
     }
 
     public VBox(E initial) {
-        inplace = new InplaceWrite<E>();
+        Offsets.inplaceUpdater.lazySet(this, new InplaceWrite<E>());
         put(initial);
     }
 
@@ -75,8 +77,8 @@ public class VBox<E> {
      * to the compact layout.
      */
     protected VBox(AOMMarker x) {
-        inplace = new InplaceWrite<E>();
-        body = null;
+        Offsets.inplaceUpdater.lazySet(this, new InplaceWrite<E>());
+        // the body is left null
     }
 
     /**
@@ -85,14 +87,14 @@ public class VBox<E> {
      * cannot escape (i.e., is captured by) its allocating transaction.
      */
     protected VBox(AOMMarker x, Transaction owner) {
-        inplace = new InplaceWrite<E>(owner);
-        body = null;
+        Offsets.inplaceUpdater.lazySet(this, new InplaceWrite<E>(owner));
+        // the body is left null
     }
 
     // used for persistence support
     protected VBox(VBoxBody<E> body) {
-        this.inplace = new InplaceWrite<E>();
-        this.body = body;
+        Offsets.inplaceUpdater.lazySet(this, new InplaceWrite<E>());
+        Offsets.bodyUpdater.lazySet(this, body);
     }
 
     public OwnershipRecord getOrec(){
@@ -108,11 +110,11 @@ public class VBox<E> {
             // If the box body is GC'd before we can reach it, the process
             // re-starts with a newer transaction.
             while (true) {
-                int transactionNumber = Transaction.mostRecentCommittedRecord.transactionNumber;
+                long transactionNumber = Transaction.mostRecentCommittedRecord.transactionNumber;
                 VBoxBody<E> boxBody = this.body;
                 do {
                     if (boxBody.version <= transactionNumber) {
-                        return boxBody.value;
+                        return bodyValue(boxBody);
                     }
                     boxBody = boxBody.next;
                 } while (boxBody != null);
@@ -133,7 +135,7 @@ public class VBox<E> {
         }
     }
 
-    public VBoxBody<?> commit(E newValue, int txNumber) {
+    public VBoxBody<?> commit(E newValue, long txNumber) {
         VBoxBody<E> currentHead = this.body;
 
         VBoxBody<E> existingBody = null;
@@ -147,7 +149,7 @@ public class VBox<E> {
         }
 
         if (existingBody == null || existingBody.version < txNumber) {
-            VBoxBody<E> newBody = makeNewBody(newValue, txNumber, currentHead);
+            VBoxBody<E> newBody = newBody(newValue, txNumber, currentHead);
             existingBody = CASbody(currentHead, newBody);
         }
         // return the existingBody, regardless of whether the CAS succeeded
@@ -166,7 +168,7 @@ public class VBox<E> {
         be >= newValue.version).  If not, we retry the CAS.*/
 
         while (true) {
-            if (UNSAFE.compareAndSwapObject(this, Offsets.bodyOffset, expected, newValue)) {
+            if (Offsets.bodyUpdater.compareAndSet(this, expected, newValue)) {
                 return newValue;
             } else { // if the CAS failed the new value must already be there unless FenixFramework was doing a reload!
                 // update expected
@@ -174,7 +176,7 @@ public class VBox<E> {
 
                 if (expected.version < newValue.version) {
                     // update the tail
-                    newValue = makeNewBody(newValue.value, newValue.version, expected);
+                    newValue = newBody(bodyValue(newValue), newValue.version, expected);
                     // retry
                     continue;
                 } else {
@@ -185,20 +187,40 @@ public class VBox<E> {
     }
 
     protected boolean CASinplace(InplaceWrite<E> prevBackup, InplaceWrite<E> newBackup) {
-        return UNSAFE.compareAndSwapObject(this, Offsets.inplaceOffset, prevBackup, newBackup);
+        return Offsets.inplaceUpdater.compareAndSet(this, prevBackup, newBackup);
     }
 
     public InplaceWrite<E> getInplace() {
         return this.inplace;
     }
 
-    // in the future, if more than one subclass of body exists, we may
-    // need a factory here but, for now, it's simpler to have it like
-    // this
-    public static <T> VBoxBody<T> makeNewBody(T value, int version, VBoxBody<T> next) {
+    public static <T> VBoxBody<T> makeNewBody(T value, long version, VBoxBody<T> next) {
         return new VBoxBody<T>(value, version, next);
     }
 
+    /*
+     * The following methods are the only places where the value of a body
+     * or of an InplaceWrite is created or read, so that subclasses may keep
+     * it in a different representation (see VBoxPrimitive).  Generic code
+     * that handles bodies of any box must go through them.
+     */
+
+    protected VBoxBody<E> newBody(E value, long version, VBoxBody<E> next) {
+        return makeNewBody(value, version, next);
+    }
+
+    protected E bodyValue(VBoxBody<E> body) {
+        return body.value;
+    }
+
+    protected void setBodyValue(VBoxBody<E> body, E value) {
+        body.value = value;
+    }
+
+    protected E tempValue(InplaceWrite<E> inplace) {
+        return inplace.tempValue;
+    }
+
     /*===========================================================================*
      *~~~~~~~~~~~~~     METHODS of the AOM approach     ~~~~~~~~~~~~~~~~~~~~~~~~~*
      *===========================================================================*/
@@ -26,12 +26,20 @@
  */
 package jvstm;
 
-import static jvstm.UtilUnsafe.UNSAFE;
-
 public class VBoxAom<E> extends VBox<E>{
 
     private static final AOMMarker DEFAULT_MARKER = new AOMMarker();
 
+    /*
+     * How often this object is written, which decides whether the GC reverts
+     * it to the compact layout (see ActiveTransactionsRecord.tryRevert).  It
+     * is only updated by the GC threads and without synchronization, so it is
+     * approximate when several records are cleaned in parallel.
+     */
+    int heat;
+    // the pass of the GCTask that last reverted this object, or 0 once a newer version is cleaned
+    int revertedInPass;
+
     public VBoxAom(){
         /**
          * The super constructor will initialize the body with null,
@@ -90,7 +98,7 @@ public class VBoxAom<E> extends VBox<E>{
      *
      */
     @Override
-    public VBoxBody<?> commit(E newValue, int txNumber) {
+    public VBoxBody<?> commit(E newValue, long txNumber) {
         VBoxBody<E> currentHead = this.body;
 
         VBoxBody<E> existingBody = null;
@@ -130,7 +138,7 @@ public class VBoxAom<E> extends VBox<E>{
     @Override
     protected VBoxBody<E> CASbody(VBoxBody<E> expected, VBoxBody<E> newValue){
         do{
-            if (UNSAFE.compareAndSwapObject(this, Offsets.bodyOffset, expected, newValue)) {
+            if (Offsets.bodyUpdater.compareAndSet(this, expected, newValue)) {
                 expected = newValue;
             } else {
                 /*
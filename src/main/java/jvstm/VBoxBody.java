@@ -25,61 +25,46 @@
  */
 package jvstm;
 
-import java.lang.reflect.Field;
-
 public class VBoxBody<E> implements GarbageCollectable {
-    // this static field is used to change the non-static final field "next"
-    // see the comments on the clearPrevious method
-    private static final Field NEXT_FIELD;
-
-    static {
-        try {
-            NEXT_FIELD = VBoxBody.class.getDeclaredField("next");
-            NEXT_FIELD.setAccessible(true);
-        } catch (NoSuchFieldException nsfe) {
-            throw new Error("JVSTM error: couldn't get access to the VBoxBody.next field");
-        }
-    }
-
-    public final int version;
-    public final VBoxBody<E> next;
+    public final long version;
+    // not final, so that clearPrevious may clear it; see the comments there
+    public VBoxBody<E> next;
     public volatile E value;
 
-    public VBoxBody(E value, int version, VBoxBody<E> next) {
+    public VBoxBody(E value, long version, VBoxBody<E> next) {
         this.version = version;
         this.next = next;
         this.value = value;
     }
 
-    public VBoxBody<E> getBody(int maxVersion) {
+    /* Returns the most recent version <= maxVersion.  If the history was trimmed
+     * below maxVersion (see GCTask), returns the oldest version left instead,
+     * which is newer than maxVersion: the write-back uses this to learn that a
+     * commit already got here, and the readers must check it.
+     */
+    public VBoxBody<E> getBody(long maxVersion) {
         VBoxBody result = this;
         while (result.version > maxVersion) {
-            result = result.next;
+            VBoxBody next = result.next;
+            if (next == null) {
+                break;
+            }
+            result = next;
         }
         return result;
     }
 
     public void clearPrevious() {
-        // we set the next field to null via reflection because it is
-        // a final field
-
-        // making the field final is crucial to ensure that the field
-        // is properly initialized (and visible to other threads)
-        // after an instance of MultiVersionBoxBody is constructed, as
-        // per the new Java Memory Model (JSR133)
+        // the next field used to be final, to ensure that it is properly
+        // initialized (and visible to other threads) after an instance
+        // of VBoxBody is constructed, and was cleared via reflection.
 
-        // also, according to the Java specification, we may change a
-        // final field only via reflection and in some specific cases
-        // (such as object reconstruction after deserialization)
-
-        // even though this use is not the case, the potential
-        // problems that may occur do not affect the correcteness of
-        // the system: we just want to set the field to null to allow
-        // the garbage collector to do its thing...
-        try {
-            NEXT_FIELD.set(this, null);
-        } catch (IllegalAccessException iae) {
-            throw new Error("JVSTM error: cannot set the next field to null");
-        }
+        // that guarantee now comes from the volatile VBox.body field:
+        // a body is only reachable through the body of its VBox, where
+        // it is published by a CAS, or through the next of another body
+        // that was published that way.  so, we may clear the field with
+        // a plain write, which is all we need to allow the garbage
+        // collector to do its thing...
+        this.next = null;
     }
 }
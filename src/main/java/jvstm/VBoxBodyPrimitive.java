@@ -0,0 +1,47 @@
+/*
+ * JVSTM: a Java library for Software Transactional Memory
+ * Copyright (C) 2005 INESC-ID Software Engineering Group
+ * http://www.esw.inesc-id.pt
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ * Author's contact:
+ * INESC-ID Software Engineering Group
+ * Rua Alves Redol 9
+ * 1000 - 029 Lisboa
+ * Portugal
+ */
+package jvstm;
+
+/**
+ * The body used by all the VBoxPrimitive subclasses (VBoxInt, VBoxLong,
+ * VBoxDouble, ...).  Instead of keeping a reference to a boxed value, each
+ * version keeps the raw 64 bits of the primitive value, which are encoded and
+ * decoded by the owning box (see VBoxPrimitive.toBits/fromBits).  This way,
+ * committing a new version of a primitive box allocates only the body itself.
+ *
+ * The inherited value slot is never used by these bodies, so generic code
+ * must read them through VBox.bodyValue instead of accessing
+ * VBoxBody.value directly.
+ */
+public class VBoxBodyPrimitive<E> extends VBoxBody<E> {
+
+    public volatile long bits;
+
+    public VBoxBodyPrimitive(long bits, long version, VBoxBody<E> next) {
+        super(null, version, next);
+        this.bits = bits;
+    }
+}
@@ -25,22 +25,32 @@
  */
 package jvstm;
 
-public class VBoxBoolean extends VBox<Boolean> {
+public class VBoxBoolean extends VBoxPrimitive<Boolean> {
 
     public VBoxBoolean() {
         this(false);
     }
 
     public VBoxBoolean(boolean initial) {
-        super(initial);
+        super(initial ? 1L : 0L);
+    }
+
+    @Override
+    protected long toBits(Boolean value) {
+        return value ? 1L : 0L;
+    }
+
+    @Override
+    protected Boolean fromBits(long bits) {
+        return Boolean.valueOf(bits != 0);
     }
 
     public boolean getBoolean() {
-        return super.get();
+        return getBits() != 0;
     }
 
     public void putBoolean(boolean newValue) {
-        super.put(newValue);
+        putBits(newValue ? 1L : 0L);
     }
 
 }
@@ -25,22 +25,32 @@
  */
 package jvstm;
 
-public class VBoxByte extends VBox<Byte> {
+public class VBoxByte extends VBoxPrimitive<Byte> {
 
     public VBoxByte() {
         this((byte) 0);
     }
 
     public VBoxByte(byte initial) {
-        super(initial);
+        super((long) initial);
+    }
+
+    @Override
+    protected long toBits(Byte value) {
+        return (long) value;
+    }
+
+    @Override
+    protected Byte fromBits(long bits) {
+        return Byte.valueOf((byte) bits);
     }
 
     public byte getByte() {
-        return super.get();
+        return (byte) getBits();
     }
 
     public void putByte(byte newValue) {
-        super.put(newValue);
+        putBits((long) newValue);
     }
 
 }
@@ -25,22 +25,32 @@
  */
 package jvstm;
 
-public class VBoxChar extends VBox<Character> {
+public class VBoxChar extends VBoxPrimitive<Character> {
 
     public VBoxChar() {
         this((char) 0);
     }
 
     public VBoxChar(char initial) {
-        super(initial);
+        super((long) initial);
+    }
+
+    @Override
+    protected long toBits(Character value) {
+        return (long) value;
+    }
+
+    @Override
+    protected Character fromBits(long bits) {
+        return Character.valueOf((char) bits);
     }
 
     public char getChar() {
-        return super.get();
+        return (char) getBits();
     }
 
     public void putChar(char newValue) {
-        super.put(newValue);
+        putBits((long) newValue);
     }
 
 }
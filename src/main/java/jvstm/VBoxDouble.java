@@ -25,22 +25,32 @@
  */
 package jvstm;
 
-public class VBoxDouble extends VBox<Double> {
+public class VBoxDouble extends VBoxPrimitive<Double> {
 
     public VBoxDouble() {
         this(0.0);
     }
 
     public VBoxDouble(double initial) {
-        super(initial);
+        super(Double.doubleToRawLongBits(initial));
+    }
+
+    @Override
+    protected long toBits(Double value) {
+        return Double.doubleToRawLongBits(value);
+    }
+
+    @Override
+    protected Double fromBits(long bits) {
+        return Double.valueOf(Double.longBitsToDouble(bits));
     }
 
     public double getDouble() {
-        return super.get();
+        return Double.longBitsToDouble(getBits());
     }
 
     public void putDouble(double newValue) {
-        super.put(newValue);
+        putBits(Double.doubleToRawLongBits(newValue));
     }
 
 }
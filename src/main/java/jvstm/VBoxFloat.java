@@ -25,22 +25,32 @@
  */
 package jvstm;
 
-public class VBoxFloat extends VBox<Float> {
+public class VBoxFloat extends VBoxPrimitive<Float> {
 
     public VBoxFloat() {
         this(0.0f);
     }
 
     public VBoxFloat(float initial) {
-        super(initial);
+        super(Float.floatToRawIntBits(initial));
+    }
+
+    @Override
+    protected long toBits(Float value) {
+        return Float.floatToRawIntBits(value);
+    }
+
+    @Override
+    protected Float fromBits(long bits) {
+        return Float.valueOf(Float.intBitsToFloat((int) bits));
     }
 
     public float getFloat() {
-        return super.get();
+        return Float.intBitsToFloat((int) getBits());
     }
 
     public void putFloat(float newValue) {
-        super.put(newValue);
+        putBits(Float.floatToRawIntBits(newValue));
     }
 
 }
@@ -25,22 +25,32 @@
  */
 package jvstm;
 
-public class VBoxInt extends VBox<Integer> {
+public class VBoxInt extends VBoxPrimitive<Integer> {
 
     public VBoxInt() {
         this(0);
     }
 
     public VBoxInt(int initial) {
-        super(initial);
+        super((long) initial);
+    }
+
+    @Override
+    protected long toBits(Integer value) {
+        return (long) value;
+    }
+
+    @Override
+    protected Integer fromBits(long bits) {
+        return Integer.valueOf((int) bits);
     }
 
     public int getInt() {
-        return super.get();
+        return (int) getBits();
     }
 
     public void putInt(int newValue) {
-        super.put(newValue);
+        putBits((long) newValue);
     }
 
     @Atomic(canFail = false)
@@ -25,7 +25,7 @@
  */
 package jvstm;
 
-public class VBoxLong extends VBox<Long> {
+public class VBoxLong extends VBoxPrimitive<Long> {
 
     public VBoxLong() {
         this(0);
@@ -35,12 +35,22 @@ public class VBoxLong extends VBox<Long> {
         super(initial);
     }
 
+    @Override
+    protected long toBits(Long value) {
+        return value;
+    }
+
+    @Override
+    protected Long fromBits(long bits) {
+        return Long.valueOf(bits);
+    }
+
     public long getLong() {
-        return super.get();
+        return getBits();
     }
 
     public void putLong(long newValue) {
-        super.put(newValue);
+        putBits(newValue);
     }
 
 }
@@ -0,0 +1,136 @@
+/*
+ * JVSTM: a Java library for Software Transactional Memory
+ * Copyright (C) 2005 INESC-ID Software Engineering Group
+ * http://www.esw.inesc-id.pt
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ * Author's contact:
+ * INESC-ID Software Engineering Group
+ * Rua Alves Redol 9
+ * 1000 - 029 Lisboa
+ * Portugal
+ */
+package jvstm;
+
+/**
+ * Base class for the VBoxes that hold a value of a primitive type.
+ *
+ * The value of each version is kept unboxed in a VBoxBodyPrimitive and, when
+ * running inside a top-level transaction, the tentative value is kept unboxed
+ * in the InplaceWrite of the box (see InplaceWrite.tempBits).  So, the typed
+ * accessors of the subclasses (getInt, putInt, ...) do not allocate on reads,
+ * writes or commits.  The generic get/put methods are still available, but
+ * they box the value at the API boundary.
+ *
+ * Transactions that do not specialize the primitive barriers (nested
+ * transactions, for instance) fall back to the boxed representation, which is
+ * converted back to bits when the box is written back.
+ */
+public abstract class VBoxPrimitive<E> extends VBox<E> {
+
+    protected VBoxPrimitive(long initialBits) {
+        super((VBoxBody<E>) null);
+        putBits(initialBits);
+    }
+
+    /* Encodes a (non-null) boxed value into the raw bits kept in the bodies. */
+    protected abstract long toBits(E value);
+
+    /* Decodes the raw bits kept in the bodies into a boxed value. */
+    protected abstract E fromBits(long bits);
+
+    @Override
+    public E get() {
+        return fromBits(getBits());
+    }
+
+    @Override
+    public void put(E newE) {
+        putBits(toBits(newE));
+    }
+
+    protected final long getBits() {
+        Transaction tx = Transaction.current();
+        if (tx == null) {
+            // same as in VBox.get()
+            while (true) {
+                long transactionNumber = Transaction.mostRecentCommittedRecord.transactionNumber;
+                VBoxBody<E> boxBody = this.body;
+                do {
+                    if (boxBody.version <= transactionNumber) {
+                        return ((VBoxBodyPrimitive<E>) boxBody).bits;
+                    }
+                    boxBody = boxBody.next;
+                } while (boxBody != null);
+            }
+        } else {
+            return tx.getPrimitiveBoxValue(this);
+        }
+    }
+
+    protected final void putBits(long bits) {
+        Transaction tx = Transaction.current();
+        if (tx == null) {
+            tx = Transaction.beginInevitable();
+            tx.setPrimitiveBoxValue(this, bits);
+            tx.commit();
+        } else {
+            tx.setPrimitiveBoxValue(this, bits);
+        }
+    }
+
+    @Override
+    public VBoxBody<?> commit(E newValue, long txNumber) {
+        return commitBits(toBits(newValue), txNumber);
+    }
+
+    public VBoxBody<?> commitBits(long bits, long txNumber) {
+        VBoxBody<E> currentHead = this.body;
+
+        VBoxBody<E> existingBody = null;
+        if (currentHead != null) {
+            existingBody = currentHead.getBody(txNumber);
+        }
+
+        if (existingBody == null || existingBody.version < txNumber) {
+            VBoxBody<E> newBody = new VBoxBodyPrimitive<E>(bits, txNumber, currentHead);
+            existingBody = CASbody(currentHead, newBody);
+        }
+        // return the existingBody, regardless of whether the CAS succeeded
+        return existingBody;
+    }
+
+    @Override
+    protected VBoxBody<E> newBody(E value, long version, VBoxBody<E> next) {
+        return new VBoxBodyPrimitive<E>(toBits(value), version, next);
+    }
+
+    @Override
+    protected E bodyValue(VBoxBody<E> body) {
+        return fromBits(((VBoxBodyPrimitive<E>) body).bits);
+    }
+
+    @Override
+    protected void setBodyValue(VBoxBody<E> body, E value) {
+        ((VBoxBodyPrimitive<E>) body).bits = toBits(value);
+    }
+
+    @Override
+    protected E tempValue(InplaceWrite<E> inplace) {
+        E value = inplace.tempValue;
+        return (value == InplaceWrite.UNBOXED_VALUE) ? fromBits(inplace.tempBits) : value;
+    }
+}
@@ -25,22 +25,32 @@
  */
 package jvstm;
 
-public class VBoxShort extends VBox<Short> {
+public class VBoxShort extends VBoxPrimitive<Short> {
 
     public VBoxShort() {
         this((short) 0);
     }
 
     public VBoxShort(short initial) {
-        super(initial);
+        super((long) initial);
+    }
+
+    @Override
+    protected long toBits(Short value) {
+        return (long) value;
+    }
+
+    @Override
+    protected Short fromBits(long bits) {
+        return Short.valueOf((short) bits);
     }
 
     public short getShort() {
-        return super.get();
+        return (short) getBits();
     }
 
     public void putShort(short newValue) {
-        super.put(newValue);
+        putBits((long) newValue);
     }
 
 }
@@ -0,0 +1,100 @@
+/*
+ * JVSTM: a Java library for Software Transactional Memory
+ * Copyright (C) 2005 INESC-ID Software Engineering Group
+ * http://www.esw.inesc-id.pt
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ * Author's contact:
+ * INESC-ID Software Engineering Group
+ * Rua Alves Redol 9
+ * 1000 - 029 Lisboa
+ * Portugal
+ */
+package jvstm;
+
+import static jvstm.UtilUnsafe.UNSAFE;
+
+/**
+ * Transactional array of doubles, keeping both its values and their older
+ * versions in double[]s (see VArrayPrimitive).
+ */
+public class VDoubleArray extends VArrayPrimitive<Double> {
+
+    private static final long BASE = UNSAFE.arrayBaseOffset(double[].class);
+    private static final int SHIFT = 31 - Integer.numberOfLeadingZeros(UNSAFE.arrayIndexScale(double[].class));
+
+    private final double[] doubles;
+
+    public VDoubleArray(int size) {
+        super(size);
+        doubles = new double[size];
+    }
+
+    private static long offset(int index) {
+        return BASE + ((long) index << SHIFT);
+    }
+
+    public double getDouble(int index) {
+        return get(index);
+    }
+
+    public void putDouble(int index, double newValue) {
+        put(index, newValue);
+    }
+
+    @Override
+    Double latestValue(int index) {
+        return UNSAFE.getDoubleVolatile(doubles, offset(index));
+    }
+
+    // Unsafe has no ordered store for doubles, so these are volatile stores
+    @Override
+    void setLatestValue(int index, Double value) {
+        UNSAFE.putDoubleVolatile(doubles, offset(index), value);
+    }
+
+    @Override
+    Object newValues(int n) {
+        return new double[n];
+    }
+
+    @Override
+    Double valueAt(Object values, int pos) {
+        return ((double[]) values)[pos];
+    }
+
+    @Override
+    void setValueAt(Object values, int pos, Double value) {
+        ((double[]) values)[pos] = value;
+    }
+
+    @Override
+    Object copyValues(int[] indexes) {
+        double[] copy = new double[indexes.length];
+        for (int i = 0; i < indexes.length; i++) {
+            copy[i] = doubles[indexes[i]];
+        }
+        return copy;
+    }
+
+    @Override
+    void writeValues(int[] indexes, Object values) {
+        double[] newValues = (double[]) values;
+        for (int i = 0; i < indexes.length; i++) {
+            UNSAFE.putDoubleVolatile(doubles, offset(indexes[i]), newValues[i]);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * JVSTM: a Java library for Software Transactional Memory
+ * Copyright (C) 2005 INESC-ID Software Engineering Group
+ * http://www.esw.inesc-id.pt
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ * Author's contact:
+ * INESC-ID Software Engineering Group
+ * Rua Alves Redol 9
+ * 1000 - 029 Lisboa
+ * Portugal
+ */
+package jvstm;
+
+import static jvstm.UtilUnsafe.UNSAFE;
+
+/**
+ * Transactional array of ints, keeping both its values and their older
+ * versions in int[]s (see VArrayPrimitive).
+ */
+public class VIntArray extends VArrayPrimitive<Integer> {
+
+    private static final long BASE = UNSAFE.arrayBaseOffset(int[].class);
+    private static final int SHIFT = 31 - Integer.numberOfLeadingZeros(UNSAFE.arrayIndexScale(int[].class));
+
+    private final int[] ints;
+
+    public VIntArray(int size) {
+        super(size);
+        ints = new int[size];
+    }
+
+    private static long offset(int index) {
+        return BASE + ((long) index << SHIFT);
+    }
+
+    public int getInt(int index) {
+        return get(index);
+    }
+
+    public void putInt(int index, int newValue) {
+        put(index, newValue);
+    }
+
+    @Override
+    Integer latestValue(int index) {
+        return UNSAFE.getIntVolatile(ints, offset(index));
+    }
+
+    @Override
+    void setLatestValue(int index, Integer value) {
+        UNSAFE.putOrderedInt(ints, offset(index), value);
+    }
+
+    @Override
+    Object newValues(int n) {
+        return new int[n];
+    }
+
+    @Override
+    Integer valueAt(Object values, int pos) {
+        return ((int[]) values)[pos];
+    }
+
+    @Override
+    void setValueAt(Object values, int pos, Integer value) {
+        ((int[]) values)[pos] = value;
+    }
+
+    @Override
+    Object copyValues(int[] indexes) {
+        int[] copy = new int[indexes.length];
+        for (int i = 0; i < indexes.length; i++) {
+            copy[i] = ints[indexes[i]];
+        }
+        return copy;
+    }
+
+    @Override
+    void writeValues(int[] indexes, Object values) {
+        int[] newValues = (int[]) values;
+        for (int i = 0; i < indexes.length; i++) {
+            UNSAFE.putOrderedInt(ints, offset(indexes[i]), newValues[i]);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * JVSTM: a Java library for Software Transactional Memory
+ * Copyright (C) 2005 INESC-ID Software Engineering Group
+ * http://www.esw.inesc-id.pt
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ * Author's contact:
+ * INESC-ID Software Engineering Group
+ * Rua Alves Redol 9
+ * 1000 - 029 Lisboa
+ * Portugal
+ */
+package jvstm;
+
+import static jvstm.UtilUnsafe.UNSAFE;
+
+/**
+ * Transactional array of longs, keeping both its values and their older
+ * versions in long[]s (see VArrayPrimitive).
+ */
+public class VLongArray extends VArrayPrimitive<Long> {
+
+    private static final long BASE = UNSAFE.arrayBaseOffset(long[].class);
+    private static final int SHIFT = 31 - Integer.numberOfLeadingZeros(UNSAFE.arrayIndexScale(long[].class));
+
+    private final long[] longs;
+
+    public VLongArray(int size) {
+        super(size);
+        longs = new long[size];
+    }
+
+    private static long offset(int index) {
+        return BASE + ((long) index << SHIFT);
+    }
+
+    public long getLong(int index) {
+        return get(index);
+    }
+
+    public void putLong(int index, long newValue) {
+        put(index, newValue);
+    }
+
+    @Override
+    Long latestValue(int index) {
+        return UNSAFE.getLongVolatile(longs, offset(index));
+    }
+
+    @Override
+    void setLatestValue(int index, Long value) {
+        UNSAFE.putOrderedLong(longs, offset(index), value);
+    }
+
+    @Override
+    Object newValues(int n) {
+        return new long[n];
+    }
+
+    @Override
+    Long valueAt(Object values, int pos) {
+        return ((long[]) values)[pos];
+    }
+
+    @Override
+    void setValueAt(Object values, int pos, Long value) {
+        ((long[]) values)[pos] = value;
+    }
+
+    @Override
+    Object copyValues(int[] indexes) {
+        long[] copy = new long[indexes.length];
+        for (int i = 0; i < indexes.length; i++) {
+            copy[i] = longs[indexes[i]];
+        }
+        return copy;
+    }
+
+    @Override
+    void writeValues(int[] indexes, Object values) {
+        long[] newValues = (long[]) values;
+        for (int i = 0; i < indexes.length; i++) {
+            UNSAFE.putOrderedLong(longs, offset(indexes[i]), newValues[i]);
+        }
+    }
+}
@@ -25,12 +25,14 @@
  */
 package jvstm;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import jvstm.util.Cons;
+import jvstm.util.IdentityArrayMap;
 import jvstm.util.Pair;
 
 /* This class contains information about the VBoxes modified by a transaction and the corresponding
@@ -65,11 +67,17 @@ public class WriteSet {
     /* Support for VArray */
     protected final VArrayCommitState[] arrayCommitState;
 
+    /* The Signature.hash of all the VBoxes written, used to validate read-sets */
+    protected int[] writtenHashes = NO_HASHES;
+    protected int writtenHashesCount = 0;
+
+    private static final int[] NO_HASHES = new int[0];
+
     protected WriteSet(ReadWriteTransaction committer) {
-        this(committer.boxesWrittenInPlace, committer.mergedTxs, committer.boxesWritten, committer.arrayWrites, committer.arrayWritesCount, committer, DEFAULT_BLOCK_SIZE);
+        this(committer.boxesWrittenInPlace, committer.mergedTxs, committer.boxesWritten, committer.arrayWrites, committer.arrayWritesCount, committer.arrayRangeWrites, committer, DEFAULT_BLOCK_SIZE);
     }
 
-    protected WriteSet(Cons<VBox> boxesWrittenInPlace, Cons<ParallelNestedTransaction> mergedTxs, Map<VBox, Object> boxesWritten, Map<VArrayEntry<?>, VArrayEntry<?>> arrayWrites, Map<VArray<?>, Integer> arrayWritesCount, ReadWriteTransaction committer, int blockSize) {
+    protected WriteSet(Cons<VBox> boxesWrittenInPlace, Cons<ParallelNestedTransaction> mergedTxs, Map<VBox, Object> boxesWritten, Map<VArrayEntry<?>, VArrayEntry<?>> arrayWrites, Map<VArray<?>, Integer> arrayWritesCount, Cons<VArrayRange<?>> arrayRangeWrites, ReadWriteTransaction committer, int blockSize) {
 
         int boxesWrittenInPlaceSize = boxesWrittenInPlace.size();
         for (ParallelNestedTransaction mergedTx : mergedTxs) {
@@ -77,46 +85,92 @@ public class WriteSet {
         }
         int maxRequiredSize = boxesWrittenInPlaceSize + boxesWritten.size();
 
-        VBox[] vboxes = new VBox[maxRequiredSize];
-        Object[] values = new Object[maxRequiredSize];
-        int pos = 0;
+        VBox[] vboxes;
+        Object[] values;
+        int pos;
+        // the unboxed values of VBoxPrimitives, allocated only if needed
+        long[] bits = null;
+
+        // Deal with VBoxes written in the fallback write-set
+        IdentityArrayMap<VBox, Object> adopted = null;
+        if ((boxesWritten instanceof IdentityArrayMap) && !boxesWritten.isEmpty()) {
+            // Adopt its arrays, without copying them.  The VBoxes written in
+            // place are appended to them, unless they are also in the
+            // fallback write-set, in which case the value written in place
+            // replaces the one in the arrays (it was written later).  The
+            // lookups in the map are not affected by this, because it is
+            // only consulted for boxes that are not owned by the committer.
+            adopted = (IdentityArrayMap<VBox, Object>) boxesWritten;
+            adopted.ensureCapacity(maxRequiredSize);
+            adopted.freeze();
+            vboxes = adopted.keyArray();
+            values = adopted.valueArray();
+            pos = adopted.size();
+        } else {
+            vboxes = new VBox[maxRequiredSize];
+            values = new Object[maxRequiredSize];
+            pos = 0;
+            for (Map.Entry<VBox, Object> entry : boxesWritten.entrySet()) {
+                VBox vbox = entry.getKey();
+                if (vbox.inplace.orec.owner == committer) {
+                    // if we also wrote directly to the box, we just skip this value
+                    continue;
+                }
+                vboxes[pos] = vbox;
+                values[pos++] = entry.getValue();
+            }
+        }
 
         // Deal with VBoxes written in place
         for (VBox vbox : boxesWrittenInPlace) {
-            vboxes[pos] = vbox;
-            values[pos++] = vbox.inplace.tempValue;
-            vbox.inplace.next = null;
+            InplaceWrite inplace = vbox.inplace;
+            int i = (adopted == null) ? -1 : adopted.indexOf(vbox);
+            if (i < 0) {
+                i = pos++;
+            }
+            Object value = inplace.tempValue;
+            if (value == InplaceWrite.UNBOXED_VALUE) {
+                if (bits == null) {
+                    bits = new long[maxRequiredSize];
+                }
+                bits[i] = inplace.tempBits;
+            }
+            vboxes[i] = vbox;
+            values[i] = value;
+            inplace.next = null;
         }
         for (ParallelNestedTransaction mergedTx : mergedTxs) {
             for (VBox vbox : mergedTx.boxesWrittenInPlace) {
-                vboxes[pos] = vbox;
-                values[pos++] = vbox.inplace.tempValue;
-                vbox.inplace.next = null;
+                InplaceWrite inplace = vbox.inplace;
+                int i = (adopted == null) ? -1 : adopted.indexOf(vbox);
+                if (i < 0) {
+                    i = pos++;
+                }
+                Object value = inplace.tempValue;
+                if (value == InplaceWrite.UNBOXED_VALUE) {
+                    if (bits == null) {
+                        bits = new long[maxRequiredSize];
+                    }
+                    bits[i] = inplace.tempBits;
+                }
+                vboxes[i] = vbox;
+                values[i] = value;
+                inplace.next = null;
             }
         }
 
-        // Deal with VBoxes written in the fallback write-set
-        for (Map.Entry<VBox, Object> entry : boxesWritten.entrySet()) {
-            VBox vbox = entry.getKey();
-            if (vbox.inplace.orec.owner == committer) {
-                // if we also wrote directly to the box, we just skip this value
-                continue;
-            }
-            vboxes[pos] = vbox;
-            values[pos++] = entry.getValue();
-        }
         int writeSetLength = pos;
         int nBlocksAux = writeSetLength / blockSize;
         int nBlocks = (nBlocksAux == 0 && writeSetLength > 0) ? 1 : nBlocksAux;
-        Cons<GarbageCollectable>[] bodiesPerBlock = new Cons[nBlocks + arrayWritesCount.size()];
+        this.arrayCommitState = prepareArrayWrites(arrayWrites, arrayWritesCount, arrayRangeWrites);
+        Cons<GarbageCollectable>[] bodiesPerBlock = new Cons[nBlocks + this.arrayCommitState.length];
         AtomicBoolean[] blocksDone = new AtomicBoolean[nBlocks];
         for (int i = 0; i < nBlocks; i++) {
             blocksDone[i] = new AtomicBoolean(false);
         }
 
-        this.normalWriteSet = new BoxesToCommit(nBlocks, blockSize, vboxes, values, writeSetLength, bodiesPerBlock, blocksDone);
-
-        this.arrayCommitState = prepareArrayWrites(arrayWrites, arrayWritesCount);
+        this.normalWriteSet = new BoxesToCommit(nBlocks, blockSize, vboxes, values, bits, writeSetLength, bodiesPerBlock, blocksDone);
+        addWrittenHashes(vboxes, writeSetLength);
 
     }
 
@@ -145,6 +199,9 @@ public class WriteSet {
         }
 
         this.perTxBoxesWriteSet = new BoxesToCommit(nBlocks, DEFAULT_BLOCK_SIZE, vboxes, values, writeSetLength, bodiesPerBlock, blocksDone);
+        // the boxes of a previous speculation (if any) remain in the
+        // signature, which may only cause false conflicts
+        addWrittenHashes(vboxes, writeSetLength);
     }
 
     // This constructor is used by InevitableTransactions. It is simpler
@@ -166,6 +223,8 @@ public class WriteSet {
         Cons<GarbageCollectable> bodiesCommitted = Cons.empty();
         for (VBox vbox : vboxesWrittenBack) {
             vboxes[pos] = vbox;
+            // never used, as the block is already written-back (and it is
+            // null for the bodies of VBoxPrimitives)
             values[pos++] = vbox.body.value;
             bodiesCommitted = bodiesCommitted.cons(vbox.body);
         }
@@ -173,6 +232,7 @@ public class WriteSet {
         blocksDone[0] = new AtomicBoolean(true);
 
         this.normalWriteSet = new BoxesToCommit(nBlocks, blockSize, vboxes, values, writeSetLength, bodiesPerBlock, blocksDone);
+        addWrittenHashes(vboxes, writeSetLength);
 
         this.arrayCommitState = new VArrayCommitState[0];
     }
@@ -190,11 +250,38 @@ public class WriteSet {
         }
 
         this.normalWriteSet = new BoxesToCommit(nBlocks, blockSize, allWrittenVBoxes, null, writeSetLength, bodiesPerBlock, blocksDone);
+        addWrittenHashes(allWrittenVBoxes, writeSetLength);
 
         this.arrayCommitState = new VArrayCommitState[0];
     }
 
-    protected final void helpWriteBack(int newTxNumber) {
+    private void addWrittenHashes(VBox[] vboxes, int length) {
+        int count = this.writtenHashesCount;
+        int[] hashes = this.writtenHashes;
+        if (count + length > hashes.length) {
+            hashes = Arrays.copyOf(hashes, count + length);
+        }
+        for (int i = 0; i < length; i++) {
+            hashes[count + i] = Signature.hash(vboxes[i]);
+        }
+        this.writtenHashes = hashes;
+        this.writtenHashesCount = count + length;
+    }
+
+    /* Returns false only if none of the VBoxes written is in the read-set
+     * summarized by the given signature.  This costs O(writes), whatever the
+     * size of the read-set. */
+    protected final boolean mayIntersect(Signature readSignature) {
+        int[] hashes = this.writtenHashes;
+        for (int i = this.writtenHashesCount - 1; i >= 0; i--) {
+            if (readSignature.mayContain(hashes[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    protected final void helpWriteBack(long newTxNumber) {
         // It is important that this order or processing is preserved: perTxBoxes' commits' writes to VBoxes
         // take precedence over the normal write set of the committing transaction
         processBoxes(this.perTxBoxesWriteSet, newTxNumber);
@@ -249,7 +336,7 @@ public class WriteSet {
         }
     }
 
-    private void processBoxes(BoxesToCommit boxesToCommit, int newTxNumber) {
+    private void processBoxes(BoxesToCommit boxesToCommit, long newTxNumber) {
         int nBlocks = boxesToCommit.nBlocks;
         if (nBlocks > 0) {
             AtomicBoolean[] blocksDone = boxesToCommit.blocksDone;
@@ -273,14 +360,17 @@ public class WriteSet {
         }
     }
 
-    private final Cons<GarbageCollectable> writeBackBlock(BoxesToCommit boxesToCommit, int block, int newTxNumber) {
+    private final Cons<GarbageCollectable> writeBackBlock(BoxesToCommit boxesToCommit, int block, long newTxNumber) {
         int min = block * boxesToCommit.blockSize;
         // max depends on whether this is the last block
         int max = (block == (boxesToCommit.nBlocks - 1)) ? boxesToCommit.writeSetLength : (min + boxesToCommit.blockSize);
 
         VBox[] vboxes = boxesToCommit.allWrittenVBoxes;
         Object[] values = boxesToCommit.allWrittenValues;
-        Cons<GarbageCollectable> newBodies = writeBackLoop(newTxNumber, min, max, vboxes, values);
+        long[] bits = boxesToCommit.allWrittenBits;
+        Cons<GarbageCollectable> newBodies = (bits == null)
+                ? writeBackLoop(newTxNumber, min, max, vboxes, values)
+                : writeBackLoop(newTxNumber, min, max, vboxes, values, bits);
 
         return newBodies;
     }
@@ -291,7 +381,7 @@ public class WriteSet {
      * !!!! ATENTION => this is a requirement for the versioned history reversion process of
      * the AOM (adaptive object metadata).
      */
-    protected Cons<GarbageCollectable> writeBackLoop(int newTxNumber, int min, int max, VBox[] vboxes, Object[] values) {
+    protected Cons<GarbageCollectable> writeBackLoop(long newTxNumber, int min, int max, VBox[] vboxes, Object[] values) {
         Cons<GarbageCollectable> newBodies = Cons.empty();
         for (int i = max - 1; i >= min; i--) {
             VBox vbox = vboxes[i];
@@ -303,34 +393,56 @@ public class WriteSet {
         return newBodies;
     }
 
+    /*
+     * Same as above, but for write-sets where some values were written
+     * unboxed to VBoxPrimitives.  These are marked in the values array with
+     * InplaceWrite.UNBOXED_VALUE and their bits are in the bits array.
+     */
+    protected Cons<GarbageCollectable> writeBackLoop(long newTxNumber, int min, int max, VBox[] vboxes, Object[] values, long[] bits) {
+        Cons<GarbageCollectable> newBodies = Cons.empty();
+        for (int i = max - 1; i >= min; i--) {
+            VBox vbox = vboxes[i];
+            Object newValue = values[i];
+
+            VBoxBody newBody;
+            if (newValue == InplaceWrite.UNBOXED_VALUE) {
+                newBody = ((VBoxPrimitive) vbox).commitBits(bits[i], newTxNumber);
+            } else {
+                newBody = vbox.commit((newValue == ReadWriteTransaction.NULL_VALUE) ? null : newValue, newTxNumber);
+            }
+            newBodies = newBodies.cons(newBody);
+        }
+        return newBodies;
+    }
+
     protected final int size() {
         return this.normalWriteSet.writeSetLength + this.perTxBoxesWriteSet.writeSetLength;
     }
 
     protected static WriteSet empty() {
-        return new WriteSet(Cons.<VBox>empty(), Cons.<ParallelNestedTransaction>empty(), ReadWriteTransaction.EMPTY_MAP, ReadWriteTransaction.EMPTY_MAP, ReadWriteTransaction.EMPTY_MAP, null, DEFAULT_BLOCK_SIZE);
+        return new WriteSet(Cons.<VBox>empty(), Cons.<ParallelNestedTransaction>empty(), ReadWriteTransaction.EMPTY_MAP, ReadWriteTransaction.EMPTY_MAP, ReadWriteTransaction.EMPTY_MAP, Cons.<VArrayRange<?>>empty(), null, DEFAULT_BLOCK_SIZE);
     }
 
     static final class VArrayCommitState {
         final VArray<?> array;
-        final VArrayEntry<?>[] writesToCommit;
         final int[] logEntryIndexes;
+        final Object newValues;
 
-        VArrayCommitState(VArray<?> array, VArrayEntry<?>[] writesToCommit, int[] logEntryIndexes) {
+        VArrayCommitState(VArray<?> array, int[] logEntryIndexes, Object newValues) {
             this.array = array;
-            this.writesToCommit = writesToCommit;
             this.logEntryIndexes = logEntryIndexes;
+            this.newValues = newValues;
         }
 
-        private Cons<GarbageCollectable> doWriteback(int newTxNumber) {
-            GarbageCollectable newLogNode = array.commit(newTxNumber, writesToCommit, logEntryIndexes);
+        private Cons<GarbageCollectable> doWriteback(long newTxNumber) {
+            GarbageCollectable newLogNode = array.commit(newTxNumber, logEntryIndexes, newValues);
             return Cons.<GarbageCollectable> empty().cons(newLogNode);
         }
     }
 
     private VArrayCommitState[] prepareArrayWrites(Map<VArrayEntry<?>, VArrayEntry<?>> arrayWrites,
-            Map<VArray<?>, Integer> arrayWritesCount) {
-        if (arrayWrites.isEmpty()) {
+            Map<VArray<?>, Integer> arrayWritesCount, Cons<VArrayRange<?>> arrayRangeWrites) {
+        if (arrayWrites.isEmpty() && arrayRangeWrites.isEmpty()) {
             return new VArrayCommitState[0];
         }
 
@@ -340,13 +452,13 @@ public class WriteSet {
                 arrayWritesCount.size());
 
         for (Map.Entry<VArray<?>, Integer> entry : arrayWritesCount.entrySet()) {
-            arrayWritebacks.put(entry.getKey(), new Pair<VArrayEntry<?>[], Integer>(new VArrayEntry[entry.getValue()], 0));
+            if (entry.getValue() > 0) {
+                arrayWritebacks.put(entry.getKey(), new Pair<VArrayEntry<?>[], Integer>(new VArrayEntry[entry.getValue()], 0));
+            }
         }
 
         VArray<?> lastArray = null;
         Pair<VArrayEntry<?>[], Integer> lastArrayEntries = null;
-        VArrayCommitState[] commitState = new VArrayCommitState[arrayWritesCount.size()];
-        int nextCommitStatePos = 0;
 
         // Split array write-set into per-array lists
         for (VArrayEntry<?> entry : arrayWrites.values()) {
@@ -361,25 +473,101 @@ public class WriteSet {
             // see what I mean
             int pos = ++lastArrayEntries.second - 1;
             lastArrayEntries.first[pos] = entry;
+        }
 
-            if (lastArrayEntries.first.length == pos + 1) { // We have all the
-                                                            // writes for the
-                                                            // current array
-                VArrayEntry<?>[] writesToCommit = lastArrayEntries.first;
+        // Split the ranges written into per-array lists, oldest first
+        Map<VArray<?>, Cons<VArrayRange<?>>> arrayRanges = new HashMap<VArray<?>, Cons<VArrayRange<?>>>();
+        for (VArrayRange<?> range : arrayRangeWrites) {
+            Cons<VArrayRange<?>> ranges = arrayRanges.get(range.array);
+            arrayRanges.put(range.array, (ranges == null ? Cons.<VArrayRange<?>>empty() : ranges).cons(range));
+        }
 
-                // Sort entries
-                java.util.Arrays.sort(writesToCommit);
+        VArrayCommitState[] commitState = new VArrayCommitState[arrayWritebacks.size() + arrayRanges.size()];
+        int nextCommitStatePos = 0;
 
-                // Create logEntryIndexes to be used in the log
-                int[] logEntryIndexes = new int[writesToCommit.length];
-                for (int i = 0; i < writesToCommit.length; i++) {
-                    logEntryIndexes[i] = writesToCommit[i].index;
-                }
+        for (Map.Entry<VArray<?>, Pair<VArrayEntry<?>[], Integer>> entry : arrayWritebacks.entrySet()) {
+            VArray<?> array = entry.getKey();
+            VArrayEntry<?>[] writesToCommit = entry.getValue().first;
+            // Sort entries
+            java.util.Arrays.sort(writesToCommit);
+            commitState[nextCommitStatePos++] = makeCommitState(array, writesToCommit, arrayRanges.remove(array));
+        }
+        for (Map.Entry<VArray<?>, Cons<VArrayRange<?>>> entry : arrayRanges.entrySet()) {
+            commitState[nextCommitStatePos++] = makeCommitState(entry.getKey(), new VArrayEntry[0], entry.getValue());
+        }
+
+        return nextCommitStatePos == commitState.length ? commitState : java.util.Arrays.copyOf(commitState, nextCommitStatePos);
+    }
+
+    /*
+     * Merges the (sorted) single-position writes and the ranges (oldest first)
+     * written to an array into the sorted indexes and values to write back.
+     * The single-position writes never overlap the ranges, but a range may
+     * overlap older ones, in which case its values take precedence.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static VArrayCommitState makeCommitState(VArray array, VArrayEntry<?>[] writesToCommit, Cons<VArrayRange<?>> ranges) {
+        if (ranges == null) {
+            int[] logEntryIndexes = new int[writesToCommit.length];
+            Object newValues = array.newValues(writesToCommit.length);
+            for (int i = 0; i < writesToCommit.length; i++) {
+                logEntryIndexes[i] = writesToCommit[i].index;
+                array.setValueAt(newValues, i, writesToCommit[i].getWriteValue());
+            }
+            return new VArrayCommitState(array, logEntryIndexes, newValues);
+        }
+
+        if (writesToCommit.length == 0 && ranges.rest().isEmpty()) {
+            // the common case: a single range, whose values are written back as they are
+            VArrayRange<?> range = ranges.first();
+            return new VArrayCommitState(array, range.indexes(), range.values);
+        }
+
+        // Each position written is represented by (index << 32 | source), where the source is
+        // the number of the range that wrote it (the newer, the higher) or, for a single-position
+        // write, the number of ranges plus its position in writesToCommit
+        VArrayRange<?>[] rangeArray = new VArrayRange[ranges.size()];
+        int total = writesToCommit.length;
+        int nRanges = 0;
+        for (VArrayRange<?> range : ranges) {
+            rangeArray[nRanges++] = range;
+            total += range.length;
+        }
 
-                commitState[nextCommitStatePos++] = new VArrayCommitState(array, writesToCommit, logEntryIndexes);
+        long[] keys = new long[total];
+        int k = 0;
+        for (int r = 0; r < nRanges; r++) {
+            VArrayRange<?> range = rangeArray[r];
+            for (int i = 0; i < range.length; i++) {
+                keys[k++] = ((long) (range.from + i) << 32) | r;
             }
         }
+        for (int i = 0; i < writesToCommit.length; i++) {
+            keys[k++] = ((long) writesToCommit[i].index << 32) | (nRanges + i);
+        }
+        java.util.Arrays.sort(keys);
 
-        return commitState;
+        // Keep only the last (newest) source of each index
+        int n = 0;
+        for (int i = 0; i < total; i++) {
+            if (i + 1 == total || (keys[i] >>> 32) != (keys[i + 1] >>> 32)) {
+                keys[n++] = keys[i];
+            }
+        }
+
+        int[] logEntryIndexes = new int[n];
+        Object newValues = array.newValues(n);
+        for (int i = 0; i < n; i++) {
+            int index = (int) (keys[i] >>> 32);
+            int source = (int) keys[i];
+            logEntryIndexes[i] = index;
+            if (source < nRanges) {
+                VArrayRange<?> range = rangeArray[source];
+                System.arraycopy(range.values, index - range.from, newValues, i, 1);
+            } else {
+                array.setValueAt(newValues, i, writesToCommit[source - nRanges].getWriteValue());
+            }
+        }
+        return new VArrayCommitState(array, logEntryIndexes, newValues);
     }
 }
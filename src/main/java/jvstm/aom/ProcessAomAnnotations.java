@@ -0,0 +1,478 @@
+/*
+ * JVSTM: a Java library for Software Transactional Memory
+ * Copyright (C) 2005 INESC-ID Software Engineering Group
+ * http://www.esw.inesc-id.pt
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ * Author's contact:
+ * INESC-ID Software Engineering Group
+ * Rua Alves Redol 9
+ * 1000 - 029 Lisboa
+ * Portugal
+ */
+package jvstm.aom;
+
+import static org.objectweb.asm.Opcodes.ACC_ABSTRACT;
+import static org.objectweb.asm.Opcodes.ACC_ANNOTATION;
+import static org.objectweb.asm.Opcodes.ACC_ENUM;
+import static org.objectweb.asm.Opcodes.ACC_FINAL;
+import static org.objectweb.asm.Opcodes.ACC_INTERFACE;
+import static org.objectweb.asm.Opcodes.ACC_PRIVATE;
+import static org.objectweb.asm.Opcodes.ACC_PROTECTED;
+import static org.objectweb.asm.Opcodes.ACC_PUBLIC;
+import static org.objectweb.asm.Opcodes.ACC_STATIC;
+import static org.objectweb.asm.Opcodes.ACC_SYNTHETIC;
+import static org.objectweb.asm.Opcodes.ACC_TRANSIENT;
+import static org.objectweb.asm.Opcodes.ALOAD;
+import static org.objectweb.asm.Opcodes.ARETURN;
+import static org.objectweb.asm.Opcodes.ASTORE;
+import static org.objectweb.asm.Opcodes.CHECKCAST;
+import static org.objectweb.asm.Opcodes.GETFIELD;
+import static org.objectweb.asm.Opcodes.GETSTATIC;
+import static org.objectweb.asm.Opcodes.ILOAD;
+import static org.objectweb.asm.Opcodes.INVOKESPECIAL;
+import static org.objectweb.asm.Opcodes.INVOKESTATIC;
+import static org.objectweb.asm.Opcodes.INVOKEVIRTUAL;
+import static org.objectweb.asm.Opcodes.IRETURN;
+import static org.objectweb.asm.Opcodes.NEW;
+import static org.objectweb.asm.Opcodes.PUTFIELD;
+import static org.objectweb.asm.Opcodes.PUTSTATIC;
+import static org.objectweb.asm.Opcodes.RETURN;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.AnnotationNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.TypeInsnNode;
+import org.objectweb.asm.tree.VarInsnNode;
+
+/**
+ * Post-compilation pass that turns every class annotated with
+ * {@link Transactional} into a {@link jvstm.VBoxAom} subclass, following
+ * the pattern of the hand-written AOM classes:
+ *
+ * <ul>
+ * <li>the superclass becomes <code>VBoxAom&lt;C&gt;</code>;</li>
+ * <li>each versioned field <code>f</code> gets a <code>f__ADDRESS__</code>
+ * offset, initialized in the static initializer;</li>
+ * <li><code>replicate</code> and <code>toCompactLayout</code> are
+ * generated, copying the versioned fields;</li>
+ * <li>each <code>getfield</code>/<code>putfield</code> of a versioned
+ * field, in any of the processed classes, is replaced by a call to a
+ * static accessor (<code>f$aom$get</code>/<code>f$aom$put</code>) that goes
+ * through the {@link jvstm.AomBarriers}.</li>
+ * </ul>
+ *
+ * The constructors of the annotated class keep accessing its fields
+ * directly, because the object is still in the compact layout and not
+ * yet visible to other transactions.  Fields are matched by their
+ * declaring class, so accesses through a subclass reference are not
+ * redirected.  Classes that already extend <code>VBoxAom</code> are left
+ * untouched, which makes the pass safe to run more than once over the same
+ * directory.
+ *
+ * Usage: <code>ProcessAomAnnotations &lt;dir or class file&gt;...</code>
+ */
+public class ProcessAomAnnotations {
+
+    private static final String TRANSACTIONAL = Type.getDescriptor(Transactional.class);
+    private static final String OBJECT = "java/lang/Object";
+    private static final String VBOX_AOM = "jvstm/VBoxAom";
+    private static final String AOM_BARRIERS = "jvstm/AomBarriers";
+    private static final String TRANSACTION = "jvstm/Transaction";
+    private static final String READ_WRITE_TRANSACTION = "jvstm/ReadWriteTransaction";
+    private static final String UTIL_UNSAFE = "jvstm/UtilUnsafe";
+
+    static final String ADDRESS_SUFFIX = "__ADDRESS__";
+    static final String GETTER_SUFFIX = "$aom$get";
+    static final String SETTER_SUFFIX = "$aom$put";
+
+    private final String[] files;
+
+    // class files found, and the versioned fields of each @Transactional class
+    private final Map<File, ClassNode> classes = new LinkedHashMap<File, ClassNode>();
+    private final Map<String, List<FieldNode>> versionedFields = new HashMap<String, List<FieldNode>>();
+
+    public ProcessAomAnnotations(String[] files) {
+        this.files = files;
+    }
+
+    public static void main(final String args[]) throws Exception {
+        new ProcessAomAnnotations(args).process();
+    }
+
+    public void process() {
+        for (String file : files) {
+            collect(new File(file));
+        }
+        for (Map.Entry<File, ClassNode> entry : classes.entrySet()) {
+            ClassNode cn = entry.getValue();
+            boolean changed = false;
+            if (versionedFields.containsKey(cn.name) && !VBOX_AOM.equals(cn.superName)) {
+                makeVBoxAom(cn, versionedFields.get(cn.name));
+                changed = true;
+            }
+            changed |= redirectFieldAccesses(cn);
+            if (changed) {
+                ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+                cn.accept(cw);
+                writeClassFile(entry.getKey(), cw.toByteArray());
+            }
+        }
+    }
+
+    /*
+     * First pass: read every class file and find the @Transactional classes.
+     */
+    private void collect(File file) {
+        if (file.isDirectory()) {
+            for (File subFile : file.listFiles()) {
+                collect(subFile);
+            }
+        } else if (file.getName().endsWith(".class")) {
+            ClassNode cn = readClassFile(file);
+            classes.put(file, cn);
+            if (isTransactional(cn)) {
+                checkTransactional(cn);
+                versionedFields.put(cn.name, getVersionedFields(cn));
+            }
+        }
+    }
+
+    private static boolean isTransactional(ClassNode cn) {
+        List<AnnotationNode> annotations = new ArrayList<AnnotationNode>();
+        if (cn.invisibleAnnotations != null) annotations.addAll(cn.invisibleAnnotations);
+        if (cn.visibleAnnotations != null) annotations.addAll(cn.visibleAnnotations);
+        for (AnnotationNode an : annotations) {
+            if (TRANSACTIONAL.equals(an.desc)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void checkTransactional(ClassNode cn) {
+        String className = Type.getObjectType(cn.name).getClassName();
+        if ((cn.access & (ACC_INTERFACE | ACC_ANNOTATION | ACC_ENUM | ACC_ABSTRACT)) != 0) {
+            throw new RuntimeException("Class: " + className + " must be a concrete class to be @Transactional");
+        }
+        if (!OBJECT.equals(cn.superName) && !VBOX_AOM.equals(cn.superName)) {
+            throw new RuntimeException("Class: " + className + " must extend java.lang.Object to be @Transactional");
+        }
+        if (cn.signature != null && cn.signature.startsWith("<")) {
+            throw new RuntimeException("Class: " + className + " cannot declare type parameters to be @Transactional");
+        }
+    }
+
+    private static List<FieldNode> getVersionedFields(ClassNode cn) {
+        List<FieldNode> result = new ArrayList<FieldNode>();
+        for (FieldNode fn : cn.fields) {
+            if ((fn.access & (ACC_STATIC | ACC_FINAL | ACC_TRANSIENT | ACC_SYNTHETIC)) == 0) {
+                result.add(fn);
+            }
+        }
+        return result;
+    }
+
+    /*
+     * Second pass, for each @Transactional class.
+     */
+    private static void makeVBoxAom(ClassNode cn, List<FieldNode> fields) {
+        String classDesc = Type.getObjectType(cn.name).getDescriptor();
+        String aomSignature = "L" + VBOX_AOM + "<" + classDesc + ">;";
+        if (cn.signature == null) {
+            StringBuilder sb = new StringBuilder(aomSignature);
+            for (String itf : cn.interfaces) {
+                sb.append('L').append(itf).append(';');
+            }
+            cn.signature = sb.toString();
+        } else {
+            cn.signature = aomSignature + cn.signature.substring(("L" + OBJECT + ";").length());
+        }
+        cn.superName = VBOX_AOM;
+
+        for (MethodNode mn : cn.methods) {
+            if (mn.name.equals("<init>")) {
+                redirectSuperConstructor(mn);
+            }
+        }
+
+        MethodNode clinit = null;
+        for (MethodNode mn : cn.methods) {
+            if (mn.name.equals("<clinit>")) {
+                clinit = mn;
+            }
+        }
+        if (clinit == null) {
+            clinit = new MethodNode(ACC_STATIC, "<clinit>", "()V", null, null);
+            clinit.instructions.add(new InsnNode(RETURN));
+            cn.methods.add(clinit);
+        }
+
+        InsnList offsets = new InsnList();
+        for (FieldNode fn : fields) {
+            String address = fn.name + ADDRESS_SUFFIX;
+            cn.fields.add(new FieldNode(ACC_PRIVATE | ACC_STATIC | ACC_FINAL | ACC_SYNTHETIC, address, "J", null, null));
+            offsets.add(new LdcInsnNode(Type.getObjectType(cn.name)));
+            offsets.add(new LdcInsnNode(fn.name));
+            offsets.add(new MethodInsnNode(INVOKESTATIC, UTIL_UNSAFE, "objectFieldOffset", "(Ljava/lang/Class;Ljava/lang/String;)J"));
+            offsets.add(new FieldInsnNode(PUTSTATIC, cn.name, address, "J"));
+
+            cn.methods.add(createGetter(cn.name, fn));
+            cn.methods.add(createSetter(cn.name, fn));
+        }
+        clinit.instructions.insert(offsets);
+
+        if (!declaresMethod(cn, "replicate", "()Ljava/lang/Object;")) {
+            cn.methods.add(createReplicate(cn.name, fields));
+        }
+        if (!declaresMethod(cn, "toCompactLayout", "(Ljava/lang/Object;)V")) {
+            cn.methods.add(createToCompactLayout(cn.name, fields));
+        }
+    }
+
+    /*
+     * Replaces the call to Object's constructor by a call to VBoxAom's,
+     * skipping the constructors of plain Objects created with new.
+     */
+    private static void redirectSuperConstructor(MethodNode mn) {
+        int newObjects = 0;
+        for (AbstractInsnNode insn = mn.instructions.getFirst(); insn != null; insn = insn.getNext()) {
+            if (insn.getOpcode() == NEW && ((TypeInsnNode) insn).desc.equals(OBJECT)) {
+                newObjects++;
+            } else if (insn.getOpcode() == INVOKESPECIAL) {
+                MethodInsnNode min = (MethodInsnNode) insn;
+                if (min.owner.equals(OBJECT) && min.name.equals("<init>")) {
+                    if (newObjects > 0) {
+                        newObjects--;
+                    } else {
+                        min.owner = VBOX_AOM;
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean declaresMethod(ClassNode cn, String name, String desc) {
+        for (MethodNode mn : cn.methods) {
+            if (mn.name.equals(name) && mn.desc.equals(desc)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int accessorAccess(FieldNode fn) {
+        return (fn.access & (ACC_PUBLIC | ACC_PROTECTED | ACC_PRIVATE)) | ACC_STATIC | ACC_SYNTHETIC;
+    }
+
+    /*
+     * static T f$aom$get(C ref) {
+     *     return ((C) AomBarriers.get(Transaction.current(), ref)).f;
+     * }
+     */
+    private static MethodNode createGetter(String owner, FieldNode fn) {
+        String ownerDesc = Type.getObjectType(owner).getDescriptor();
+        MethodNode mn = new MethodNode(accessorAccess(fn), fn.name + GETTER_SUFFIX, "(" + ownerDesc + ")" + fn.desc, null, null);
+        InsnList il = mn.instructions;
+        il.add(new MethodInsnNode(INVOKESTATIC, TRANSACTION, "current", "()Ljvstm/Transaction;"));
+        il.add(new VarInsnNode(ALOAD, 0));
+        il.add(new MethodInsnNode(INVOKESTATIC, AOM_BARRIERS, "get", "(Ljvstm/Transaction;Ljvstm/VBoxAom;)Ljvstm/VBoxAom;"));
+        il.add(new TypeInsnNode(CHECKCAST, owner));
+        il.add(new FieldInsnNode(GETFIELD, owner, fn.name, fn.desc));
+        il.add(new InsnNode(Type.getType(fn.desc).getOpcode(IRETURN)));
+        return mn;
+    }
+
+    /*
+     * static void f$aom$put(C ref, T value) {
+     *     AomBarriers.put((ReadWriteTransaction) Transaction.current(), ref, value, f__ADDRESS__);
+     * }
+     */
+    private static MethodNode createSetter(String owner, FieldNode fn) {
+        String ownerDesc = Type.getObjectType(owner).getDescriptor();
+        Type type = Type.getType(fn.desc);
+        String barrierType = (type.getSort() == Type.OBJECT || type.getSort() == Type.ARRAY) ? "Ljava/lang/Object;" : fn.desc;
+        MethodNode mn = new MethodNode(accessorAccess(fn), fn.name + SETTER_SUFFIX, "(" + ownerDesc + fn.desc + ")V", null, null);
+        InsnList il = mn.instructions;
+        il.add(new MethodInsnNode(INVOKESTATIC, TRANSACTION, "current", "()Ljvstm/Transaction;"));
+        il.add(new TypeInsnNode(CHECKCAST, READ_WRITE_TRANSACTION));
+        il.add(new VarInsnNode(ALOAD, 0));
+        il.add(new VarInsnNode(type.getOpcode(ILOAD), 1));
+        il.add(new FieldInsnNode(GETSTATIC, owner, fn.name + ADDRESS_SUFFIX, "J"));
+        il.add(new MethodInsnNode(INVOKESTATIC, AOM_BARRIERS, "put", "(Ljvstm/ReadWriteTransaction;Ljvstm/VBoxAom;" + barrierType + "J)V"));
+        il.add(new InsnNode(RETURN));
+        return mn;
+    }
+
+    /*
+     * public C replicate() {
+     *     C res = (C) UNSAFE.allocateInstance(C.class);
+     *     res.f = this.f; ...
+     *     return res;
+     * }
+     */
+    private static MethodNode createReplicate(String owner, List<FieldNode> fields) {
+        MethodNode mn = new MethodNode(ACC_PUBLIC, "replicate", "()Ljava/lang/Object;", null, null);
+        InsnList il = mn.instructions;
+        il.add(new FieldInsnNode(GETSTATIC, UTIL_UNSAFE, "UNSAFE", "Lsun/misc/Unsafe;"));
+        il.add(new LdcInsnNode(Type.getObjectType(owner)));
+        il.add(new MethodInsnNode(INVOKEVIRTUAL, "sun/misc/Unsafe", "allocateInstance", "(Ljava/lang/Class;)Ljava/lang/Object;"));
+        il.add(new TypeInsnNode(CHECKCAST, owner));
+        il.add(new VarInsnNode(ASTORE, 1));
+        il.add(copyFields(owner, fields, 1, 0));
+        il.add(new VarInsnNode(ALOAD, 1));
+        il.add(new InsnNode(ARETURN));
+        return mn;
+    }
+
+    /*
+     * public void toCompactLayout(C from) {
+     *     this.f = from.f; ...
+     * }
+     */
+    private static MethodNode createToCompactLayout(String owner, List<FieldNode> fields) {
+        MethodNode mn = new MethodNode(ACC_PUBLIC, "toCompactLayout", "(Ljava/lang/Object;)V", null, null);
+        InsnList il = mn.instructions;
+        il.add(new VarInsnNode(ALOAD, 1));
+        il.add(new TypeInsnNode(CHECKCAST, owner));
+        il.add(new VarInsnNode(ASTORE, 2));
+        il.add(copyFields(owner, fields, 0, 2));
+        il.add(new InsnNode(RETURN));
+        return mn;
+    }
+
+    private static InsnList copyFields(String owner, List<FieldNode> fields, int to, int from) {
+        InsnList il = new InsnList();
+        for (FieldNode fn : fields) {
+            il.add(new VarInsnNode(ALOAD, to));
+            il.add(new VarInsnNode(ALOAD, from));
+            il.add(new FieldInsnNode(GETFIELD, owner, fn.name, fn.desc));
+            il.add(new FieldInsnNode(PUTFIELD, owner, fn.name, fn.desc));
+        }
+        return il;
+    }
+
+    /*
+     * Second pass, for every class: replace the accesses to versioned
+     * fields by calls to their accessors.
+     */
+    private boolean redirectFieldAccesses(ClassNode cn) {
+        boolean changed = false;
+        for (MethodNode mn : cn.methods) {
+            if (versionedFields.containsKey(cn.name) && isOwnMethod(mn)) {
+                continue;
+            }
+            for (AbstractInsnNode insn = mn.instructions.getFirst(); insn != null; insn = insn.getNext()) {
+                if (insn.getOpcode() != GETFIELD && insn.getOpcode() != PUTFIELD) {
+                    continue;
+                }
+                FieldInsnNode fin = (FieldInsnNode) insn;
+                if (!isVersioned(fin.owner, fin.name)) {
+                    continue;
+                }
+                String ownerDesc = Type.getObjectType(fin.owner).getDescriptor();
+                MethodInsnNode call = (insn.getOpcode() == GETFIELD)
+                    ? new MethodInsnNode(INVOKESTATIC, fin.owner, fin.name + GETTER_SUFFIX, "(" + ownerDesc + ")" + fin.desc)
+                    : new MethodInsnNode(INVOKESTATIC, fin.owner, fin.name + SETTER_SUFFIX, "(" + ownerDesc + fin.desc + ")V");
+                mn.instructions.set(insn, call);
+                insn = call;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /*
+     * Methods of a @Transactional class that must access its fields
+     * directly: the constructors and the generated methods.
+     */
+    private static boolean isOwnMethod(MethodNode mn) {
+        return mn.name.equals("<init>")
+            || mn.name.endsWith(GETTER_SUFFIX)
+            || mn.name.endsWith(SETTER_SUFFIX)
+            || mn.name.equals("replicate") && mn.desc.equals("()Ljava/lang/Object;")
+            || mn.name.equals("toCompactLayout") && mn.desc.equals("(Ljava/lang/Object;)V");
+    }
+
+    private boolean isVersioned(String owner, String name) {
+        List<FieldNode> fields = versionedFields.get(owner);
+        if (fields != null) {
+            for (FieldNode fn : fields) {
+                if (fn.name.equals(name)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static ClassNode readClassFile(File classFile) {
+        InputStream is = null;
+        try {
+            is = new FileInputStream(classFile);
+            ClassNode cn = new ClassNode();
+            new ClassReader(is).accept(cn, 0);
+            return cn;
+        } catch (IOException e) {
+            throw new Error("Couldn't read class file " + classFile, e);
+        } finally {
+            if (is != null) {
+                try {
+                    is.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+    }
+
+    private static void writeClassFile(File classFile, byte[] bytecode) {
+        FileOutputStream fos = null;
+        try {
+            fos = new FileOutputStream(classFile);
+            fos.write(bytecode);
+        } catch (IOException e) {
+            throw new Error("Couldn't write class file " + classFile, e);
+        } finally {
+            if (fos != null) {
+                try {
+                    fos.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+    }
+}
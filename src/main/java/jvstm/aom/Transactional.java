@@ -0,0 +1,49 @@
+/*
+ * JVSTM: a Java library for Software Transactional Memory
+ * Copyright (C) 2005 INESC-ID Software Engineering Group
+ * http://www.esw.inesc-id.pt
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ * Author's contact:
+ * INESC-ID Software Engineering Group
+ * Rua Alves Redol 9
+ * 1000 - 029 Lisboa
+ * Portugal
+ */
+package jvstm.aom;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a plain class whose instances should be transactional objects
+ * of the AOM (Adaptive Object Metadata) approach.
+ *
+ * After compilation, {@link ProcessAomAnnotations} turns the annotated
+ * class into a subclass of {@link jvstm.VBoxAom}: it generates the field
+ * offsets, the <code>replicate</code> and <code>toCompactLayout</code>
+ * methods, and routes every access to a versioned field through the
+ * {@link jvstm.AomBarriers}, just as in a hand-written class such as
+ * <code>AomIntPoint</code>.
+ *
+ * The versioned fields are the instance fields declared by the annotated
+ * class that are neither <code>final</code> nor <code>transient</code>.
+ * The annotated class must directly extend <code>java.lang.Object</code>
+ * and may not be abstract nor declare type parameters.
+ */
+@Target(ElementType.TYPE)
+public @interface Transactional {
+}
@@ -0,0 +1,87 @@
+/*
+ * JVSTM: a Java library for Software Transactional Memory
+ * Copyright (C) 2005 INESC-ID Software Engineering Group
+ * http://www.esw.inesc-id.pt
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ * Author's contact:
+ * INESC-ID Software Engineering Group
+ * Rua Alves Redol 9
+ * 1000 - 029 Lisboa
+ * Portugal
+ */
+package jvstm.atomic;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Gives priority to the transactions that failed the most.  A transaction
+ * that is retried publishes its number of attempts as its priority, and the
+ * transactions of this manager with a lower priority wait (for a bounded
+ * time) before each attempt, while the published priority is higher than
+ * theirs.  The idea is to let a starving transaction commit without being
+ * invalidated by the commits of shorter, younger ones.  After a number of
+ * failed attempts the transaction is escalated to an inevitable transaction.
+ *
+ * Only the highest priority is published, so this is a best-effort policy:
+ * when several transactions are starving, only the one that failed the most
+ * is favoured.
+ */
+public class AbortCountPriority extends ContentionManager {
+
+    private static final int MAX_YIELDS = 1000;
+
+    private final AtomicInteger highestPriority = new AtomicInteger(0);
+
+    public AbortCountPriority() {
+        this(32);
+    }
+
+    protected AbortCountPriority(int maxAttempts) {
+        super(maxAttempts);
+    }
+
+    @Override
+    protected void beforeAttempt(int attempt) {
+        int highest = highestPriority.get();
+        if (attempt > 1) {
+            // publish our priority, if it is the highest
+            while (highest < attempt && !highestPriority.compareAndSet(highest, attempt)) {
+                highest = highestPriority.get();
+            }
+        }
+
+        if (highest > attempt) {
+            long start = System.nanoTime();
+            for (int i = 0; i < MAX_YIELDS && highestPriority.get() > attempt; i++) {
+                Thread.yield();
+            }
+            recordWait(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    protected void onAbort(int attempt) {
+    }
+
+    @Override
+    protected void onFinish(int attempts) {
+        if (attempts > 1) {
+            // withdraw our priority, unless someone else published a higher one
+            highestPriority.compareAndSet(attempts, 0);
+        }
+    }
+}
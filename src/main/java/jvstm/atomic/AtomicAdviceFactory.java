@@ -38,6 +38,12 @@ public final class AtomicAdviceFactory extends AdviceFactory<Atomic> {
     }
 
     public Advice newAdvice(Atomic atomic) {
+        if (atomic.contentionManager() != ContentionManager.class) {
+            ContentionManager cm = ContentionManager.getInstance(atomic.contentionManager());
+            if (atomic.readOnly()) return new ManagedAtomicContext(true, true, cm);
+            if (!atomic.canFail()) return new ManagedAtomicContext(true, false, cm);
+            return new ManagedAtomicContext(false, atomic.speculativeReadOnly(), cm);
+        }
         if (atomic.readOnly()) return DefaultAtomicContext.FLATTEN_READONLY;
         if (!atomic.canFail()) return DefaultAtomicContext.FLATTEN_READWRITE;
         if (atomic.speculativeReadOnly()) return DefaultAtomicContext.READ_ONLY;
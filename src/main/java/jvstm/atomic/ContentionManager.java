@@ -0,0 +1,171 @@
+/*
+ * JVSTM: a Java library for Software Transactional Memory
+ * Copyright (C) 2005 INESC-ID Software Engineering Group
+ * http://www.esw.inesc-id.pt
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ * Author's contact:
+ * INESC-ID Software Engineering Group
+ * Rua Alves Redol 9
+ * 1000 - 029 Lisboa
+ * Portugal
+ */
+package jvstm.atomic;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A ContentionManager decides what an atomic method does between a failed
+ * attempt to run its transaction and the next one: retry right away, wait
+ * for a while, give way to other transactions, or escalate to an
+ * inevitable transaction, which cannot fail.
+ *
+ * A contention manager is selected per atomic method, through the
+ * contentionManager attribute of the Atomic annotation.  There is a single
+ * instance of each ContentionManager class (see getInstance), shared by all
+ * the methods that select it, so that its counters allow the comparison of
+ * different strategies.  Subclasses must, thus, be thread-safe and have a
+ * public no-arg constructor.
+ *
+ * An exception thrown by the atomic method discards its writes whether the
+ * transaction was escalated or not: an inevitable transaction cannot abort,
+ * but it restores the values it overwrote before it commits.  Note that
+ * inevitable transactions do not support PerTxBoxes nor writes to VArrays,
+ * and top-level transactions only are escalated.
+ */
+public abstract class ContentionManager {
+
+    private static final ConcurrentHashMap<Class<? extends ContentionManager>, ContentionManager> instances =
+        new ConcurrentHashMap<Class<? extends ContentionManager>, ContentionManager>();
+
+    public static ContentionManager getInstance(Class<? extends ContentionManager> type) {
+        ContentionManager cm = instances.get(type);
+        if (cm == null) {
+            try {
+                cm = type.newInstance();
+            } catch (Exception e) {
+                throw new IllegalArgumentException("Cannot instantiate the contention manager " + type.getName(), e);
+            }
+            ContentionManager existing = instances.putIfAbsent(type, cm);
+            if (existing != null) {
+                cm = existing;
+            }
+        }
+        return cm;
+    }
+
+    // 0 means that transactions are never escalated
+    private final int maxAttempts;
+
+    private final AtomicLong commits = new AtomicLong();
+    private final AtomicLong aborts = new AtomicLong();
+    private final AtomicLong escalations = new AtomicLong();
+    private final AtomicLong waits = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+
+    /**
+     * @param maxAttempts The number of failed attempts after which the
+     * transaction is escalated to an inevitable transaction, or 0 for never.
+     */
+    protected ContentionManager(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Invoked before each attempt to run the transaction.  May delay the
+     * current thread.
+     *
+     * @param attempt The number of the attempt, starting at 1.
+     */
+    protected void beforeAttempt(int attempt) {
+    }
+
+    /**
+     * Invoked after a failed attempt that will be retried by a regular
+     * transaction.  May delay the current thread.
+     *
+     * @param attempt The number of the attempt that failed, starting at 1.
+     */
+    protected abstract void onAbort(int attempt);
+
+    /**
+     * Invoked once per execution of the atomic method, after its last
+     * attempt, whether it committed or not.
+     *
+     * @param attempts The number of attempts made.
+     */
+    protected void onFinish(int attempts) {
+    }
+
+    final void committed() {
+        commits.incrementAndGet();
+    }
+
+    /* Returns true iff the next attempt should be inevitable */
+    final boolean aborted(int attempt, boolean canEscalate) {
+        aborts.incrementAndGet();
+        if (canEscalate && maxAttempts > 0 && attempt >= maxAttempts) {
+            escalations.incrementAndGet();
+            return true;
+        }
+        onAbort(attempt);
+        return false;
+    }
+
+    /* To be used by the subclasses, whenever they delay a thread */
+    protected final void recordWait(long nanos) {
+        waits.incrementAndGet();
+        waitNanos.addAndGet(nanos);
+    }
+
+    public long getCommits() {
+        return commits.get();
+    }
+
+    public long getAborts() {
+        return aborts.get();
+    }
+
+    public long getEscalations() {
+        return escalations.get();
+    }
+
+    public long getWaits() {
+        return waits.get();
+    }
+
+    public long getWaitNanos() {
+        return waitNanos.get();
+    }
+
+    public void resetCounters() {
+        commits.set(0);
+        aborts.set(0);
+        escalations.set(0);
+        waits.set(0);
+        waitNanos.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + ": commits = " + getCommits()
+            + ", aborts = " + getAborts()
+            + ", escalations = " + getEscalations()
+            + ", waits = " + getWaits()
+            + " (" + (getWaitNanos() / 1000000) + " ms)";
+    }
+}
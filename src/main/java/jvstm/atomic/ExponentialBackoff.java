@@ -0,0 +1,73 @@
+/*
+ * JVSTM: a Java library for Software Transactional Memory
+ * Copyright (C) 2005 INESC-ID Software Engineering Group
+ * http://www.esw.inesc-id.pt
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ * Author's contact:
+ * INESC-ID Software Engineering Group
+ * Rua Alves Redol 9
+ * 1000 - 029 Lisboa
+ * Portugal
+ */
+package jvstm.atomic;
+
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Delays each retry by a random time, taken from an interval that doubles
+ * with each failed attempt, up to a maximum.  After a number of failed
+ * attempts the transaction is escalated to an inevitable transaction.
+ *
+ * The default parameters may be changed by subclassing.
+ */
+public class ExponentialBackoff extends ContentionManager {
+
+    private static final ThreadLocal<Random> random = new ThreadLocal<Random>() {
+        @Override
+        protected Random initialValue() {
+            return new Random();
+        }
+    };
+
+    private final long minDelayNanos;
+    private final long maxDelayNanos;
+
+    public ExponentialBackoff() {
+        this(1000, 1000000, 16);
+    }
+
+    protected ExponentialBackoff(long minDelayNanos, long maxDelayNanos, int maxAttempts) {
+        super(maxAttempts);
+        this.minDelayNanos = minDelayNanos;
+        this.maxDelayNanos = maxDelayNanos;
+    }
+
+    @Override
+    protected void onAbort(int attempt) {
+        long limit = minDelayNanos << Math.min(attempt - 1, 30);
+        if (limit <= 0 || limit > maxDelayNanos) {
+            limit = maxDelayNanos;
+        }
+        long delay = (long)(random.get().nextDouble() * limit);
+        if (delay > 0) {
+            long start = System.nanoTime();
+            LockSupport.parkNanos(delay);
+            recordWait(System.nanoTime() - start);
+        }
+    }
+}
@@ -31,13 +31,85 @@ import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 import jvstm.ActiveTransactionsRecord;
 import jvstm.Transaction;
+import jvstm.TransactionSignaller;
 
 public class GCTask implements Runnable {
-    private ActiveTransactionsRecord lastCleanedRecord;
+
+    /*
+     * A cleaning pass starts as soon as one of the following happens: the
+     * number of records that may be cleaned reaches the commit threshold,
+     * there are records that may be cleaned and the used heap is above the
+     * heap threshold, or the maximum interval elapses.  Only the records
+     * older than the oldest one still in use may be cleaned, so a running
+     * transaction that pins an old record does not make the GC thread pass
+     * over and over without cleaning anything: it waits for another
+     * commitThreshold commits (the commit that crosses them wakes it up) or
+     * for the maximum interval.  Passes are never closer than the minimum
+     * interval.  Each pass hands the records to clean to the cleaners pool in
+     * slices of at most sliceSize records.  At most two slices per cleaner may
+     * be queued: beyond that the GC thread cleans the slice itself, so that a
+     * burst of commits is cleaned in bounded increments without piling up
+     * tasks.
+     *
+     * All of these may be set through the following system properties, or
+     * changed at runtime through the setters below.
+     */
+    static final String MAX_INTERVAL_PROP = "jvstm.gc.maxInterval";        // milliseconds
+    static final String MIN_INTERVAL_PROP = "jvstm.gc.minInterval";        // milliseconds
+    static final String COMMIT_THRESHOLD_PROP = "jvstm.gc.commitThreshold"; // records
+    static final String HEAP_THRESHOLD_PROP = "jvstm.gc.heapThreshold";    // percentage of the max heap
+    static final String SLICE_SIZE_PROP = "jvstm.gc.sliceSize";            // records
+    static final String POOL_SIZE_PROP = "jvstm.gc.poolSize";              // threads
+
+    private volatile long maxInterval = Long.getLong(MAX_INTERVAL_PROP, 500);
+    private volatile long minInterval = Long.getLong(MIN_INTERVAL_PROP, 5);
+    private volatile int commitThreshold = Integer.getInteger(COMMIT_THRESHOLD_PROP, 4096);
+    private volatile int heapThreshold = Integer.getInteger(HEAP_THRESHOLD_PROP, 70);
+    private volatile int sliceSize = Integer.getInteger(SLICE_SIZE_PROP, 256);
+
+    /*
+     * Optionally, the history kept for the running transactions may be
+     * bounded, so that a long-running reader cannot pin every version
+     * committed after it started: maxVersions bounds the number of versions
+     * of each box, and maxAge bounds how many records older than the most
+     * recent committed one may still be required.  Both are enforced on each
+     * pass, and a reader that needs a version that was meanwhile dropped gets
+     * an early abort (see signalVersionTrimmed), after which it restarts with
+     * a recent version.  Zero means unbounded, which is the default.
+     */
+    static final String MAX_VERSIONS_PROP = "jvstm.gc.maxVersions";        // versions per box
+    static final String MAX_AGE_PROP = "jvstm.gc.maxAge";                  // records
+
+    private volatile int maxVersions = Integer.getInteger(MAX_VERSIONS_PROP, 0);
+    private volatile int maxAge = Integer.getInteger(MAX_AGE_PROP, 0);
+
+    // number of box versions dropped because of maxVersions
+    public static final AtomicLong nrOfTrimmedVersions = new AtomicLong();
+    // number of records cleaned because of maxAge while some transaction still required them
+    public static final AtomicLong nrOfExpiredRecords = new AtomicLong();
+    // number of transactions aborted because they needed a version that was dropped
+    public static final AtomicLong nrOfForcedAborts = new AtomicLong();
+
+    // volatile only so that monitoring (see jvstm.jmx.StmMetrics) may read it
+    private volatile ActiveTransactionsRecord lastCleanedRecord;
+    // when the last cleaning pass finished
+    private volatile long lastPassTime = System.currentTimeMillis();
+    // the last record whose boxes were trimmed to maxVersions
+    private ActiveTransactionsRecord lastTrimmedRecord;
     private ThreadPoolExecutor cleanersPool = makeCleanersPool();
+    // number of slices handed to the cleaners that are not cleaned yet
+    private final AtomicInteger queuedSlices = new AtomicInteger();
+
+    // the thread running this task, to be woken up by committed()
+    private volatile Thread gcThread = null;
+    // the commit of this transaction number wakes the GC thread up
+    private volatile long wakeUpAt = Long.MAX_VALUE;
 
     private static ThreadPoolExecutor makeCleanersPool() {
         ThreadFactory fact = new ThreadFactory() {
@@ -48,13 +120,15 @@ public class GCTask implements Runnable {
                 }};
 
         ThreadPoolExecutor executor = null;
-        int poolSize = Runtime.getRuntime().availableProcessors() / 10 + 1;
+        int poolSize = Integer.getInteger(POOL_SIZE_PROP, Runtime.getRuntime().availableProcessors() / 10 + 1);
         // if (poolSize > 40) {
         //     poolSize = 40;
         // }
         // poolSize = 5;
+        // the queue is not bounded here, as the pool may be resized: cleanSlices bounds it instead
         executor = new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS,
-                                          new LinkedBlockingQueue<Runnable>(), fact);
+                                          new LinkedBlockingQueue<Runnable>(), fact,
+                                          new ThreadPoolExecutor.CallerRunsPolicy());
         executor.allowCoreThreadTimeOut(true);
         return executor;
     }
@@ -64,38 +138,259 @@ public class GCTask implements Runnable {
     }
 
     public void run() {
+        this.gcThread = Thread.currentThread();
         while(true) {
-            try {Thread.sleep(500);} catch (Exception e) {}
-            ActiveTransactionsRecord rec = findOldestRecordInUse();
+            ActiveTransactionsRecord oldestInUse = findOldestRecordInUse();
+            long pending = pendingRecords(oldestInUse);
+            if (!shouldClean(pending)) {
+                // the records that may not be cleaned yet do not count towards the threshold
+                long wakeUpAt = Transaction.mostRecentCommittedRecord.transactionNumber + this.commitThreshold - pending;
+                this.wakeUpAt = wakeUpAt;
+                // re-check, as the commit that crossed the threshold may not have seen wakeUpAt
+                if (Transaction.mostRecentCommittedRecord.transactionNumber < wakeUpAt) {
+                    LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(this.maxInterval));
+                }
+                this.wakeUpAt = Long.MAX_VALUE;
+            }
+
+            cleaningPass(false);
+
+            try {Thread.sleep(this.minInterval);} catch (Exception e) {}
+        }
+    }
 
-            /* take your pick: either launch a Task to clean each record or launch a task to clean a sequence of records... */
+    /* A pass of the GC thread, or of runGc, which cleans the slices itself (inline) */
+    private synchronized void cleaningPass(boolean inline) {
+        ActiveTransactionsRecord oldestInUse = findOldestRecordInUse();
+        ActiveTransactionsRecord upTo = oldestInUse;
+        if (this.maxAge > 0) {
+            upTo = expireRecords(oldestInUse);
+        }
+        // before cleaning, so that only the reversions postponed on previous passes are retried
+        ActiveTransactionsRecord.retryPostponedReversions();
+        cleanSlices(upTo, oldestInUse, inline);
+        if (this.maxVersions > 0) {
+            trimVersions(this.maxVersions);
+        }
+        this.lastPassTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Invoked on each commit with the record that became the most recent
+     * committed one.  This only costs a volatile read, except for the commit
+     * that crosses the commit threshold, which wakes the GC thread up.
+     */
+    public void committed(ActiveTransactionsRecord record) {
+        if (record.transactionNumber >= this.wakeUpAt) {
+            this.wakeUpAt = Long.MAX_VALUE;
+            wakeUp();
+        }
+    }
+
+    // also used by the setters, so that a GC thread waiting with the previous settings uses the new ones
+    private void wakeUp() {
+        Thread thread = this.gcThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
 
-            //cleanUnusedRecords(rec);
-            if (rec.transactionNumber > this.lastCleanedRecord.transactionNumber) {
-                cleanersPool.execute(new MultipleCleanTask(this.lastCleanedRecord, rec));
-                this.lastCleanedRecord = rec;
+    private boolean shouldClean(long pendingRecords) {
+        return (pendingRecords >= this.commitThreshold) || ((pendingRecords > 0) && isHeapUnderPressure());
+    }
+
+    /* The number of records a pass would go through: those that may be cleaned and, with maxVersions, those not yet trimmed */
+    private long pendingRecords(ActiveTransactionsRecord oldestInUse) {
+        long lastCleaned = this.lastCleanedRecord.transactionNumber;
+        long pending = oldestKept(oldestInUse).transactionNumber - lastCleaned;
+        if (this.maxVersions > 0) {
+            long lastTrimmed = (this.lastTrimmedRecord == null) ? lastCleaned : Math.max(lastCleaned, this.lastTrimmedRecord.transactionNumber);
+            pending = Math.max(pending, Transaction.mostRecentCommittedRecord.transactionNumber - lastTrimmed);
+        }
+        return Math.max(pending, 0);
+    }
+
+    private boolean isHeapUnderPressure() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        return used * 100 > runtime.maxMemory() * this.heapThreshold;
+    }
+
+    /* Returns the record up to which transactions may still require versions, given maxAge */
+    private ActiveTransactionsRecord oldestKept(ActiveTransactionsRecord oldestInUse) {
+        int maxAge = this.maxAge;
+        if (maxAge <= 0) {
+            return oldestInUse;
+        }
+        long oldestAllowed = Transaction.mostRecentCommittedRecord.transactionNumber - maxAge;
+        ActiveTransactionsRecord upTo = oldestInUse;
+        while (upTo.transactionNumber < oldestAllowed) {
+            upTo = upTo.getNext();
+        }
+        return upTo;
+    }
+
+    private ActiveTransactionsRecord expireRecords(ActiveTransactionsRecord oldestInUse) {
+        ActiveTransactionsRecord upTo = oldestKept(oldestInUse);
+        // the records up to lastCleanedRecord were counted when they expired
+        long expiredFrom = Math.max(oldestInUse.transactionNumber, this.lastCleanedRecord.transactionNumber);
+        if (upTo.transactionNumber > expiredFrom) {
+            nrOfExpiredRecords.addAndGet(upTo.transactionNumber - expiredFrom);
+        }
+        return upTo;
+    }
+
+    private void trimVersions(int maxVersions) {
+        // the records up to lastCleanedRecord are cleaned anyway
+        if ((this.lastTrimmedRecord == null)
+            || (this.lastTrimmedRecord.transactionNumber < this.lastCleanedRecord.transactionNumber)) {
+            this.lastTrimmedRecord = this.lastCleanedRecord;
+        }
+        ActiveTransactionsRecord mostRecent = Transaction.mostRecentCommittedRecord;
+        int dropped = 0;
+        while (this.lastTrimmedRecord.transactionNumber < mostRecent.transactionNumber) {
+            this.lastTrimmedRecord = this.lastTrimmedRecord.getNext();
+            dropped += this.lastTrimmedRecord.trimHistory(maxVersions);
+        }
+        nrOfTrimmedVersions.addAndGet(dropped);
+    }
+
+    /**
+     * Invoked by a transaction that needs a version that was dropped because
+     * of maxVersions or maxAge.  Signals an early abort, so that the
+     * transaction restarts with a recent version.
+     */
+    public static void signalVersionTrimmed() {
+        nrOfForcedAborts.incrementAndGet();
+        TransactionSignaller.SIGNALLER.signalEarlyAbort();
+    }
+
+    /* The records after oldestInUse, which expired because of maxAge, are cleaned without
+     * reverting their boxes to the compact layout: the transactions that still need their
+     * previous versions must find the history trimmed and abort, rather than read the
+     * latest values from the compact layout. */
+    private void cleanSlices(ActiveTransactionsRecord upToThisRecord, ActiveTransactionsRecord oldestInUse, boolean inline) {
+        while (this.lastCleanedRecord.transactionNumber < upToThisRecord.transactionNumber) {
+            ActiveTransactionsRecord sliceEnd = this.lastCleanedRecord;
+            for (int i = 0; (i < this.sliceSize) && (sliceEnd.transactionNumber < upToThisRecord.transactionNumber); i++) {
+                sliceEnd = sliceEnd.getNext();
+            }
+            MultipleCleanTask task = new MultipleCleanTask(this.lastCleanedRecord, sliceEnd, oldestInUse.transactionNumber);
+            if (!inline && (cleanersPool.getQueue().size() < 2 * cleanersPool.getMaximumPoolSize())) {
+                this.queuedSlices.incrementAndGet();
+                task.queued = this.queuedSlices;
+                cleanersPool.execute(task);
+            } else {
+                task.run();
             }
+            this.lastCleanedRecord = sliceEnd;
+        }
+    }
+
+    /** The most recent record handed to the cleaners, below which no record is still queued. */
+    public ActiveTransactionsRecord getLastCleanedRecord() {
+        return this.lastCleanedRecord;
+    }
+
+    /** The time, in milliseconds, when the last cleaning pass finished. */
+    public long getLastPassTime() {
+        return this.lastPassTime;
+    }
+
+    public long getMaxInterval() {
+        return this.maxInterval;
+    }
+
+    public void setMaxInterval(long milliseconds) {
+        this.maxInterval = milliseconds;
+        wakeUp();
+    }
+
+    public long getMinInterval() {
+        return this.minInterval;
+    }
+
+    public void setMinInterval(long milliseconds) {
+        this.minInterval = milliseconds;
+    }
+
+    public int getCommitThreshold() {
+        return this.commitThreshold;
+    }
+
+    public void setCommitThreshold(int records) {
+        this.commitThreshold = records;
+        wakeUp();
+    }
+
+    public int getHeapThreshold() {
+        return this.heapThreshold;
+    }
+
+    public void setHeapThreshold(int percentage) {
+        this.heapThreshold = percentage;
+        wakeUp();
+    }
+
+    public int getSliceSize() {
+        return this.sliceSize;
+    }
+
+    public void setSliceSize(int records) {
+        this.sliceSize = records;
+    }
+
+    public int getMaxVersions() {
+        return this.maxVersions;
+    }
+
+    public void setMaxVersions(int versions) {
+        this.maxVersions = versions;
+    }
+
+    public int getMaxAge() {
+        return this.maxAge;
+    }
+
+    public void setMaxAge(int records) {
+        this.maxAge = records;
+    }
+
+    public int getPoolSize() {
+        return this.cleanersPool.getMaximumPoolSize();
+    }
+
+    public void setPoolSize(int size) {
+        // the core size may never go above the maximum size
+        if (size > this.cleanersPool.getMaximumPoolSize()) {
+            this.cleanersPool.setMaximumPoolSize(size);
+            this.cleanersPool.setCorePoolSize(size);
+        } else {
+            this.cleanersPool.setCorePoolSize(size);
+            this.cleanersPool.setMaximumPoolSize(size);
         }
     }
 
     /**
      * This method is used for unit tests purpose to force GC running and
      * convert objects to the CompactLayout, when using the AOM approach.
-     * In this case we should also have disabled the previous asynchronous
-     * task through the VM property: -Djvstm.gc.disabled=true
+     * It makes the same pass as the GC thread (including maxAge and
+     * maxVersions), cleaning in the invoking thread, and returns once the
+     * slices handed to the cleaners by earlier passes are cleaned as well.
+     * The previous asynchronous task may be disabled through the VM
+     * property: -Djvstm.gc.disabled=true
      */
     public void runGc(){
-        ActiveTransactionsRecord rec = findOldestRecordInUse();
-        if (rec.transactionNumber > this.lastCleanedRecord.transactionNumber) {
-            new MultipleCleanTask(this.lastCleanedRecord, rec).run();
-            this.lastCleanedRecord = rec;
+        cleaningPass(true);
+        while (this.queuedSlices.get() > 0) {
+            Thread.yield();
         }
     }
 
     // used to pass state between two calls of findOldestRecordUpTo()
-    private TxContext oldestContext = null;
+    private int oldestContext = -1;
 
-    private ActiveTransactionsRecord findOldestRecordInUse() {
+    private synchronized ActiveTransactionsRecord findOldestRecordInUse() {
         // We use this in case there are no thread running, to know until where to clean.  If we
         // only read this after doing the search we might clean more than we should, because a new
         // transaction can begin and commit a new record at any time.  By reading first, we ensure
@@ -106,8 +401,10 @@ public class GCTask implements Runnable {
              mostRecentCommittedAtBegin = next;
         } // we could use this opportunity to advance Transaction.mostRecentCommittedRecord
 
+        TxContext[] slots = Transaction.readers.slots();
+
         // First pass.  Here we check all contexts to identify the oldest record in use.
-        ActiveTransactionsRecord minRequiredRecord1 = findOldestRecordUpTo(null, Integer.MAX_VALUE);
+        ActiveTransactionsRecord minRequiredRecord1 = findOldestRecordUpTo(slots, slots.length, Long.MAX_VALUE);
 
         // If there was no record identified as a minimum we can safely clean up to the record that
         // was committed at the beginning, because all other threads will see it and use it (or use
@@ -119,7 +416,7 @@ public class GCTask implements Runnable {
         // Otherwise we do a second pass.  In the second pass we re-check all the records that were
         // checked before the identified oldest context, as they may have changed concurrently to a
         // lower minimum.
-        ActiveTransactionsRecord minRequiredRecord2 = findOldestRecordUpTo(this.oldestContext,
+        ActiveTransactionsRecord minRequiredRecord2 = findOldestRecordUpTo(slots, this.oldestContext,
                                                                            minRequiredRecord1.transactionNumber);
 
         // If we find another record in the second pass then that is the minimum.  If not then the
@@ -127,83 +424,56 @@ public class GCTask implements Runnable {
         return (minRequiredRecord2 != null) ? minRequiredRecord2 : minRequiredRecord1;
     }
 
-    private ActiveTransactionsRecord findOldestRecordUpTo(TxContext limitContext, int minRequiredVersion) {
+    private ActiveTransactionsRecord findOldestRecordUpTo(TxContext[] slots, int limit, long minRequiredVersion) {
         ActiveTransactionsRecord minRequiredRecord = null;
 
-        TxContext previousCtx = null;
-        TxContext currentCtx = Transaction.allTxContexts;
-        while (currentCtx != limitContext) {
-            // remove a dead context if possible
-            if ((currentCtx.owner.get() == null) && (currentCtx.next != null)) {
-                removeCtx(previousCtx, currentCtx);
-                currentCtx = currentCtx.next; // previous does not advance
+        for (int i = 0; i < limit; i++) {
+            TxContext ctx = slots[i];
+
+            // we REALLY need this local variable, because of concurrent updates
+            ActiveTransactionsRecord record = ctx.oldestRequiredVersion;
+            if (record == null) {
+                continue;
+            }
+
+            // free the context of a dead thread or of a suspended transaction that is gone
+            Object owner = ctx.owner;
+            if ((owner != null) && ctx.releaseIfAbandoned(owner)) {
                 continue;
             }
 
-            // we REALLY need this local variable, because of concurrent updates
-            ActiveTransactionsRecord record = currentCtx.oldestRequiredVersion;
-            if ((record != null) && (record.transactionNumber < minRequiredVersion)) {
+            if (record.transactionNumber < minRequiredVersion) {
                 minRequiredVersion = record.transactionNumber;
                 minRequiredRecord = record;
-                this.oldestContext = currentCtx;
+                this.oldestContext = i;
             }
-
-            previousCtx = currentCtx;
-            currentCtx = currentCtx.next;
         }
         return minRequiredRecord;
     }
 
-    // this method does not check whether there is another context next of 'toRemove', so the caller
-    // should be careful not to accidentally remove the last existing record.  Simply put: do no
-    // invoke this method when 'toRemove.next' can return null.
-    private void removeCtx(TxContext previous, TxContext toRemove) {
-        if (previous == null) { // 'toRemove' is the first record
-            Transaction.allTxContexts = toRemove.next;
-        } else {
-            previous.next = toRemove.next;
-        }
-    }
-
-    // public static int total = 0;
-    // public static int count = 0;
-    // public static int max = 0;
-    private void cleanUnusedRecords(ActiveTransactionsRecord upToThisRecord) {
-        // int diff = (upToThisRecord.transactionNumber - this.lastCleanedRecord.transactionNumber);
-        // total += diff;
-        // if (diff != 0) count++;
-        // if (diff > max) max = diff;
-        while (this.lastCleanedRecord.transactionNumber < upToThisRecord.transactionNumber) {
-            ActiveTransactionsRecord toClean = this.lastCleanedRecord.getNext();
-            this.lastCleanedRecord = toClean;
-            cleanersPool.execute(new CleanTask(toClean));
-        }
-    }
-
-    private static class CleanTask implements Runnable {
-        ActiveTransactionsRecord rec;
-
-        public CleanTask(ActiveTransactionsRecord rec) {
-            this.rec = rec;
-        }
-
-        public void run() {
-            this.rec.clean();
-        }
-    }
-
     private static class MultipleCleanTask implements Runnable {
         ActiveTransactionsRecord lastCleaned, upToThis;
+        // the records after this one are cleaned without reverting their boxes
+        final long revertUpTo;
+        // counts this slice while it is handed to the cleaners
+        AtomicInteger queued;
 
-        public MultipleCleanTask(ActiveTransactionsRecord lastCleaned, ActiveTransactionsRecord upToThis) {
+        public MultipleCleanTask(ActiveTransactionsRecord lastCleaned, ActiveTransactionsRecord upToThis, long revertUpTo) {
             this.lastCleaned = lastCleaned;
             this.upToThis = upToThis;
+            this.revertUpTo = revertUpTo;
         }
 
         public void run() {
-            while (this.lastCleaned.transactionNumber < upToThis.transactionNumber) {
-                this.lastCleaned = this.lastCleaned.getNext();
-                this.lastCleaned.clean();
+            try {
+                while (this.lastCleaned.transactionNumber < upToThis.transactionNumber) {
+                    this.lastCleaned = this.lastCleaned.getNext();
+                    this.lastCleaned.clean(this.lastCleaned.transactionNumber <= this.revertUpTo);
+                }
+            } finally {
+                if (this.queued != null) {
+                    this.queued.decrementAndGet();
+                }
             }
         }
     }
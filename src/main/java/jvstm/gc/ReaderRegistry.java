@@ -0,0 +1,91 @@
+/*
+ * JVSTM: a Java library for Software Transactional Memory
+ * Copyright (C) 2005 INESC-ID Software Engineering Group
+ * http://www.esw.inesc-id.pt
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ * Author's contact:
+ * INESC-ID Software Engineering Group
+ * Rua Alves Redol 9
+ * 1000 - 029 Lisboa
+ * Portugal
+ */
+package jvstm.gc;
+
+/**
+ * The registry of the TxContexts, where each running or suspended transaction
+ * publishes the oldest record it may need, and which the GCTask scans to find
+ * the oldest record in use.
+ *
+ * It is a fixed-size array of slots.  A thread takes a free slot when it
+ * begins a top-level transaction and gives it back when the transaction
+ * finishes, so the slots are reused by any number of short-lived threads and
+ * the GCTask only has to scan as many slots as there were transactions
+ * running at the same time.  A thread first tries the slot it used last, so
+ * that in the common case it always gets the same slot.  Should all slots be
+ * taken, the array doubles in size.
+ */
+public class ReaderRegistry {
+    static final String SIZE_PROP = "jvstm.gc.readerSlots";
+
+    private volatile TxContext[] slots;
+
+    public ReaderRegistry() {
+        this(Integer.getInteger(SIZE_PROP, Math.max(64, 4 * Runtime.getRuntime().availableProcessors())));
+    }
+
+    public ReaderRegistry(int size) {
+        TxContext[] slots = new TxContext[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new TxContext(i);
+        }
+        this.slots = slots;
+    }
+
+    /** Returns a free TxContext, now owned by the given owner.  The search starts at the given hint, if any. */
+    public TxContext acquire(Object owner, TxContext hint) {
+        int start = (hint != null) ? hint.index : (System.identityHashCode(owner) & Integer.MAX_VALUE);
+        while (true) {
+            TxContext[] slots = this.slots;
+            int size = slots.length;
+            int first = start % size;
+            for (int i = 0; i < size; i++) {
+                TxContext ctx = slots[(first + i) % size];
+                if (ctx.tryAcquire(owner)) {
+                    return ctx;
+                }
+            }
+            grow(slots);
+        }
+    }
+
+    private synchronized void grow(TxContext[] full) {
+        if (this.slots != full) {
+            return; // someone else already did it
+        }
+        TxContext[] slots = new TxContext[full.length * 2];
+        System.arraycopy(full, 0, slots, 0, full.length);
+        for (int i = full.length; i < slots.length; i++) {
+            slots[i] = new TxContext(i);
+        }
+        this.slots = slots;
+    }
+
+    /** The current slots.  Slots may be added (but never removed) after this is read. */
+    public TxContext[] slots() {
+        return this.slots;
+    }
+}
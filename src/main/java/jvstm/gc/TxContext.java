@@ -25,22 +25,23 @@
  */
 package jvstm.gc;
 
-import java.lang.reflect.Field;
-
 import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 import jvstm.ActiveTransactionsRecord;
-import static jvstm.UtilUnsafe.UNSAFE;
+import jvstm.FieldUpdaters;
 
-public class TxContext {
-    // --- Setup to use Unsafe
-    private static final long nextOffset;
-    static {                      // <clinit>
-        Field f = null;
-        try { f = TxContext.class.getDeclaredField("next"); }
-        catch (java.lang.NoSuchFieldException e) { throw new RuntimeException(e); }
-        nextOffset = UNSAFE.objectFieldOffset(f);
-    }
+/* Keeps the fields of consecutive TxContexts, which are allocated together
+ * by the ReaderRegistry, in different cache lines. */
+abstract class TxContextPadding {
+    long p0, p1, p2, p3, p4, p5, p6, p7;
+}
+
+/** A slot of the ReaderRegistry.  It is owned either by a Thread, while it runs a transaction, or by a suspended
+ * Transaction, and returns to the registry when its owner releases it (or is gone). */
+public class TxContext extends TxContextPadding {
+    private static final AtomicReferenceFieldUpdater<TxContext, Object> ownerUpdater =
+        FieldUpdaters.newReferenceUpdater(TxContext.class, Object.class, "owner");
 
     /** The oldest version that may be required by transactions running in this tx context is
      * given by the corresponding ActiveTransactionsRecord */
@@ -49,37 +50,53 @@ public class TxContext {
      * atomic commitAndBegin operation, in which we need to finish a transaction but not let go of its current
      * transaction record, because we will want to use it later. */
     public boolean inCommitAndBegin = false;
-    /** A ref to the next TxContext */
-    protected TxContext next = null;
-    /*  The slot 'owner' is used to enable garbage collection of this TxContext when it is no longer necessary.  It
-     * holds a WeakReference to either a Thread or a Transaction.  In the normal case it is a Thread (because we reuse
-     * TxContexts for all transactions that run in the same Thread).  If a running transaction is suspended, we enqueue
-     * a TxContext specifically for that transaction, in which case the owner is the suspended transaction (not an
-     * instance of SuspendedTransaction, but an instance of Transaction!)
+    /*  The slot 'owner' is null while this TxContext is free in the registry.  Otherwise, it holds either a Thread or
+     * a WeakReference to a Transaction.  In the normal case it is a Thread, which owns the TxContext while it runs a
+     * transaction.  If a running transaction is suspended, the TxContext passes on to that transaction (not to the
+     * instance of SuspendedTransaction, but to the instance of Transaction!), until the transaction is resumed
+     * again.  The WeakReference allows the GCTask to reclaim the TxContext of a transaction that is never resumed,
+     * as it reclaims the TxContext of a thread that died while running a transaction.
      */
-    /** The owner that needs this TxContext. Either a Thread or a Transaction */
-    public final WeakReference owner;
+    /** The owner of this TxContext: a Thread, a WeakReference to a Transaction, or null if free */
+    public volatile Object owner = null;
+    /** The position of this TxContext in the registry */
+    public final int index;
 
-    public TxContext(Object owner) {
-        this.owner = new WeakReference(owner);
+    TxContext(int index) {
+        this.index = index;
     }
 
-    public TxContext enqueue(TxContext ctx) {
-        // System.out.println(Thread.currentThread().getName());
-        // new Exception().printStackTrace();
-        TxContext current = this;
-        while (true) {
-            while (current.next != null) {
-                current = current.next;
-            }
+    boolean tryAcquire(Object newOwner) {
+        return (this.owner == null) && ownerUpdater.compareAndSet(this, null, newOwner);
+    }
 
-            if (UNSAFE.compareAndSwapObject(current, nextOffset, null, ctx)) {
-                return ctx;
-            }
-        }
+    /** Gives this TxContext to a new owner.  Must only be invoked by its current owner. */
+    public void transferTo(Object newOwner) {
+        this.owner = newOwner;
     }
 
-    public TxContext next(){
-        return next;
-    } 
+    /** Returns this TxContext to the registry.  Must only be invoked by its current owner. */
+    public void release() {
+        // the order is important!  A TxContext must never be free while holding a required version
+        this.oldestRequiredVersion = null;
+        this.inCommitAndBegin = false;
+        this.owner = null;
+    }
+
+    /* Returns this TxContext to the registry if its owner is gone.  Used by the GCTask, while the owner is still
+     * the one it read. */
+    boolean releaseIfAbandoned(Object owner) {
+        boolean abandoned;
+        if (owner instanceof Thread) {
+            abandoned = !((Thread)owner).isAlive();
+        } else {
+            abandoned = ((WeakReference)owner).get() == null;
+        }
+        if (abandoned && (this.owner == owner)) {
+            this.oldestRequiredVersion = null;
+            this.inCommitAndBegin = false;
+            return ownerUpdater.compareAndSet(this, owner, null);
+        }
+        return false;
+    }
 }
@@ -0,0 +1,221 @@
+/*
+ * JVSTM: a Java library for Software Transactional Memory
+ * Copyright (C) 2005 INESC-ID Software Engineering Group
+ * http://www.esw.inesc-id.pt
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ * Author's contact:
+ * INESC-ID Software Engineering Group
+ * Rua Alves Redol 9
+ * 1000 - 029 Lisboa
+ * Portugal
+ */
+package jvstm.jmx;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import jvstm.ActiveTransactionsRecord;
+import jvstm.TopLevelTransaction;
+import jvstm.Transaction;
+import jvstm.gc.GCTask;
+import jvstm.gc.TxContext;
+import jvstm.tuning.AbortCause;
+import jvstm.tuning.Controller;
+import jvstm.tuning.ThreadStatistics;
+import jvstm.tuning.TuningContext;
+import jvstm.tuning.TuningPoint;
+
+/**
+ * Samples the state of the STM for monitoring.  It may be registered in the
+ * platform MBeanServer (see {@link #register()}, or the jvstm.jmx system
+ * property, which registers it when the Transaction class is initialized),
+ * or be polled directly to feed any other metrics library.
+ *
+ * Every getter only reads fields and counters that the STM maintains anyway,
+ * without taking any lock that a transaction may take: sampling never delays
+ * a transaction.  The values read by different getters, or even by the same
+ * getter, are not an atomic snapshot of the STM.
+ *
+ * The commit and abort counters are striped counters that the transactions
+ * update whether tuning is enabled or not.  Only the transaction count and
+ * the current tuning point depend on tuning.
+ */
+public class StmMetrics implements StmMetricsMXBean {
+
+    public static final String JMX_PROP = "jvstm.jmx";
+    public static final String OBJECT_NAME = "jvstm:type=StmMetrics";
+
+    private static StmMetrics registered = null;
+
+    private final Rate commitRate = new Rate(Transaction.nrOfCommits.get());
+    private final Rate abortRate = new Rate(Transaction.nrOfAborts.get());
+
+    /** Registers an instance in the platform MBeanServer, if not yet registered. */
+    public static synchronized StmMetrics register() {
+        if (registered == null) {
+            StmMetrics metrics = new StmMetrics();
+            try {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                server.registerMBean(metrics, new ObjectName(OBJECT_NAME));
+            } catch (JMException e) {
+                throw new RuntimeException("Could not register " + OBJECT_NAME, e);
+            }
+            registered = metrics;
+        }
+        return registered;
+    }
+
+    public long getMostRecentCommittedNumber() {
+        return Transaction.mostRecentCommittedRecord.transactionNumber;
+    }
+
+    public long getUncleanedRecordCount() {
+        // the GCTask may have cleaned records committed after the one
+        // published in mostRecentCommittedRecord
+        ActiveTransactionsRecord lastCleaned = Transaction.gcTask.getLastCleanedRecord();
+        return Math.max(0, Transaction.mostRecentCommittedRecord.transactionNumber - lastCleaned.transactionNumber);
+    }
+
+    public long getGcLagMillis() {
+        return System.currentTimeMillis() - Transaction.gcTask.getLastPassTime();
+    }
+
+    public int getTxContextCount() {
+        return Transaction.readers.slots().length;
+    }
+
+    public int getTxContextsInUse() {
+        int inUse = 0;
+        for (TxContext ctx : Transaction.readers.slots()) {
+            if (ctx.owner != null) {
+                inUse++;
+            }
+        }
+        return inUse;
+    }
+
+    public long getAomReversionCount() {
+        return ActiveTransactionsRecord.nrOfReversions.get();
+    }
+
+    public long getAomReversionTries() {
+        return ActiveTransactionsRecord.nrOfTries.get();
+    }
+
+    public long getAomPostponedReversionCount() {
+        return ActiveTransactionsRecord.nrOfPostponedReversions.get();
+    }
+
+    public long getEarlyAbortCount() {
+        return TopLevelTransaction.nrOfEarlyAborts.get();
+    }
+
+    public long getSnapshotExtensionCount() {
+        return TopLevelTransaction.nrOfSnapshotExtensions.get();
+    }
+
+    public long getTrimmedVersionCount() {
+        return GCTask.nrOfTrimmedVersions.get();
+    }
+
+    public long getForcedAbortCount() {
+        return GCTask.nrOfForcedAborts.get();
+    }
+
+    public boolean isTuningEnabled() {
+        return Controller.TUNING_ENABLED;
+    }
+
+    public String getCurrentTuningPoint() {
+        if (!Controller.TUNING_ENABLED) {
+            return null;
+        }
+        TuningPoint point = Controller.instance().getPolicy().getCurrentPoint();
+        return (point == null) ? null : point.toString();
+    }
+
+    public long getTransactionCount() {
+        ThreadStatistics totals = totals();
+        return (totals == null) ? -1 : totals.getTransactionCount();
+    }
+
+    public long getCommitCount() {
+        return Transaction.nrOfCommits.get();
+    }
+
+    public long getAbortCount() {
+        return Transaction.nrOfAborts.get();
+    }
+
+    public double getCommitRate() {
+        return commitRate.sample(Transaction.nrOfCommits.get());
+    }
+
+    public double getAbortRate() {
+        return abortRate.sample(Transaction.nrOfAborts.get());
+    }
+
+    public Map<String, Long> getAbortCountByCause() {
+        Map<String, Long> result = new LinkedHashMap<String, Long>();
+        for (AbortCause cause : AbortCause.values()) {
+            if (cause != AbortCause.OTHER) {
+                result.put(cause.name(), Transaction.getAbortCount(cause));
+            }
+        }
+        return result;
+    }
+
+    /* The statistics of every thread, since it started, or null if tuning is disabled */
+    private ThreadStatistics totals() {
+        if (!Controller.TUNING_ENABLED) {
+            return null;
+        }
+        ThreadStatistics totals = new ThreadStatistics(-1);
+        for (TuningContext ctx : Controller.instance().getContexts().values()) {
+            ctx.getStatistics().addTotalsTo(totals);
+        }
+        return totals;
+    }
+
+    /*
+     * The rate per second of a counter between two consecutive samples.  Only
+     * the samplers synchronize on it.
+     */
+    private static final class Rate {
+        private long lastCount;
+        private long lastNanos;
+
+        Rate(long count) {
+            this.lastCount = count;
+            this.lastNanos = System.nanoTime();
+        }
+
+        synchronized double sample(long count) {
+            long now = System.nanoTime();
+            long elapsed = now - lastNanos;
+            double rate = (elapsed > 0) ? (count - lastCount) * 1e9 / elapsed : 0;
+            lastCount = count;
+            lastNanos = now;
+            return rate;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * JVSTM: a Java library for Software Transactional Memory
+ * Copyright (C) 2005 INESC-ID Software Engineering Group
+ * http://www.esw.inesc-id.pt
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ * Author's contact:
+ * INESC-ID Software Engineering Group
+ * Rua Alves Redol 9
+ * 1000 - 029 Lisboa
+ * Portugal
+ */
+package jvstm.jmx;
+
+import java.util.Map;
+
+/**
+ * The live health of the STM, as exposed through JMX by {@link StmMetrics}.
+ *
+ * Counters only grow: rates are obtained by sampling them periodically, as
+ * any JMX console or metrics library does, or read from the rate attributes.
+ */
+public interface StmMetricsMXBean {
+
+    /** Number of the most recent committed record, i.e., of read-write top-level commits. */
+    long getMostRecentCommittedNumber();
+
+    /** Records committed but not yet handed to the cleaners of the GCTask. */
+    long getUncleanedRecordCount();
+
+    /** Milliseconds since the GCTask last finished a cleaning pass. */
+    long getGcLagMillis();
+
+    /** Number of TxContext slots in the ReaderRegistry. */
+    int getTxContextCount();
+
+    /** Number of TxContext slots currently owned by some thread or suspended transaction. */
+    int getTxContextsInUse();
+
+    long getAomReversionCount();
+
+    long getAomReversionTries();
+
+    long getAomPostponedReversionCount();
+
+    long getEarlyAbortCount();
+
+    long getSnapshotExtensionCount();
+
+    long getTrimmedVersionCount();
+
+    long getForcedAbortCount();
+
+    boolean isTuningEnabled();
+
+    /** The point applied by the tuning policy, or null if there is none. */
+    String getCurrentTuningPoint();
+
+    /** Transactions started, as counted by the tuning statistics, or -1 if tuning is disabled. */
+    long getTransactionCount();
+
+    /** Top-level transactions committed, counted whether tuning is enabled or not. */
+    long getCommitCount();
+
+    /** Top-level transactions aborted, counted whether tuning is enabled or not. */
+    long getAbortCount();
+
+    /** Commits per second since the previous read of this attribute, or since the StmMetrics was created. */
+    double getCommitRate();
+
+    /** Aborts per second since the previous read of this attribute, or since the StmMetrics was created. */
+    double getAbortRate();
+
+    /**
+     * Aborts signalled for each AbortCause, by top-level and nested
+     * transactions, counted whether tuning is enabled or not.  OTHER is left
+     * out, as it is only known to the tuning statistics.
+     */
+    Map<String, Long> getAbortCountByCause();
+}
@@ -0,0 +1,19 @@
+package jvstm.tuning;
+
+/*
+ * Why a transaction was aborted, as recorded in the ThreadStatistics of the
+ * thread that ran it.
+ */
+public enum AbortCause
+{
+	// a read found a version newer than the transaction (readFromBody)
+	EARLY_ABORT,
+	// the read-set was found invalid while committing (snapshotValidation)
+	VALIDATION,
+	// a read-only transaction tried to write and is restarted as read-write
+	WRITE_ON_READ,
+	// a parallel nested transaction must be re-executed sequentially
+	NESTED_FALLBACK,
+	// user aborts, commit conflicts of nested transactions, etc.
+	OTHER
+}
@@ -0,0 +1,275 @@
+package jvstm.tuning;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Limits the number of transactions running concurrently, like a semaphore
+ * whose number of permits is changed by the tuning policy, but without a
+ * single point of contention.
+ *
+ * The free permits are split among stripes, each in its own cache line.
+ * A thread takes and returns permits in its home stripe, and only looks at
+ * the other stripes when its own is empty.  A thread that finds no permit
+ * spins for a while and then parks until some permit is returned.
+ *
+ * The sum of all stripes minus the debt is always the limit minus the
+ * permits held.  When the limit is lowered, the difference is first taken
+ * from the stripes and what they cannot cover becomes a debt, which the
+ * next releases pay off instead of returning their permits, as in
+ * Semaphore.reducePermits.  The stripes never become negative.  A release
+ * that missed a new debt may still put a permit in its stripe, so a thread
+ * that takes a permit while there is debt gives it back to pay the debt.
+ * Unlike the fair semaphores used before, the gate lets a newcomer take a
+ * permit ahead of parked threads.
+ */
+public class AdmissionGate
+{
+	private static final int NCPU = Runtime.getRuntime().availableProcessors();
+	private static final int SPINS = (NCPU > 1) ? 256 : 0;
+	// a parked thread re-checks the stripes at least this often
+	private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+	// 16 longs = 128 bytes between stripes
+	private static final int STRIDE = 16;
+
+	private final int nStripes;
+	private final int mask;
+	private final AtomicLongArray stripes;
+	// permits owed after lowering the limit, only written when there is some
+	private final AtomicLong debt = new AtomicLong();
+	private final AtomicInteger nWaiters = new AtomicInteger();
+	private final ConcurrentLinkedQueue<Thread> waiters = new ConcurrentLinkedQueue<Thread>();
+	private int limit;
+
+	public AdmissionGate(int permits)
+	{
+		this(permits, NCPU);
+	}
+
+	/* The number of stripes is rounded up to a power of two, at most 64 */
+	public AdmissionGate(int permits, int stripesHint)
+	{
+		int n = 1;
+		while (n < stripesHint && n < 64)
+		{
+			n <<= 1;
+		}
+		this.nStripes = n;
+		this.mask = n - 1;
+		this.stripes = new AtomicLongArray(n * STRIDE);
+		this.limit = 0;
+		setLimit(permits);
+	}
+
+	public synchronized int getLimit()
+	{
+		return limit;
+	}
+
+	/*
+	 * Sets the maximum number of permits held at once.  This is done in a
+	 * single pass over the stripes, whatever the difference to the previous
+	 * limit.
+	 */
+	public synchronized void setLimit(int newLimit)
+	{
+		long delta = newLimit - limit;
+		limit = newLimit;
+		if (delta < 0)
+		{
+			// owe it first, so that a permit taken from now on sees the debt
+			debt.addAndGet(-delta);
+			drainStripes();
+			return;
+		}
+		delta -= payDebt(delta);
+		if (delta > 0)
+		{
+			spread(delta);
+			if (nWaiters.get() > 0)
+			{
+				wakeUp((int) delta);
+			}
+		}
+	}
+
+	public void acquire()
+	{
+		int home = homeStripe();
+		if (tryAcquire(home))
+		{
+			return;
+		}
+		for (int i = 0; i < SPINS; i++)
+		{
+			if (tryAcquire(home))
+			{
+				return;
+			}
+		}
+
+		Thread me = Thread.currentThread();
+		nWaiters.incrementAndGet();
+		waiters.add(me);
+		try
+		{
+			// re-check after being enqueued, so that a concurrent release sees us
+			while (!tryAcquire(home))
+			{
+				LockSupport.parkNanos(this, MAX_PARK_NANOS);
+			}
+		} finally
+		{
+			waiters.remove(me);
+			nWaiters.decrementAndGet();
+		}
+		// we may have consumed the wake-up meant for a permit that is still free
+		if (nWaiters.get() > 0 && available() > 0)
+		{
+			wakeUp(1);
+		}
+	}
+
+	public void release()
+	{
+		if (giveBack(homeStripe()) && nWaiters.get() > 0)
+		{
+			wakeUp(1);
+		}
+	}
+
+	/* The number of free permits, which is negative if the limit was lowered
+	 * below the permits held. */
+	public long available()
+	{
+		long sum = -debt.get();
+		for (int i = 0; i < nStripes; i++)
+		{
+			sum += stripes.get(i * STRIDE);
+		}
+		return sum;
+	}
+
+	private int homeStripe()
+	{
+		return (int) Thread.currentThread().getId() & mask;
+	}
+
+	private boolean tryAcquire(int home)
+	{
+		for (int i = 0; i < nStripes; i++)
+		{
+			int idx = ((home + i) & mask) * STRIDE;
+			long permits = stripes.get(idx);
+			while (permits > 0)
+			{
+				if (stripes.compareAndSet(idx, permits, permits - 1))
+				{
+					if (debt.get() == 0)
+					{
+						return true;
+					}
+					// the limit was lowered, this permit goes to the debt
+					giveBack(home);
+					return false;
+				}
+				permits = stripes.get(idx);
+			}
+		}
+		return false;
+	}
+
+	/* Pays the debt with a returned permit if there is any, otherwise puts
+	 * the permit in the given stripe.  Returns whether the permit was freed. */
+	private boolean giveBack(int home)
+	{
+		if (payDebt(1) == 1)
+		{
+			return false;
+		}
+		stripes.incrementAndGet(home * STRIDE);
+		return true;
+	}
+
+	/* Pays up to max permits of the debt, returning how many were paid */
+	private long payDebt(long max)
+	{
+		long owed;
+		while ((owed = debt.get()) > 0)
+		{
+			long paid = Math.min(owed, max);
+			if (debt.compareAndSet(owed, owed - paid))
+			{
+				return paid;
+			}
+		}
+		return 0;
+	}
+
+	/* Moves the free permits of the stripes to the debt, until it is paid */
+	private void drainStripes()
+	{
+		for (int i = 0; i < nStripes && debt.get() > 0; i++)
+		{
+			int idx = i * STRIDE;
+			long permits;
+			while ((permits = stripes.get(idx)) > 0)
+			{
+				long taken = Math.min(permits, debt.get());
+				if (taken <= 0)
+				{
+					return;
+				}
+				if (stripes.compareAndSet(idx, permits, permits - taken))
+				{
+					// a concurrent release may have paid part of the debt
+					// meanwhile; what we took in excess is put back
+					long excess = taken - payDebt(taken);
+					if (excess > 0)
+					{
+						stripes.addAndGet(idx, excess);
+					}
+					break;
+				}
+			}
+		}
+	}
+
+	/* Adds delta permits, evenly among the stripes */
+	private void spread(long delta)
+	{
+		long share = delta / nStripes;
+		long rest = delta % nStripes;
+		for (int i = 0; i < nStripes; i++)
+		{
+			long d = share + (i < rest ? 1 : 0);
+			if (d != 0)
+			{
+				stripes.addAndGet(i * STRIDE, d);
+			}
+		}
+	}
+
+	/* Wakes up to n of the oldest parked threads */
+	private void wakeUp(int n)
+	{
+		for (Thread waiter : waiters)
+		{
+			if (n-- == 0)
+			{
+				break;
+			}
+			LockSupport.unpark(waiter);
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return "AdmissionGate [limit=" + getLimit() + ", available=" + available() + ", waiters=" + nWaiters.get() + "]";
+	}
+}
@@ -23,10 +23,19 @@ public class Controller implements Runnable
 
 	private StatisticsCollector statisticsCollector;
 
+	/**
+	 * Whether a tuning policy was configured.  If not, transactions bypass
+	 * the controller altogether: no admission control, statistics or
+	 * controller thread.  This is a constant, so that the JIT removes the
+	 * tuning code from begin/commit/abort.
+	 */
+	public static final boolean TUNING_ENABLED;
+
 	// EndRegion
 	static
 	{
 		Parameters.setup();
+		TUNING_ENABLED = Parameters.policy != null;
 	}
 
 	// Region singleton
@@ -47,7 +56,7 @@ public class Controller implements Runnable
 		// may lead to replays (re-start()s). Test this.
 		started = Collections.newSetFromMap(new ConcurrentHashMap<Transaction, Boolean>());
 
-		this.pointBinder = new PointBinder(Parameters.maxThreads);
+		this.pointBinder = new PointBinder(Parameters.maxThreads, Parameters.dimensions);
 		if (!pointBinder.isBound(Parameters.initialConfig))
 		{
 			Parameters.printUsageAndExit("Initial Config outside allowed range for MaxThreads: " + Parameters.initialConfig);
@@ -1,6 +1,7 @@
 package jvstm.tuning;
 
 import java.io.File;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.regex.Matcher;
@@ -24,6 +25,8 @@ public final class Parameters
 	public static int interval = 100;
 	public static int maxThreads = Integer.MAX_VALUE;
 	public static TuningPoint initialConfig;
+	// the dimensions of the tuning space, as many as in the initial config
+	public static int dimensions = TuningPoint.NESTED_POOL;
 	public static Class<? extends TuningPolicy> policy;
 
 	public static MeasurementType measurementType;
@@ -46,7 +49,7 @@ public final class Parameters
 		String nl = String.format("%n");
 		StringBuilder params = new StringBuilder();
 
-		params.append("  Policy: " + policy.getName() + nl);
+		params.append("  Policy: " + (policy == null ? "None" : policy.getName()) + nl);
 		params.append("  LogFile: " + logFile + nl);
 		params.append("  Interval: " + interval + nl);
 		params.append("  MaxThreads: " + maxThreads + nl);
@@ -78,13 +81,16 @@ public final class Parameters
 		StringBuilder usage = new StringBuilder();
 		usage.append("JVSTM tuning options are passed via -Doption=value to the jvm. Options:" + nlnl);
 		usage.append("  Policy - one of " + nl + "  \t" + policies.keySet() + nl);
+		usage.append("  \tor None (the default), which disables tuning and its overhead on every transaction" + nl);
 		usage.append("  NoStats - boolean value, enables or disables statistics collection" + nl);
 		usage.append("  LogFile - log file path Ignored if -DNoStats is set to true" + nl);
 		usage.append("  Interval - interval between policy runs, integral value in milliseconds" + nl);
 		usage.append(
 				"  MaxThreads - maximum number of threads to use, ideally the same as the number of cores, integral value"
 						+ nl);
-		usage.append("  InitialConfig - initial tuning configuration - format: -DInitialConfig=x,y" + nl);
+		usage.append("  InitialConfig - initial tuning configuration - format: -DInitialConfig=x,y[,p[,g]]" + nl);
+		usage.append("  \tp and g, if given, also tune the sizes of the nested-parallel pool and of the GC cleaners pool"
+				+ nl);
 		usage.append("  MeasurementType - one of " + MeasurementType.names() + nl);
 		usage.append("  Contention (optional) - arbitrary string describing benchmark contention type." + nl);
 		usage.append("  \tIf the measurement type is \"stub\", the following options become available:" + nl);
@@ -98,6 +104,12 @@ public final class Parameters
 		return usage.toString();
 	}
 
+	// the policies that may be selected with -DPolicy, by name
+	public static Map<String, Class<? extends TuningPolicy>> getPolicies()
+	{
+		return Collections.unmodifiableMap(policies);
+	}
+
 	public static void printUsageAndExit(String error)
 	{
 		String usage = usage();
@@ -131,10 +143,11 @@ public final class Parameters
 		 */
 
 		String pol = Util.getSystemProperty("Policy");
-		if (pol == null)
+		if (pol == null || pol.equals("None"))
 		{
-			System.err.println("Policy System Property not found - defaulting to LinearGD.");
-			policy = LinearGradientDescent4.class;
+			// no tuning at all: the remaining options are not used
+			policy = null;
+			return;
 		} else
 		{
 			policy = policies.get(pol);
@@ -258,24 +271,30 @@ public final class Parameters
 		if (initialConfigProp == null)
 		{
 			initialConfig = null;
+			dimensions = TuningPoint.NESTED_POOL;
 		} else
 		{
-			initialConfig = new TuningPoint();
-			String[] splitMaxThreads = initialConfigProp.split(",");
-			if (splitMaxThreads.length != 2)
+			String[] splitInitialConfig = initialConfigProp.split(",");
+			if (splitInitialConfig.length < TuningPoint.NESTED_POOL
+					|| splitInitialConfig.length > TuningPoint.MAX_DIMENSIONS)
 			{
 				printUsageAndExit(
-						"Invalid initialConfig value. Use \"java -DInitialConfig=<max_topLevel>,<max_nested> ...\"");
+						"Invalid initialConfig value. Use \"java -DInitialConfig=<max_topLevel>,<max_nested>[,<nested_pool>[,<gc_cleaners>]] ...\"");
 			}
+			int[] coordinates = new int[splitInitialConfig.length];
 			try
 			{
-				initialConfig.first = Integer.parseInt(splitMaxThreads[0]);
-				initialConfig.second = Integer.parseInt(splitMaxThreads[1]);
+				for (int i = 0; i < coordinates.length; i++)
+				{
+					coordinates[i] = Integer.parseInt(splitInitialConfig[i]);
+				}
 			} catch (NumberFormatException n)
 			{
 				printUsageAndExit(
-						"Invalid initialConfig value. Use \"java -DInitialConfig=<max_topLevel>,<max_nested> ...\"");
+						"Invalid initialConfig value. Use \"java -DInitialConfig=<max_topLevel>,<max_nested>[,<nested_pool>[,<gc_cleaners>]] ...\"");
 			}
+			initialConfig = new TuningPoint(coordinates);
+			dimensions = coordinates.length;
 		}
 		
 		/*
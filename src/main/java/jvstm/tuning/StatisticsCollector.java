@@ -1,16 +1,10 @@
 package jvstm.tuning;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileDescriptor;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.util.Date;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import jvstm.tuning.policy.PointProvider.TuningRecord;
 import jvstm.tuning.policy.PointProvider.TuningRoundInfo;
@@ -28,7 +22,6 @@ public class StatisticsCollector
 	
 	public static String logFile;
 	public static int interval;
-	ByteArrayOutputStream interceptedStdout;
 	
 	static {
 		logFile = Parameters.logFile;
@@ -37,6 +30,7 @@ public class StatisticsCollector
 	
 	private PrintWriter output;
 	private long executionTime = -1;
+	private final long startTime = System.currentTimeMillis();
 
 	public StatisticsCollector()
 	{
@@ -45,9 +39,6 @@ public class StatisticsCollector
 			return;
 		}
 
-		interceptedStdout = new ByteArrayOutputStream();
-		System.setOut(new PrintStream(interceptedStdout));
-		
 		try
 		{
 			if (logFile == null)
@@ -80,15 +71,9 @@ public class StatisticsCollector
 			@Override
 			public void run()
 			{
-				assert (executionTime > 0);
 				Controller.setEnabled(false, "StatisticsCollector ShutdownHook");
 				TuningPolicy policy = Controller.instance().getPolicy();
-				
-				//Save intercepted output and print it to the default stdout:
-				String interceptedOutput = interceptedStdout.toString();
-				System.setOut(new PrintStream(new FileOutputStream(FileDescriptor.out)));
-				System.out.println(interceptedOutput);
-				
+
 				// Check if we're using a dummy policy:
 				if (policy.getPointProvider() == null || policy.getPointProvider().getRoundList() == null)
 				{
@@ -108,29 +93,23 @@ public class StatisticsCollector
 				output.println("Timestamp: " + d.toString() + " (" + d.getTime() + ")");
 				output.println();
 				
+				// the time set by the application, if any, or else the time
+				// since the collector was created
+				long execMillis = (executionTime > 0) ? executionTime : System.currentTimeMillis() - startTime;
+				output.println("ExecutionTime: " + execMillis);
 				double throughputSum = 0f;
-				Pattern executionTimePattern = Pattern.compile("(\\d+)\\s*");
-				Matcher m = executionTimePattern.matcher(interceptedOutput);
-				if(m.matches()) {
-					output.println("ExecutionTime: " + m.group(1));
-					float execSeconds = Integer.parseInt(m.group(1).trim()) / 1000f;
-					for (TuningRoundInfo round : info)
+				for (TuningRoundInfo round : info)
+				{
+					for (TuningRecord record : round.getAlternatives())
 					{
-						for (TuningRecord record : round.getAlternatives())
-						{
-							throughputSum += record.getThroughput();
-						}
-
+						throughputSum += record.getThroughput();
 					}
-					output.println("TotalThroughput: " + throughputSum);
-					throughputSum /= execSeconds;
-					output.println(String.format("AverageThroughput: %.2f ops/s", throughputSum));
-					
-					System.err.println("Execution time from intercepted output saved to JVSTM log.");
-				} else {
-					System.err.println("output does not match expected format (execution time only) - not saved to log.");
+
 				}
-				
+				output.println("TotalThroughput: " + throughputSum);
+				throughputSum /= execMillis / 1000f;
+				output.println(String.format("AverageThroughput: %.2f ops/s", throughputSum));
+
 				/*
 				 * 1. Get Tuning Rounds from the current policy.
 				 */
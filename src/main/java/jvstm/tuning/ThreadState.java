@@ -1,14 +1,18 @@
 package jvstm.tuning;
 
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
 public class ThreadState implements Tunable
 {
+	private static final AtomicIntegerFieldUpdater<ThreadState> STATE =
+			AtomicIntegerFieldUpdater.newUpdater(ThreadState.class, "state");
 
 	public static final int WAITING = 0;
 	public static final int RUNNABLE = 1;
 	public static final int RUNNING = 2;
 
 	private volatile int state;
-	private boolean waiting = false;
+	private volatile boolean waiting = false;
 
 	public ThreadState(int state)
 	{
@@ -36,7 +40,17 @@ public class ThreadState implements Tunable
 	 * @see jvstm.tuning.Tunable#tryRun()
 	 */
 	@Override
-	public synchronized void tryRun()
+	public void tryRun()
+	{
+		// fast path: no lock unless the thread has to wait
+		if (state == RUNNABLE && STATE.compareAndSet(this, RUNNABLE, RUNNING))
+		{
+			return;
+		}
+		tryRunSlow();
+	}
+
+	private synchronized void tryRunSlow()
 	{
 		if (state == WAITING)
 		{
@@ -73,7 +87,7 @@ public class ThreadState implements Tunable
 	 * @see jvstm.tuning.Tunable#finish()
 	 */
 	@Override
-	public synchronized void finish()
+	public void finish()
 	{
 		// Nothing.
 		// In this particular class, the tuning policy dictates the state after
@@ -86,13 +100,19 @@ public class ThreadState implements Tunable
 	 * @see jvstm.tuning.Tunable#setRunnable()
 	 */
 	@Override
-	public synchronized void setRunnable(boolean notify)
+	public void setRunnable(boolean notify)
 	{
-
-		this.state = RUNNABLE;
-		this.waiting = false;
-		if (notify)
+		if (!notify)
 		{
+			// nobody to wake up, so the lock is not needed
+			this.state = RUNNABLE;
+			this.waiting = false;
+			return;
+		}
+		synchronized (this)
+		{
+			this.state = RUNNABLE;
+			this.waiting = false;
 			this.notify();
 		}
 	}
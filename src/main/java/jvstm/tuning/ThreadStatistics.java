@@ -1,11 +1,40 @@
 package jvstm.tuning;
 
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * Transaction counters of a single thread.
+ *
+ * Only the thread that owns the statistics increments them, so each counter
+ * is updated with a plain read followed by an ordered write (lazySet): there
+ * is neither a CAS nor a full fence in the transaction path.  The counters
+ * live in an array that is padded at both ends, so that the counters of
+ * different threads never share a cache line.
+ *
+ * Everybody else (the tuning policy) only reads them.  Rather than clearing
+ * the counters of a running thread, which would race with its increments,
+ * reset() records the current values as a baseline, and the getters return
+ * the counts since the last reset.  The baseline is only touched under the
+ * lock of this object, which the owner thread never takes.
+ *
+ * The same class is used for the global statistics merged by the policy,
+ * which are written only by the policy itself.
+ */
 public class ThreadStatistics
 {
-
-	private volatile long transactionCount;
-	private volatile long commitCount;
-	private volatile long abortCount;
+	// 16 longs = 128 bytes on each side of the counters
+	private static final int PAD = 16;
+
+	private static final int TRANSACTIONS = 0;
+	private static final int COMMITS = 1;
+	private static final int ABORTS = 2;
+	private static final int CAUSES = 3;
+	private static final int N_COUNTERS = CAUSES + AbortCause.values().length;
+
+	private final AtomicLongArray counters = new AtomicLongArray(PAD + N_COUNTERS + PAD);
+	private final long[] baseline = new long[N_COUNTERS];
+	// cause of the abort that the owner thread is about to do
+	private AbortCause pendingCause;
 	private volatile long threadId;
 
 	public ThreadStatistics(long threadId)
@@ -13,11 +42,12 @@ public class ThreadStatistics
 		this.threadId = threadId;
 	}
 
-	public void reset()
+	public synchronized void reset()
 	{
-		transactionCount = 0;
-		commitCount = 0;
-		abortCount = 0;
+		for (int i = 0; i < N_COUNTERS; i++)
+		{
+			baseline[i] = counters.get(PAD + i);
+		}
 	}
 
 	public void reset(long threadId)
@@ -26,13 +56,34 @@ public class ThreadStatistics
 		reset();
 	}
 
-	// to do: use lock?
-	// does not cause memory consistency errors but is not thread-safe
-	public void addTo(ThreadStatistics stat)
+	/* Adds the counts since the last reset to stat */
+	public synchronized void addTo(ThreadStatistics stat)
+	{
+		for (int i = 0; i < N_COUNTERS; i++)
+		{
+			stat.add(i, counters.get(PAD + i) - baseline[i]);
+		}
+	}
+
+	/*
+	 * Adds every count since this object was created, regardless of reset,
+	 * to stat.  This takes no lock, so that monitoring never gets in the way
+	 * of the policy.
+	 */
+	public void addTotalsTo(ThreadStatistics stat)
+	{
+		for (int i = 0; i < N_COUNTERS; i++)
+		{
+			stat.add(i, counters.get(PAD + i));
+		}
+	}
+
+	/* Returns a copy of the counts since the last reset */
+	public ThreadStatistics snapshot()
 	{
-		stat.transactionCount += this.transactionCount;
-		stat.commitCount += this.commitCount;
-		stat.abortCount += this.abortCount;
+		ThreadStatistics copy = new ThreadStatistics(threadId);
+		addTo(copy);
+		return copy;
 	}
 
 	public long getThreadId()
@@ -42,54 +93,101 @@ public class ThreadStatistics
 
 	public long getTransactionCount()
 	{
-		return transactionCount;
+		return get(TRANSACTIONS);
 	}
 
 	public void setTransactionCount(int transactionCount)
 	{
-		this.transactionCount = transactionCount;
+		set(TRANSACTIONS, transactionCount);
 	}
 
 	public void incTransactionCount()
 	{
-		transactionCount++;
+		inc(TRANSACTIONS);
 	}
 
 	public long getCommitCount()
 	{
-		return commitCount;
+		return get(COMMITS);
 	}
 
 	public void setCommitCount(int commitCount)
 	{
-		this.commitCount = commitCount;
+		set(COMMITS, commitCount);
 	}
 
 	public void incCommitCount()
 	{
-		commitCount++;
+		pendingCause = null;
+		inc(COMMITS);
 	}
 
 	public long getAbortCount()
 	{
-		return abortCount;
+		return get(ABORTS);
+	}
+
+	public long getAbortCount(AbortCause cause)
+	{
+		return get(CAUSES + cause.ordinal());
 	}
 
 	public void setAbortCount(int abortCount)
 	{
-		this.abortCount = abortCount;
+		set(ABORTS, abortCount);
+	}
+
+	/*
+	 * Called by the owner thread where it detects why its transaction cannot
+	 * commit.  The cause is counted by the next incAbortCount().
+	 */
+	public void setAbortCause(AbortCause cause)
+	{
+		pendingCause = cause;
 	}
 
+	/* Counts an abort, with the cause last set, or OTHER if none was */
 	public void incAbortCount()
 	{
-		abortCount++;
+		AbortCause cause = pendingCause;
+		pendingCause = null;
+		inc(ABORTS);
+		inc(CAUSES + (cause == null ? AbortCause.OTHER : cause).ordinal());
+	}
+
+	private void inc(int counter)
+	{
+		int idx = PAD + counter;
+		counters.lazySet(idx, counters.get(idx) + 1);
+	}
+
+	private void add(int counter, long delta)
+	{
+		int idx = PAD + counter;
+		counters.lazySet(idx, counters.get(idx) + delta);
+	}
+
+	private synchronized long get(int counter)
+	{
+		return counters.get(PAD + counter) - baseline[counter];
+	}
+
+	private synchronized void set(int counter, long value)
+	{
+		baseline[counter] = 0;
+		counters.set(PAD + counter, value);
 	}
 
 	@Override
 	public String toString()
 	{
-		return "ThreadStatistics [transactionCount=" + transactionCount + ", commitCount=" + commitCount
-				+ ", abortCount=" + abortCount + ", threadId=" + threadId + "]";
+		StringBuilder causes = new StringBuilder();
+		for (AbortCause cause : AbortCause.values())
+		{
+			causes.append(", ").append(cause).append('=').append(getAbortCount(cause));
+		}
+		return "ThreadStatistics [transactionCount=" + getTransactionCount() + ", commitCount=" + getCommitCount()
+				+ ", abortCount=" + getAbortCount() + causes + ", threadId=" + threadId + "]";
 	}
 
 }
@@ -1,24 +1,133 @@
 package jvstm.tuning;
 
+import java.util.Arrays;
+
 import jvstm.util.Pair;
 
+/*
+ * A point of the tuning space.  The first two dimensions, the maximum number
+ * of top-level transactions and of nested transactions, are kept in first and
+ * second.  A point may have further dimensions, which size the thread pools
+ * of the STM: the pool that runs parallel nested transactions
+ * (Transaction.nestedParPool) and the pool of GC cleaners (GCTask).
+ *
+ * The policies only tune the dimensions their points have: a point without
+ * the pool dimensions leaves the pools as they are.
+ */
 public class TuningPoint extends Pair<Integer, Integer>
 {
+	public static final int TOP_LEVEL = 0;
+	public static final int NESTED = 1;
+	public static final int NESTED_POOL = 2;
+	public static final int GC_CLEANERS = 3;
+	public static final int MAX_DIMENSIONS = 4;
+
+	private static final int[] NONE = new int[0];
+
+	// the dimensions after second
+	private final int[] extra;
 
 	public TuningPoint()
 	{
 		super();
+		this.extra = NONE;
 	}
 
 	public TuningPoint(Integer first, Integer second)
 	{
 		super(first, second);
+		this.extra = NONE;
+	}
+
+	public TuningPoint(int... coordinates)
+	{
+		super(coordinates[TOP_LEVEL], coordinates[NESTED]);
+		if (coordinates.length > MAX_DIMENSIONS)
+		{
+			throw new IllegalArgumentException("A tuning point has at most " + MAX_DIMENSIONS + " dimensions");
+		}
+		this.extra = Arrays.copyOfRange(coordinates, NESTED_POOL, coordinates.length);
+	}
+
+	public int dimensions()
+	{
+		return NESTED_POOL + extra.length;
+	}
+
+	public int get(int dimension)
+	{
+		switch (dimension)
+		{
+		case TOP_LEVEL:
+			return first;
+		case NESTED:
+			return second;
+		default:
+			return extra[dimension - NESTED_POOL];
+		}
+	}
+
+	public void set(int dimension, int value)
+	{
+		switch (dimension)
+		{
+		case TOP_LEVEL:
+			first = value;
+			break;
+		case NESTED:
+			second = value;
+			break;
+		default:
+			extra[dimension - NESTED_POOL] = value;
+		}
 	}
-	
+
+	public TuningPoint copy()
+	{
+		int[] coordinates = new int[dimensions()];
+		for (int i = 0; i < coordinates.length; i++)
+		{
+			coordinates[i] = get(i);
+		}
+		return new TuningPoint(coordinates);
+	}
+
+	/* The euclidean distance over the dimensions both points have: a point
+	 * without the pool dimensions leaves the pools as they are */
+	public double distanceTo(TuningPoint other)
+	{
+		int dimensions = Math.min(dimensions(), other.dimensions());
+		double sum = 0;
+		for (int i = 0; i < dimensions; i++)
+		{
+			double d = get(i) - other.get(i);
+			sum += d * d;
+		}
+		return Math.sqrt(sum);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return 31 * super.hashCode() + Arrays.hashCode(extra);
+	}
+
+	@Override
+	public boolean equals(Object other)
+	{
+		return super.equals(other) && Arrays.equals(extra, ((TuningPoint) other).extra);
+	}
+
 	@Override
 	public String toString()
 	{
-		return "[" + first + "," + second + "]";
+		StringBuilder result = new StringBuilder();
+		result.append("[").append(first).append(",").append(second);
+		for (int value : extra)
+		{
+			result.append(",").append(value);
+		}
+		return result.append("]").toString();
 	}
 
 }
@@ -1,6 +1,6 @@
 package jvstm.tuning.policy;
 
-import jvstm.tuning.AdjustableSemaphore;
+import jvstm.tuning.AdmissionGate;
 import jvstm.tuning.Controller;
 import jvstm.tuning.Parameters;
 import jvstm.tuning.TuningPoint;
@@ -199,15 +199,21 @@ public class F2C2 extends SemaphorePolicy
 		init();
 	}
 
+	public F2C2(PointBinder pointBinder)
+	{
+		super(pointBinder);
+		init();
+	}
+
 	@Override
 	protected void init()
 	{
 		this.pointProvider = createPointProvider();
 		TuningPoint initialConfig = pointProvider.getInitialPoint();
 
-		topLevelSemaphore = new AdjustableSemaphore(initialConfig.first);
+		topLevelGate = new AdmissionGate(initialConfig.first);
 		int nested = initialConfig.first * initialConfig.second;
-		nestedSemaphore = new AdjustableSemaphore(nested);
+		nestedGate = new AdmissionGate(nested);
 		currentPoint = new TuningPoint(initialConfig.first, nested);
 
 	}
@@ -1,6 +1,6 @@
 package jvstm.tuning.policy;
 
-import jvstm.tuning.AdjustableSemaphore;
+import jvstm.tuning.AdmissionGate;
 import jvstm.tuning.Controller;
 import jvstm.tuning.Parameters;
 import jvstm.tuning.TuningPoint;
@@ -29,9 +29,9 @@ public class FakeLinearGradientDescent extends LinearGradientDescent4
 			initialConfig = pointProvider.getInitialPoint();
 		}
 
-		topLevelSemaphore = new AdjustableSemaphore(initialConfig.first);
+		topLevelGate = new AdmissionGate(initialConfig.first);
 		int nested = initialConfig.first * initialConfig.second;
-		nestedSemaphore = new AdjustableSemaphore(nested);
+		nestedGate = new AdmissionGate(nested);
 
 		currentPoint = new TuningPoint(initialConfig.first, nested);
 		this.pointProvider = createPointProvider();
@@ -43,4 +43,10 @@ public class FakeLinearGradientDescent extends LinearGradientDescent4
 		// do nothing
 	}
 
+	@Override
+	protected void setPoolSizes(TuningPoint point)
+	{
+		// do nothing
+	}
+
 }
@@ -13,20 +13,23 @@ public class FullGradientDescent extends LinearGradientDescent4
 	static class FullGDPointProvider extends PointProvider
 	{
 
-		protected static final int fullGDSize = 8;
-		protected final Delta[] deltas = new Delta[fullGDSize];
+		protected final Delta[] deltas;
 		protected int deltaIndex = 0;
 
 		protected void incDeltaIndex()
 		{
 			deltaIndex++;
-			deltaIndex %= fullGDSize;
+			deltaIndex %= deltas.length;
 		}
 
 		public FullGDPointProvider(int roundSize, PointBinder pointBinder)
 		{
 			super(roundSize, pointBinder);
 
+			// all directions of the first two dimensions, but only one step
+			// each way along the pool dimensions, to keep the rounds short
+			int dimensions = pointBinder.getDimensions();
+			deltas = new Delta[8 + 2 * (dimensions - TuningPoint.NESTED_POOL)];
 			deltas[0] = new Delta(0, 1);
 			deltas[1] = new Delta(0, -1);
 			deltas[2] = new Delta(1, 0);
@@ -35,6 +38,11 @@ public class FullGradientDescent extends LinearGradientDescent4
 			deltas[5] = new Delta(1, -1);
 			deltas[6] = new Delta(-1, 1);
 			deltas[7] = new Delta(-1, -1);
+			for (int i = TuningPoint.NESTED_POOL; i < dimensions; i++)
+			{
+				deltas[2 * i + 4] = Delta.along(i, dimensions, 1);
+				deltas[2 * i + 5] = Delta.along(i, dimensions, -1);
+			}
 		}
 
 		@Override
@@ -56,10 +64,16 @@ public class FullGradientDescent extends LinearGradientDescent4
 	{
 		super(controller);
 	}
+
+	public FullGradientDescent(PointBinder pointBinder)
+	{
+		super(pointBinder);
+	}
 	
 	@Override
 	protected PointProvider createPointProvider() {
-		return new FullGDPointProvider(9, pointBinder);
+		// the current point and its neighbours
+		return new FullGDPointProvider(5 + 2 * pointBinder.getDimensions(), pointBinder);
 	}
 
 }
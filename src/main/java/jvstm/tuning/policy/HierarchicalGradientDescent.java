@@ -176,6 +176,11 @@ public class HierarchicalGradientDescent extends LinearGradientDescent4
 		super(controller);
 	}
 
+	public HierarchicalGradientDescent(PointBinder pointBinder)
+	{
+		super(pointBinder);
+	}
+
 	@Override
 	protected PointProvider createPointProvider()
 	{
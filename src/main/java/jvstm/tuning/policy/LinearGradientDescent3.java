@@ -4,7 +4,7 @@ import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import jvstm.Transaction;
-import jvstm.tuning.AdjustableSemaphore;
+import jvstm.tuning.AdmissionGate;
 import jvstm.tuning.Controller;
 import jvstm.tuning.Parameters;
 import jvstm.tuning.ThreadState;
@@ -16,8 +16,8 @@ public class LinearGradientDescent3 extends TuningPolicy
 {
 
 	/*
-	 * This is a LinearGD implementation which uses semaphores to control the
-	 * number of allowed nested and top-level transactions
+	 * This is a LinearGD implementation which uses admission gates to control
+	 * the number of allowed nested and top-level transactions
 	 */
 
 	public static Pair<Integer, Integer>[] deltas;
@@ -49,8 +49,8 @@ public class LinearGradientDescent3 extends TuningPolicy
 	protected AtomicInteger currentTopLevelThreads = new AtomicInteger(0);
 	protected AtomicInteger currentNestedThreads = new AtomicInteger(0);
 
-	protected AdjustableSemaphore topLevelSemaphore;
-	protected AdjustableSemaphore nestedSemaphore;
+	protected AdmissionGate topLevelGate;
+	protected AdmissionGate nestedGate;
 
 	public LinearGradientDescent3(Controller controller)
 	{
@@ -71,8 +71,8 @@ public class LinearGradientDescent3 extends TuningPolicy
 		currentTopLevelThreads = new AtomicInteger(config.first);
 		currentNestedThreads = new AtomicInteger(config.second);
 
-		topLevelSemaphore = new AdjustableSemaphore(maxTopLevelThreads.get());
-		nestedSemaphore = new AdjustableSemaphore(maxNestedThreads.get());
+		topLevelGate = new AdmissionGate(maxTopLevelThreads.get());
+		nestedGate = new AdmissionGate(maxNestedThreads.get());
 
 		bestPoint = new Pair<Integer, Integer>(this.maxTopLevelThreads.get(), this.maxNestedThreads.get());
 		previousBestPoint = new Pair<Integer, Integer>(this.maxTopLevelThreads.get(), this.maxNestedThreads.get());
@@ -218,8 +218,6 @@ public class LinearGradientDescent3 extends TuningPolicy
 
 	protected void setCurrentPoint(int topLevel, int nested)
 	{
-		int previousX = this.currentPoint.first;
-		int previousY = this.currentPoint.second;
 		this.currentPoint.first = topLevel;
 		this.currentPoint.second = nested;
 		this.currentTopLevelThreads.set(topLevel);
@@ -227,21 +225,8 @@ public class LinearGradientDescent3 extends TuningPolicy
 		this.maxTopLevelThreads.set(topLevel);
 		this.maxNestedThreads.set(nested);
 
-		if (topLevel > previousX)
-		{
-			topLevelSemaphore.release(topLevel - previousX);
-		} else if (topLevel < previousX)
-		{
-			topLevelSemaphore.reducePermits(previousX - topLevel);
-		}
-
-		if (nested > previousY)
-		{
-			nestedSemaphore.release(nested - previousY);
-		} else if (nested < previousY)
-		{
-			nestedSemaphore.reducePermits(previousY - nested);
-		}
+		topLevelGate.setLimit(topLevel);
+		nestedGate.setLimit(nested);
 	}
 
 	protected void setCurrentPoint(Pair<Integer, Integer> point)
@@ -261,11 +246,11 @@ public class LinearGradientDescent3 extends TuningPolicy
 	{
 		if (nested)
 		{
-			nestedSemaphore.release();
+			nestedGate.release();
 			currentNestedThreads.decrementAndGet();
 		} else
 		{
-			topLevelSemaphore.release();
+			topLevelGate.release();
 			currentTopLevelThreads.decrementAndGet();
 		}
 		t.getTuningContext().getThreadState().finish();
@@ -278,11 +263,11 @@ public class LinearGradientDescent3 extends TuningPolicy
 	{
 		if (nested)
 		{
-			nestedSemaphore.acquireUninterruptibly();
+			nestedGate.acquire();
 			currentNestedThreads.incrementAndGet();
 		} else
 		{
-			topLevelSemaphore.acquireUninterruptibly();
+			topLevelGate.acquire();
 			currentTopLevelThreads.incrementAndGet();
 		}
 		t.getTuningContext().getThreadState().tryRun();
@@ -1,7 +1,7 @@
 package jvstm.tuning.policy;
 
 import jvstm.Transaction;
-import jvstm.tuning.AdjustableSemaphore;
+import jvstm.tuning.AdmissionGate;
 import jvstm.tuning.Controller;
 import jvstm.tuning.Parameters;
 import jvstm.tuning.ThreadState;
@@ -19,24 +19,31 @@ public class LinearGradientDescent4 extends SemaphorePolicy
 	static class LinearGDPointProvider extends PointProvider
 	{
 
-		protected static final int linearGDSize = 4;
-		protected final Delta[] deltas = new Delta[linearGDSize];
+		protected final Delta[] deltas;
 		protected int deltaIndex = 0;
 
 		protected void incDeltaIndex()
 		{
 			deltaIndex++;
-			deltaIndex %= linearGDSize;
+			deltaIndex %= deltas.length;
 		}
 
 		public LinearGDPointProvider(int roundSize, PointBinder pointBinder)
 		{
 			super(roundSize, pointBinder);
 
+			// one step each way along every dimension
+			int dimensions = pointBinder.getDimensions();
+			deltas = new Delta[2 * dimensions];
 			deltas[0] = new Delta(0, 1);
 			deltas[1] = new Delta(0, -1);
 			deltas[2] = new Delta(1, 0);
 			deltas[3] = new Delta(-1, 0);
+			for (int i = TuningPoint.NESTED_POOL; i < dimensions; i++)
+			{
+				deltas[2 * i] = Delta.along(i, dimensions, 1);
+				deltas[2 * i + 1] = Delta.along(i, dimensions, -1);
+			}
 		}
 
 		@Override
@@ -60,6 +67,11 @@ public class LinearGradientDescent4 extends SemaphorePolicy
 		super(controller);
 	}
 
+	public LinearGradientDescent4(PointBinder pointBinder)
+	{
+		super(pointBinder);
+	}
+
 	protected void init()
 	{
 		this.pointProvider = createPointProvider();
@@ -69,9 +81,9 @@ public class LinearGradientDescent4 extends SemaphorePolicy
 			initialConfig = pointProvider.getInitialPoint();
 		}
 
-		topLevelSemaphore = new AdjustableSemaphore(initialConfig.first);
+		topLevelGate = new AdmissionGate(initialConfig.first);
 		int nested = initialConfig.first * initialConfig.second;
-		nestedSemaphore = new AdjustableSemaphore(nested);
+		nestedGate = new AdmissionGate(nested);
 
 		currentPoint = new TuningPoint(initialConfig.first, nested);
 	}
@@ -79,7 +91,8 @@ public class LinearGradientDescent4 extends SemaphorePolicy
 	@Override
 	protected PointProvider createPointProvider()
 	{
-		return new LinearGDPointProvider(5, pointBinder);
+		// the current point and its neighbours
+		return new LinearGDPointProvider(2 * pointBinder.getDimensions() + 1, pointBinder);
 	}
 
 	@Override
@@ -2,9 +2,19 @@ package jvstm.tuning.policy;
 
 import jvstm.tuning.TuningPoint;
 
+/*
+ * Bounds the tuning space.  The product of the top-level and nested
+ * dimensions may not exceed the maximum number of threads.  The pool
+ * dimensions, if any, are bound on their own: the nested-parallel pool needs
+ * no more threads than there may be nested transactions, and the GC cleaners
+ * no more than there are processors.
+ */
 public class PointBinder
 {
+	private static final int NCPU = Runtime.getRuntime().availableProcessors();
+
 	private int maximum;
+	private final int dimensions;
 	private int maxX;
 	private int maxY;
 	@Deprecated
@@ -13,7 +23,17 @@ public class PointBinder
 
 	public PointBinder(int maximum)
 	{
+		this(maximum, TuningPoint.NESTED_POOL);
+	}
+
+	public PointBinder(int maximum, int dimensions)
+	{
+		if (dimensions < TuningPoint.NESTED_POOL || dimensions > TuningPoint.MAX_DIMENSIONS)
+		{
+			throw new IllegalArgumentException("Invalid number of tuning dimensions: " + dimensions);
+		}
 		this.maximum = maximum;
+		this.dimensions = dimensions;
 		this.independentMaxima = false;
 	}
 
@@ -24,6 +44,7 @@ public class PointBinder
 		this.maximum = maximum;
 		this.maxX = maxX;
 		this.maxY = maxY;
+		this.dimensions = TuningPoint.NESTED_POOL;
 		this.independentMaxima = true;
 
 		throw new UnsupportedOperationException();
@@ -41,7 +62,19 @@ public class PointBinder
 		// we went over the "border", so backtrack one step:
 		result.first--;
 		result.second--;
-		return result;
+		if (dimensions == TuningPoint.NESTED_POOL)
+		{
+			return result;
+		}
+
+		int[] coordinates = new int[dimensions];
+		coordinates[TuningPoint.TOP_LEVEL] = result.first;
+		coordinates[TuningPoint.NESTED] = result.second;
+		for (int i = TuningPoint.NESTED_POOL; i < dimensions; i++)
+		{
+			coordinates[i] = (getMaximum(i) + 1) / 2;
+		}
+		return new TuningPoint(coordinates);
 	}
 
 	public boolean isBound(int top, int nested)
@@ -51,16 +84,43 @@ public class PointBinder
 
 	public boolean isBound(TuningPoint point)
 	{
-		return isBound(point.first, point.second);
+		if (!isBound(point.first, point.second))
+		{
+			return false;
+		}
+		for (int i = TuningPoint.NESTED_POOL; i < point.dimensions(); i++)
+		{
+			if (point.get(i) < 1 || point.get(i) > getMaximum(i))
+			{
+				return false;
+			}
+		}
+		return true;
 	}
 
 	protected TuningPoint constrain(TuningPoint target)
 	{
+		TuningPoint result;
 		if (independentMaxima)
 		{
-			return constrainIndependent(target);
+			result = constrainIndependent(target);
+		} else
+		{
+			result = constrainLinear(target);
+		}
+		if (target.dimensions() == TuningPoint.NESTED_POOL)
+		{
+			return result;
 		}
-		return constrainLinear(target);
+
+		TuningPoint bound = target.copy();
+		bound.first = result.first;
+		bound.second = result.second;
+		for (int i = TuningPoint.NESTED_POOL; i < bound.dimensions(); i++)
+		{
+			bound.set(i, Math.max(1, Math.min(bound.get(i), getMaximum(i))));
+		}
+		return bound;
 	}
 
 	@Deprecated
@@ -119,6 +179,25 @@ public class PointBinder
 		maximum = max;
 	}
 
+	/* The upper bound of a dimension after the first two */
+	public int getMaximum(int dimension)
+	{
+		switch (dimension)
+		{
+		case TuningPoint.NESTED_POOL:
+			return maximum;
+		case TuningPoint.GC_CLEANERS:
+			return NCPU;
+		default:
+			throw new IllegalArgumentException("No independent maximum for dimension " + dimension);
+		}
+	}
+
+	public int getDimensions()
+	{
+		return dimensions;
+	}
+
 	public int getMaxX()
 	{
 		return maxX;
@@ -129,7 +129,11 @@ public abstract class PointProvider
 		}
 	}
 
-	public static class Delta extends Pair<Integer, Integer>
+	/*
+	 * A step in the tuning space.  It moves only the dimensions it has, and
+	 * that the point it is applied to has.
+	 */
+	public static class Delta extends TuningPoint
 	{
 
 		public Delta()
@@ -142,15 +146,28 @@ public abstract class PointProvider
 			super(first, second);
 		}
 
-		public TuningPoint applyTo(TuningPoint point)
+		public Delta(int... steps)
 		{
-			return new TuningPoint(point.first + this.first, point.second + this.second);
+			super(steps);
 		}
 
-		@Override
-		public String toString()
+		/* A step of the given size along a single dimension */
+		public static Delta along(int dimension, int dimensions, int step)
 		{
-			return "[" + first + "," + second + "]";
+			int[] steps = new int[dimensions];
+			steps[dimension] = step;
+			return new Delta(steps);
+		}
+
+		public TuningPoint applyTo(TuningPoint point)
+		{
+			TuningPoint result = point.copy();
+			int dimensions = Math.min(dimensions(), point.dimensions());
+			for (int i = 0; i < dimensions; i++)
+			{
+				result.set(i, point.get(i) + get(i));
+			}
+			return result;
 		}
 
 	}
@@ -5,7 +5,7 @@ import java.util.List;
 import java.util.Random;
 
 import jvstm.Transaction;
-import jvstm.tuning.AdjustableSemaphore;
+import jvstm.tuning.AdmissionGate;
 import jvstm.tuning.Controller;
 import jvstm.tuning.Parameters;
 import jvstm.tuning.Tunable;
@@ -310,14 +310,20 @@ public class RRS extends SemaphorePolicy
 		init();
 	}
 
+	public RRS(PointBinder pointBinder)
+	{
+		super(pointBinder);
+		init();
+	}
+
 	protected void init()
 	{
 		this.pointProvider = createPointProvider();
 		TuningPoint initialConfig = pointProvider.getInitialPoint();
 
-		topLevelSemaphore = new AdjustableSemaphore(initialConfig.first);
+		topLevelGate = new AdmissionGate(initialConfig.first);
 		int nested = initialConfig.first * initialConfig.second;
-		nestedSemaphore = new AdjustableSemaphore(nested);
+		nestedGate = new AdmissionGate(nested);
 		currentPoint = new TuningPoint(initialConfig.first, nested);
 	}
 
@@ -330,6 +336,13 @@ public class RRS extends SemaphorePolicy
 		}
 
 		float throughput = getThroughput(true), tcr = getTCR(true);
+		setCurrentPoint(nextPoint(throughput, tcr));
+
+	}
+
+	@Override
+	public TuningPoint nextPoint(float throughput, float tcr)
+	{
 		if (!pointProvider.isFirstRound())
 		{
 			pointProvider.saveCurrentPoint(throughput, tcr);
@@ -345,8 +358,7 @@ public class RRS extends SemaphorePolicy
 			point = pointProvider.getPoint(throughput, tcr);
 		}
 
-		setCurrentPoint(point);
-
+		return point;
 	}
 
 	@Override
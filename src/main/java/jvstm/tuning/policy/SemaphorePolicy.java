@@ -1,7 +1,7 @@
 package jvstm.tuning.policy;
 
 import jvstm.Transaction;
-import jvstm.tuning.AdjustableSemaphore;
+import jvstm.tuning.AdmissionGate;
 import jvstm.tuning.Controller;
 import jvstm.tuning.Parameters;
 import jvstm.tuning.ThreadState;
@@ -10,14 +10,14 @@ import jvstm.tuning.TuningPoint;
 
 
 /*
- * This is an abstract policy which uses semaphores to control the
- * number of allowed nested and top-level transactions
+ * This is an abstract policy which uses admission gates (scalable semaphores)
+ * to control the number of allowed nested and top-level transactions
  */
 public abstract class SemaphorePolicy extends TuningPolicy
 {
 
-	protected AdjustableSemaphore topLevelSemaphore;
-	protected AdjustableSemaphore nestedSemaphore;
+	protected AdmissionGate topLevelGate;
+	protected AdmissionGate nestedGate;
 
 	protected TuningPoint currentPoint;
 
@@ -27,6 +27,12 @@ public abstract class SemaphorePolicy extends TuningPolicy
 		init();
 	}
 
+	public SemaphorePolicy(PointBinder pointBinder)
+	{
+		super(pointBinder);
+		init();
+	}
+
 	protected abstract void init();
 
 	@Override
@@ -39,19 +45,45 @@ public abstract class SemaphorePolicy extends TuningPolicy
 		{
 			mergeStatistics();
 		}
-		
-		if (pointProvider.isFirstRound())
+
+		// nothing is measured before the first round
+		boolean firstRound = pointProvider.isFirstRound();
+		float throughput = 0, tcr = 0;
+		if (!firstRound)
+		{
+			throughput = getThroughput(true);
+			tcr = getTCR(true);
+		} else if (Parameters.initialConfig != null)
+		{
+			// the pools do not exist yet when the policy is created, so they
+			// get their initial sizes here, the gates theirs in init()
+			setPoolSizes(Parameters.initialConfig);
+		}
+
+		setCurrentPoint(nextPoint(firstRound, throughput, tcr));
+
+	}
+
+	@Override
+	public TuningPoint nextPoint(float throughput, float tcr)
+	{
+		return nextPoint(pointProvider.isFirstRound(), throughput, tcr);
+	}
+
+	// isFirstRound() is asked only once per run, as some providers change
+	// their state when asked
+	protected TuningPoint nextPoint(boolean firstRound, float throughput, float tcr)
+	{
+		if (firstRound)
 		{
 			TuningPoint point = pointProvider.getInitialPoint();
 			pointProvider.initRound(point);
 
 			// System.err.println("# GD4 FIRST ROUND: new fixed Point is " +
 			// point);
-			setCurrentPoint(point);
-			return;
+			return point;
 		}
 
-		float throughput = getThroughput(true), tcr = getTCR(true);
 		pointProvider.saveCurrentPoint(throughput, tcr);
 
 		TuningPoint point = null;
@@ -64,37 +96,60 @@ public abstract class SemaphorePolicy extends TuningPolicy
 			point = pointProvider.getPoint(throughput, tcr);
 		}
 
-		setCurrentPoint(point);
-
+		return point;
 	}
 
 	protected void setCurrentPoint(int topLevel, int nested)
 	{
-		int previousX = this.currentPoint.first;
-		int previousY = this.currentPoint.second;
 		this.currentPoint.first = topLevel;
 		this.currentPoint.second = nested;
 
-		if (topLevel > previousX)
-		{
-			topLevelSemaphore.release(topLevel - previousX);
-		} else if (topLevel < previousX)
-		{
-			topLevelSemaphore.reducePermits(previousX - topLevel);
-		}
+		// each gate applies the whole difference at once
+		topLevelGate.setLimit(topLevel);
+		nestedGate.setLimit(nested);
+	}
+
+	protected void setCurrentPoint(TuningPoint point)
+	{
+		setCurrentPoint(point.first, point.second);
+		setPoolSizes(point);
+	}
 
-		if (nested > previousY)
+	/* Resizes the pools whose dimensions the point has */
+	protected void setPoolSizes(TuningPoint point)
+	{
+		if (point.dimensions() > TuningPoint.NESTED_POOL)
 		{
-			nestedSemaphore.release(nested - previousY);
-		} else if (nested < previousY)
+			Transaction.setThreadPoolSize(point.get(TuningPoint.NESTED_POOL));
+		}
+		if (point.dimensions() > TuningPoint.GC_CLEANERS)
 		{
-			nestedSemaphore.reducePermits(previousY - nested);
+			Transaction.gcTask.setPoolSize(point.get(TuningPoint.GC_CLEANERS));
 		}
 	}
 
-	protected void setCurrentPoint(TuningPoint point)
+	@Override
+	public TuningPoint getCurrentPoint()
 	{
-		setCurrentPoint(point.first, point.second);
+		// a copy, as the point is updated in place
+		TuningPoint point = currentPoint;
+		if (point == null)
+		{
+			return null;
+		}
+		// the pool sizes are read from the pools themselves
+		int[] coordinates = new int[pointBinder.getDimensions()];
+		coordinates[TuningPoint.TOP_LEVEL] = point.first;
+		coordinates[TuningPoint.NESTED] = point.second;
+		if (coordinates.length > TuningPoint.NESTED_POOL)
+		{
+			coordinates[TuningPoint.NESTED_POOL] = Transaction.getThreadPoolSize();
+		}
+		if (coordinates.length > TuningPoint.GC_CLEANERS)
+		{
+			coordinates[TuningPoint.GC_CLEANERS] = Transaction.gcTask.getPoolSize();
+		}
+		return new TuningPoint(coordinates);
 	}
 
 	@Override
@@ -109,10 +164,10 @@ public abstract class SemaphorePolicy extends TuningPolicy
 	{
 		if (nested)
 		{
-			nestedSemaphore.release();
+			nestedGate.release();
 		} else
 		{
-			topLevelSemaphore.release();
+			topLevelGate.release();
 		}
 		t.getTuningContext().getThreadState().finish();
 		t.getTuningContext().getThreadState().setRunnable(false);
@@ -124,10 +179,10 @@ public abstract class SemaphorePolicy extends TuningPolicy
 	{
 		if (nested)
 		{
-			nestedSemaphore.acquireUninterruptibly();
+			nestedGate.acquire();
 		} else
 		{
-			topLevelSemaphore.acquireUninterruptibly();
+			topLevelGate.acquire();
 		}
 		t.getTuningContext().getThreadState().tryRun();
 	}
@@ -60,6 +60,14 @@ public abstract class TuningPolicy
 		setMeasurementType();
 	}
 
+	// a policy that is not attached to the Controller, to be driven offline
+	// through nextPoint (see jvstm.tuning.simulation.PolicySimulator)
+	protected TuningPolicy(PointBinder pointBinder)
+	{
+		this.pointBinder = pointBinder;
+		this.measurementType = MeasurementType.real;
+	}
+
 	public void reset(Controller controller)
 	{
 		clearInternalData();
@@ -85,6 +93,75 @@ public abstract class TuningPolicy
 		}
 	}
 
+	// reads a throughput surface recorded in one of the formats below: one
+	// point per line
+	public static Map<TuningPoint, Float> readStubFile(String stubFile)
+	{
+		Map<TuningPoint, Float> stubData = new HashMap<TuningPoint, Float>();
+		// String example = "[22,1] {12120.0}";
+		// String example2 = "1 1 160000.0"
+		String pointPattern1 = "\\[(\\d+),(\\d+)\\]" + " \\{(\\d+(\\.\\d+)?)\\}";
+		String pointPattern2 = "(\\d+)\\s+(\\d+)\\s+(\\d+(\\.\\d+)?)";
+		String pointPattern3 = "\\[(\\d+),(\\d+)\\]" + " \\{thr:\\s+(\\d+(\\.\\d+)?),tcr:\\s+(\\d+(\\.\\d+)?)\\}";
+		Pattern pattern1 = Pattern.compile(pointPattern1);
+		Pattern pattern2 = Pattern.compile(pointPattern2);
+		Pattern pattern3 = Pattern.compile(pointPattern3);
+		Pattern finalPattern = null;
+		Matcher matcher = null;
+
+		BufferedReader r = null;
+		try
+		{
+			r = new BufferedReader(new FileReader(stubFile));
+			String point = null;
+
+			while ((point = r.readLine()) != null)
+			{
+				if (finalPattern == null)
+				{
+					Matcher matcher1 = pattern1.matcher(point);
+					Matcher matcher2 = pattern2.matcher(point);
+					Matcher matcher3 = pattern3.matcher(point);
+					if (matcher1.matches())
+					{
+						finalPattern = pattern1;
+					} else if (matcher2.matches())
+					{
+						finalPattern = pattern2;
+					} else if (matcher3.matches())
+					{
+						finalPattern = pattern3;
+					} else
+					{
+						r.close();
+						throw new RuntimeException("Error: Invalid Stub file data format: " + point);
+					}
+					matcher = finalPattern.matcher(point);
+				}
+				matcher = matcher.reset(point);
+				if (!matcher.matches())
+				{
+					r.close();
+					throw new RuntimeException("Error: Invalid Stub file data format: " + point);
+				}
+				int x = Integer.parseInt(matcher.group(1));
+				int y = Integer.parseInt(matcher.group(2));
+				float measure = Float.parseFloat(matcher.group(3));
+				TuningPoint stubPoint = new TuningPoint(x, y);
+				stubData.put(stubPoint, measure);
+			}
+
+			r.close();
+		} catch (FileNotFoundException e)
+		{
+			throw new RuntimeException("Error: Invalid data source. Could not open file \"" + stubFile + "\"");
+		} catch (IOException e)
+		{
+			throw new RuntimeException("Error: Invalid data source. Could not read file \"" + stubFile + "\"");
+		}
+		return stubData;
+	}
+
 	public class DataStub
 	{
 		protected Map<TuningPoint, Float> stubData = new HashMap<TuningPoint, Float>();
@@ -105,62 +182,7 @@ public abstract class TuningPolicy
 			// load stub data:
 			if (useStubFile)
 			{
-				// String example = "[22,1] {12120.0}";
-				// String example2 = "1 1 160000.0"
-				String pointPattern1 = "\\[(\\d+),(\\d+)\\]" + " \\{(\\d+(\\.\\d+)?)\\}";
-				String pointPattern2 = "(\\d+)\\s+(\\d+)\\s+(\\d+(\\.\\d+)?)";
-				String pointPattern3 = "\\[(\\d+),(\\d+)\\]" + " \\{thr:\\s+(\\d+(\\.\\d+)?),tcr:\\s+(\\d+(\\.\\d+)?)\\}";
-				Pattern pattern1 = Pattern.compile(pointPattern1);
-				Pattern pattern2 = Pattern.compile(pointPattern2);
-				Pattern pattern3 = Pattern.compile(pointPattern3);
-				Pattern finalPattern = null;
-				Matcher matcher = null;
-
-				BufferedReader r = null;
-				try
-				{
-					r = new BufferedReader(new FileReader(stubFile));
-					String point = null;
-
-					while ((point = r.readLine()) != null)
-					{
-						if (finalPattern == null)
-						{
-							Matcher matcher1 = pattern1.matcher(point);
-							Matcher matcher2 = pattern2.matcher(point);
-							Matcher matcher3 = pattern2.matcher(point);
-							if (matcher1.matches())
-							{
-								finalPattern = pattern1;
-							} else if (matcher2.matches())
-							{
-								finalPattern = pattern2;
-							} else if (matcher3.matches())
-							{
-								finalPattern = pattern2;
-							} else
-							{
-								r.close();
-								throw new RuntimeException("Error: Invalid Stub file data format: " + point);
-							}
-							matcher = finalPattern.matcher(point);
-						}
-						matcher = matcher.reset(point);
-						int x = Integer.parseInt(matcher.group(1));
-						int y = Integer.parseInt(matcher.group(2));
-						float measure = Float.parseFloat(matcher.group(3));
-						TuningPoint stubPoint = new TuningPoint(x, y);
-						stubData.put(stubPoint, measure);
-					}
-
-					r.close();
-				} catch (FileNotFoundException e)
-				{
-					throw new RuntimeException("Error: Invalid data source. Could not open file \"" + stubFile + "\"");
-				} catch (IOException e)
-				{
-					throw new RuntimeException("Error: Invalid data source. Could not read file \"" + stubFile + "\"");
-				}
+				stubData = readStubFile(stubFile);
 			}
 		}
 
@@ -226,8 +248,9 @@ public abstract class TuningPolicy
 		}
 	}
 
-	// to do: use lock?
-	// does not cause memory consistency errors but is not thread-safe
+	// adds the counts of every thread since the last reset to the global
+	// statistics. the threads keep running their transactions meanwhile, so
+	// the result is not an atomic snapshot of all of them
 	public void mergeStatistics()
 	{
 		for (TuningContext ctx : controller.getContexts().values())
@@ -317,6 +340,14 @@ public abstract class TuningPolicy
 	// true, merge all stats into <globalStatistics> before taking action
 	public abstract void run(boolean mergePerThreadStatistics);
 
+	// choose the point to apply next, given the throughput and TCR measured
+	// while the current point was applied. run() does the same with the
+	// measurements merged from the threads' statistics
+	public TuningPoint nextPoint(float throughput, float tcr)
+	{
+		throw new UnsupportedOperationException(getClass().getSimpleName() + " does not use tuning points");
+	}
+
 	// Create and return new tunable, in whatever state this policy requires
 	public abstract Tunable newTunable();
 
@@ -324,6 +355,13 @@ public abstract class TuningPolicy
 
 	public abstract void tryRunTransaction(Transaction t, boolean isNested);
 
+	// the point currently applied, or null if this policy does not use
+	// tuning points
+	public TuningPoint getCurrentPoint()
+	{
+		return null;
+	}
+
 	public ThreadStatistics getGlobalStatistics()
 	{
 		return globalStatistics;
@@ -0,0 +1,304 @@
+package jvstm.tuning.simulation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import jvstm.tuning.Parameters;
+import jvstm.tuning.TuningPoint;
+import jvstm.tuning.Util;
+import jvstm.tuning.policy.PointBinder;
+import jvstm.tuning.policy.TuningPolicy;
+
+/*
+ * Evaluates tuning policies offline, in virtual time, against recorded
+ * throughput surfaces.
+ *
+ * Each step stands for one Parameters.interval: the policy is given the
+ * throughput of the point it chose on the previous step, as read from the
+ * surface, and chooses the next point through TuningPolicy.nextPoint.  No
+ * transaction runs and no thread sleeps, so thousands of intervals take a
+ * fraction of a second.
+ *
+ * The measurements may be perturbed by gaussian noise, relative to the
+ * throughput, and the workload may change phase: with several surfaces, the
+ * simulation switches to the next one every phaseLength steps, and back to
+ * the first after the last.
+ *
+ * For each phase it reports, against the best recorded point of its surface:
+ * - convergence: the first step at which the point chosen is within the
+ *   tolerance of the optimum, and the step from which it always is;
+ * - regret: the throughput lost by not running at the optimum, also as a
+ *   fraction of the optimum throughput over the phase;
+ * - the mean and final euclidean distance to the optimum point.
+ * The policy itself only ever sees the noisy measurements.
+ */
+public class PolicySimulator
+{
+	public static class PhaseResult
+	{
+		final ThroughputSurface surface;
+		final TuningPoint optimum;
+		final float optimumThroughput;
+		final int firstStep;
+		int steps;
+		// steps since the start of the phase, -1 if never
+		int firstHit = -1;
+		int lastMiss = -1;
+		double regret;
+		double distanceSum;
+		double lastDistance;
+		TuningPoint lastPoint;
+
+		PhaseResult(ThroughputSurface surface, PointBinder pointBinder, int firstStep)
+		{
+			this.surface = surface;
+			this.optimum = surface.getOptimum(pointBinder);
+			this.optimumThroughput = surface.getThroughput(optimum);
+			this.firstStep = firstStep;
+		}
+
+		void record(TuningPoint point, float throughput, float tolerance)
+		{
+			if (throughput >= (1 - tolerance) * optimumThroughput)
+			{
+				if (firstHit < 0)
+				{
+					firstHit = steps;
+				}
+			} else
+			{
+				lastMiss = steps;
+			}
+			regret += optimumThroughput - throughput;
+			lastDistance = point.distanceTo(optimum);
+			distanceSum += lastDistance;
+			lastPoint = point;
+			steps++;
+		}
+
+		/* Steps from the start of the phase until the policy stays near the optimum, or -1 if it never does */
+		public int getConvergenceSteps()
+		{
+			return (lastMiss == steps - 1) ? -1 : lastMiss + 1;
+		}
+
+		public int getFirstHitSteps()
+		{
+			return firstHit;
+		}
+
+		public double getRegret()
+		{
+			return regret;
+		}
+
+		public double getRelativeRegret()
+		{
+			return regret / (optimumThroughput * steps);
+		}
+
+		public double getMeanDistance()
+		{
+			return distanceSum / steps;
+		}
+
+		public double getFinalDistance()
+		{
+			return lastDistance;
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format("phase at step %d (%s): optimum %s {%.2f}, first hit %s, converged %s, "
+					+ "regret %.2f (%.2f%%), mean distance %.2f, final point %s (distance %.2f)", firstStep,
+					surface.getName(), optimum, optimumThroughput, steps(firstHit), steps(getConvergenceSteps()),
+					regret, 100 * getRelativeRegret(), getMeanDistance(), lastPoint, lastDistance);
+		}
+	}
+
+	public static class Result
+	{
+		final String policy;
+		final List<PhaseResult> phases = new ArrayList<PhaseResult>();
+
+		Result(String policy)
+		{
+			this.policy = policy;
+		}
+
+		public List<PhaseResult> getPhases()
+		{
+			return phases;
+		}
+
+		public double getRegret()
+		{
+			double regret = 0;
+			for (PhaseResult phase : phases)
+			{
+				regret += phase.regret;
+			}
+			return regret;
+		}
+
+		public double getRelativeRegret()
+		{
+			double optimum = 0;
+			for (PhaseResult phase : phases)
+			{
+				optimum += (double) phase.optimumThroughput * phase.steps;
+			}
+			return getRegret() / optimum;
+		}
+
+		@Override
+		public String toString()
+		{
+			StringBuilder result = new StringBuilder();
+			result.append(String.format("%s: regret %.2f (%.2f%%)%n", policy, getRegret(), 100 * getRelativeRegret()));
+			for (PhaseResult phase : phases)
+			{
+				result.append("  ").append(phase).append(String.format("%n"));
+			}
+			return result.toString();
+		}
+	}
+
+	private final PointBinder pointBinder;
+	private final List<ThroughputSurface> surfaces;
+	private final int phaseLength;
+	private final float noise;
+	private final float tolerance;
+	private final Random random;
+
+	public PolicySimulator(int maxThreads, List<ThroughputSurface> surfaces, int phaseLength, float noise,
+			float tolerance, long seed)
+	{
+		this.pointBinder = new PointBinder(maxThreads);
+		this.surfaces = surfaces;
+		this.phaseLength = phaseLength;
+		this.noise = noise;
+		this.tolerance = tolerance;
+		this.random = new Random(seed);
+	}
+
+	public PointBinder getPointBinder()
+	{
+		return pointBinder;
+	}
+
+	/* Creates a policy of the given class that is not attached to the Controller */
+	public TuningPolicy newPolicy(Class<? extends TuningPolicy> policyClass)
+	{
+		try
+		{
+			return policyClass.getConstructor(PointBinder.class).newInstance(pointBinder);
+		} catch (NoSuchMethodException e)
+		{
+			throw new UnsupportedOperationException(policyClass.getSimpleName() + " cannot be simulated");
+		} catch (Exception e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	public Result simulate(TuningPolicy policy, int steps)
+	{
+		Result result = new Result(policy.getClass().getSimpleName());
+		PhaseResult phase = null;
+		// the first point is chosen before anything is measured
+		TuningPoint point = policy.nextPoint(0, 0);
+		for (int step = 0; step < steps; step++)
+		{
+			if (step % phaseLength == 0)
+			{
+				ThroughputSurface surface = surfaces.get((step / phaseLength) % surfaces.size());
+				phase = new PhaseResult(surface, pointBinder, step);
+				result.phases.add(phase);
+			}
+
+			float throughput = phase.surface.getThroughput(point);
+			phase.record(point, throughput, tolerance);
+
+			float measured = (float) Math.max(0, throughput * (1 + noise * random.nextGaussian()));
+			// the surfaces only record throughput
+			TuningPoint next = policy.nextPoint(measured, 1);
+			if (next != null)
+			{
+				point = next;
+			}
+		}
+		return result;
+	}
+
+	private static String steps(int steps)
+	{
+		return (steps < 0) ? "never" : steps + " steps (" + ((long) steps * Parameters.interval) + " ms)";
+	}
+
+	private static String property(String name, String defaultValue)
+	{
+		String value = Util.getSystemProperty(name);
+		return (value == null) ? defaultValue : value;
+	}
+
+	public static void main(String[] args)
+	{
+		String stubFiles = Util.getSystemProperty("StubFile");
+		String maxThreads = Util.getSystemProperty("MaxThreads");
+		if (stubFiles == null || maxThreads == null)
+		{
+			System.err.println("Usage: java -DStubFile=<surface>[,<surface>...] -DMaxThreads=<n> [-DPolicy=<policy>|all]");
+			System.err.println("  [-DSteps=1000] [-DPhaseLength=<steps>] [-DNoise=0] [-DTolerance=0.05] [-DSeed=0]");
+			System.err.println("  [-DInterval=" + Parameters.interval + "] " + PolicySimulator.class.getName());
+			System.err.println("Policies: " + Parameters.getPolicies().keySet());
+			System.exit(1);
+		}
+
+		List<ThroughputSurface> surfaces = new ArrayList<ThroughputSurface>();
+		for (String stubFile : stubFiles.split(","))
+		{
+			surfaces.add(ThroughputSurface.load(stubFile));
+		}
+		int steps = Integer.parseInt(property("Steps", "1000"));
+		// by default, each surface is a phase of the same length
+		int phaseLength = Integer.parseInt(property("PhaseLength", Integer.toString(Math.max(1, steps / surfaces.size()))));
+		float noise = Float.parseFloat(property("Noise", "0"));
+		float tolerance = Float.parseFloat(property("Tolerance", "0.05"));
+		long seed = Long.parseLong(property("Seed", "0"));
+		Parameters.interval = Integer.parseInt(property("Interval", Integer.toString(Parameters.interval)));
+		String policyName = property("Policy", "all");
+
+		// sorted, for a stable report
+		Map<String, Class<? extends TuningPolicy>> policies = new TreeMap<String, Class<? extends TuningPolicy>>(
+				Parameters.getPolicies());
+		for (Map.Entry<String, Class<? extends TuningPolicy>> entry : policies.entrySet())
+		{
+			if (!policyName.equals("all") && !policyName.equals(entry.getKey()))
+			{
+				continue;
+			}
+			// the same noise for every policy
+			PolicySimulator simulator = new PolicySimulator(Integer.parseInt(maxThreads), surfaces, phaseLength,
+					noise, tolerance, seed);
+			TuningPolicy policy;
+			try
+			{
+				policy = simulator.newPolicy(entry.getValue());
+			} catch (UnsupportedOperationException e)
+			{
+				if (!policyName.equals("all"))
+				{
+					throw e;
+				}
+				continue;
+			}
+			System.out.print(entry.getKey() + " - " + simulator.simulate(policy, steps));
+		}
+	}
+
+}
@@ -0,0 +1,73 @@
+package jvstm.tuning.simulation;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import jvstm.tuning.TuningPoint;
+import jvstm.tuning.policy.PointBinder;
+import jvstm.tuning.policy.TuningPolicy;
+
+/*
+ * The throughput measured at each tuning point of some workload, as recorded
+ * in a stub file (see TuningPolicy.readStubFile).  Points that were not
+ * recorded have a throughput of 0.
+ */
+public class ThroughputSurface
+{
+	private final Map<TuningPoint, Float> throughput;
+	private final String name;
+
+	public ThroughputSurface(String name, Map<TuningPoint, Float> throughput)
+	{
+		this.name = name;
+		this.throughput = new HashMap<TuningPoint, Float>(throughput);
+	}
+
+	public static ThroughputSurface load(String stubFile)
+	{
+		return new ThroughputSurface(stubFile, TuningPolicy.readStubFile(stubFile));
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	public boolean contains(TuningPoint point)
+	{
+		return throughput.containsKey(point);
+	}
+
+	public float getThroughput(TuningPoint point)
+	{
+		Float result = throughput.get(point);
+		return (result == null) ? 0 : result;
+	}
+
+	/* The recorded point with the highest throughput within the binder's bounds */
+	public TuningPoint getOptimum(PointBinder pointBinder)
+	{
+		TuningPoint optimum = null;
+		float best = -1;
+		for (Map.Entry<TuningPoint, Float> entry : throughput.entrySet())
+		{
+			if (pointBinder.isBound(entry.getKey()) && entry.getValue() > best)
+			{
+				optimum = entry.getKey();
+				best = entry.getValue();
+			}
+		}
+		if (optimum == null)
+		{
+			throw new RuntimeException("Surface " + name + " has no point within MaxThreads=" + pointBinder.getMaximum());
+		}
+		return optimum;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "ThroughputSurface [" + name + ", " + throughput.size() + " points]";
+	}
+
+}
@@ -0,0 +1,251 @@
+/*
+ * JVSTM: a Java library for Software Transactional Memory
+ * Copyright (C) 2005 INESC-ID Software Engineering Group
+ * http://www.esw.inesc-id.pt
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ * Author's contact:
+ * INESC-ID Software Engineering Group
+ * Rua Alves Redol 9
+ * 1000 - 029 Lisboa
+ * Portugal
+ */
+package jvstm.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A Map that compares keys by identity (like java.util.IdentityHashMap),
+ * used for the write-sets of transactions.
+ *
+ * The entries are kept in insertion order in two parallel arrays (keys and
+ * values), and a separate open-addressing table (linear probing) maps the
+ * identity hash of each key to its position in those arrays.  This allows
+ * users to iterate over the entries (or to take the arrays, see freeze())
+ * without going through Map.Entry objects, and allows the map to be cleared
+ * and reused without allocating.
+ *
+ * Removing entries is not supported.
+ */
+public class IdentityArrayMap<K,V> extends AbstractMap<K,V> {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final K[] emptyKeys;
+    protected K[] keys;
+    protected Object[] values;
+    protected int size = 0;
+
+    // each slot is either 0 (free) or the position of a key plus one
+    private int[] table;
+    private boolean frozen = false;
+
+    /**
+     * @param emptyKeys An empty array, whose runtime type is used for the
+     * arrays of keys (e.g., new VBox[0])
+     */
+    public IdentityArrayMap(K[] emptyKeys) {
+        this.emptyKeys = emptyKeys;
+        allocate();
+    }
+
+    private void allocate() {
+        this.keys = Arrays.copyOf(emptyKeys, INITIAL_CAPACITY);
+        this.values = new Object[INITIAL_CAPACITY];
+        this.table = new int[INITIAL_CAPACITY * 2];
+    }
+
+    private static int hash(Object key) {
+        int h = System.identityHashCode(key);
+        // identity hashes are not uniformly distributed in the low bits
+        return h ^ (h >>> 16);
+    }
+
+    /* Returns the position of the key in the arrays, or -1 if it is not in this map */
+    public final int indexOf(Object key) {
+        int[] table = this.table;
+        int mask = table.length - 1;
+        int slot = hash(key) & mask;
+        int pos;
+        while ((pos = table[slot]) != 0) {
+            if (keys[pos - 1] == key) {
+                return pos - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    @Override
+    public final int size() {
+        return this.size;
+    }
+
+    @Override
+    public final boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    @Override
+    public final boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public final V get(Object key) {
+        int pos = indexOf(key);
+        return (pos < 0) ? null : (V) values[pos];
+    }
+
+    @Override
+    public final V put(K key, V value) {
+        if (frozen) {
+            throw new IllegalStateException("map is frozen");
+        }
+        int[] table = this.table;
+        int mask = table.length - 1;
+        int slot = hash(key) & mask;
+        int pos;
+        while ((pos = table[slot]) != 0) {
+            if (keys[pos - 1] == key) {
+                V previous = (V) values[pos - 1];
+                values[pos - 1] = value;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        pos = this.size;
+        if (pos == keys.length) {
+            grow(pos << 1);
+            // the table was rebuilt
+            table = this.table;
+            mask = table.length - 1;
+            slot = hash(key) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+        }
+        keys[pos] = key;
+        values[pos] = value;
+        table[slot] = pos + 1;
+        this.size = pos + 1;
+        return null;
+    }
+
+    /**
+     * Ensures that the arrays have room for, at least, the given number of
+     * entries.  This is useful for users that take the arrays and append
+     * more entries to them after the size-th position.
+     */
+    public final void ensureCapacity(int capacity) {
+        if (capacity > keys.length) {
+            grow(Math.max(capacity, keys.length << 1));
+        }
+    }
+
+    private void grow(int newCapacity) {
+        this.keys = Arrays.copyOf(keys, newCapacity);
+        this.values = Arrays.copyOf(values, newCapacity);
+
+        int tableLength = table.length;
+        while (tableLength < (newCapacity << 1)) {
+            tableLength <<= 1;
+        }
+        int[] newTable = new int[tableLength];
+        int mask = tableLength - 1;
+        for (int pos = 0; pos < size; pos++) {
+            int slot = hash(keys[pos]) & mask;
+            while (newTable[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            newTable[slot] = pos + 1;
+        }
+        this.table = newTable;
+    }
+
+    public final K[] keyArray() {
+        return this.keys;
+    }
+
+    public final Object[] valueArray() {
+        return this.values;
+    }
+
+    /**
+     * Forbids further updates to this map.  This must be invoked when the
+     * arrays of this map are handed over to someone else, so that they are
+     * not reused after a clear().
+     */
+    public final void freeze() {
+        this.frozen = true;
+    }
+
+    /**
+     * Removes all the entries of this map.  The arrays are reused unless
+     * the map was frozen.
+     */
+    @Override
+    public final void clear() {
+        if (frozen) {
+            frozen = false;
+            allocate();
+        } else if (size > 0) {
+            Arrays.fill(keys, 0, size, null);
+            Arrays.fill(values, 0, size, null);
+            Arrays.fill(table, 0);
+        }
+        this.size = 0;
+    }
+
+    @Override
+    public Set<Entry<K,V>> entrySet() {
+        return new AbstractSet<Entry<K,V>>() {
+            @Override
+            public int size() {
+                return IdentityArrayMap.this.size;
+            }
+
+            @Override
+            public Iterator<Entry<K,V>> iterator() {
+                return new Iterator<Entry<K,V>>() {
+                    private int next = 0;
+
+                    public boolean hasNext() {
+                        return next < IdentityArrayMap.this.size;
+                    }
+
+                    public Entry<K,V> next() {
+                        if (next >= IdentityArrayMap.this.size) {
+                            throw new NoSuchElementException();
+                        }
+                        int pos = next++;
+                        return new SimpleImmutableEntry<K,V>(keys[pos], (V) values[pos]);
+                    }
+
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+}
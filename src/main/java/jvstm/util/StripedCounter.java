@@ -0,0 +1,62 @@
+/*
+ * JVSTM: a Java library for Software Transactional Memory
+ * Copyright (C) 2005 INESC-ID Software Engineering Group
+ * http://www.esw.inesc-id.pt
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ * Author's contact:
+ * INESC-ID Software Engineering Group
+ * Rua Alves Redol 9
+ * 1000 - 029 Lisboa
+ * Portugal
+ */
+package jvstm.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter that is not transactional, split in several cells.  Each thread
+ * only increments the cell of its group of threads (chosen by its id), each
+ * cell in its own cache line, so that threads counting at the same time
+ * rarely contend on it.  Reading the counter sums every cell, without any
+ * lock, so it is not an atomic snapshot of concurrent increments.
+ */
+public final class StripedCounter {
+
+    private static final int STRIPES;
+
+    static {
+        int stripes = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) << 1;
+        STRIPES = Math.min(stripes, 64);
+    }
+
+    // 16 longs = 128 bytes between cells
+    private static final int STRIDE = 16;
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * STRIDE);
+
+    public void increment() {
+        cells.getAndIncrement(((int) Thread.currentThread().getId() & (STRIPES - 1)) * STRIDE);
+    }
+
+    public long get() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += cells.get(i * STRIDE);
+        }
+        return sum;
+    }
+}
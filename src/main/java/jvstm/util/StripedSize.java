@@ -0,0 +1,93 @@
+/*
+ * JVSTM: a Java library for Software Transactional Memory
+ * Copyright (C) 2005 INESC-ID Software Engineering Group
+ * http://www.esw.inesc-id.pt
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ * Author's contact:
+ * INESC-ID Software Engineering Group
+ * Rua Alves Redol 9
+ * 1000 - 029 Lisboa
+ * Portugal
+ */
+package jvstm.util;
+
+import jvstm.Atomic;
+import jvstm.VBoxInt;
+
+/**
+ * The size of a transactional collection, split in several counters.  Each
+ * thread only updates the counter of its group of threads (chosen by its
+ * id), so that concurrent insertions and removals only conflict on the size
+ * when their threads share a counter.  There are at least twice as many
+ * counters as processors.  Reading the size, however, reads every counter.
+ */
+final class StripedSize {
+
+    private static final int STRIPES;
+
+    static {
+        int stripes = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) << 1;
+        STRIPES = Math.min(stripes, 64);
+    }
+
+    private static final int CHECK_PERIOD = 8;
+
+    private final VBoxInt[] stripes = new VBoxInt[STRIPES];
+
+    StripedSize() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new VBoxInt(0);
+        }
+    }
+
+    private VBoxInt myStripe() {
+        return stripes[(int) Thread.currentThread().getId() & (STRIPES - 1)];
+    }
+
+    /* Increments the size.  Returns true once every CHECK_PERIOD increments of
+     * the current thread's counter, telling the caller when to read the whole
+     * size to compare it with some threshold.  So the size may grow past the
+     * threshold by up to CHECK_PERIOD - 1 per counter before it is noticed,
+     * but most increments do not read the other counters. */
+    @Atomic(canFail = false)
+    boolean inc() {
+        VBoxInt stripe = myStripe();
+        int value = stripe.getInt() + 1;
+        stripe.putInt(value);
+        return (value & (CHECK_PERIOD - 1)) == 0;
+    }
+
+    void dec() {
+        myStripe().dec();
+    }
+
+    @Atomic(readOnly = true)
+    int get() {
+        int size = 0;
+        for (VBoxInt stripe : stripes) {
+            size += stripe.getInt();
+        }
+        return size;
+    }
+
+    @Atomic(canFail = false)
+    void clear() {
+        for (VBoxInt stripe : stripes) {
+            stripe.putInt(0);
+        }
+    }
+}
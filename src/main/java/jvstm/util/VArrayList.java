@@ -35,7 +35,9 @@ import java.util.NoSuchElementException;
 import java.util.RandomAccess;
 import java.util.concurrent.atomic.AtomicReferenceArray;
 
+import jvstm.ActiveTransactionsRecord;
 import jvstm.Atomic;
+import jvstm.Transaction;
 import jvstm.VArray;
 import jvstm.VBox;
 import jvstm.VBoxInt;
@@ -54,6 +56,9 @@ public class VArrayList<E> extends AbstractList<E> implements RandomAccess, Dequ
 
     private final VBoxInt size;
 
+    // how many times get() retries outside a transaction before starting one
+    private static final int NON_TX_GET_ATTEMPTS = 4;
+
     public VArrayList() {
         this(10);
     }
@@ -206,6 +211,32 @@ public class VArrayList<E> extends AbstractList<E> implements RandomAccess, Dequ
 
     @Override
     public E get(int index) {
+        if (Transaction.current() == null) {
+            // Each read below is done without a transaction (see VBox.get() and
+            // VArray.get()), against the most recent committed transaction at
+            // the time.  If no transaction committed meanwhile, they all saw
+            // the same version and the result is consistent; otherwise retry,
+            // and if the list keeps changing fall back to a read-only transaction.
+            for (int i = 0; i < NON_TX_GET_ATTEMPTS; i++) {
+                ActiveTransactionsRecord record = Transaction.mostRecentCommittedRecord;
+                int size = size();
+                VArray<E> array = array();
+                // a stale size may not fit the array read afterwards (see trimToSize)
+                E value = (index < size && index < array.length) ? array.get(index) : null;
+                if (Transaction.mostRecentCommittedRecord == record) {
+                    if (index >= size) {
+                        throw new IndexOutOfBoundsException();
+                    }
+                    return value;
+                }
+            }
+            Transaction.begin(true);
+            try {
+                return get(index);
+            } finally {
+                Transaction.commit();
+            }
+        }
         if (index >= size()) {
             throw new IndexOutOfBoundsException();
         }
@@ -0,0 +1,462 @@
+/*
+ * JVSTM: a Java library for Software Transactional Memory
+ * Copyright (C) 2005 INESC-ID Software Engineering Group
+ * http://www.esw.inesc-id.pt
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ * Author's contact:
+ * INESC-ID Software Engineering Group
+ * Rua Alves Redol 9
+ * 1000 - 029 Lisboa
+ * Portugal
+ */
+package jvstm.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import jvstm.Atomic;
+import jvstm.VBox;
+
+/**
+ * Versioned HashMap implementation.
+ *
+ * Each bucket of the table is a separate VBox holding an immutable chain of
+ * entries, and the size is kept in a StripedSize.  So, transactions that
+ * update disjoint keys only conflict if the keys happen to share a bucket.
+ *
+ * The table is resized incrementally: a resize only allocates a new table
+ * (twice as large) that keeps a reference to the previous one, and each
+ * bucket of the previous table is moved to the new one by the first update
+ * of a key in that bucket.  Meanwhile, lookups of keys whose bucket was not
+ * moved yet go to the previous table.  Once the new table is full as well,
+ * each insertion moves a few of the buckets left, and the table only grows
+ * again after every bucket of the previous one was moved.  So, no
+ * transaction ever moves the whole table.
+ */
+public class VHashMap<K, V> extends AbstractMap<K, V> {
+
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.75f;
+    // buckets of the previous table moved by an insertion into a full table
+    private static final int MOVES_PER_INSERT = 4;
+
+    private static final class Node<K, V> {
+        final int hash;
+        final K key;
+        final V value;
+        final Node<K, V> next;
+
+        Node(int hash, K key, V value, Node<K, V> next) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+            this.next = next;
+        }
+    }
+
+    // marks a bucket of a previous table that was already moved to the new
+    // table; it is only ever compared by identity, and its key matches no other
+    private static final Object MOVED_KEY = new Object();
+    private static final Node MOVED = new Node(0, MOVED_KEY, null, null);
+
+    /* Buckets are created empty since ever (version 0), so that creating a
+     * table does not require writing to each of its boxes. */
+    private static final class Bucket<K, V> extends VBox<Node<K, V>> {
+        Bucket() {
+            super(VBox.<Node<K, V>> makeNewBody(null, 0, null));
+        }
+    }
+
+    private static final class Table<K, V> {
+        final Bucket<K, V>[] buckets;
+        final int mask;
+        final int threshold;
+        // non-null while there are buckets of the previous table to move
+        final Table<K, V> previous;
+        // where to start looking for buckets of the previous table that were
+        // not moved yet; only a hint, written outside transactions, so it may
+        // be behind or ahead of the moves committed
+        volatile int movedHint = 0;
+
+        Table(Bucket<K, V>[] buckets, Table<K, V> previous) {
+            this.buckets = buckets;
+            this.mask = buckets.length - 1;
+            this.threshold = (int) (buckets.length * LOAD_FACTOR);
+            this.previous = previous;
+        }
+
+        Table(int capacity, Table<K, V> previous) {
+            this(Table.<K, V> newBuckets(capacity), previous);
+        }
+
+        private static <K, V> Bucket<K, V>[] newBuckets(int capacity) {
+            Bucket<K, V>[] buckets = new Bucket[capacity];
+            for (int i = 0; i < capacity; i++) {
+                buckets[i] = new Bucket<K, V>();
+            }
+            return buckets;
+        }
+
+        /* The chain where the key with the given hash is, if it is in the map.
+         * Outside a transaction, this table may have been replaced by a
+         * resize since it was read, in which case the result may be MOVED. */
+        Node<K, V> chainFor(int hash) {
+            if (previous != null) {
+                Node<K, V> chain = previous.buckets[hash & previous.mask].get();
+                if (chain != MOVED) {
+                    return chain;
+                }
+            }
+            return buckets[hash & mask].get();
+        }
+
+        /* Moves the bucket of the previous table where the given hash is
+         * mapped, if it was not moved yet.  Should only be called from an
+         * Atomic context. */
+        void moveBucketOf(int hash) {
+            Bucket<K, V> oldBucket = previous.buckets[hash & previous.mask];
+            Node<K, V> chain = oldBucket.get();
+            if (chain == MOVED) {
+                return;
+            }
+            // split the chain in the two buckets where its entries go
+            int low = hash & previous.mask;
+            int high = low + previous.buckets.length;
+            Node<K, V> lowChain = null;
+            Node<K, V> highChain = null;
+            for (Node<K, V> node = chain; node != null; node = node.next) {
+                if ((node.hash & mask) == low) {
+                    lowChain = new Node<K, V>(node.hash, node.key, node.value, lowChain);
+                } else {
+                    highChain = new Node<K, V>(node.hash, node.key, node.value, highChain);
+                }
+            }
+            if (lowChain != null) {
+                buckets[low].put(lowChain);
+            }
+            if (highChain != null) {
+                buckets[high].put(highChain);
+            }
+            oldBucket.put((Node<K, V>) MOVED);
+        }
+
+        /* Moves up to MOVES_PER_INSERT buckets of the previous table that were
+         * not moved yet, and returns true iff there were none left to move.
+         * The search starts at the hint but goes around the whole previous
+         * table, so true is only returned after every bucket was seen moved
+         * in the current transaction.  Should only be called from an Atomic
+         * context. */
+        boolean moveSomeBuckets() {
+            Bucket<K, V>[] oldBuckets = previous.buckets;
+            int start = movedHint;
+            int moves = 0;
+            for (int n = 0; n < oldBuckets.length; n++) {
+                int i = (start + n) & previous.mask;
+                if (oldBuckets[i].get() == MOVED) {
+                    continue;
+                }
+                moveBucketOf(i);
+                if (++moves == MOVES_PER_INSERT) {
+                    movedHint = i + 1;
+                    return false;
+                }
+            }
+            return moves == 0;
+        }
+    }
+
+    private final VBox<Table<K, V>> table;
+    private final StripedSize size = new StripedSize();
+
+    public VHashMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public VHashMap(int initialCapacity) {
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity < initialCapacity) {
+            capacity <<= 1;
+        }
+        this.table = new VBox<Table<K, V>>(new Table<K, V>(capacity, null));
+    }
+
+    public VHashMap(Map<? extends K, ? extends V> m) {
+        this((int) (m.size() / LOAD_FACTOR) + 1);
+        putAll(m);
+    }
+
+    private static int hash(Object key) {
+        if (key == null) {
+            return 0;
+        }
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean eq(Object a, Object b) {
+        return (a == b) || (a != null && a.equals(b));
+    }
+
+    private static <K, V> Node<K, V> find(Node<K, V> chain, int hash, Object key) {
+        for (Node<K, V> node = chain; node != null; node = node.next) {
+            if (node.hash == hash && eq(node.key, key)) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    /* Returns a copy of the chain without the given node */
+    private static <K, V> Node<K, V> without(Node<K, V> chain, Node<K, V> toRemove) {
+        if (chain == toRemove) {
+            return chain.next;
+        }
+        return new Node<K, V>(chain.hash, chain.key, chain.value, without(chain.next, toRemove));
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return lookup(key) != null;
+    }
+
+    @Override
+    public V get(Object key) {
+        Node<K, V> node = lookup(key);
+        return (node == null) ? null : node.value;
+    }
+
+    /* Reads do not start a transaction.  Outside one, each box is read at
+     * its most recent version, so the table read may be resized before its
+     * bucket is: the bucket is then MOVED, and the lookup starts over from
+     * the new table. */
+    private Node<K, V> lookup(Object key) {
+        int hash = hash(key);
+        Node<K, V> chain;
+        do {
+            chain = table.get().chainFor(hash);
+        } while (chain == MOVED);
+        return find(chain, hash, key);
+    }
+
+    @Override
+    @Atomic(canFail = false)
+    public V put(K key, V value) {
+        int hash = hash(key);
+        Table<K, V> table = this.table.get();
+        if (table.previous != null) {
+            table.moveBucketOf(hash);
+        }
+
+        Bucket<K, V> bucket = table.buckets[hash & table.mask];
+        Node<K, V> chain = bucket.get();
+        Node<K, V> node = find(chain, hash, key);
+        if (node != null) {
+            if (node.value != value) {
+                bucket.put(new Node<K, V>(hash, key, value, without(chain, node)));
+            }
+            return node.value;
+        }
+
+        bucket.put(new Node<K, V>(hash, key, value, chain));
+        // only read the whole size every few insertions of this thread
+        if (size.inc() && size.get() > table.threshold) {
+            resize(table);
+        }
+        return null;
+    }
+
+    @Override
+    @Atomic(canFail = false)
+    public V remove(Object key) {
+        int hash = hash(key);
+        Table<K, V> table = this.table.get();
+        if (find(table.chainFor(hash), hash, key) == null) {
+            return null;
+        }
+        if (table.previous != null) {
+            table.moveBucketOf(hash);
+        }
+
+        Bucket<K, V> bucket = table.buckets[hash & table.mask];
+        Node<K, V> chain = bucket.get();
+        Node<K, V> node = find(chain, hash, key);
+        bucket.put(without(chain, node));
+        size.dec();
+        return node.value;
+    }
+
+    @Override
+    @Atomic(canFail = false)
+    public void clear() {
+        table.put(new Table<K, V>(DEFAULT_CAPACITY, null));
+        size.clear();
+    }
+
+    /* Doubles the table, if every bucket of its previous table was already
+     * moved; otherwise, moves a few more of them.  Should only be called from
+     * an Atomic context. */
+    private void resize(Table<K, V> current) {
+        if (current.previous != null && !current.moveSomeBuckets()) {
+            return;
+        }
+        // a table without the reference to its (already moved) previous one
+        Table<K, V> moved = new Table<K, V>(current.buckets, null);
+        this.table.put(new Table<K, V>(current.buckets.length << 1, moved));
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return new EntrySet();
+    }
+
+    private final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+        @Override
+        public int size() {
+            return VHashMap.this.size();
+        }
+
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new EntryIterator(table.get());
+        }
+
+        @Override
+        public void clear() {
+            VHashMap.this.clear();
+        }
+    }
+
+    private final class Entry implements Map.Entry<K, V> {
+        private final K key;
+        private V value;
+
+        Entry(Node<K, V> node) {
+            this.key = node.key;
+            this.value = node.value;
+        }
+
+        @Override
+        public K getKey() {
+            return key;
+        }
+
+        @Override
+        public V getValue() {
+            return value;
+        }
+
+        @Override
+        public V setValue(V value) {
+            this.value = value;
+            return put(key, value);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> other = (Map.Entry<?, ?>) o;
+            return eq(key, other.getKey()) && eq(value, other.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return (key == null ? 0 : key.hashCode()) ^ (value == null ? 0 : value.hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+
+    /* Iterates the buckets of the table as they were when the iterator was
+     * created.  Each bucket is read only when the iterator reaches it, so
+     * the iteration should run within a transaction to be consistent. */
+    private final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+        private final Table<K, V> table;
+        private int index = 0;
+        private Node<K, V> next = null;
+        private K lastKey;
+        private boolean canRemove = false;
+
+        EntryIterator(Table<K, V> table) {
+            this.table = table;
+            advance();
+        }
+
+        private Node<K, V> chainAt(int index) {
+            Table<K, V> previous = table.previous;
+            if (previous != null) {
+                Node<K, V> oldChain = previous.buckets[index & previous.mask].get();
+                if (oldChain != MOVED) {
+                    // the old bucket holds the entries of both new buckets
+                    return (index < previous.buckets.length) ? oldChain : null;
+                }
+            }
+            return table.buckets[index].get();
+        }
+
+        private void advance() {
+            while (next == null && index < table.buckets.length) {
+                next = chainAt(index++);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            Node<K, V> node = next;
+            if (node == null) {
+                throw new NoSuchElementException();
+            }
+            next = node.next;
+            advance();
+            lastKey = node.key;
+            canRemove = true;
+            return new Entry(node);
+        }
+
+        @Override
+        public void remove() {
+            if (!canRemove) {
+                throw new IllegalStateException();
+            }
+            VHashMap.this.remove(lastKey);
+            canRemove = false;
+        }
+    }
+}
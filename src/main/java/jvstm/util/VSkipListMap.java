@@ -0,0 +1,1031 @@
+/*
+ * JVSTM: a Java library for Software Transactional Memory
+ * Copyright (C) 2005 INESC-ID Software Engineering Group
+ * http://www.esw.inesc-id.pt
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ * Author's contact:
+ * INESC-ID Software Engineering Group
+ * Rua Alves Redol 9
+ * 1000 - 029 Lisboa
+ * Portugal
+ */
+package jvstm.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+
+import jvstm.Atomic;
+import jvstm.VBox;
+
+/**
+ * Versioned sorted map, implemented as a skip list.
+ *
+ * Each forward link of each node, as well as the value of each node, is kept
+ * in a separate VBox.  So, an update only writes the links of the nodes
+ * around the key it inserts or removes, and transactions that update
+ * different ranges of keys do not conflict (except for the rare insertion of
+ * a node taller than every other, which links it to the head of the list).
+ * Replacing the value of an existing key does not conflict with the
+ * traversals that do not read that value.  The number of levels in use is
+ * only a hint kept outside of transactions, so a search never conflicts
+ * with the insertions that make the list taller.
+ *
+ * The size is kept in a StripedSize, which is part of the transaction, so
+ * insertions and removals made concurrently by threads that share one of
+ * its counters (see StripedSize) do conflict on it.
+ *
+ * The map, its sub-map views, and their iterators read the list lazily, so
+ * range scans should run within a transaction to see a consistent state.
+ * Within a read-only transaction a scan keeps no read-set at all, and it
+ * never conflicts with the updates.
+ *
+ * Keys may not be null.  Values may be.
+ */
+public class VSkipListMap<K, V> extends AbstractMap<K, V> implements NavigableMap<K, V> {
+
+    private static final int MAX_LEVEL = 32;
+
+    private static final ThreadLocal<Random> random = new ThreadLocal<Random>() {
+        @Override
+        protected Random initialValue() {
+            return new Random();
+        }
+    };
+
+    /* Boxes created empty since ever (version 0), so that creating a node
+     * does not require writing to each of its boxes.  This is safe because a
+     * node only becomes reachable when the transaction that created it
+     * commits. */
+    private static final class Box<T> extends VBox<T> {
+        Box(T initial) {
+            super(VBox.<T> makeNewBody(initial, 0, null));
+        }
+    }
+
+    private static final class Node<K, V> {
+        final K key;
+        final VBox<V> value;
+        final VBox<Node<K, V>>[] next;
+
+        Node(K key, V value, Node<K, V>[] successors, int height) {
+            this.key = key;
+            this.value = new Box<V>(value);
+            this.next = new VBox[height];
+            for (int i = 0; i < height; i++) {
+                this.next[i] = new Box<Node<K, V>>(successors == null ? null : successors[i]);
+            }
+        }
+    }
+
+    // relations for findNear, as in java.util.concurrent.ConcurrentSkipListMap
+    private static final int EQ = 1;
+    private static final int LT = 2;
+    private static final int GT = 0;
+
+    private final Comparator<? super K> comparator;
+    private final Node<K, V> head = new Node<K, V>(null, null, null, MAX_LEVEL);
+    // at least the number of levels in use by the committed nodes that most
+    // searches will see; only a hint, which grows outside of transactions
+    // and is never lowered, as searches are correct with any number of levels
+    private volatile int height = 1;
+    private final StripedSize size = new StripedSize();
+    // the whole map, as a view, to which the navigation methods are delegated
+    private final SubMap<K, V> all = new SubMap<K, V>(this, null, false, null, false, false);
+
+    public VSkipListMap() {
+        this((Comparator<? super K>) null);
+    }
+
+    public VSkipListMap(Comparator<? super K> comparator) {
+        this.comparator = comparator;
+    }
+
+    public VSkipListMap(Map<? extends K, ? extends V> m) {
+        this((Comparator<? super K>) null);
+        putAll(m);
+    }
+
+    public VSkipListMap(SortedMap<K, ? extends V> m) {
+        this(m.comparator());
+        putAll(m);
+    }
+
+    private int compare(K k1, K k2) {
+        if (comparator == null) {
+            return ((Comparable<? super K>) k1).compareTo(k2);
+        } else {
+            return comparator.compare(k1, k2);
+        }
+    }
+
+    private static int randomHeight() {
+        int r = random.get().nextInt() | (1 << (MAX_LEVEL - 1));
+        return Integer.numberOfTrailingZeros(r) + 1;
+    }
+
+    private Node<K, V> findPredecessor(K key, Node<K, V>[] preds) {
+        return findPredecessor(key, preds, height);
+    }
+
+    /* Returns the last node (or the head) whose key is smaller than the given
+     * key, searching from the given level down.  If preds is not null, fills
+     * it with the predecessors in each of those levels.  Searching fewer
+     * levels than those in use is slower, but still correct, as the lowest
+     * level links every node. */
+    private Node<K, V> findPredecessor(K key, Node<K, V>[] preds, int levels) {
+        if (key == null) {
+            throw new NullPointerException();
+        }
+        Node<K, V> x = head;
+        for (int i = levels - 1; i >= 0; i--) {
+            Node<K, V> next = x.next[i].get();
+            while (next != null && compare(next.key, key) < 0) {
+                x = next;
+                next = x.next[i].get();
+            }
+            if (preds != null) {
+                preds[i] = x;
+            }
+        }
+        return x;
+    }
+
+    private Node<K, V> findNode(K key) {
+        Node<K, V> n = findPredecessor(key, null).next[0].get();
+        return (n != null && compare(n.key, key) == 0) ? n : null;
+    }
+
+    /* Returns the node closest to key in the given relation (EQ, LT, GT or a
+     * combination of EQ with one of the others), or null if there is none. */
+    private Node<K, V> findNear(K key, int rel) {
+        Node<K, V> pred = findPredecessor(key, null);
+        Node<K, V> n = pred.next[0].get();
+        boolean found = (n != null && compare(n.key, key) == 0);
+        if ((rel & LT) != 0) {
+            if (found && (rel & EQ) != 0) {
+                return n;
+            }
+            return (pred == head) ? null : pred;
+        } else {
+            if (found && (rel & EQ) == 0) {
+                return n.next[0].get();
+            }
+            return n;
+        }
+    }
+
+    private Node<K, V> firstNode() {
+        return head.next[0].get();
+    }
+
+    private Node<K, V> lastNode() {
+        Node<K, V> x = head;
+        for (int i = height - 1; i >= 0; i--) {
+            Node<K, V> next;
+            while ((next = x.next[i].get()) != null) {
+                x = next;
+            }
+        }
+        return (x == head) ? null : x;
+    }
+
+    // Map methods
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return firstNode() == null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return findNode((K) key) != null;
+    }
+
+    @Override
+    public V get(Object key) {
+        Node<K, V> n = findNode((K) key);
+        return (n == null) ? null : n.value.get();
+    }
+
+    @Override
+    @Atomic(canFail = false)
+    public V put(K key, V value) {
+        Node<K, V>[] preds = new Node[MAX_LEVEL];
+        // the new node must be linked in each of its levels, even those that
+        // the hint does not cover yet
+        int nodeHeight = randomHeight();
+        int levels = height;
+        findPredecessor(key, preds, Math.max(levels, nodeHeight));
+        Node<K, V> n = preds[0].next[0].get();
+        if (n != null && compare(n.key, key) == 0) {
+            V old = n.value.get();
+            n.value.put(value);
+            return old;
+        }
+
+        Node<K, V>[] successors = new Node[nodeHeight];
+        for (int i = 0; i < nodeHeight; i++) {
+            successors[i] = preds[i].next[i].get();
+        }
+        Node<K, V> node = new Node<K, V>(key, value, successors, nodeHeight);
+        for (int i = 0; i < nodeHeight; i++) {
+            preds[i].next[i].put(node);
+        }
+        if (nodeHeight > levels) {
+            // a racing update may lower it again, which only slows searches
+            height = nodeHeight;
+        }
+        size.inc();
+        return null;
+    }
+
+    @Override
+    @Atomic(canFail = false)
+    public V remove(Object key) {
+        Node<K, V>[] preds = new Node[MAX_LEVEL];
+        int levels = height;
+        findPredecessor((K) key, preds, levels);
+        Node<K, V> n = preds[0].next[0].get();
+        if (n == null || compare(n.key, (K) key) != 0) {
+            return null;
+        }
+        if (n.next.length > levels) {
+            // the node is taller than the hint: find its other predecessors
+            findPredecessor((K) key, preds, n.next.length);
+        }
+        // the links of the removed node are kept, so that iterators
+        // positioned on it may still move on
+        for (int i = 0; i < n.next.length; i++) {
+            preds[i].next[i].put(n.next[i].get());
+        }
+        size.dec();
+        return n.value.get();
+    }
+
+    @Override
+    @Atomic(canFail = false)
+    public void clear() {
+        for (int i = 0; i < MAX_LEVEL; i++) {
+            if (head.next[i].get() != null) {
+                head.next[i].put(null);
+            }
+        }
+        size.clear();
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return all.entrySet();
+    }
+
+    // SortedMap and NavigableMap methods
+
+    @Override
+    public Comparator<? super K> comparator() {
+        return comparator;
+    }
+
+    @Override
+    public K firstKey() {
+        return all.firstKey();
+    }
+
+    @Override
+    public K lastKey() {
+        return all.lastKey();
+    }
+
+    @Override
+    public Map.Entry<K, V> firstEntry() {
+        return all.firstEntry();
+    }
+
+    @Override
+    public Map.Entry<K, V> lastEntry() {
+        return all.lastEntry();
+    }
+
+    @Override
+    public Map.Entry<K, V> pollFirstEntry() {
+        return all.pollFirstEntry();
+    }
+
+    @Override
+    public Map.Entry<K, V> pollLastEntry() {
+        return all.pollLastEntry();
+    }
+
+    @Override
+    public Map.Entry<K, V> lowerEntry(K key) {
+        return all.lowerEntry(key);
+    }
+
+    @Override
+    public K lowerKey(K key) {
+        return all.lowerKey(key);
+    }
+
+    @Override
+    public Map.Entry<K, V> floorEntry(K key) {
+        return all.floorEntry(key);
+    }
+
+    @Override
+    public K floorKey(K key) {
+        return all.floorKey(key);
+    }
+
+    @Override
+    public Map.Entry<K, V> ceilingEntry(K key) {
+        return all.ceilingEntry(key);
+    }
+
+    @Override
+    public K ceilingKey(K key) {
+        return all.ceilingKey(key);
+    }
+
+    @Override
+    public Map.Entry<K, V> higherEntry(K key) {
+        return all.higherEntry(key);
+    }
+
+    @Override
+    public K higherKey(K key) {
+        return all.higherKey(key);
+    }
+
+    @Override
+    public Set<K> keySet() {
+        return navigableKeySet();
+    }
+
+    @Override
+    public NavigableSet<K> navigableKeySet() {
+        return all.navigableKeySet();
+    }
+
+    @Override
+    public NavigableSet<K> descendingKeySet() {
+        return all.descendingKeySet();
+    }
+
+    @Override
+    public NavigableMap<K, V> descendingMap() {
+        return all.descendingMap();
+    }
+
+    @Override
+    public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+        return all.subMap(fromKey, fromInclusive, toKey, toInclusive);
+    }
+
+    @Override
+    public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+        return all.headMap(toKey, inclusive);
+    }
+
+    @Override
+    public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+        return all.tailMap(fromKey, inclusive);
+    }
+
+    @Override
+    public SortedMap<K, V> subMap(K fromKey, K toKey) {
+        return subMap(fromKey, true, toKey, false);
+    }
+
+    @Override
+    public SortedMap<K, V> headMap(K toKey) {
+        return headMap(toKey, false);
+    }
+
+    @Override
+    public SortedMap<K, V> tailMap(K fromKey) {
+        return tailMap(fromKey, true);
+    }
+
+    /* An entry whose setValue writes through to the map */
+    private static final class WriteThroughEntry<K, V> extends AbstractMap.SimpleEntry<K, V> {
+        private static final long serialVersionUID = 1L;
+
+        private final Node<K, V> node;
+
+        WriteThroughEntry(Node<K, V> node) {
+            super(node.key, node.value.get());
+            this.node = node;
+        }
+
+        @Override
+        public V setValue(V value) {
+            super.setValue(value);
+            V old = node.value.get();
+            node.value.put(value);
+            return old;
+        }
+    }
+
+    private static <K, V> Map.Entry<K, V> snapshot(Node<K, V> n) {
+        return (n == null) ? null : new AbstractMap.SimpleImmutableEntry<K, V>(n.key, n.value.get());
+    }
+
+    /**
+     * A view of the keys in a range (possibly unbounded in either side) of a
+     * VSkipListMap, in ascending or descending order.  The map itself
+     * delegates its navigation methods to the view of all of its keys.
+     */
+    private static final class SubMap<K, V> extends AbstractMap<K, V> implements NavigableMap<K, V> {
+        private final VSkipListMap<K, V> m;
+        private final K lo;
+        private final boolean loInclusive;
+        private final K hi;
+        private final boolean hiInclusive;
+        private final boolean descending;
+
+        SubMap(VSkipListMap<K, V> m, K lo, boolean loInclusive, K hi, boolean hiInclusive, boolean descending) {
+            if (lo != null && hi != null && m.compare(lo, hi) > 0) {
+                throw new IllegalArgumentException("inconsistent range");
+            }
+            this.m = m;
+            this.lo = lo;
+            this.loInclusive = loInclusive;
+            this.hi = hi;
+            this.hiInclusive = hiInclusive;
+            this.descending = descending;
+        }
+
+        private boolean tooLow(K key) {
+            if (lo != null) {
+                int c = m.compare(key, lo);
+                return c < 0 || (c == 0 && !loInclusive);
+            }
+            return false;
+        }
+
+        private boolean tooHigh(K key) {
+            if (hi != null) {
+                int c = m.compare(key, hi);
+                return c > 0 || (c == 0 && !hiInclusive);
+            }
+            return false;
+        }
+
+        private boolean inBounds(K key) {
+            return !tooLow(key) && !tooHigh(key);
+        }
+
+        private void checkKeyBounds(K key) {
+            if (key == null) {
+                throw new NullPointerException();
+            }
+            if (!inBounds(key)) {
+                throw new IllegalArgumentException("key out of range");
+            }
+        }
+
+        /* The lowest node in range, in ascending order */
+        private Node<K, V> loNode() {
+            Node<K, V> n;
+            if (lo == null) {
+                n = m.firstNode();
+            } else {
+                n = m.findNear(lo, loInclusive ? (GT | EQ) : GT);
+            }
+            return (n == null || tooHigh(n.key)) ? null : n;
+        }
+
+        /* The highest node in range, in ascending order */
+        private Node<K, V> hiNode() {
+            Node<K, V> n;
+            if (hi == null) {
+                n = m.lastNode();
+            } else {
+                n = m.findNear(hi, hiInclusive ? (LT | EQ) : LT);
+            }
+            return (n == null || tooLow(n.key)) ? null : n;
+        }
+
+        private Node<K, V> firstNode() {
+            return descending ? hiNode() : loNode();
+        }
+
+        private Node<K, V> lastNode() {
+            return descending ? loNode() : hiNode();
+        }
+
+        /* The node after n in this view, or null if it is out of range */
+        private Node<K, V> successor(Node<K, V> n) {
+            if (descending) {
+                Node<K, V> next = m.findNear(n.key, LT);
+                return (next == null || tooLow(next.key)) ? null : next;
+            } else {
+                Node<K, V> next = n.next[0].get();
+                return (next == null || tooHigh(next.key)) ? null : next;
+            }
+        }
+
+        private Node<K, V> findNear(K key, int rel) {
+            if (key == null) {
+                throw new NullPointerException();
+            }
+            if (descending) {
+                // reverse the relation
+                rel = ((rel & LT) == 0) ? (rel | LT) : (rel & ~LT);
+            }
+            if (tooLow(key)) {
+                return ((rel & LT) != 0) ? null : loNode();
+            }
+            if (tooHigh(key)) {
+                return ((rel & LT) != 0) ? hiNode() : null;
+            }
+            Node<K, V> n = m.findNear(key, rel);
+            return (n == null || !inBounds(n.key)) ? null : n;
+        }
+
+        // Map methods
+
+        @Override
+        @Atomic(readOnly = true)
+        public int size() {
+            if (lo == null && hi == null) {
+                return m.size();
+            }
+            int count = 0;
+            for (Node<K, V> n = loNode(); n != null; n = n.next[0].get()) {
+                if (tooHigh(n.key)) {
+                    break;
+                }
+                count++;
+            }
+            return count;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return loNode() == null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            K k = (K) key;
+            return inBounds(k) && m.containsKey(k);
+        }
+
+        @Override
+        public V get(Object key) {
+            K k = (K) key;
+            return inBounds(k) ? m.get(k) : null;
+        }
+
+        @Override
+        public V put(K key, V value) {
+            checkKeyBounds(key);
+            return m.put(key, value);
+        }
+
+        @Override
+        public V remove(Object key) {
+            K k = (K) key;
+            return inBounds(k) ? m.remove(k) : null;
+        }
+
+        @Override
+        @Atomic(canFail = false)
+        public void clear() {
+            if (lo == null && hi == null) {
+                m.clear();
+                return;
+            }
+            for (Node<K, V> n = loNode(); n != null; n = n.next[0].get()) {
+                if (tooHigh(n.key)) {
+                    break;
+                }
+                m.remove(n.key);
+            }
+        }
+
+        @Override
+        public Set<Map.Entry<K, V>> entrySet() {
+            return new AbstractSet<Map.Entry<K, V>>() {
+                @Override
+                public Iterator<Map.Entry<K, V>> iterator() {
+                    return new EntryIterator();
+                }
+
+                @Override
+                public int size() {
+                    return SubMap.this.size();
+                }
+
+                @Override
+                public void clear() {
+                    SubMap.this.clear();
+                }
+            };
+        }
+
+        // SortedMap and NavigableMap methods
+
+        @Override
+        public Comparator<? super K> comparator() {
+            if (!descending) {
+                return m.comparator;
+            }
+            return Collections.reverseOrder(m.comparator);
+        }
+
+        @Override
+        public K firstKey() {
+            Node<K, V> n = firstNode();
+            if (n == null) {
+                throw new NoSuchElementException();
+            }
+            return n.key;
+        }
+
+        @Override
+        public K lastKey() {
+            Node<K, V> n = lastNode();
+            if (n == null) {
+                throw new NoSuchElementException();
+            }
+            return n.key;
+        }
+
+        @Override
+        public Map.Entry<K, V> firstEntry() {
+            return snapshot(firstNode());
+        }
+
+        @Override
+        public Map.Entry<K, V> lastEntry() {
+            return snapshot(lastNode());
+        }
+
+        @Override
+        @Atomic(canFail = false)
+        public Map.Entry<K, V> pollFirstEntry() {
+            Map.Entry<K, V> e = snapshot(firstNode());
+            if (e != null) {
+                m.remove(e.getKey());
+            }
+            return e;
+        }
+
+        @Override
+        @Atomic(canFail = false)
+        public Map.Entry<K, V> pollLastEntry() {
+            Map.Entry<K, V> e = snapshot(lastNode());
+            if (e != null) {
+                m.remove(e.getKey());
+            }
+            return e;
+        }
+
+        @Override
+        public Map.Entry<K, V> lowerEntry(K key) {
+            return snapshot(findNear(key, LT));
+        }
+
+        @Override
+        public K lowerKey(K key) {
+            Node<K, V> n = findNear(key, LT);
+            return (n == null) ? null : n.key;
+        }
+
+        @Override
+        public Map.Entry<K, V> floorEntry(K key) {
+            return snapshot(findNear(key, LT | EQ));
+        }
+
+        @Override
+        public K floorKey(K key) {
+            Node<K, V> n = findNear(key, LT | EQ);
+            return (n == null) ? null : n.key;
+        }
+
+        @Override
+        public Map.Entry<K, V> ceilingEntry(K key) {
+            return snapshot(findNear(key, GT | EQ));
+        }
+
+        @Override
+        public K ceilingKey(K key) {
+            Node<K, V> n = findNear(key, GT | EQ);
+            return (n == null) ? null : n.key;
+        }
+
+        @Override
+        public Map.Entry<K, V> higherEntry(K key) {
+            return snapshot(findNear(key, GT));
+        }
+
+        @Override
+        public K higherKey(K key) {
+            Node<K, V> n = findNear(key, GT);
+            return (n == null) ? null : n.key;
+        }
+
+        @Override
+        public Set<K> keySet() {
+            return navigableKeySet();
+        }
+
+        @Override
+        public NavigableSet<K> navigableKeySet() {
+            return new KeySet<K>(this);
+        }
+
+        @Override
+        public NavigableSet<K> descendingKeySet() {
+            return new KeySet<K>(descendingMap());
+        }
+
+        @Override
+        public NavigableMap<K, V> descendingMap() {
+            return new SubMap<K, V>(m, lo, loInclusive, hi, hiInclusive, !descending);
+        }
+
+        private SubMap<K, V> newSubMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+            if (descending) {
+                K tk = fromKey;
+                fromKey = toKey;
+                toKey = tk;
+                boolean ti = fromInclusive;
+                fromInclusive = toInclusive;
+                toInclusive = ti;
+            }
+            if (lo != null) {
+                if (fromKey == null) {
+                    fromKey = lo;
+                    fromInclusive = loInclusive;
+                } else {
+                    int c = m.compare(fromKey, lo);
+                    if (c < 0 || (c == 0 && !loInclusive && fromInclusive)) {
+                        throw new IllegalArgumentException("key out of range");
+                    }
+                }
+            }
+            if (hi != null) {
+                if (toKey == null) {
+                    toKey = hi;
+                    toInclusive = hiInclusive;
+                } else {
+                    int c = m.compare(toKey, hi);
+                    if (c > 0 || (c == 0 && !hiInclusive && toInclusive)) {
+                        throw new IllegalArgumentException("key out of range");
+                    }
+                }
+            }
+            return new SubMap<K, V>(m, fromKey, fromInclusive, toKey, toInclusive, descending);
+        }
+
+        @Override
+        public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+            if (fromKey == null || toKey == null) {
+                throw new NullPointerException();
+            }
+            return newSubMap(fromKey, fromInclusive, toKey, toInclusive);
+        }
+
+        @Override
+        public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+            if (toKey == null) {
+                throw new NullPointerException();
+            }
+            return newSubMap(null, false, toKey, inclusive);
+        }
+
+        @Override
+        public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+            if (fromKey == null) {
+                throw new NullPointerException();
+            }
+            return newSubMap(fromKey, inclusive, null, false);
+        }
+
+        @Override
+        public SortedMap<K, V> subMap(K fromKey, K toKey) {
+            return subMap(fromKey, true, toKey, false);
+        }
+
+        @Override
+        public SortedMap<K, V> headMap(K toKey) {
+            return headMap(toKey, false);
+        }
+
+        @Override
+        public SortedMap<K, V> tailMap(K fromKey) {
+            return tailMap(fromKey, true);
+        }
+
+        private final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+            private Node<K, V> next = firstNode();
+            private Node<K, V> last = null;
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Map.Entry<K, V> next() {
+                Node<K, V> n = next;
+                if (n == null) {
+                    throw new NoSuchElementException();
+                }
+                last = n;
+                next = successor(n);
+                return new WriteThroughEntry<K, V>(n);
+            }
+
+            @Override
+            public void remove() {
+                if (last == null) {
+                    throw new IllegalStateException();
+                }
+                m.remove(last.key);
+                last = null;
+            }
+        }
+    }
+
+    /**
+     * The keys of a VSkipListMap (or of one of its views), as a NavigableSet.
+     */
+    private static final class KeySet<K> extends AbstractSet<K> implements NavigableSet<K> {
+        private final NavigableMap<K, ?> m;
+
+        KeySet(NavigableMap<K, ?> m) {
+            this.m = m;
+        }
+
+        @Override
+        public int size() {
+            return m.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return m.isEmpty();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return m.containsKey(o);
+        }
+
+        @Override
+        @Atomic(canFail = false)
+        public boolean remove(Object o) {
+            if (m.containsKey(o)) {
+                m.remove(o);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void clear() {
+            m.clear();
+        }
+
+        @Override
+        public Iterator<K> iterator() {
+            final Iterator<? extends Map.Entry<K, ?>> entries = m.entrySet().iterator();
+            return new Iterator<K>() {
+                @Override
+                public boolean hasNext() {
+                    return entries.hasNext();
+                }
+
+                @Override
+                public K next() {
+                    return entries.next().getKey();
+                }
+
+                @Override
+                public void remove() {
+                    entries.remove();
+                }
+            };
+        }
+
+        @Override
+        public Comparator<? super K> comparator() {
+            return m.comparator();
+        }
+
+        @Override
+        public K first() {
+            return m.firstKey();
+        }
+
+        @Override
+        public K last() {
+            return m.lastKey();
+        }
+
+        @Override
+        public K lower(K e) {
+            return m.lowerKey(e);
+        }
+
+        @Override
+        public K floor(K e) {
+            return m.floorKey(e);
+        }
+
+        @Override
+        public K ceiling(K e) {
+            return m.ceilingKey(e);
+        }
+
+        @Override
+        public K higher(K e) {
+            return m.higherKey(e);
+        }
+
+        @Override
+        public K pollFirst() {
+            Map.Entry<K, ?> e = m.pollFirstEntry();
+            return (e == null) ? null : e.getKey();
+        }
+
+        @Override
+        public K pollLast() {
+            Map.Entry<K, ?> e = m.pollLastEntry();
+            return (e == null) ? null : e.getKey();
+        }
+
+        @Override
+        public NavigableSet<K> descendingSet() {
+            return new KeySet<K>(m.descendingMap());
+        }
+
+        @Override
+        public Iterator<K> descendingIterator() {
+            return descendingSet().iterator();
+        }
+
+        @Override
+        public NavigableSet<K> subSet(K fromElement, boolean fromInclusive, K toElement, boolean toInclusive) {
+            return new KeySet<K>(m.subMap(fromElement, fromInclusive, toElement, toInclusive));
+        }
+
+        @Override
+        public NavigableSet<K> headSet(K toElement, boolean inclusive) {
+            return new KeySet<K>(m.headMap(toElement, inclusive));
+        }
+
+        @Override
+        public NavigableSet<K> tailSet(K fromElement, boolean inclusive) {
+            return new KeySet<K>(m.tailMap(fromElement, inclusive));
+        }
+
+        @Override
+        public SortedSet<K> subSet(K fromElement, K toElement) {
+            return subSet(fromElement, true, toElement, false);
+        }
+
+        @Override
+        public SortedSet<K> headSet(K toElement) {
+            return headSet(toElement, false);
+        }
+
+        @Override
+        public SortedSet<K> tailSet(K fromElement) {
+            return tailSet(fromElement, true);
+        }
+    }
+}
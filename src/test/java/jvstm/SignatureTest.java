@@ -0,0 +1,72 @@
+package jvstm;
+
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class SignatureTest {
+
+    private static VBox[] newBoxes(int n) {
+        VBox[] boxes = new VBox[n];
+        for (int i = 0; i < n; i++) {
+            boxes[i] = new VBox<Integer>(i);
+        }
+        return boxes;
+    }
+
+    private static ReadSet readSetOf(VBox[] boxes) {
+        ReadSet readSet = ReadSet.borrow();
+        for (VBox box : boxes) {
+            readSet.add(box);
+        }
+        return readSet;
+    }
+
+    @Test
+    public void testLargeReadSetIsNotMatchedByDisjointWrites() {
+        ReadSet readSet = readSetOf(newBoxes(300));
+        Signature readSignature = readSet.signature();
+
+        // a fixed 1024-bit signature matched about 88% of these
+        int matched = 0;
+        for (int i = 0; i < 200; i++) {
+            WriteSet writeSet = new WriteSet(newBoxes(10), WriteSet.DEFAULT_BLOCK_SIZE);
+            if (writeSet.mayIntersect(readSignature)) {
+                matched++;
+            }
+        }
+        assertTrue("too many false conflicts: " + matched + " of 200", matched < 40);
+        ReadSet.giveBack(readSet);
+    }
+
+    @Test
+    public void testWritesToReadBoxesAreAlwaysMatched() {
+        VBox[] read = newBoxes(2000);
+        ReadSet readSet = ReadSet.borrow();
+        // the signature grows as the read-set does
+        for (int i = 0; i < read.length; i++) {
+            readSet.add(read[i]);
+            if (i % 500 == 0) {
+                readSet.signature();
+            }
+        }
+        Signature readSignature = readSet.signature();
+        for (int i = 0; i < read.length; i++) {
+            WriteSet writeSet = new WriteSet(new VBox[] { read[i] }, WriteSet.DEFAULT_BLOCK_SIZE);
+            assertTrue(writeSet.mayIntersect(readSignature));
+        }
+        ReadSet.giveBack(readSet);
+    }
+
+    @Test
+    public void testTooLargeReadSetHasNoSignature() {
+        VBox box = new VBox<Integer>(0);
+        ReadSet readSet = ReadSet.borrow();
+        for (int i = 0; i <= Signature.MAX_ENTRIES; i++) {
+            readSet.add(box);
+        }
+        assertNull(readSet.signature());
+        ReadSet.giveBack(readSet);
+    }
+}
@@ -0,0 +1,196 @@
+package jvstm.test.atomic;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+import java.util.concurrent.Callable;
+
+import jvstm.CommitException;
+import jvstm.InevitableTransaction;
+import jvstm.SuspendedTransaction;
+import jvstm.Transaction;
+import jvstm.VArray;
+import jvstm.VBox;
+import jvstm.VBoxInt;
+import jvstm.atomic.ExponentialBackoff;
+import jvstm.atomic.ManagedAtomicContext;
+
+import org.junit.Test;
+
+public class ContentionManagerTest {
+
+    static class Conflict extends CommitException {
+        private static final long serialVersionUID = 1L;
+    }
+
+    // waits at least 1 ms after each abort, and escalates after 3
+    static class SlowBackoff extends ExponentialBackoff {
+        SlowBackoff() {
+            super(1000000, 1000000, 3);
+        }
+    }
+
+    // fails every attempt that is not inevitable
+    static class FailUntilInevitable implements Callable<Integer> {
+        final VBox<Integer> box;
+        int attempts;
+        boolean inevitable;
+
+        FailUntilInevitable(VBox<Integer> box) {
+            this.box = box;
+        }
+
+        public Integer call() {
+            attempts++;
+            box.put(attempts);
+            inevitable = Transaction.current() instanceof InevitableTransaction;
+            if (!inevitable) {
+                throw new Conflict();
+            }
+            return attempts;
+        }
+    }
+
+    @Test
+    public void testBackoffWaitsAfterEachAbort() throws Exception {
+        SlowBackoff cm = new SlowBackoff();
+        final int[] attempts = new int[1];
+        int result = new ManagedAtomicContext(false, false, cm).perform(new Callable<Integer>() {
+            public Integer call() {
+                if (++attempts[0] < 3) {
+                    throw new Conflict();
+                }
+                return attempts[0];
+            }
+        });
+
+        assertEquals(3, result);
+        assertEquals(1, cm.getCommits());
+        assertEquals(2, cm.getAborts());
+        assertEquals(0, cm.getEscalations());
+        assertEquals(2, cm.getWaits());
+        assertTrue(cm.getWaitNanos() > 0);
+    }
+
+    @Test
+    public void testRetriedTransactionIsEscalated() throws Exception {
+        SlowBackoff cm = new SlowBackoff();
+        VBox<Integer> box = new VBox<Integer>(0);
+        FailUntilInevitable method = new FailUntilInevitable(box);
+
+        int result = new ManagedAtomicContext(false, false, cm).perform(method);
+
+        assertEquals(4, result);
+        assertTrue(method.inevitable);
+        assertEquals(4, (int) box.get());
+        assertEquals(1, cm.getCommits());
+        assertEquals(3, cm.getAborts());
+        assertEquals(1, cm.getEscalations());
+    }
+
+    @Test
+    public void testEscalatedMethodWritingAVArrayCompletes() throws Exception {
+        SlowBackoff cm = new SlowBackoff();
+        final VBox<Integer> box = new VBox<Integer>(0);
+        final VArray<Integer> array = new VArray<Integer>(1);
+        final boolean[] inevitable = new boolean[1];
+        final int[] attempts = new int[1];
+
+        int result = new ManagedAtomicContext(false, false, cm).perform(new Callable<Integer>() {
+            public Integer call() {
+                attempts[0]++;
+                box.put(attempts[0]);
+                inevitable[0] |= Transaction.current() instanceof InevitableTransaction;
+                // an inevitable transaction cannot write to a VArray
+                array.put(0, attempts[0]);
+                if (attempts[0] <= 3) {
+                    throw new Conflict();
+                }
+                return attempts[0];
+            }
+        });
+
+        // the fourth attempt is escalated and the fifth runs as a regular transaction
+        assertTrue(inevitable[0]);
+        assertEquals(5, result);
+        assertEquals(5, (int) box.get());
+        assertEquals(5, (int) array.get(0));
+        assertEquals(1, cm.getCommits());
+        assertEquals(3, cm.getAborts());
+        assertEquals(1, cm.getEscalations());
+        assertFalse(Transaction.isInTransaction());
+    }
+
+    @Test
+    public void testExceptionDiscardsTheWritesOfAnEscalatedTransaction() throws Exception {
+        SlowBackoff cm = new SlowBackoff();
+        final VBox<Integer> box = new VBox<Integer>(0);
+        final VBoxInt counter = new VBoxInt(7);
+        final VBox<Integer> created = new VBox<Integer>(null);
+        final FailUntilInevitable method = new FailUntilInevitable(box);
+
+        try {
+            new ManagedAtomicContext(false, false, cm).perform(new Callable<Integer>() {
+                public Integer call() {
+                    counter.inc();
+                    created.put(new VBox<Integer>(1).get());
+                    method.call();
+                    throw new IllegalStateException();
+                }
+            });
+            fail("the exception of the atomic method was lost");
+        } catch (IllegalStateException expected) {
+        }
+
+        assertTrue(method.inevitable);
+        assertEquals(0, (int) box.get());
+        assertEquals(7, counter.getInt());
+        assertEquals(null, created.get());
+        assertEquals(1, cm.getEscalations());
+        assertFalse(Transaction.isInTransaction());
+    }
+
+    @Test
+    public void testExceptionDiscardsTheWritesOfARegularTransaction() throws Exception {
+        SlowBackoff cm = new SlowBackoff();
+        final VBox<Integer> box = new VBox<Integer>(0);
+
+        try {
+            new ManagedAtomicContext(false, false, cm).perform(new Callable<Integer>() {
+                public Integer call() {
+                    box.put(1);
+                    throw new IllegalStateException();
+                }
+            });
+            fail("the exception of the atomic method was lost");
+        } catch (IllegalStateException expected) {
+        }
+
+        assertEquals(0, (int) box.get());
+        assertEquals(0, cm.getEscalations());
+    }
+
+    @Test
+    public void testAbortedInevitableTransactionDoesNotInvalidateItsReaders() {
+        final VBox<Integer> box = new VBox<Integer>(1);
+        final VBoxInt other = new VBoxInt(0);
+
+        Transaction.begin();
+        assertEquals(1, (int) box.get());
+        SuspendedTransaction reader = Transaction.suspend();
+
+        Transaction.beginInevitable();
+        box.put(2);
+        Transaction.abort();
+        assertEquals(1, (int) box.get());
+
+        // the reader read box before the inevitable transaction committed
+        Transaction.resume(reader);
+        other.putInt(1);
+        Transaction.commit();
+        assertEquals(1, other.getInt());
+        assertEquals(1, (int) box.get());
+    }
+}
@@ -0,0 +1,94 @@
+package jvstm.test.bench;
+
+import jvstm.FieldUpdaters;
+import jvstm.Transaction;
+import jvstm.VBox;
+import jvstm.test.point.core.Point;
+import jvstm.test.point.impl.AomIntPoint;
+
+/**
+ * Single-threaded micro-benchmark of the read and write barriers and of the
+ * version GC, to compare the two implementations of FieldUpdaters.  The
+ * implementation is chosen at startup, so run it once for each.  The GC
+ * must be disabled, so that each clean is done by this thread:
+ *
+ *   java -Djvstm.gc.disabled=true -Djvstm.fieldUpdaters=unsafe jvstm.test.bench.RunBarriersBench
+ *   java -Djvstm.gc.disabled=true -Djvstm.fieldUpdaters=jdk jvstm.test.bench.RunBarriersBench
+ */
+public class RunBarriersBench {
+
+    private static final int NR_OF_BOXES = 64;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        int txs = (args.length > 0) ? Integer.parseInt(args[0]) : 200000;
+        System.out.println("jvstm.fieldUpdaters = " + (FieldUpdaters.USE_UNSAFE ? "unsafe" : "jdk"));
+
+        VBox<Integer>[] boxes = new VBox[NR_OF_BOXES];
+        Point<Integer>[] points = new Point[NR_OF_BOXES];
+        for (int i = 0; i < NR_OF_BOXES; i++) {
+            boxes[i] = new VBox<Integer>(i);
+            points[i] = new AomIntPoint(i, i);
+        }
+
+        for (int round = 0; round < ROUNDS; round++) {
+            // the first rounds are the warm-up
+            boolean report = round >= ROUNDS - 2;
+
+            long start = System.nanoTime();
+            readOnly(boxes, txs);
+            if (report) print("read-only txs, " + NR_OF_BOXES + " reads", start, txs);
+
+            start = System.nanoTime();
+            readWrite(boxes, txs);
+            if (report) print("read-write txs, 4 writes", start, txs);
+
+            start = System.nanoTime();
+            readWriteAom(points, txs);
+            if (report) print("read-write txs, 4 AOM writes", start, txs);
+
+            start = System.nanoTime();
+            Transaction.gcTask.runGc();
+            if (report) print("clean, per committed tx", start, 2 * txs);
+        }
+    }
+
+    private static int readOnly(VBox<Integer>[] boxes, int txs) {
+        int sum = 0;
+        for (int i = 0; i < txs; i++) {
+            Transaction.begin(true);
+            for (VBox<Integer> box : boxes) {
+                sum += box.get();
+            }
+            Transaction.commit();
+        }
+        return sum;
+    }
+
+    private static void readWrite(VBox<Integer>[] boxes, int txs) {
+        for (int i = 0; i < txs; i++) {
+            Transaction.begin();
+            for (int j = 0; j < 4; j++) {
+                VBox<Integer> box = boxes[(i + j * 16) % NR_OF_BOXES];
+                box.put(box.get() + 1);
+            }
+            Transaction.commit();
+        }
+    }
+
+    private static void readWriteAom(Point<Integer>[] points, int txs) {
+        for (int i = 0; i < txs; i++) {
+            Transaction.begin();
+            for (int j = 0; j < 4; j++) {
+                Point<Integer> p = points[(i + j * 16) % NR_OF_BOXES];
+                p.setX(p.getX() + 1);
+            }
+            Transaction.commit();
+        }
+    }
+
+    private static void print(String what, long start, int ops) {
+        long elapsed = System.nanoTime() - start;
+        System.out.println(String.format("%-32s %10d ns/op", what, elapsed / ops));
+    }
+}
@@ -0,0 +1,65 @@
+package jvstm.test.bench;
+
+import jvstm.Transaction;
+import jvstm.VBox;
+import jvstm.tuning.Controller;
+
+/**
+ * Measures the cost of begin/commit of very short transactions, to compare
+ * the runs with and without a tuning policy.  The policy is chosen at
+ * startup, so run it once for each:
+ *
+ *   java jvstm.test.bench.RunTuningOverheadBench [txs] [threads]
+ *   java -DPolicy=Default -DNoStats=true -DMaxThreads=8 -DInitialConfig=8,1 jvstm.test.bench.RunTuningOverheadBench [txs] [threads]
+ */
+public class RunTuningOverheadBench {
+
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws InterruptedException {
+        final int txs = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+        int nrOfThreads = (args.length > 1) ? Integer.parseInt(args[1]) : 1;
+        System.out.println("tuning " + (Controller.TUNING_ENABLED ? "enabled" : "disabled") + ", " + nrOfThreads + " thread(s)");
+
+        final VBox<Integer>[] boxes = new VBox[nrOfThreads];
+        for (int i = 0; i < nrOfThreads; i++) {
+            boxes[i] = new VBox<Integer>(0);
+        }
+
+        for (int round = 0; round < ROUNDS; round++) {
+            // the first rounds are the warm-up
+            boolean report = round >= ROUNDS - 2;
+
+            Thread[] threads = new Thread[nrOfThreads];
+            for (int t = 0; t < nrOfThreads; t++) {
+                final VBox<Integer> box = boxes[t];
+                threads[t] = new Thread() {
+                    @Override
+                    public void run() {
+                        for (int i = 0; i < txs; i++) {
+                            Transaction.begin(true);
+                            box.get();
+                            Transaction.commit();
+
+                            Transaction.begin();
+                            box.put(i);
+                            Transaction.commit();
+                        }
+                    }
+                };
+            }
+
+            long start = System.nanoTime();
+            for (Thread t : threads) {
+                t.start();
+            }
+            for (Thread t : threads) {
+                t.join();
+            }
+            long elapsed = System.nanoTime() - start;
+            if (report) {
+                System.out.println(String.format("%10d ns/tx", elapsed / (2L * txs * nrOfThreads)));
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package jvstm.test.jmx;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import jvstm.Transaction;
+import jvstm.VBox;
+import jvstm.WriteOnReadException;
+import jvstm.jmx.StmMetrics;
+import jvstm.tuning.AbortCause;
+
+import org.junit.Test;
+
+public class StmMetricsTest {
+
+    @Test
+    public void testAttributesAreReadThroughJmx() throws Exception {
+        StmMetrics metrics = StmMetrics.register();
+        assertTrue(metrics == StmMetrics.register());
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(StmMetrics.OBJECT_NAME);
+        long before = (Long) server.getAttribute(name, "MostRecentCommittedNumber");
+
+        VBox<Integer> box = new VBox<Integer>(0);
+        Transaction.begin();
+        box.put(1);
+        Transaction.commit();
+
+        long after = (Long) server.getAttribute(name, "MostRecentCommittedNumber");
+        assertTrue(after > before);
+        assertTrue((Long) server.getAttribute(name, "UncleanedRecordCount") >= 0);
+        assertTrue((Integer) server.getAttribute(name, "TxContextCount") > 0);
+        assertEquals(Boolean.valueOf(metrics.isTuningEnabled()), server.getAttribute(name, "TuningEnabled"));
+        assertTrue((Long) server.getAttribute(name, "CommitCount") > 0);
+        if (metrics.isTuningEnabled()) {
+            assertTrue(metrics.getTransactionCount() >= metrics.getCommitCount());
+        } else {
+            assertEquals(-1, metrics.getTransactionCount());
+        }
+    }
+
+    @Test
+    public void testCommitsAndAbortsAreCountedWithoutTuning() {
+        StmMetrics metrics = new StmMetrics();
+        VBox<Integer> box = new VBox<Integer>(0);
+        long commits = metrics.getCommitCount();
+        long aborts = metrics.getAbortCount();
+        long writesOnRead = metrics.getAbortCountByCause().get(AbortCause.WRITE_ON_READ.name());
+
+        Transaction.begin();
+        box.put(1);
+        Transaction.commit();
+        Transaction.begin();
+        box.put(2);
+        Transaction.abort();
+        Transaction.begin(true);
+        try {
+            box.put(3);
+            fail("a read-only transaction wrote to a box");
+        } catch (WriteOnReadException expected) {
+            Transaction.abort();
+        }
+
+        // other tests may run transactions at the same time
+        assertTrue(metrics.getCommitCount() >= commits + 1);
+        assertTrue(metrics.getAbortCount() >= aborts + 2);
+        assertTrue(metrics.getAbortCountByCause().get(AbortCause.WRITE_ON_READ.name()) >= writesOnRead + 1);
+        assertTrue(metrics.getCommitRate() > 0);
+        assertTrue(metrics.getAbortRate() > 0);
+        assertEquals(1, (int) box.get());
+    }
+}
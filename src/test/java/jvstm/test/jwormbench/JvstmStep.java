@@ -4,6 +4,8 @@ import java.util.concurrent.Callable;
 
 
 import jvstm.Transaction;
+import jvstm.atomic.ContentionManager;
+import jvstm.atomic.ManagedAtomicContext;
 import jwormbench.core.AbstractStep;
 import jwormbench.core.IStep;
 import jwormbench.core.Direction;
@@ -12,6 +14,32 @@ import jwormbench.core.IWorm;
 
 public class JvstmStep extends AbstractStep{
 
+  /*
+   * The contention manager used to run the steps may be selected with the
+   * jvstm.cm property (e.g. -Djvstm.cm=jvstm.atomic.ExponentialBackoff).
+   * Without it, steps are retried right away by Transaction.doIt.
+   */
+  static final ContentionManager CONTENTION_MANAGER;
+  private static final ManagedAtomicContext READ_ONLY_CONTEXT;
+  private static final ManagedAtomicContext READ_WRITE_CONTEXT;
+
+  static {
+    String cmClass = System.getProperty("jvstm.cm");
+    if (cmClass == null) {
+      CONTENTION_MANAGER = null;
+      READ_ONLY_CONTEXT = null;
+      READ_WRITE_CONTEXT = null;
+    } else {
+      try {
+        CONTENTION_MANAGER = ContentionManager.getInstance(Class.forName(cmClass).asSubclass(ContentionManager.class));
+      } catch (ClassNotFoundException e) {
+        throw new RuntimeException(e);
+      }
+      READ_ONLY_CONTEXT = new ManagedAtomicContext(false, true, CONTENTION_MANAGER);
+      READ_WRITE_CONTEXT = new ManagedAtomicContext(false, false, CONTENTION_MANAGER);
+    }
+  }
+
   public JvstmStep(Direction direction, IOperation<?> op) {
     super(direction, op);
   }
@@ -28,7 +56,9 @@ public class JvstmStep extends AbstractStep{
           return op.performOperation(worm);
         }
       };
-      if(op.getKind().ordinal() < 5)
+      if(CONTENTION_MANAGER != null)
+        res = (op.getKind().ordinal() < 5 ? READ_ONLY_CONTEXT : READ_WRITE_CONTEXT).perform(task);
+      else if(op.getKind().ordinal() < 5)
         res = Transaction.doIt(task, true);
       else
         res = Transaction.doIt(task, false);
@@ -78,6 +78,10 @@ public class RunJWormBench {
         // logger.info("Nr of reversions: " + LayoutReverser.nrOfReversions+ NEW_LINE);
         logger.info("Nr of reversions: " + ActiveTransactionsRecord.nrOfReversions + NEW_LINE);
         logger.info("Number of tries = " + ActiveTransactionsRecord.nrOfTries + NEW_LINE);
+        if (JvstmStep.CONTENTION_MANAGER != null) {
+            logger.info(JvstmStep.CONTENTION_MANAGER + NEW_LINE);
+            JvstmStep.CONTENTION_MANAGER.resetCounters();
+        }
         // logger.info("Number of Cleans = " + ActiveTransactionsRecord.nrOfCleans + NEW_LINE);
         //logger.info("Nr of aborted trxs: " + Transaction.nrOfAborts+ NEW_LINE);
         //Transaction.nrOfAborts = 0;
@@ -14,7 +14,7 @@ public class TestGcWithWorldNodeAom {
     public void performTest(){
         JvstmBenchNodeFactory fac = new JvstmBenchNodeFactory();
         INode node = fac.make(7);
-        int trxNumber = Transaction.mostRecentCommittedRecord.transactionNumber;
+        long trxNumber = Transaction.mostRecentCommittedRecord.transactionNumber;
 
         // The factory instantiates a WorlNode object and the
         // constructor does not invoke any barrier, so the
@@ -0,0 +1,38 @@
+package jvstm.test.point.impl;
+
+import jvstm.aom.Transactional;
+import jvstm.test.point.core.Point;
+
+/**
+ * The same point as {@link AomIntPoint}, written as a plain class and
+ * turned into a VBoxAom by jvstm.aom.ProcessAomAnnotations after compilation.
+ */
+@Transactional
+public class TransactionalIntPoint implements Point<Integer>{
+    int x, y;
+
+    public TransactionalIntPoint(int x, int y) {
+        this.x = x;
+        this.y = y;
+    }
+
+    @Override
+    public Integer getX() {
+        return x;
+    }
+
+    @Override
+    public Integer getY() {
+        return y;
+    }
+
+    @Override
+    public void setX(Number x) {
+        this.x = x.intValue();
+    }
+
+    @Override
+    public void setY(Number y) {
+        this.y = (y == null? 0: y.intValue());
+    }
+}
@@ -0,0 +1,13 @@
+package jvstm.test.point.impl;
+
+import jvstm.test.point.core.Point;
+import jvstm.test.point.core.PointFactory;
+
+public class TransactionalIntPointFactory implements PointFactory<Integer>{
+
+    @Override
+    public Point<Integer> make(Number x, Number y) {
+        return new TransactionalIntPoint(x.intValue(), y.intValue());
+    }
+
+}
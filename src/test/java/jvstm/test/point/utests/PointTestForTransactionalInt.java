@@ -0,0 +1,12 @@
+package jvstm.test.point.utests;
+
+import jvstm.test.point.core.TestPoint;
+import jvstm.test.point.impl.TransactionalIntPointFactory;
+
+public class PointTestForTransactionalInt extends TestPoint<Integer>{
+
+    public PointTestForTransactionalInt() {
+        super(new TransactionalIntPointFactory());
+    }
+
+}
@@ -35,20 +35,24 @@ public abstract class AomGcTest<T extends Number>{
     
     @Before
     public void setUp(){
-        TxContext currentCtx = Transaction.allTxContexts;
-        while (currentCtx != null) {
-            currentCtx.inCommitAndBegin = false;
-            currentCtx.oldestRequiredVersion = null;
-            currentCtx = currentCtx.next();
+        for (TxContext ctx : Transaction.readers.slots()) {
+            ctx.inCommitAndBegin = false;
+            ctx.oldestRequiredVersion = null;
         }
-        Transaction.gcTask.runGc();
+        // run the GC until the hot objects of previous tests are all reverted,
+        // so that their reversions do not add up to the counts checked here
+        long nrOfPostponed;
+        do {
+            nrOfPostponed = ActiveTransactionsRecord.nrOfPostponedReversions.get();
+            Transaction.gcTask.runGc();
+        } while (nrOfPostponed != ActiveTransactionsRecord.nrOfPostponedReversions.get());
     }
 
     @Test
     public void testTwoReversions(){
-        int trxNumber = Transaction.mostRecentCommittedRecord.transactionNumber;
-        int nrOfTries =  ActiveTransactionsRecord.nrOfTries;
-        int nrOfReversions =  ActiveTransactionsRecord.nrOfReversions;
+        long trxNumber = Transaction.mostRecentCommittedRecord.transactionNumber;
+        long nrOfTries =  ActiveTransactionsRecord.nrOfTries.get();
+        long nrOfReversions =  ActiveTransactionsRecord.nrOfReversions.get();
         Point<T> p = pointFac.make(7, 9);
         PointFields<T> fields = new PointFields<T>((Class<T>) p.getClass());
 
@@ -79,6 +83,11 @@ public abstract class AomGcTest<T extends Number>{
         Assert.assertEquals(9, p.getY().longValue());
         Assert.assertEquals(9, fields.getY(p).longValue());
 
+        // Let the GC pass a few times, so that the next update does not extend
+        // the object right after its reversion (see testObjectWrittenOncePerGcWindow)
+        Transaction.gcTask.runGc();
+        Transaction.gcTask.runGc();
+
         // The following update is made inside an explicit transaction.
         Transaction.begin();
         p.setY(p.getY().intValue() + 1); // the get/set properties perform STM barriers.
@@ -101,15 +110,15 @@ public abstract class AomGcTest<T extends Number>{
         Assert.assertEquals(10, fields.getY(p).longValue());
 
         // Check the number of reversions
-        Assert.assertEquals(nrOfTries + 2, ActiveTransactionsRecord.nrOfTries);
-        Assert.assertEquals(nrOfReversions + 2, ActiveTransactionsRecord.nrOfReversions);
+        Assert.assertEquals(nrOfTries + 2, ActiveTransactionsRecord.nrOfTries.get());
+        Assert.assertEquals(nrOfReversions + 2, ActiveTransactionsRecord.nrOfReversions.get());
     }
 
     @Test
     public void testOneReversion(){
-        int trxNumber = Transaction.mostRecentCommittedRecord.transactionNumber;
-        int nrOfTries =  ActiveTransactionsRecord.nrOfTries;
-        int nrOfReversions =  ActiveTransactionsRecord.nrOfReversions;
+        long trxNumber = Transaction.mostRecentCommittedRecord.transactionNumber;
+        long nrOfTries =  ActiveTransactionsRecord.nrOfTries.get();
+        long nrOfReversions =  ActiveTransactionsRecord.nrOfReversions.get();
         Point<T> p = pointFac.make(7, 9);
         PointFields<T> fields = new PointFields<T>((Class<T>) p.getClass());
 
@@ -155,16 +164,16 @@ public abstract class AomGcTest<T extends Number>{
         Assert.assertEquals(10, fields.getY(p).longValue());
 
         // Check the number of reversions
-        Assert.assertEquals(nrOfTries + 1, ActiveTransactionsRecord.nrOfTries);
-        Assert.assertEquals(nrOfReversions + 1, ActiveTransactionsRecord.nrOfReversions);
+        Assert.assertEquals(nrOfTries + 1, ActiveTransactionsRecord.nrOfTries.get());
+        Assert.assertEquals(nrOfReversions + 1, ActiveTransactionsRecord.nrOfReversions.get());
     }
 
 
     @Test
     public void testMultiplePoints(){
-        int trxNumber = Transaction.mostRecentCommittedRecord.transactionNumber;
-        int nrOfTries =  ActiveTransactionsRecord.nrOfTries;
-        int nrOfReversions =  ActiveTransactionsRecord.nrOfReversions;
+        long trxNumber = Transaction.mostRecentCommittedRecord.transactionNumber;
+        long nrOfTries =  ActiveTransactionsRecord.nrOfTries.get();
+        long nrOfReversions =  ActiveTransactionsRecord.nrOfReversions.get();
         Point<T>[] p = new Point[13];
         for (int i = 0; i < p.length; i++) {
             p[i] = pointFac.make(7, 9);
@@ -209,7 +218,61 @@ public abstract class AomGcTest<T extends Number>{
         }
 
         // Check the number of reversions
-        Assert.assertEquals(nrOfTries + 13, ActiveTransactionsRecord.nrOfTries);
-        Assert.assertEquals(nrOfReversions + 13, ActiveTransactionsRecord.nrOfReversions);
+        Assert.assertEquals(nrOfTries + 13, ActiveTransactionsRecord.nrOfTries.get());
+        Assert.assertEquals(nrOfReversions + 13, ActiveTransactionsRecord.nrOfReversions.get());
+    }
+
+    @Test
+    public void testHotObjectStaysExtended(){
+        long nrOfReversions =  ActiveTransactionsRecord.nrOfReversions.get();
+        long nrOfPostponed =  ActiveTransactionsRecord.nrOfPostponedReversions.get();
+        Point<T> p = pointFac.make(7, 9);
+        PointFields<T> fields = new PointFields<T>((Class<T>) p.getClass());
+
+        // Each update is made in its own transaction, so when the GC runs it
+        // finds that all versions but the last one were already superseded.
+        for (int i = 0; i < 6; i++) {
+            p.setX(p.getX().intValue() + 1);
+        }
+        Transaction.gcTask.runGc();
+        Assert.assertNotSame(null, ((VBox) p).body); // hot objects remain extended
+        Assert.assertEquals(13, p.getX().longValue());
+        Assert.assertEquals(7, fields.getX(p).longValue()); // the field contains the original value
+        Assert.assertEquals(nrOfPostponed + 1, ActiveTransactionsRecord.nrOfPostponedReversions.get());
+
+        // Without further updates the object cools down and is reverted by
+        // a following run of the GC.
+        Transaction.gcTask.runGc();
+        Assert.assertSame(null, ((VBox) p).body);
+        Assert.assertEquals(13, p.getX().longValue());
+        Assert.assertEquals(13, fields.getX(p).longValue()); // the field contains the new value
+        Assert.assertEquals(9, p.getY().longValue());
+        Assert.assertEquals(nrOfReversions + 1, ActiveTransactionsRecord.nrOfReversions.get());
+    }
+
+    @Test
+    public void testObjectWrittenOncePerGcWindow(){
+        Point<T> p = pointFac.make(7, 9);
+        PointFields<T> fields = new PointFields<T>((Class<T>) p.getClass());
+
+        // The first time, the object is reverted as soon as its version is cleaned.
+        p.setX(8);
+        Transaction.gcTask.runGc();
+        Assert.assertSame(null, ((VBox) p).body);
+
+        // Written again before the next run of the GC, it was reverted in vain,
+        // so now it remains extended.
+        p.setX(9);
+        Transaction.gcTask.runGc();
+        Assert.assertNotSame(null, ((VBox) p).body);
+        Assert.assertEquals(9, p.getX().longValue());
+        Assert.assertEquals(8, fields.getX(p).longValue()); // the field contains the previous value
+
+        // Without further updates the object cools down and is reverted.
+        for (int i = 0; (i < 10) && (((VBox) p).body != null); i++) {
+            Transaction.gcTask.runGc();
+        }
+        Assert.assertSame(null, ((VBox) p).body);
+        Assert.assertEquals(9, fields.getX(p).longValue());
     }
 }
@@ -0,0 +1,11 @@
+package jvstm.test.point.utests.gc;
+
+import jvstm.test.point.impl.TransactionalIntPointFactory;
+
+public class AomGcTestForTransactionalIntPoint extends AomGcTest<Integer>{
+
+    public AomGcTestForTransactionalIntPoint() {
+        super(new TransactionalIntPointFactory());
+    }
+
+}
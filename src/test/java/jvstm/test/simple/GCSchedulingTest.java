@@ -0,0 +1,105 @@
+package jvstm.test.simple;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+import jvstm.SuspendedTransaction;
+import jvstm.Transaction;
+import jvstm.VBox;
+import jvstm.gc.GCTask;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GCSchedulingTest {
+
+    private final GCTask gc = Transaction.gcTask;
+    private final VBox<Integer> box = new VBox<Integer>(0);
+
+    private long maxInterval;
+    private int commitThreshold;
+    private int heapThreshold;
+
+    @Before
+    public void setUp() {
+        this.maxInterval = gc.getMaxInterval();
+        this.commitThreshold = gc.getCommitThreshold();
+        this.heapThreshold = gc.getHeapThreshold();
+    }
+
+    @After
+    public void tearDown() {
+        gc.setMaxInterval(this.maxInterval);
+        gc.setCommitThreshold(this.commitThreshold);
+        gc.setHeapThreshold(this.heapThreshold);
+    }
+
+    @Test
+    public void testPinnedRecordDoesNotKeepTheGcBusy() throws InterruptedException {
+        gc.setCommitThreshold(10);
+        gc.setMaxInterval(60000);
+        SuspendedTransaction reader = pinCurrentRecord();
+
+        commit(100);
+        assertNoPasses();
+
+        Transaction.resume(reader);
+        Transaction.commit();
+    }
+
+    @Test
+    public void testHeapPressureDoesNotKeepTheGcBusy() throws InterruptedException {
+        gc.setCommitThreshold(Integer.MAX_VALUE);
+        gc.setHeapThreshold(0);
+        gc.setMaxInterval(60000);
+        SuspendedTransaction reader = pinCurrentRecord();
+
+        commit(5);
+        assertNoPasses();
+
+        Transaction.resume(reader);
+        Transaction.commit();
+    }
+
+    @Test
+    public void testRecordsAreCleanedOnceTheReaderFinishes() throws InterruptedException {
+        gc.setCommitThreshold(10);
+        gc.setMaxInterval(60000);
+        SuspendedTransaction reader = pinCurrentRecord();
+        commit(100);
+        Transaction.resume(reader);
+        Transaction.commit();
+
+        long lastCommitted = Transaction.mostRecentCommittedRecord.transactionNumber;
+        // the GC is woken up by the next commitThreshold commits
+        commit(10);
+        for (int i = 0; i < 100 && gc.getLastCleanedRecord().transactionNumber < lastCommitted; i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(gc.getLastCleanedRecord().transactionNumber >= lastCommitted);
+    }
+
+    // starts a transaction that keeps the most recent record in use
+    private SuspendedTransaction pinCurrentRecord() throws InterruptedException {
+        Transaction.begin(true);
+        SuspendedTransaction reader = Transaction.suspend();
+        // let the GC thread finish the pass made when the settings changed
+        Thread.sleep(100);
+        return reader;
+    }
+
+    private void assertNoPasses() throws InterruptedException {
+        // the commits above may still wake the GC thread up once
+        Thread.sleep(100);
+        long lastPass = gc.getLastPassTime();
+        Thread.sleep(300);
+        assertEquals(lastPass, gc.getLastPassTime());
+    }
+
+    private void commit(int n) {
+        for (int i = 0; i < n; i++) {
+            box.put(i);
+        }
+    }
+}
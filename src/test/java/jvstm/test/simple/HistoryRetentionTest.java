@@ -0,0 +1,131 @@
+package jvstm.test.simple;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+import jvstm.CommitException;
+import jvstm.SuspendedTransaction;
+import jvstm.Transaction;
+import jvstm.VArray;
+import jvstm.VBox;
+import jvstm.gc.GCTask;
+import jvstm.test.point.core.Point;
+import jvstm.test.point.impl.AomIntPointFactory;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class HistoryRetentionTest {
+
+    @After
+    public void tearDown() {
+        Transaction.gcTask.setMaxVersions(0);
+        Transaction.gcTask.setMaxAge(0);
+    }
+
+    @Test
+    public void testReaderAbortsWhenItsVersionIsTrimmed() {
+        VBox<Integer> box = new VBox<Integer>(0);
+        Transaction.begin(true);
+        SuspendedTransaction reader = Transaction.suspend();
+
+        long trimmed = GCTask.nrOfTrimmedVersions.get();
+        Transaction.gcTask.setMaxVersions(4);
+        for (int i = 1; i <= 50; i++) {
+            box.put(i);
+        }
+        Transaction.gcTask.runGc();
+        assertTrue(GCTask.nrOfTrimmedVersions.get() > trimmed);
+
+        assertReaderAborts(reader, box, null);
+        assertEquals(Integer.valueOf(50), box.get());
+    }
+
+    @Test
+    public void testReaderAbortsWhenItsRecordExpires() {
+        VArray<Integer> array = new VArray<Integer>(1);
+        array.put(0, 0);
+        Transaction.begin(true);
+        SuspendedTransaction reader = Transaction.suspend();
+
+        long expired = GCTask.nrOfExpiredRecords.get();
+        Transaction.gcTask.setMaxAge(10);
+        for (int i = 1; i <= 50; i++) {
+            array.put(0, i);
+        }
+        Transaction.gcTask.runGc();
+        assertTrue(GCTask.nrOfExpiredRecords.get() > expired);
+
+        assertReaderAborts(reader, null, array);
+        assertEquals(Integer.valueOf(50), array.get(0));
+    }
+
+    @Test
+    public void testExpiredRecordsAreCountedOnce() {
+        VBox<Integer> box = new VBox<Integer>(0);
+        Transaction.begin(true);
+        SuspendedTransaction reader = Transaction.suspend();
+
+        Transaction.gcTask.setMaxAge(10);
+        for (int i = 1; i <= 50; i++) {
+            box.put(i);
+        }
+        Transaction.gcTask.runGc();
+        long expired = GCTask.nrOfExpiredRecords.get();
+        for (int i = 1; i <= 5; i++) {
+            box.put(i);
+        }
+        // the reader still pins its record, but only the 5 new records expire
+        Transaction.gcTask.runGc();
+        assertEquals(expired + 5, GCTask.nrOfExpiredRecords.get());
+
+        Transaction.resume(reader);
+        Transaction.commit();
+    }
+
+    @Test
+    public void testExpiredAomObjectsAreNotReverted() {
+        Point<Integer> point = new AomIntPointFactory().make(7, 9);
+        VBox<Integer> other = new VBox<Integer>(0);
+        Transaction.begin(true);
+        SuspendedTransaction reader = Transaction.suspend();
+
+        point.setX(8);
+        Transaction.gcTask.setMaxAge(10);
+        for (int i = 1; i <= 50; i++) {
+            other.put(i);
+        }
+        Transaction.gcTask.runGc();
+
+        // in the compact layout, the reader would read 8 instead of aborting
+        assertNotNull(((VBox<?>) point).body);
+        long aborts = GCTask.nrOfForcedAborts.get();
+        Transaction.resume(reader);
+        try {
+            point.getX();
+            fail("expected the reader to abort");
+        } catch (CommitException expected) {
+            Transaction.abort();
+        }
+        assertEquals(aborts + 1, GCTask.nrOfForcedAborts.get());
+        assertEquals(Integer.valueOf(8), point.getX());
+    }
+
+    private static void assertReaderAborts(SuspendedTransaction reader, VBox<Integer> box, VArray<Integer> array) {
+        long aborts = GCTask.nrOfForcedAborts.get();
+        Transaction.resume(reader);
+        try {
+            if (box != null) {
+                box.get();
+            } else {
+                array.get(0);
+            }
+            fail("expected the reader to abort");
+        } catch (CommitException expected) {
+            Transaction.abort();
+        }
+        assertEquals(aborts + 1, GCTask.nrOfForcedAborts.get());
+    }
+}
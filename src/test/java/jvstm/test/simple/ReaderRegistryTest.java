@@ -0,0 +1,106 @@
+package jvstm.test.simple;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+import java.lang.ref.WeakReference;
+
+import jvstm.ActiveTransactionsRecord;
+import jvstm.SuspendedTransaction;
+import jvstm.Transaction;
+import jvstm.VBox;
+import jvstm.gc.TxContext;
+
+import org.junit.Test;
+
+public class ReaderRegistryTest {
+
+    private final VBox<Integer> box = new VBox<Integer>(0);
+
+    @Test
+    public void testSlotOfADeadThreadIsReused() throws InterruptedException {
+        int size = Transaction.readers.slots().length;
+        TxContext ctx = runAndAbandon();
+
+        assertTrue(ctx.owner instanceof Thread);
+        assertFalse(((Thread) ctx.owner).isAlive());
+        assertNotNull(ctx.oldestRequiredVersion);
+
+        Transaction.gcTask.runGc();
+        assertNull(ctx.owner);
+        assertNull(ctx.oldestRequiredVersion);
+
+        Object owner = new Object();
+        assertSame(ctx, Transaction.readers.acquire(owner, ctx));
+        assertSame(owner, ctx.owner);
+        ctx.release();
+        assertEquals(size, Transaction.readers.slots().length);
+    }
+
+    @Test
+    public void testGcIgnoresTheSlotOfADeadThread() throws InterruptedException {
+        TxContext ctx = runAndAbandon();
+        long pinned = ctx.oldestRequiredVersion.transactionNumber;
+
+        for (int i = 1; i <= 10; i++) {
+            box.put(i);
+        }
+        ActiveTransactionsRecord mostRecent = Transaction.mostRecentCommittedRecord;
+        assertTrue(mostRecent.transactionNumber > pinned);
+
+        Transaction.gcTask.runGc();
+        assertTrue(Transaction.gcTask.getLastCleanedRecord().transactionNumber >= mostRecent.transactionNumber);
+    }
+
+    @Test
+    public void testResumeHandsTheSlotOver() throws InterruptedException {
+        Transaction.begin(true);
+        final TxContext ctx = Transaction.context();
+        final ActiveTransactionsRecord record = ctx.oldestRequiredVersion;
+        final SuspendedTransaction suspended = Transaction.suspend();
+
+        // the slot, and its required record, go with the suspended transaction
+        assertTrue(ctx.owner instanceof WeakReference);
+        assertSame(record, ctx.oldestRequiredVersion);
+        Transaction.gcTask.runGc();
+        assertTrue(ctx.owner instanceof WeakReference);
+
+        final Object[] seen = new Object[4];
+        Thread resumer = new Thread() {
+            public void run() {
+                Transaction.resume(suspended);
+                seen[0] = Transaction.context();
+                seen[1] = ctx.owner;
+                seen[2] = ctx.oldestRequiredVersion;
+                Transaction.commit();
+                seen[3] = ctx.owner;
+            }
+        };
+        resumer.start();
+        resumer.join();
+
+        assertSame(ctx, seen[0]);
+        assertSame(resumer, seen[1]);
+        assertSame(record, seen[2]);
+        // committing gives the slot back
+        assertNull(seen[3]);
+    }
+
+    // begins a transaction in a new thread, which dies without finishing it
+    private static TxContext runAndAbandon() throws InterruptedException {
+        final TxContext[] ctx = new TxContext[1];
+        Thread runner = new Thread() {
+            public void run() {
+                Transaction.begin(true);
+                ctx[0] = Transaction.context();
+            }
+        };
+        runner.start();
+        runner.join();
+        return ctx[0];
+    }
+}
@@ -0,0 +1,214 @@
+package jvstm.test.simple;
+
+import static junit.framework.Assert.assertEquals;
+
+import java.util.concurrent.CountDownLatch;
+
+import jvstm.ActiveTransactionsRecord;
+import jvstm.DefaultTransactionFactory;
+import jvstm.TopLevelTransaction;
+import jvstm.Transaction;
+import jvstm.VBox;
+import jvstm.VBoxInt;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class SnapshotExtensionTest {
+
+    // committed by another thread when a transaction starts to extend its snapshot
+    private static volatile Runnable duringExtension;
+
+    // top-level transactions that always extend their snapshot
+    static class ExtendingTransaction extends TopLevelTransaction {
+        ExtendingTransaction(ActiveTransactionsRecord record) {
+            super(record);
+        }
+
+        @Override
+        protected boolean extendsSnapshot() {
+            return true;
+        }
+
+        @Override
+        protected void extendSnapshot() {
+            Runnable interference = duringExtension;
+            duringExtension = null;
+            if (interference != null) {
+                commitInOtherThread(interference);
+            }
+            super.extendSnapshot();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        duringExtension = null;
+        Transaction.setTransactionFactory(new DefaultTransactionFactory());
+    }
+
+    @Test
+    public void testExtensionReadsTheVersionOfTheNewSnapshot() {
+        final VBox<Integer> box = new VBox<Integer>(0);
+        VBox<Integer> other = new VBox<Integer>(0);
+        useExtendingTransactions();
+
+        Transaction.begin(false);
+        commitInOtherThread(new Runnable() {
+            public void run() {
+                box.put(1);
+            }
+        });
+        duringExtension = new Runnable() {
+            public void run() {
+                box.put(2);
+            }
+        };
+        // the reader sees version 1, and version 2 lands while it extends
+        assertEquals(2, (int) box.get());
+        other.put(1);
+        Transaction.commit();
+
+        assertEquals(2, (int) box.get());
+        assertEquals(1, (int) other.get());
+    }
+
+    @Test
+    public void testExtensionReadsThePrimitiveVersionOfTheNewSnapshot() {
+        final VBoxInt box = new VBoxInt(0);
+        useExtendingTransactions();
+
+        Transaction.begin(false);
+        commitInOtherThread(new Runnable() {
+            public void run() {
+                box.putInt(1);
+            }
+        });
+        duringExtension = new Runnable() {
+            public void run() {
+                box.putInt(2);
+            }
+        };
+        assertEquals(2, box.getInt());
+        Transaction.commit();
+    }
+
+    @Test
+    public void testExtensionKeepsTheFallbackWrites() {
+        final VBox<Integer> box = new VBox<Integer>(0);
+        final VBox<Integer> trigger = new VBox<Integer>(0);
+        useExtendingTransactions();
+
+        OwnerThread owner = holdInplaceOwnership(new Runnable() {
+            public void run() {
+                box.put(1);
+                trigger.put(1);
+            }
+        });
+        Transaction.begin(false);
+        // the other transaction owns the box, so this write goes to the
+        // fallback write-set
+        box.put(5);
+        owner.release();
+        // reading the trigger extends the snapshot past the other commit
+        assertEquals(1, (int) trigger.get());
+        assertEquals(5, (int) box.get());
+        Transaction.commit();
+
+        assertEquals(5, (int) box.get());
+    }
+
+    @Test
+    public void testExtensionKeepsThePrimitiveFallbackWrites() {
+        final VBoxInt box = new VBoxInt(0);
+        final VBoxInt trigger = new VBoxInt(0);
+        useExtendingTransactions();
+
+        OwnerThread owner = holdInplaceOwnership(new Runnable() {
+            public void run() {
+                box.putInt(1);
+                trigger.putInt(1);
+            }
+        });
+        Transaction.begin(false);
+        box.putInt(5);
+        owner.release();
+        assertEquals(1, trigger.getInt());
+        assertEquals(5, box.getInt());
+        Transaction.commit();
+
+        assertEquals(5, box.getInt());
+    }
+
+    private static void useExtendingTransactions() {
+        Transaction.setTransactionFactory(new DefaultTransactionFactory() {
+            @Override
+            public Transaction makeTopLevelTransaction(ActiveTransactionsRecord record) {
+                return new ExtendingTransaction(record);
+            }
+        });
+    }
+
+    // runs the writes in another thread, which keeps its transaction running
+    // (and so owning the written boxes) until released
+    static class OwnerThread extends Thread {
+        private final Runnable writes;
+        private final CountDownLatch written = new CountDownLatch(1);
+        private final CountDownLatch released = new CountDownLatch(1);
+
+        OwnerThread(Runnable writes) {
+            this.writes = writes;
+        }
+
+        @Override
+        public void run() {
+            Transaction.begin(false);
+            writes.run();
+            written.countDown();
+            await(released);
+            Transaction.commit();
+        }
+
+        // lets the owner commit and waits for it
+        void release() {
+            released.countDown();
+            try {
+                join();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private static OwnerThread holdInplaceOwnership(Runnable writes) {
+        OwnerThread owner = new OwnerThread(writes);
+        owner.start();
+        await(owner.written);
+        return owner;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // commits the write in another thread and waits for it
+    private static void commitInOtherThread(final Runnable write) {
+        Thread thread = new Thread() {
+            public void run() {
+                Transaction.begin(false);
+                write.run();
+                Transaction.commit();
+            }
+        };
+        thread.start();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
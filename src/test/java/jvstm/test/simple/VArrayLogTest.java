@@ -0,0 +1,151 @@
+package jvstm.test.simple;
+
+import static junit.framework.Assert.assertEquals;
+
+import java.util.Random;
+
+import jvstm.SuspendedTransaction;
+import jvstm.Transaction;
+import jvstm.VArray;
+import jvstm.VIntArray;
+import jvstm.VLongArray;
+import jvstm.util.VArrayList;
+
+import org.junit.Test;
+
+public class VArrayLogTest {
+
+    private static final int SIZE = 64;
+    private static final int COMMITS = 3000;
+
+    @Test
+    public void testReadersDeepIntoTheLog() {
+        VLongArray array = new VLongArray(SIZE);
+        long[] current = new long[SIZE];
+        long[][] snapshots = new long[4][];
+        SuspendedTransaction[] readers = new SuspendedTransaction[4];
+
+        Random random = new Random(42);
+        for (int c = 0; c < COMMITS; c++) {
+            if (c % (COMMITS / readers.length) == 0) {
+                int r = c / (COMMITS / readers.length);
+                snapshots[r] = current.clone();
+                Transaction.begin(true);
+                readers[r] = Transaction.suspend();
+            }
+
+            Transaction.begin();
+            int writes = 1 + random.nextInt(4);
+            for (int w = 0; w < writes; w++) {
+                int index = random.nextInt(SIZE);
+                current[index] = c * 10 + w;
+                array.putLong(index, current[index]);
+            }
+            Transaction.commit();
+        }
+
+        // read twice, so that the second pass goes through the folds built by the first
+        for (int pass = 0; pass < 2; pass++) {
+            for (int r = readers.length - 1; r >= 0; r--) {
+                Transaction.resume(readers[r]);
+                for (int i = 0; i < SIZE; i++) {
+                    assertEquals(snapshots[r][i], array.getLong(i));
+                }
+                readers[r] = Transaction.suspend();
+            }
+        }
+        for (SuspendedTransaction reader : readers) {
+            Transaction.resume(reader);
+            Transaction.commit();
+        }
+
+        for (int i = 0; i < SIZE; i++) {
+            assertEquals(current[i], array.getLong(i));
+        }
+    }
+
+    @Test
+    public void testNullsInTheLog() {
+        VArray<String> array = new VArray<String>(2);
+        Transaction.begin(true);
+        SuspendedTransaction reader = Transaction.suspend();
+        for (int c = 0; c < 100; c++) {
+            array.put(c % 2, (c % 3 == 0) ? null : "v" + c);
+        }
+        Transaction.resume(reader);
+        assertEquals(null, array.get(0));
+        assertEquals(null, array.get(1));
+        Transaction.commit();
+        assertEquals("v98", array.get(0));
+        assertEquals(null, array.get(1));
+    }
+
+    @Test
+    public void testReadsOutsideTransactions() {
+        VArray<String> array = new VArray<String>(4);
+        VArrayList<String> list = new VArrayList<String>();
+        array.put(0, "a");
+        list.add("a");
+        Transaction.begin(true);
+        SuspendedTransaction reader = Transaction.suspend();
+        for (int c = 0; c < 50; c++) {
+            array.put(c % 4, "v" + c);
+            list.add("v" + c);
+        }
+
+        assertEquals("v48", array.get(0));
+        assertEquals("v49", array.get(1));
+        String[] range = new String[4];
+        array.getRange(0, range, 0, 4);
+        assertEquals("v49", range[1]);
+        assertEquals("v47", range[3]);
+        assertEquals("a", list.get(0));
+        assertEquals("v49", list.get(50));
+        try {
+            list.get(51);
+            throw new AssertionError("expected IndexOutOfBoundsException");
+        } catch (IndexOutOfBoundsException expected) {
+        }
+
+        Transaction.resume(reader);
+        assertEquals("a", array.get(0));
+        assertEquals(null, array.get(1));
+        assertEquals(1, list.size());
+        Transaction.commit();
+    }
+
+    @Test
+    public void testConsistentRangesOutsideTransactions() throws InterruptedException {
+        final VIntArray array = new VIntArray(SIZE);
+        for (int i = 0; i < SIZE; i++) {
+            array.putInt(i, 10);
+        }
+
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                Random random = new Random(7);
+                for (int c = 0; c < COMMITS; c++) {
+                    Transaction.begin();
+                    int from = random.nextInt(SIZE);
+                    int to = random.nextInt(SIZE);
+                    array.putInt(from, array.getInt(from) - 1);
+                    array.putInt(to, array.getInt(to) + 1);
+                    Transaction.commit();
+                }
+            }
+        };
+        writer.start();
+
+        Integer[] values = new Integer[SIZE];
+        while (writer.isAlive()) {
+            array.getRange(0, values, 0, SIZE);
+            int sum = 0;
+            for (Integer value : values) {
+                sum += value;
+            }
+            assertEquals(SIZE * 10, sum);
+        }
+        writer.join();
+    }
+}
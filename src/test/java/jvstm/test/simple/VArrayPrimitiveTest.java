@@ -0,0 +1,100 @@
+package jvstm.test.simple;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.fail;
+import jvstm.SuspendedTransaction;
+import jvstm.Transaction;
+import jvstm.VDoubleArray;
+import jvstm.VIntArray;
+import jvstm.VLongArray;
+
+import org.junit.Test;
+
+public class VArrayPrimitiveTest {
+
+    @Test
+    public void testValuesOutsideTransactions() {
+        VIntArray ints = new VIntArray(8);
+        VLongArray longs = new VLongArray(8);
+        VDoubleArray doubles = new VDoubleArray(8);
+
+        assertEquals(0, ints.getInt(3));
+        ints.putInt(3, -7);
+        longs.putLong(7, Long.MIN_VALUE);
+        doubles.putDouble(0, -0.5);
+
+        assertEquals(-7, ints.getInt(3));
+        assertEquals(Integer.valueOf(-7), ints.get(3));
+        assertEquals(Long.MIN_VALUE, longs.getLong(7));
+        assertEquals(-0.5, doubles.getDouble(0));
+    }
+
+    @Test
+    public void testWriteBackFromTopLevelAndNestedTransactions() {
+        VIntArray ints = new VIntArray(4);
+
+        Transaction.begin();
+        ints.putInt(0, 1);
+        ints.putInt(2, 3);
+        Transaction.begin();
+        assertEquals(3, ints.getInt(2));
+        ints.putInt(1, ints.getInt(0) + 1);
+        Transaction.commit();
+        assertEquals(2, ints.getInt(1));
+        Transaction.commit();
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i + 1, ints.getInt(i));
+        }
+        assertEquals(0, ints.getInt(3));
+    }
+
+    @Test
+    public void testRepeatedWritesInsideATransaction() {
+        VIntArray ints = new VIntArray(2);
+
+        Transaction.begin();
+        ints.putInt(0, 1);
+        assertEquals(1, ints.getInt(0));
+        ints.putInt(0, 2);
+        ints.putInt(1, ints.getInt(0) + 1);
+        assertEquals(2, ints.getInt(0));
+        assertEquals(3, ints.getInt(1));
+        Transaction.commit();
+
+        assertEquals(2, ints.getInt(0));
+        assertEquals(3, ints.getInt(1));
+    }
+
+    @Test
+    public void testOlderTransactionsReadFromTheLog() {
+        VLongArray longs = new VLongArray(4);
+        longs.putLong(1, 10);
+
+        Transaction.begin(true);
+        SuspendedTransaction reader = Transaction.suspend();
+
+        longs.putLong(1, 11);
+        longs.putLong(2, 20);
+        longs.putLong(1, 12);
+
+        Transaction.resume(reader);
+        assertEquals(10, longs.getLong(1));
+        assertEquals(0, longs.getLong(2));
+        Transaction.commit();
+
+        assertEquals(12, longs.getLong(1));
+        assertEquals(20, longs.getLong(2));
+    }
+
+    @Test
+    public void testNullIsRejected() {
+        VDoubleArray doubles = new VDoubleArray(1);
+        try {
+            doubles.put(0, null);
+            fail();
+        } catch (NullPointerException expected) {
+        }
+        assertEquals(0.0, doubles.getDouble(0));
+    }
+}
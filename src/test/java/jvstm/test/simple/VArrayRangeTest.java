@@ -0,0 +1,105 @@
+package jvstm.test.simple;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import jvstm.SuspendedTransaction;
+import jvstm.Transaction;
+import jvstm.VArray;
+import jvstm.VIntArray;
+
+import org.junit.Test;
+
+public class VArrayRangeTest {
+
+    private static Integer[] values(int from, int n) {
+        Integer[] values = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = from + i;
+        }
+        return values;
+    }
+
+    @Test
+    public void testRangesOutsideTransactions() {
+        VArray<Integer> array = new VArray<Integer>(10);
+        array.putRange(2, values(100, 5), 1, 3);
+
+        Integer[] read = new Integer[10];
+        array.getRange(0, read, 0, 10);
+        assertNull(read[1]);
+        assertEquals(Integer.valueOf(101), read[2]);
+        assertEquals(Integer.valueOf(103), read[4]);
+        assertNull(read[5]);
+
+        array.fill(4, 10, 7);
+        assertEquals(Integer.valueOf(102), array.get(3));
+        assertEquals(Integer.valueOf(7), array.get(9));
+    }
+
+    @Test
+    public void testOverlappingWritesInsideATransaction() {
+        VIntArray array = new VIntArray(16);
+
+        Transaction.begin();
+        array.putInt(1, 1);
+        array.putInt(5, 5);
+        array.fill(4, 8, 40);          // drops the write to 5
+        array.putInt(6, 6);            // goes into the range
+        array.putRange(7, values(70, 4), 0, 4);
+        array.putInt(12, 12);
+        assertEquals(40, array.getInt(5));
+        assertEquals(6, array.getInt(6));
+        Integer[] read = new Integer[12];
+        array.getRange(0, read, 0, 12);
+        Transaction.commit();
+
+        int[] expected = { 0, 1, 0, 0, 40, 40, 6, 70, 71, 72, 73, 0, 12, 0, 0, 0 };
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], array.getInt(i));
+            if (i < read.length) {
+                assertEquals(expected[i], read[i].intValue());
+            }
+        }
+    }
+
+    @Test
+    public void testOlderTransactionsReadFromTheLog() {
+        VIntArray array = new VIntArray(8);
+        array.fill(0, 8, 1);
+
+        Transaction.begin(true);
+        SuspendedTransaction reader = Transaction.suspend();
+        array.fill(2, 6, 2);
+        array.putRange(4, values(30, 4), 0, 4);
+
+        Transaction.resume(reader);
+        Integer[] read = new Integer[8];
+        array.getRange(0, read, 0, 8);
+        Transaction.commit();
+        for (int i = 0; i < 8; i++) {
+            assertEquals(1, read[i].intValue());
+        }
+        assertEquals(2, array.getInt(3));
+        assertEquals(33, array.getInt(7));
+    }
+
+    @Test
+    public void testArraycopyAndNesting() {
+        VArray<Integer> array = new VArray<Integer>(8);
+        array.copyFrom(values(0, 8));
+        VArray.arraycopy(array, 0, array, 2, 6);
+
+        Transaction.begin();
+        array.fill(0, 2, -1);
+        Transaction.begin();
+        assertEquals(Integer.valueOf(-1), array.get(1));
+        array.put(0, -2);
+        Transaction.commit();
+        Transaction.commit();
+
+        Integer[] expected = { -2, -1, 0, 1, 2, 3, 4, 5 };
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], array.get(i));
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package jvstm.test.simple;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import jvstm.SuspendedTransaction;
+import jvstm.Transaction;
+import jvstm.VBox;
+import jvstm.VBoxBodyPrimitive;
+import jvstm.VBoxBoolean;
+import jvstm.VBoxDouble;
+import jvstm.VBoxInt;
+import jvstm.VBoxLong;
+
+import org.junit.Test;
+
+public class VBoxPrimitiveTest {
+
+    @Test
+    public void testValuesOutsideTransactions() {
+        VBoxInt i = new VBoxInt(-7);
+        VBoxLong l = new VBoxLong(Long.MIN_VALUE);
+        VBoxDouble d = new VBoxDouble(-0.5);
+        VBoxBoolean b = new VBoxBoolean(true);
+
+        assertEquals(-7, i.getInt());
+        assertEquals(Long.MIN_VALUE, l.getLong());
+        assertEquals(-0.5, d.getDouble());
+        assertTrue(b.getBoolean());
+        assertTrue(i.body instanceof VBoxBodyPrimitive);
+
+        i.putInt(42);
+        assertEquals(42, i.getInt());
+        assertEquals(Integer.valueOf(42), i.get());
+    }
+
+    @Test
+    public void testWriteBackFromTopLevelTransaction() {
+        VBoxInt i = new VBoxInt(1);
+        VBoxDouble d = new VBoxDouble(1.0);
+
+        Transaction.begin();
+        i.putInt(i.getInt() + 1);
+        d.putDouble(d.getDouble() * 3);
+        assertEquals(2, i.getInt());
+        assertEquals(3.0, d.getDouble());
+        Transaction.commit();
+
+        assertEquals(2, i.getInt());
+        assertEquals(3.0, d.getDouble());
+        assertTrue(i.body instanceof VBoxBodyPrimitive);
+        assertEquals(i.body.version, d.body.version);
+
+        Transaction.begin(true);
+        assertEquals(2, i.getInt());
+        Transaction.commit();
+    }
+
+    @Test
+    public void testNestedTransactionsSeeUnboxedWrites() {
+        VBoxInt i = new VBoxInt(10);
+        VBox<Integer> generic = i;
+
+        Transaction.begin();
+        i.putInt(11);
+        Transaction.begin();
+        assertEquals(Integer.valueOf(11), generic.get());
+        generic.put(12);
+        assertEquals(12, i.getInt());
+        Transaction.commit();
+        assertEquals(12, i.getInt());
+        i.putInt(13);
+        Transaction.commit();
+
+        assertEquals(13, i.getInt());
+    }
+
+    @Test
+    public void testFallbackWriteSurvivesAbortOfOwner() {
+        VBoxInt i = new VBoxInt(1);
+
+        // the first transaction owns the box, so the second one writes to
+        // its fallback write-set
+        Transaction.begin();
+        i.putInt(2);
+        SuspendedTransaction owner = Transaction.suspend();
+        Transaction.begin();
+        i.putInt(3);
+        SuspendedTransaction writer = Transaction.suspend();
+
+        Transaction.resume(owner);
+        Transaction.abort();
+
+        Transaction.resume(writer);
+        assertEquals(3, i.getInt());
+        Transaction.commit();
+
+        assertEquals(3, i.getInt());
+    }
+}
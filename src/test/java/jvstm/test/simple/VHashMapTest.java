@@ -0,0 +1,208 @@
+package jvstm.test.simple;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import jvstm.CommitException;
+import jvstm.Transaction;
+import jvstm.util.VHashMap;
+
+import org.junit.Test;
+
+public class VHashMapTest {
+
+    @Test
+    public void testBasicOperations() {
+        VHashMap<String, Integer> map = new VHashMap<String, Integer>();
+        assertTrue(map.isEmpty());
+        assertNull(map.put("a", 1));
+        assertNull(map.put(null, 0));
+        assertEquals(Integer.valueOf(1), map.put("a", 2));
+        assertEquals(Integer.valueOf(2), map.get("a"));
+        assertEquals(Integer.valueOf(0), map.get(null));
+        assertTrue(map.containsKey(null));
+        assertEquals(2, map.size());
+
+        assertEquals(Integer.valueOf(2), map.remove("a"));
+        assertNull(map.remove("a"));
+        assertFalse(map.containsKey("a"));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void testResizeKeepsEveryEntry() {
+        VHashMap<Integer, Integer> map = new VHashMap<Integer, Integer>();
+        Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+
+        // enough entries to go through several (incremental) resizes
+        for (int i = 0; i < 1000; i++) {
+            map.put(i, i * 2);
+            expected.put(i, i * 2);
+        }
+        for (int i = 0; i < 1000; i += 3) {
+            map.remove(i);
+            expected.remove(i);
+        }
+
+        assertEquals(expected.size(), map.size());
+        assertEquals(expected, map);
+        for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+    }
+
+    @Test
+    public void testIteratorRemoveAndSetValue() {
+        VHashMap<Integer, Integer> map = new VHashMap<Integer, Integer>();
+        for (int i = 0; i < 100; i++) {
+            map.put(i, i);
+        }
+
+        Transaction.begin();
+        for (Iterator<Map.Entry<Integer, Integer>> it = map.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<Integer, Integer> entry = it.next();
+            if (entry.getKey() % 2 == 0) {
+                it.remove();
+            } else {
+                entry.setValue(-entry.getKey());
+            }
+        }
+        Transaction.commit();
+
+        assertEquals(50, map.size());
+        assertNull(map.get(2));
+        assertEquals(Integer.valueOf(-3), map.get(3));
+    }
+
+    @Test
+    public void testAbortDiscardsUpdates() {
+        VHashMap<Integer, Integer> map = new VHashMap<Integer, Integer>();
+        map.put(1, 1);
+
+        Transaction.begin();
+        for (int i = 2; i < 100; i++) {
+            map.put(i, i);
+        }
+        map.remove(1);
+        Transaction.abort();
+
+        assertEquals(1, map.size());
+        assertEquals(Integer.valueOf(1), map.get(1));
+        assertNull(map.get(50));
+    }
+
+    @Test
+    public void testReadsOutsideTransactionsDuringResizes() throws InterruptedException {
+        final VHashMap<Integer, Integer> map = new VHashMap<Integer, Integer>();
+        for (int i = 0; i < 8; i++) {
+            map.put(i, i);
+        }
+        map.put(null, -1);
+
+        Thread writer = new Thread() {
+            public void run() {
+                // each put in its own transaction, so that the map resizes many times
+                for (int i = 8; i < 20000; i++) {
+                    Transaction.begin();
+                    map.put(i, i);
+                    Transaction.commit();
+                }
+            }
+        };
+        writer.start();
+        int misses = 0;
+        while (writer.isAlive()) {
+            for (int i = 0; i < 8; i++) {
+                if (!map.containsKey(i) || map.get(i) != i) {
+                    misses++;
+                }
+            }
+            if (map.get(null) != -1) {
+                misses++;
+            }
+            // a key that is not in the map must not match the mark of a moved bucket
+            if (map.containsKey(-1)) {
+                misses++;
+            }
+            Thread.yield();
+        }
+        writer.join();
+        assertEquals(0, misses);
+        assertEquals(20000, map.size() - 1);
+    }
+
+    @Test
+    public void testConcurrentInsertsWhileBucketsAreMoved() throws InterruptedException {
+        final VHashMap<Integer, Integer> map = new VHashMap<Integer, Integer>();
+        final int perThread = 5000;
+        Thread[] writers = new Thread[4];
+        for (int t = 0; t < writers.length; t++) {
+            final int first = t * perThread;
+            writers[t] = new Thread() {
+                public void run() {
+                    for (int i = first; i < first + perThread; i++) {
+                        while (true) {
+                            Transaction.begin();
+                            try {
+                                map.put(i, i);
+                                Transaction.commit();
+                                break;
+                            } catch (CommitException ce) {
+                                Transaction.abort();
+                            }
+                        }
+                    }
+                }
+            };
+            writers[t].start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        assertEquals(writers.length * perThread, map.size());
+        for (int i = 0; i < writers.length * perThread; i++) {
+            assertEquals(Integer.valueOf(i), map.get(i));
+        }
+    }
+
+    @Test
+    public void testAbortDuringMigrationLosesNoBucket() {
+        VHashMap<Integer, Integer> map = new VHashMap<Integer, Integer>();
+        Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+        // the table grows to 32 buckets at the 16th key, and keys 16 to 29
+        // move buckets 0 to 13 of the previous one
+        for (int i = 0; i < 30; i++) {
+            Transaction.begin();
+            map.put(i, i);
+            Transaction.commit();
+            expected.put(i, i);
+        }
+        // the first put moves bucket 14, the second one finds the table full
+        // and moves others; the transaction then aborts
+        Transaction.begin();
+        map.put(1006, 0);
+        map.put(2015, 0);
+        Transaction.abort();
+        // keys that all go to bucket 0, until the table grows again
+        for (int i = 0; i < 40; i++) {
+            int key = 16 * (i + 5000);
+            Transaction.begin();
+            map.put(key, i);
+            Transaction.commit();
+            expected.put(key, i);
+        }
+
+        assertEquals(expected.size(), map.size());
+        assertEquals(expected, new HashMap<Integer, Integer>(map));
+        for (Integer key : expected.keySet()) {
+            assertTrue("lost " + key, map.containsKey(key));
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package jvstm.test.simple;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+
+import jvstm.Transaction;
+import jvstm.util.VSkipListMap;
+
+import org.junit.Test;
+
+public class VSkipListMapTest {
+
+    private static VSkipListMap<Integer, String> newMap(TreeMap<Integer, String> expected) {
+        VSkipListMap<Integer, String> map = new VSkipListMap<Integer, String>();
+        Random random = new Random(42);
+        Transaction.begin();
+        for (int i = 0; i < 500; i++) {
+            int key = random.nextInt(1000);
+            if (random.nextInt(4) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                assertEquals(expected.put(key, "v" + i), map.put(key, "v" + i));
+            }
+        }
+        Transaction.commit();
+        return map;
+    }
+
+    private static void assertSameMap(NavigableMap<Integer, String> expected, NavigableMap<Integer, String> actual) {
+        assertEquals(expected.size(), actual.size());
+        assertEquals(new ArrayList<Map.Entry<Integer, String>>(expected.entrySet()),
+                     new ArrayList<Map.Entry<Integer, String>>(actual.entrySet()));
+        for (int key = -10; key < 1010; key += 7) {
+            assertEquals(expected.get(key), actual.get(key));
+            assertEquals(expected.lowerKey(key), actual.lowerKey(key));
+            assertEquals(expected.floorKey(key), actual.floorKey(key));
+            assertEquals(expected.ceilingKey(key), actual.ceilingKey(key));
+            assertEquals(expected.higherKey(key), actual.higherKey(key));
+        }
+        if (!expected.isEmpty()) {
+            assertEquals(expected.firstEntry(), actual.firstEntry());
+            assertEquals(expected.lastEntry(), actual.lastEntry());
+        }
+    }
+
+    @Test
+    public void testBehavesLikeTreeMap() {
+        TreeMap<Integer, String> expected = new TreeMap<Integer, String>();
+        VSkipListMap<Integer, String> map = newMap(expected);
+
+        Transaction.begin(true);
+        assertSameMap(expected, map);
+        assertSameMap(expected.descendingMap(), map.descendingMap());
+        Transaction.commit();
+    }
+
+    @Test
+    public void testRangeViews() {
+        TreeMap<Integer, String> expected = new TreeMap<Integer, String>();
+        VSkipListMap<Integer, String> map = newMap(expected);
+
+        Transaction.begin(true);
+        assertSameMap(expected.subMap(100, true, 600, false), map.subMap(100, true, 600, false));
+        assertSameMap(expected.headMap(300, true), map.headMap(300, true));
+        assertSameMap(expected.tailMap(700, false), map.tailMap(700, false));
+        assertSameMap(expected.subMap(100, false, 600, true).descendingMap().headMap(400, true),
+                      map.subMap(100, false, 600, true).descendingMap().headMap(400, true));
+        assertEquals(new ArrayList<Integer>(expected.descendingKeySet().subSet(900, 50)),
+                     new ArrayList<Integer>(map.descendingKeySet().subSet(900, 50)));
+        Transaction.commit();
+    }
+
+    @Test
+    public void testUpdatesThroughViews() {
+        TreeMap<Integer, String> expected = new TreeMap<Integer, String>();
+        VSkipListMap<Integer, String> map = newMap(expected);
+
+        Transaction.begin();
+        for (Iterator<Map.Entry<Integer, String>> it = map.subMap(200, 400).entrySet().iterator(); it.hasNext();) {
+            Map.Entry<Integer, String> entry = it.next();
+            if (entry.getKey() % 2 == 0) {
+                it.remove();
+            } else {
+                entry.setValue("odd");
+            }
+        }
+        map.tailMap(900).clear();
+        assertEquals(expected.firstEntry(), map.pollFirstEntry());
+        Transaction.commit();
+
+        for (Iterator<Map.Entry<Integer, String>> it = expected.subMap(200, 400).entrySet().iterator(); it.hasNext();) {
+            Map.Entry<Integer, String> entry = it.next();
+            if (entry.getKey() % 2 == 0) {
+                it.remove();
+            } else {
+                entry.setValue("odd");
+            }
+        }
+        expected.tailMap(900).clear();
+        expected.pollFirstEntry();
+
+        Transaction.begin(true);
+        assertSameMap(expected, map);
+        assertNull(map.ceilingKey(900));
+        Transaction.commit();
+    }
+
+    @Test
+    public void testAbortedInsertionsLeaveAStaleHeight() {
+        TreeMap<Integer, String> expected = new TreeMap<Integer, String>();
+        VSkipListMap<Integer, String> map = new VSkipListMap<Integer, String>();
+
+        // enough nodes to make the list taller, all of which are discarded
+        Transaction.begin();
+        for (int i = 0; i < 2000; i++) {
+            map.put(i, "x");
+        }
+        Transaction.abort();
+
+        Random random = new Random(7);
+        Transaction.begin();
+        for (int i = 0; i < 300; i++) {
+            int key = random.nextInt(1000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                assertEquals(expected.put(key, "v" + i), map.put(key, "v" + i));
+            }
+        }
+        Transaction.commit();
+
+        Transaction.begin(true);
+        assertSameMap(expected, map);
+        Transaction.commit();
+    }
+}
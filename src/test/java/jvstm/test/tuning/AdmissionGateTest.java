@@ -0,0 +1,157 @@
+package jvstm.test.tuning;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jvstm.tuning.AdmissionGate;
+
+import org.junit.Test;
+
+public class AdmissionGateTest {
+
+    @Test
+    public void testLimitIsNeverExceeded() throws InterruptedException {
+        final AdmissionGate gate = new AdmissionGate(3);
+        final AtomicInteger inside = new AtomicInteger();
+        final AtomicInteger maxInside = new AtomicInteger();
+
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 2000; i++) {
+                        gate.acquire();
+                        int n = inside.incrementAndGet();
+                        int max;
+                        while (n > (max = maxInside.get()) && !maxInside.compareAndSet(max, n)) { }
+                        if ((i & 63) == 0) Thread.yield();
+                        inside.decrementAndGet();
+                        gate.release();
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        assertTrue("limit exceeded: " + maxInside.get(), maxInside.get() <= 3);
+        assertEquals(3, gate.available());
+    }
+
+    @Test
+    public void testRaisingTheLimitWakesUpWaiters() throws InterruptedException {
+        final AdmissionGate gate = new AdmissionGate(1);
+        gate.acquire();
+
+        final AtomicInteger admitted = new AtomicInteger();
+        Thread[] threads = new Thread[3];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    gate.acquire();
+                    admitted.incrementAndGet();
+                }
+            };
+            threads[t].start();
+        }
+        Thread.sleep(50);
+        assertEquals(0, admitted.get());
+
+        gate.setLimit(4);
+        for (Thread t : threads) {
+            t.join(5000);
+        }
+        assertEquals(3, admitted.get());
+        assertEquals(0, gate.available());
+    }
+
+    @Test
+    public void testLoweringTheLimitBelowTheHeldPermits() {
+        AdmissionGate gate = new AdmissionGate(4);
+        for (int i = 0; i < 4; i++) {
+            gate.acquire();
+        }
+        gate.setLimit(1);
+        assertEquals(-3, gate.available());
+
+        // three releases pay the debt, only the fourth frees a permit
+        for (int i = 0; i < 3; i++) {
+            gate.release();
+        }
+        assertEquals(0, gate.available());
+        gate.release();
+        assertEquals(1, gate.available());
+    }
+
+    @Test
+    public void testLoweringTheLimitWithSeveralStripes() throws InterruptedException {
+        // one permit in each of four stripes
+        final AdmissionGate gate = new AdmissionGate(4, 4);
+        gate.acquire();
+        gate.acquire();
+        gate.setLimit(2);
+        assertEquals(0, gate.available());
+
+        final AtomicInteger admitted = new AtomicInteger();
+        Thread other = new Thread() {
+            @Override
+            public void run() {
+                gate.acquire();
+                admitted.incrementAndGet();
+            }
+        };
+        other.start();
+        other.join(50);
+        assertEquals("admitted over the lowered limit: " + gate, 0, admitted.get());
+
+        gate.release();
+        other.join(5000);
+        assertEquals(1, admitted.get());
+        assertEquals(0, gate.available());
+    }
+
+    @Test
+    public void testDebtIsPaidBeforeAnyStripeGrantsAPermit() throws InterruptedException {
+        final AdmissionGate gate = new AdmissionGate(4, 4);
+        for (int i = 0; i < 4; i++) {
+            gate.acquire();
+        }
+        gate.setLimit(1);
+        assertEquals(-3, gate.available());
+
+        // releases from other threads (and so other home stripes) pay the debt
+        for (int i = 0; i < 3; i++) {
+            Thread releaser = new Thread() {
+                @Override
+                public void run() {
+                    gate.release();
+                }
+            };
+            releaser.start();
+            releaser.join();
+        }
+        assertEquals(0, gate.available());
+
+        final AtomicInteger admitted = new AtomicInteger();
+        Thread other = new Thread() {
+            @Override
+            public void run() {
+                gate.acquire();
+                admitted.incrementAndGet();
+            }
+        };
+        other.start();
+        other.join(50);
+        assertEquals(0, admitted.get());
+
+        gate.release();
+        other.join(5000);
+        assertEquals(1, admitted.get());
+    }
+}
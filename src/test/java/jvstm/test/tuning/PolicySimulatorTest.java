@@ -0,0 +1,65 @@
+package jvstm.test.tuning;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import jvstm.tuning.TuningPoint;
+import jvstm.tuning.policy.LinearGradientDescent4;
+import jvstm.tuning.policy.TuningPolicy;
+import jvstm.tuning.simulation.PolicySimulator;
+import jvstm.tuning.simulation.ThroughputSurface;
+
+import org.junit.Test;
+
+public class PolicySimulatorTest {
+
+    private static final int MAX_THREADS = 16;
+
+    /* A single peak at the given point */
+    private static ThroughputSurface peak(int x0, int y0) {
+        Map<TuningPoint, Float> throughput = new HashMap<TuningPoint, Float>();
+        for (int x = 1; x <= MAX_THREADS; x++) {
+            for (int y = 1; x * y <= MAX_THREADS; y++) {
+                throughput.put(new TuningPoint(x, y), 10000f / (1 + (x - x0) * (x - x0) + (y - y0) * (y - y0)));
+            }
+        }
+        return new ThroughputSurface("peak at " + x0 + "," + y0, throughput);
+    }
+
+    @Test
+    public void testGradientDescentFindsEachPhaseOptimum() {
+        PolicySimulator simulator = new PolicySimulator(MAX_THREADS, Arrays.asList(peak(2, 4), peak(6, 1)), 300, 0,
+                0.05f, 0);
+        TuningPolicy policy = simulator.newPolicy(LinearGradientDescent4.class);
+        PolicySimulator.Result result = simulator.simulate(policy, 600);
+
+        assertEquals(2, result.getPhases().size());
+        for (PolicySimulator.PhaseResult phase : result.getPhases()) {
+            assertTrue(phase.getFirstHitSteps() >= 0);
+            // it keeps exploring the neighbours of the optimum
+            assertTrue(phase.getMeanDistance() < 2);
+        }
+        assertTrue(result.getRelativeRegret() > 0 && result.getRelativeRegret() < 1);
+    }
+
+    @Test
+    public void testStubFileFormats() throws IOException {
+        File file = File.createTempFile("surface", ".txt");
+        file.deleteOnExit();
+        FileWriter writer = new FileWriter(file);
+        writer.write("[1,1] {100.0}\n[2,1] {250.5}\n[1,2] {50}\n");
+        writer.close();
+
+        ThroughputSurface surface = ThroughputSurface.load(file.getPath());
+        assertEquals(250.5f, surface.getThroughput(new TuningPoint(2, 1)));
+        assertEquals(0f, surface.getThroughput(new TuningPoint(3, 1)));
+        assertEquals(new TuningPoint(2, 1), surface.getOptimum(new PolicySimulator(2, null, 1, 0, 0, 0).getPointBinder()));
+    }
+}
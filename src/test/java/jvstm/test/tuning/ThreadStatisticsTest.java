@@ -0,0 +1,79 @@
+package jvstm.test.tuning;
+
+import static junit.framework.Assert.assertEquals;
+import jvstm.Transaction;
+import jvstm.VBox;
+import jvstm.WriteOnReadException;
+import jvstm.tuning.AbortCause;
+import jvstm.tuning.ThreadStatistics;
+import jvstm.tuning.TuningContext;
+
+import org.junit.Test;
+
+public class ThreadStatisticsTest {
+
+    @Test
+    public void testAbortsAreCountedByCause() {
+        ThreadStatistics stats = new ThreadStatistics(1);
+        stats.incTransactionCount();
+        stats.setAbortCause(AbortCause.VALIDATION);
+        stats.incAbortCount();
+        stats.incTransactionCount();
+        stats.incAbortCount();
+        stats.incTransactionCount();
+        // a cause set by a transaction that commits is not counted
+        stats.setAbortCause(AbortCause.EARLY_ABORT);
+        stats.incCommitCount();
+
+        assertEquals(3, stats.getTransactionCount());
+        assertEquals(1, stats.getCommitCount());
+        assertEquals(2, stats.getAbortCount());
+        assertEquals(1, stats.getAbortCount(AbortCause.VALIDATION));
+        assertEquals(1, stats.getAbortCount(AbortCause.OTHER));
+        assertEquals(0, stats.getAbortCount(AbortCause.EARLY_ABORT));
+    }
+
+    @Test
+    public void testResetDoesNotLoseLaterCounts() {
+        ThreadStatistics stats = new ThreadStatistics(1);
+        ThreadStatistics global = new ThreadStatistics(-1);
+        stats.incTransactionCount();
+        stats.incCommitCount();
+        stats.addTo(global);
+        stats.reset();
+        stats.incTransactionCount();
+        stats.incAbortCount();
+
+        assertEquals(1, stats.getTransactionCount());
+        assertEquals(0, stats.getCommitCount());
+        assertEquals(1, stats.snapshot().getAbortCount());
+
+        stats.addTo(global);
+        assertEquals(2, global.getTransactionCount());
+        assertEquals(1, global.getCommitCount());
+        assertEquals(1, global.getAbortCount(AbortCause.OTHER));
+    }
+
+    @Test
+    public void testWriteOnReadIsRecorded() {
+        TuningContext ctx = Transaction.getTuningContext();
+        if (ctx == null) {
+            // tuning is disabled, nothing is recorded
+            return;
+        }
+        VBox<Integer> box = new VBox<Integer>(0);
+        // the controller may reset the statistics meanwhile, so try again
+        long recorded = 0;
+        for (int attempt = 0; attempt < 3 && recorded != 1; attempt++) {
+            long before = ctx.getStatistics().getAbortCount(AbortCause.WRITE_ON_READ);
+            Transaction.begin(true);
+            try {
+                box.put(1);
+            } catch (WriteOnReadException wore) {
+                Transaction.abort();
+            }
+            recorded = ctx.getStatistics().getAbortCount(AbortCause.WRITE_ON_READ) - before;
+        }
+        assertEquals(1, recorded);
+    }
+}
@@ -0,0 +1,68 @@
+package jvstm.test.tuning;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import jvstm.tuning.TuningPoint;
+import jvstm.tuning.policy.PointBinder;
+import jvstm.tuning.policy.PointProvider.Delta;
+
+import org.junit.Test;
+
+public class TuningPointTest {
+
+    @Test
+    public void testPoolDimensionsTakePartInEquality() {
+        TuningPoint plain = new TuningPoint(2, 4);
+        TuningPoint pools = new TuningPoint(2, 4, 8, 1);
+
+        assertEquals(2, plain.dimensions());
+        assertEquals(4, pools.dimensions());
+        assertEquals(8, pools.get(TuningPoint.NESTED_POOL));
+        assertEquals(plain, new TuningPoint(2, 4));
+        assertEquals(pools, new TuningPoint(2, 4, 8, 1));
+        assertEquals(pools.hashCode(), new TuningPoint(2, 4, 8, 1).hashCode());
+        assertFalse(plain.equals(pools));
+        assertFalse(pools.equals(new TuningPoint(2, 4, 8, 2)));
+        assertEquals("[2,4,8,1]", pools.toString());
+    }
+
+    @Test
+    public void testDistanceCoversThePoolDimensions() {
+        TuningPoint point = new TuningPoint(2, 4, 8, 1);
+
+        assertEquals(0.0, point.distanceTo(new TuningPoint(2, 4, 8, 1)));
+        assertEquals(5.0, point.distanceTo(new TuningPoint(2, 4, 5, 5)));
+        assertEquals(5.0, point.distanceTo(new TuningPoint(5, 8, 8, 1)));
+        // only the dimensions both points have are compared
+        assertEquals(0.0, point.distanceTo(new TuningPoint(2, 4)));
+    }
+
+    @Test
+    public void testDeltasKeepTheDimensionsTheyDoNotMove() {
+        TuningPoint point = new TuningPoint(2, 4, 8, 1);
+
+        assertEquals(new TuningPoint(3, 4, 8, 1), new Delta(1, 0).applyTo(point));
+        assertEquals(new TuningPoint(2, 4, 7, 1), Delta.along(TuningPoint.NESTED_POOL, 4, -1).applyTo(point));
+        // a step along a dimension the point lacks does nothing
+        assertEquals(new TuningPoint(2, 4), Delta.along(TuningPoint.GC_CLEANERS, 4, 1).applyTo(new TuningPoint(2, 4)));
+    }
+
+    @Test
+    public void testPoolDimensionsAreBound() {
+        PointBinder binder = new PointBinder(8, 4);
+        int cpus = Runtime.getRuntime().availableProcessors();
+
+        TuningPoint mid = binder.getMidPoint();
+        assertEquals(4, mid.dimensions());
+        assertTrue(binder.isBound(mid));
+        assertTrue(binder.isBound(new TuningPoint(2, 4)));
+        assertTrue(binder.isBound(new TuningPoint(2, 4, 8, cpus)));
+        assertFalse(binder.isBound(new TuningPoint(2, 4, 9, 1)));
+        assertFalse(binder.isBound(new TuningPoint(2, 4, 8, cpus + 1)));
+        assertFalse(binder.isBound(new TuningPoint(2, 4, 0, 1)));
+        assertFalse(binder.isBound(new TuningPoint(4, 4, 1, 1)));
+
+        assertEquals(2, new PointBinder(8).getMidPoint().dimensions());
+    }
+}